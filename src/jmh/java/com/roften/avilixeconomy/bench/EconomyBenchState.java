@@ -0,0 +1,74 @@
+package com.roften.avilixeconomy.bench;
+
+import com.roften.avilixeconomy.database.BalanceHistoryWriter;
+import com.roften.avilixeconomy.database.BatchWriter;
+import com.roften.avilixeconomy.database.DatabaseManager;
+import com.roften.avilixeconomy.database.EconomyExecutor;
+import com.roften.avilixeconomy.database.backend.H2Backend;
+import com.zaxxer.hikari.HikariConfig;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * One embedded H2 file database per trial, pre-filled with {@code accounts} rich accounts.
+ * Fewer accounts = more lock contention between benchmark threads.
+ */
+@State(Scope.Benchmark)
+public class EconomyBenchState {
+
+    @Param({"16", "1024"})
+    public int accounts;
+
+    /** "direct": one INSERT per history row; "write_behind": batched BalanceHistoryWriter. */
+    @Param({"direct", "write_behind"})
+    public String history;
+
+    public UUID[] uuids;
+    public UUID server;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("avilixeconomy-bench");
+
+        HikariConfig pool = new HikariConfig();
+        pool.setMaximumPoolSize(32);
+        pool.setMinimumIdle(4);
+        pool.setConnectionTimeout(30000);
+        DatabaseManager.init(H2Backend.file(dir.resolve("economy")), pool);
+        EconomyExecutor.start(32);
+
+        if ("write_behind".equals(history)) {
+            BalanceHistoryWriter.start(8192, 200, 1000, BatchWriter.OverflowPolicy.BLOCK, 1000);
+        }
+
+        uuids = new UUID[accounts];
+        for (int i = 0; i < accounts; i++) {
+            uuids[i] = UUID.randomUUID();
+            DatabaseManager.createPlayerRecord(uuids[i], "bench" + i, 1_000_000_000.0);
+        }
+        server = UUID.randomUUID();
+        DatabaseManager.createPlayerRecord(server, "SERVER", 0.0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        EconomyExecutor.shutdown(30000);
+        DatabaseManager.shutdown(30000);
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.roften.avilixeconomy.bench;
+
+import com.roften.avilixeconomy.EconomyData;
+import com.roften.avilixeconomy.database.DatabaseManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Balance / transfer / history benchmarks.
+ *
+ * Every benchmark runs in four flavours (nested classes): throughput (ops/s) and
+ * sampled latency (p50/p99/p99.9 in us), each single-threaded and contended (16 threads).
+ * Compare results before and after persistence changes with the same {@code accounts}/{@code history} params.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public abstract class EconomyBenchmarks {
+
+    @Benchmark
+    public double getBalance(EconomyBenchState db, EconomyThreadState t) {
+        return EconomyData.getBalance(t.any(db));
+    }
+
+    @Benchmark
+    public boolean addBalance(EconomyBenchState db, EconomyThreadState t) {
+        return EconomyData.addBalance(t.any(db), t.nextDelta());
+    }
+
+    @Benchmark
+    public boolean pay(EconomyBenchState db, EconomyThreadState t) {
+        UUID from = t.any(db);
+        return EconomyData.pay(from, t.other(db, from), 1.0);
+    }
+
+    /** Shop-style payment: seller + commission to the (hot) server account. */
+    @Benchmark
+    public boolean paySplit(EconomyBenchState db, EconomyThreadState t) {
+        UUID from = t.any(db);
+        return EconomyData.paySplit(from, t.other(db, from), 0.95, db.server, 0.05);
+    }
+
+    @Benchmark
+    public boolean historyInsert(EconomyBenchState db, EconomyThreadState t) {
+        UUID u = t.any(db);
+        if ("direct".equals(db.history)) {
+            DatabaseManager.insertBalanceHistory(u, "bench", 1.0, 10.0, 11.0, "BENCH", null, null, null);
+            return true;
+        }
+        return DatabaseManager.insertBalanceHistoryAsync(u, "bench", 1.0, 10.0, 11.0, "BENCH", null, null, null);
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(1)
+    public static class ThroughputSingle extends EconomyBenchmarks {}
+
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(16)
+    public static class ThroughputContended extends EconomyBenchmarks {}
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(1)
+    public static class LatencySingle extends EconomyBenchmarks {}
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(16)
+    public static class LatencyContended extends EconomyBenchmarks {}
+}
@@ -0,0 +1,34 @@
+package com.roften.avilixeconomy.bench;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/** Per-thread account picker. */
+@State(Scope.Thread)
+public class EconomyThreadState {
+
+    private final SplittableRandom random = new SplittableRandom();
+    private long n;
+
+    public UUID any(EconomyBenchState db) {
+        return db.uuids[random.nextInt(db.uuids.length)];
+    }
+
+    /** A second account different from {@code first} (when there is more than one). */
+    public UUID other(EconomyBenchState db, UUID first) {
+        if (db.uuids.length < 2) return first;
+        UUID u;
+        do {
+            u = any(db);
+        } while (u.equals(first));
+        return u;
+    }
+
+    /** Alternates +1 / -1 so balances stay put over a long run. */
+    public double nextDelta() {
+        return (n++ & 1) == 0 ? 1.0 : -1.0;
+    }
+}
@@ -0,0 +1,172 @@
+package com.roften.avilixeconomy;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of balances in cents behind {@link EconomyData}.
+ *
+ * Values live in mutable slots (a plain {@code long}), so updating a balance does not allocate.
+ * Online players are never evicted; everyone else (offline shop owners, admin lookups, payment
+ * recipients) is dropped after {@code idleMillis} without access, or oldest-first once the cache
+ * holds more than {@code maxEntries}. Slots are only created, changed and removed through map
+ * operations, so an eviction can never swallow a concurrent write.
+ */
+final class BalanceCache {
+
+    /** Returned by {@link #get} for an uncached account. */
+    static final long MISSING = Long.MIN_VALUE;
+
+    private static final class Slot {
+        volatile long cents;
+        volatile long accessedAtMillis;
+    }
+
+    private final ConcurrentHashMap<UUID, Slot> map = new ConcurrentHashMap<>();
+    private final Set<UUID> online = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+
+    private volatile int maxEntries;
+    private volatile long idleMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictedIdle = new LongAdder();
+    private final LongAdder evictedSize = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+
+    BalanceCache(int maxEntries, long idleMillis) {
+        configure(maxEntries, idleMillis);
+    }
+
+    void configure(int maxEntries, long idleMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.idleMillis = Math.max(0L, idleMillis);
+    }
+
+    /** Balance in cents, or {@link #MISSING}. Counts a hit or a miss. */
+    long get(UUID uuid) {
+        Slot s = map.get(uuid);
+        if (s == null) {
+            misses.increment();
+            return MISSING;
+        }
+        hits.increment();
+        s.accessedAtMillis = System.currentTimeMillis();
+        return s.cents;
+    }
+
+    /** Like {@link #get} without touching stats or the idle clock (internal compare-and-set reads). */
+    long peek(UUID uuid) {
+        Slot s = map.get(uuid);
+        return s == null ? MISSING : s.cents;
+    }
+
+    boolean contains(UUID uuid) {
+        return get(uuid) != MISSING;
+    }
+
+    void put(UUID uuid, long cents) {
+        map.compute(uuid, (k, s) -> {
+            if (s == null) s = new Slot();
+            s.cents = cents;
+            s.accessedAtMillis = System.currentTimeMillis();
+            return s;
+        });
+        trimIfFull();
+    }
+
+    /** Stores {@code cents} only if the account is not cached yet. */
+    boolean putIfAbsent(UUID uuid, long cents) {
+        boolean[] applied = new boolean[1];
+        map.computeIfAbsent(uuid, k -> {
+            Slot s = new Slot();
+            s.cents = cents;
+            s.accessedAtMillis = System.currentTimeMillis();
+            applied[0] = true;
+            return s;
+        });
+        if (applied[0]) trimIfFull();
+        return applied[0];
+    }
+
+    /** Stores {@code cents} only if the cached value is still {@code expected}. */
+    boolean replace(UUID uuid, long expected, long cents) {
+        boolean[] applied = new boolean[1];
+        map.computeIfPresent(uuid, (k, s) -> {
+            if (s.cents == expected) {
+                s.cents = cents;
+                s.accessedAtMillis = System.currentTimeMillis();
+                applied[0] = true;
+            }
+            return s;
+        });
+        return applied[0];
+    }
+
+    void markOnline(UUID uuid) {
+        online.add(uuid);
+    }
+
+    /** Logout: the player is no longer pinned; {@code drop} also removes the cached balance. */
+    void markOffline(UUID uuid, boolean drop) {
+        online.remove(uuid);
+        if (drop && map.remove(uuid) != null) invalidated.increment();
+    }
+
+    /** Drops offline entries idle for longer than the configured time, then enforces the size limit. */
+    void sweep() {
+        long idle = idleMillis;
+        if (idle > 0) {
+            long cutoff = System.currentTimeMillis() - idle;
+            for (Map.Entry<UUID, Slot> e : map.entrySet()) {
+                Slot s = e.getValue();
+                if (s.accessedAtMillis < cutoff && !online.contains(e.getKey()) && map.remove(e.getKey(), s)) {
+                    evictedIdle.increment();
+                }
+            }
+        }
+        trimIfFull();
+    }
+
+    private void trimIfFull() {
+        int max = maxEntries;
+        if (map.size() <= max || !trimming.compareAndSet(false, true)) return;
+        try {
+            // Trim a little below the limit so a full cache does not sort on every insert.
+            int target = Math.max(0, max - max / 10);
+            List<Map.Entry<UUID, Slot>> candidates = new ArrayList<>(map.size());
+            for (Map.Entry<UUID, Slot> e : map.entrySet()) {
+                if (!online.contains(e.getKey())) candidates.add(Map.entry(e.getKey(), e.getValue()));
+            }
+            candidates.sort(Comparator.comparingLong(e -> e.getValue().accessedAtMillis));
+            for (Map.Entry<UUID, Slot> e : candidates) {
+                if (map.size() <= target) break;
+                if (map.remove(e.getKey(), e.getValue())) evictedSize.increment();
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    String statsLine() {
+        long h = hits.sum();
+        long m = misses.sum();
+        long total = h + m;
+        return "Balance cache: size=" + map.size() + "/" + maxEntries
+                + " online=" + online.size()
+                + " hits=" + h
+                + " misses=" + m
+                + " hitRate=" + (total == 0 ? "-" : String.format(java.util.Locale.ROOT, "%.1f%%", 100.0 * h / total))
+                + " evictedIdle=" + evictedIdle.sum()
+                + " evictedSize=" + evictedSize.sum()
+                + " invalidated=" + invalidated.sum();
+    }
+}
@@ -10,6 +10,7 @@ import com.roften.avilixeconomy.database.DatabaseManager;
 import com.roften.avilixeconomy.pricing.MinPriceManager;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
 import net.minecraft.commands.arguments.EntityArgument;
 import net.minecraft.commands.arguments.ResourceLocationArgument;
 import net.minecraft.network.chat.Component;
@@ -19,6 +20,9 @@ import net.neoforged.neoforge.event.RegisterCommandsEvent;
 
 import com.roften.avilixeconomy.trade.TradeManager;
 import com.roften.avilixeconomy.commission.CommissionManager;
+import com.roften.avilixeconomy.shop.market.MarketStats;
+import com.roften.avilixeconomy.shop.market.ShopListing;
+import com.roften.avilixeconomy.shop.market.ShopRegistry;
 import com.roften.avilixeconomy.util.MoneyUtils;
 
 public class EconomyCommands {
@@ -30,6 +34,18 @@ public class EconomyCommands {
         return builder.buildFuture();
     };
 
+    // === Подсказки предметов, которые есть в магазинах ===
+    private static final SuggestionProvider<CommandSourceStack> SHOP_ITEM_SUGGESTIONS = (ctx, builder) ->
+            SharedSuggestionProvider.suggestResource(
+                    ShopRegistry.itemIds().stream().map(ResourceLocation::tryParse).filter(java.util.Objects::nonNull),
+                    builder);
+
+    // === Подсказки предметов, по которым были сделки ===
+    private static final SuggestionProvider<CommandSourceStack> TRADED_ITEM_SUGGESTIONS = (ctx, builder) ->
+            SharedSuggestionProvider.suggestResource(
+                    MarketStats.itemIds().stream().map(ResourceLocation::tryParse).filter(java.util.Objects::nonNull),
+                    builder);
+
     /**
      * Vanilla-like @p: nearest online player to the command source position.
      * If the source is a player, it will normally pick the source player (distance 0).
@@ -71,7 +87,7 @@ public class EconomyCommands {
         }
     }
 
-    /** Resolves online player UUID by name, otherwise tries DB lookup (offline). */
+    /** Resolves online player UUID by name, otherwise the name directory (offline, no SQL). */
     private static java.util.UUID resolveUuidByName(CommandSourceStack src, String name) {
         if (name == null || name.isBlank()) return null;
         ServerPlayer online = src.getServer().getPlayerList().getPlayerByName(name);
@@ -697,6 +713,23 @@ public static void register(RegisterCommandsEvent event) {
                                             )
                                     )
                             )
+
+                            // /eco admin dbstats  (DB executor, pool, transaction journal, balance ledger, balance cache and write-behind queues)
+                            .then(Commands.literal("dbstats")
+                                    .executes(ctx -> {
+                                        var src = ctx.getSource();
+                                        src.sendSystemMessage(Component.literal(com.roften.avilixeconomy.database.EconomyExecutor.statsLine()));
+                                        src.sendSystemMessage(Component.literal(DatabaseManager.poolStatsLine()));
+                                        src.sendSystemMessage(Component.literal(com.roften.avilixeconomy.database.DegradedMode.statusLine()));
+                                        src.sendSystemMessage(Component.literal(com.roften.avilixeconomy.database.BalanceLedger.statsLine()));
+                                        src.sendSystemMessage(Component.literal(EconomyData.cacheStatsLine()));
+                                        var history = com.roften.avilixeconomy.database.BalanceHistoryWriter.get();
+                                        if (history != null) src.sendSystemMessage(Component.literal(history.statsLine()));
+                                        var sales = com.roften.avilixeconomy.database.ShopSalesJournal.get();
+                                        if (sales != null) src.sendSystemMessage(Component.literal(sales.statsLine()));
+                                        return Command.SINGLE_SUCCESS;
+                                    })
+                            )
                     )
     );
 
@@ -770,6 +803,182 @@ public static void register(RegisterCommandsEvent event) {
                                 })
                         )
         );
+
+        // =============================
+        // /shop - поиск магазинов по всему миру
+        // =============================
+        event.getDispatcher().register(
+                Commands.literal("shop")
+                        // /shop find <item> [page] - кто продаёт (дешёвые первыми)
+                        .then(Commands.literal("find")
+                                .then(Commands.argument("item", ResourceLocationArgument.id())
+                                        .suggests(SHOP_ITEM_SUGGESTIONS)
+                                        .executes(ctx -> showShopOffers(ctx.getSource(), ResourceLocationArgument.getId(ctx, "item"), false, 1))
+                                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                                .executes(ctx -> showShopOffers(ctx.getSource(), ResourceLocationArgument.getId(ctx, "item"), false,
+                                                        IntegerArgumentType.getInteger(ctx, "page")))
+                                        )
+                                )
+                        )
+                        // /shop buyers <item> [page] - кто скупает (дорогие первыми)
+                        .then(Commands.literal("buyers")
+                                .then(Commands.argument("item", ResourceLocationArgument.id())
+                                        .suggests(SHOP_ITEM_SUGGESTIONS)
+                                        .executes(ctx -> showShopOffers(ctx.getSource(), ResourceLocationArgument.getId(ctx, "item"), true, 1))
+                                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                                .executes(ctx -> showShopOffers(ctx.getSource(), ResourceLocationArgument.getId(ctx, "item"), true,
+                                                        IntegerArgumentType.getInteger(ctx, "page")))
+                                        )
+                                )
+                        )
+                        // /shop price <item> - статистика цен по сделкам (1ч / 24ч / 7д)
+                        .then(Commands.literal("price")
+                                .then(Commands.argument("item", ResourceLocationArgument.id())
+                                        .suggests(TRADED_ITEM_SUGGESTIONS)
+                                        .executes(ctx -> showMarketPrice(ctx.getSource(), ResourceLocationArgument.getId(ctx, "item")))
+                                )
+                        )
+                        // /shop market - окно рынка (все предложения сервера)
+                        .then(Commands.literal("market")
+                                .executes(ctx -> {
+                                    ServerPlayer player = ctx.getSource().getPlayerOrException();
+                                    com.roften.avilixeconomy.network.NetworkRegistration.sendMarketPage(player, 0, 0, "", 0, 8, true);
+                                    return Command.SINGLE_SUCCESS;
+                                })
+                        )
+                        // /shop admin list [page] - все магазины сервера
+                        .then(Commands.literal("admin")
+                                .requires(src -> src.hasPermission(2))
+                                .then(Commands.literal("list")
+                                        .executes(ctx -> showAllShops(ctx.getSource(), 1))
+                                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                                .executes(ctx -> showAllShops(ctx.getSource(), IntegerArgumentType.getInteger(ctx, "page")))
+                                        )
+                                )
+                        )
+        );
+    }
+
+    private static int showShopOffers(CommandSourceStack src, ResourceLocation item, boolean buyers, int page) {
+        final int perPage = 10;
+        int safePage = Math.max(1, page);
+        int offset = (safePage - 1) * perPage;
+
+        java.util.List<ShopListing> all = buyers ? ShopRegistry.buyers(item.toString()) : ShopRegistry.sellers(item.toString());
+        if (all.isEmpty()) {
+            src.sendSystemMessage(Component.literal(buyers
+                    ? "Никто не скупает " + item + "."
+                    : "Никто не продаёт " + item + "."));
+            return Command.SINGLE_SUCCESS;
+        }
+
+        int from = Math.min(offset, all.size());
+        int to = Math.min(offset + perPage, all.size());
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(buyers ? "Скупают " : "Продают ")
+                .append(all.get(0).itemName())
+                .append(" (").append(item).append(", страница ").append(safePage).append("):\n");
+        for (int i = from; i < to; i++) {
+            ShopListing l = all.get(i);
+            sb.append(i + 1)
+                    .append(". ")
+                    .append(MoneyUtils.formatNoks(l.price()))
+                    .append(" за ").append(l.lotCount()).append(" шт.")
+                    .append(" — ")
+                    .append(l.ownerName());
+            if (!buyers) sb.append(", в наличии ").append(l.stock());
+            sb.append(" — ").append(l.pos()).append("\n");
+        }
+        if (to < all.size()) {
+            sb.append("\nЕсть следующая страница: /shop ").append(buyers ? "buyers " : "find ")
+                    .append(item).append(" ").append(safePage + 1);
+        }
+
+        src.sendSuccess(() -> Component.literal(sb.toString()), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showMarketPrice(CommandSourceStack src, ResourceLocation item) {
+        String itemId = item.toString();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Цены ").append(itemId).append(" (за 1 шт.):\n");
+        boolean any = false;
+        for (MarketStats.Side side : MarketStats.Side.values()) {
+            sb.append(side == MarketStats.Side.SELL ? "Продажи магазинов:\n" : "Скупка магазинов:\n");
+            for (MarketStats.Window w : MarketStats.Window.values()) {
+                MarketStats.Snapshot s = MarketStats.snapshot(itemId, side, w);
+                sb.append("   ").append(switch (w) {
+                    case HOUR -> "1ч";
+                    case DAY -> "24ч";
+                    case WEEK -> "7д";
+                }).append(": ");
+                if (s.trades() == 0) {
+                    sb.append("сделок нет\n");
+                    continue;
+                }
+                any = true;
+                sb.append("сделок ").append(s.trades())
+                        .append(", объём ").append(s.volume()).append(" шт.")
+                        .append(", ср. ").append(MoneyUtils.formatNoks(s.vwap()))
+                        .append(", мин. ").append(MoneyUtils.formatNoks(s.min()))
+                        .append(", макс. ").append(MoneyUtils.formatNoks(s.max()))
+                        .append("\n");
+            }
+            MarketStats.Snapshot last = MarketStats.snapshot(itemId, side, MarketStats.Window.WEEK);
+            if (last.lastAtMillis() > 0) {
+                sb.append("   последняя: ").append(MoneyUtils.formatNoks(last.lastPrice())).append("\n");
+            }
+        }
+        if (!any) {
+            src.sendSystemMessage(Component.literal("По " + itemId + " не было сделок за неделю."));
+            return Command.SINGLE_SUCCESS;
+        }
+        src.sendSuccess(() -> Component.literal(sb.toString().stripTrailing()), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showAllShops(CommandSourceStack src, int page) {
+        final int perPage = 10;
+        int safePage = Math.max(1, page);
+        int offset = (safePage - 1) * perPage;
+
+        java.util.List<java.util.List<ShopListing>> shops = ShopRegistry.allShops();
+        if (shops.isEmpty()) {
+            src.sendSystemMessage(Component.literal("Магазинов нет."));
+            return Command.SINGLE_SUCCESS;
+        }
+
+        int from = Math.min(offset, shops.size());
+        int to = Math.min(offset + perPage, shops.size());
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Магазины сервера: ").append(shops.size()).append(" (страница ").append(safePage).append("):\n");
+        for (int i = from; i < to; i++) {
+            java.util.List<ShopListing> offers = shops.get(i);
+            ShopListing first = offers.get(0);
+            sb.append(i + 1)
+                    .append(". ")
+                    .append(first.pos())
+                    .append(" — ")
+                    .append(first.ownerName())
+                    .append(first.buyMode() ? " [скупка]" : " [продажа]")
+                    .append("\n");
+            for (ShopListing l : offers) {
+                sb.append("   ")
+                        .append(l.itemName())
+                        .append(" x").append(l.lotCount())
+                        .append(" — ").append(MoneyUtils.formatNoks(l.price()));
+                if (!l.buyMode()) sb.append(", в наличии ").append(l.stock());
+                sb.append("\n");
+            }
+        }
+        if (to < shops.size()) {
+            sb.append("\nЕсть следующая страница: /shop admin list ").append(safePage + 1);
+        }
+
+        src.sendSuccess(() -> Component.literal(sb.toString()), false);
+        return Command.SINGLE_SUCCESS;
     }
 
     private static int showTop(CommandSourceStack src, int page) {
@@ -778,11 +987,31 @@ public static void register(RegisterCommandsEvent event) {
         int offset = (safePage - 1) * perPage;
 
         java.util.UUID serverUuid = getServerAccountUuid();
-        DatabaseManager.BalancesPage top = DatabaseManager.getBalancesTopPage(perPage, offset, serverUuid);
+        if (com.roften.avilixeconomy.database.Leaderboard.isLoaded()) {
+            sendTopPage(src, safePage, offset, DatabaseManager.getBalancesTopPage(perPage, offset, serverUuid));
+        } else {
+            // Ranking not in memory (load failed): SQL fallback off the server thread.
+            com.roften.avilixeconomy.database.EconomyExecutor
+                    .supply(() -> DatabaseManager.getBalancesTopPage(perPage, offset, serverUuid))
+                    .handle((top, err) -> {
+                        com.roften.avilixeconomy.database.EconomyExecutor.runOnServer(() -> {
+                            if (err != null) {
+                                AvilixEconomy.LOGGER.warn("Failed to load the balance top", err);
+                                src.sendFailure(Component.literal("Не удалось загрузить топ, попробуйте позже."));
+                            } else {
+                                sendTopPage(src, safePage, offset, top);
+                            }
+                        });
+                        return null;
+                    });
+        }
+        return Command.SINGLE_SUCCESS;
+    }
 
+    private static void sendTopPage(CommandSourceStack src, int safePage, int offset, DatabaseManager.BalancesPage top) {
         if (top.rows().isEmpty()) {
             src.sendSystemMessage(Component.literal("Топ пуст."));
-            return Command.SINGLE_SUCCESS;
+            return;
         }
 
         StringBuilder sb = new StringBuilder();
@@ -802,7 +1031,6 @@ public static void register(RegisterCommandsEvent event) {
         }
 
         src.sendSuccess(() -> Component.literal(sb.toString()), false);
-        return Command.SINGLE_SUCCESS;
     }
 
     
@@ -838,6 +1066,17 @@ private static int showMinPriceList(CommandSourceStack src, int page) {
 }
 
 
+/** Last /eco history page shown per viewer+player, so the next page is a plain keyset query. */
+private record HistoryPageEnd(int page, DatabaseManager.LogCursor cursor) {}
+
+private static final java.util.Map<String, HistoryPageEnd> HISTORY_PAGE_ENDS =
+        java.util.Collections.synchronizedMap(new java.util.LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(java.util.Map.Entry<String, HistoryPageEnd> eldest) {
+                return size() > 256;
+            }
+        });
+
 private static int showHistory(CommandSourceStack src, String playerName, int page) {
         final int perPage = 10;
         int safePage = Math.max(1, page);
@@ -864,10 +1103,32 @@ private static int showHistory(CommandSourceStack src, String playerName, int pa
             return 0;
         }
 
+        // Keyset paging: "next page" continues from the cursor of the page shown before,
+        // other page numbers seek the cursor on the index first.
+        String cursorKey = src.getTextName() + "|" + uuid;
+        HistoryPageEnd prev = HISTORY_PAGE_ENDS.get(cursorKey);
+        DatabaseManager.LogCursor after;
+        if (safePage == 1) {
+            after = null;
+        } else if (prev != null && prev.page() == safePage - 1) {
+            after = prev.cursor();
+        } else {
+            after = DatabaseManager.balanceHistoryCursorAt(uuid, offset);
+            if (after == null) {
+                src.sendSystemMessage(Component.translatable("msg.avilixeconomy.eco.history_empty", displayName));
+                return Command.SINGLE_SUCCESS;
+            }
+        }
+
         // limit+1 to detect next page
-        java.util.List<DatabaseManager.BalanceHistoryRow> rows = DatabaseManager.getBalanceHistory(uuid, perPage + 1, offset);
+        java.util.List<DatabaseManager.BalanceHistoryRow> rows = DatabaseManager.getBalanceHistory(uuid, perPage + 1, after);
         boolean hasMore = rows.size() > perPage;
         if (hasMore) rows = rows.subList(0, perPage);
+        if (!rows.isEmpty()) {
+            var last = rows.get(rows.size() - 1);
+            HISTORY_PAGE_ENDS.put(cursorKey, new HistoryPageEnd(safePage,
+                    new DatabaseManager.LogCursor(last.createdAt().getTime(), last.id())));
+        }
 
         if (rows.isEmpty()) {
             src.sendSystemMessage(Component.translatable("msg.avilixeconomy.eco.history_empty", displayName));
@@ -1,8 +1,15 @@
 package com.roften.avilixeconomy;
 
+import com.roften.avilixeconomy.database.BalanceLedger;
 import com.roften.avilixeconomy.database.DatabaseManager;
+import com.roften.avilixeconomy.database.DegradedMode;
+import com.roften.avilixeconomy.database.EconomyExecutor;
+import com.roften.avilixeconomy.database.Leaderboard;
+import com.roften.avilixeconomy.database.PlayerNameDirectory;
+import com.roften.avilixeconomy.database.TransactionJournal;
+import com.roften.avilixeconomy.database.TransferEngine;
 import com.roften.avilixeconomy.network.NetworkUtils;
-import com.roften.avilixeconomy.util.MoneyUtils;
+import com.roften.avilixeconomy.util.Money;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.neoforged.neoforge.server.ServerLifecycleHooks;
@@ -10,9 +17,12 @@ import net.neoforged.neoforge.server.ServerLifecycleHooks;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Основной класс для работы с балансами игроков.
@@ -21,28 +31,47 @@ import java.util.concurrent.ConcurrentHashMap;
  *  - кэширование
  *  - атомарные операции
  *  - асинхронные версии
+ *
+ * Внутри все суммы в копейках ({@code long}, см. {@link Money}); double-методы
+ * остаются для команд и GUI и округляют вход один раз.
+ *
+ * Пока БД недоступна ({@link DegradedMode}), изменения проверяются по кэшу
+ * и пишутся в локальный журнал, а в БД попадают после восстановления связи.
+ *
+ * С {@code ledger.authoritative} балансы живут в {@link BalanceLedger}: операции
+ * меняют память, а в БД изменения уходят пачками.
  */
 public final class EconomyData {
 
     private EconomyData() {}
 
-    // Кэш балансов, чтобы HUD не долбил SQL 20 раз в секунду
-    private static final ConcurrentHashMap<UUID, Double> cache = new ConcurrentHashMap<>();
+    // Кэш балансов, чтобы HUD не долбил SQL 20 раз в секунду.
+    // Ограничен по размеру и времени простоя ([balance_cache], см. configureCache).
+    private static final BalanceCache cache = new BalanceCache(10_000, 30 * 60_000L);
+
+    // Degraded mode: check against the cache + journal append + cache update happen under this lock.
+    private static final Object JOURNAL_LOCK = new Object();
 
     /** Возвращает значение из кэша (для HUD). */
     public static double getCachedBalance(UUID uuid) {
-        return cache.getOrDefault(uuid, 0.0);
+        return Money.toDouble(getCachedCents(uuid));
+    }
+
+    /** Cached balance in cents (0 if unknown). */
+    public static long getCachedCents(UUID uuid) {
+        long c = cache.get(uuid);
+        return c == BalanceCache.MISSING ? 0L : c;
     }
 
     /** True if the UUID already has a cached balance (to avoid hitting SQL every tick). */
     public static boolean isCached(UUID uuid) {
-        return cache.containsKey(uuid);
+        return cache.contains(uuid);
     }
 
-    /** Warm up cache once (calls DB only if missing). */
+    /** Warm up cache once (calls DB off the server thread, only if missing). */
     public static void warmupBalance(UUID uuid) {
-        if (!cache.containsKey(uuid)) {
-            getBalance(uuid);
+        if (uuid != null && !cache.contains(uuid)) {
+            EconomyExecutor.run(() -> getBalance(uuid));
         }
     }
 
@@ -50,19 +79,27 @@ public final class EconomyData {
     public static void sendBalanceUpdateToPlayer(ServerPlayer player) {
         if (player == null) return;
         try {
-            double bal = cache.getOrDefault(player.getUUID(), 0.0);
-            NetworkUtils.sendBalanceToPlayer(player, bal);
+            NetworkUtils.sendBalanceToPlayer(player, cachedOrZero(player.getUUID()));
         } catch (Exception ignored) {}
     }
 
     /** Прямое чтение из БД (без создания записи). */
     public static double getBalance(UUID uuid) {
+        if (journalMode()) return getCachedBalance(uuid);
         try {
+            if (BalanceLedger.isEnabled()) {
+                long cents = BalanceLedger.balance(uuid);
+                putCache(uuid, cents);
+                return Money.toDouble(cents);
+            }
             double bal = DatabaseManager.getBalanceDirect(uuid);
-            cache.put(uuid, bal);
+            putCache(uuid, Money.ofDouble(bal));
             return bal;
         } catch (Exception e) {
-            return 0.0;
+            // Unreadable is not zero: serve the last known balance and leave cache/leaderboard alone.
+            if (!BalanceLedger.isEnabled()) DegradedMode.onFailure(e);
+            AvilixEconomy.LOGGER.warn("Failed to read balance of {}, using the cached value", uuid, e);
+            return getCachedBalance(uuid);
         }
     }
 
@@ -74,7 +111,7 @@ public final class EconomyData {
                 return false;
             } else {
                 DatabaseManager.createPlayerRecord(uuid, name, startBalance);
-                cache.put(uuid, startBalance);
+                putCache(uuid, Money.ofDouble(startBalance));
                 return true;
             }
         } catch (Exception e) {
@@ -92,52 +129,53 @@ public final class EconomyData {
     public static boolean setBalance(UUID uuid, double amount, String nameIfNew,
                                      String reason, UUID actorUuid, String actorName, String metaJson) {
         if (uuid == null) return false;
-        double target = MoneyUtils.round2(amount);
+        long target = Money.ofDouble(amount);
+        if (journalMode()) return setJournaled(uuid, target, nameIfNew, reason, actorUuid, actorName, metaJson);
+        if (BalanceLedger.isEnabled()) return setInLedger(uuid, target, nameIfNew, reason, actorUuid, actorName, metaJson);
         try (Connection c = DatabaseManager.getConnection()) {
             c.setAutoCommit(false);
 
-            double before = 0.0;
+            long before = 0L;
             String knownName = null;
             boolean exists;
 
             try (PreparedStatement sel = c.prepareStatement(
                     "SELECT name, balance FROM economy WHERE uuid = ? FOR UPDATE"
             )) {
-                sel.setString(1, uuid.toString());
+                sel.setBytes(1, DatabaseManager.uuidBytes(uuid));
                 try (ResultSet rs = sel.executeQuery()) {
                     exists = rs.next();
                     if (exists) {
                         knownName = rs.getString("name");
-                        before = MoneyUtils.fromDb(rs.getBigDecimal("balance"));
+                        before = Money.fromDb(rs.getBigDecimal("balance"));
                     }
                 }
             }
 
             String name = (nameIfNew != null && !nameIfNew.isBlank()) ? nameIfNew : (knownName != null ? knownName : "unknown");
-            double after = Math.max(0.0, target);
+            long after = Math.max(0L, target);
 
-            try (PreparedStatement ps = c.prepareStatement(
-                    "INSERT INTO economy (uuid, name, balance) VALUES (?, ?, ?) " +
-                            "ON DUPLICATE KEY UPDATE balance = VALUES(balance), name = VALUES(name)"
-            )) {
-                ps.setString(1, uuid.toString());
+            try (PreparedStatement ps = c.prepareStatement(DatabaseManager.backend().upsertAccountSql())) {
+                ps.setBytes(1, DatabaseManager.uuidBytes(uuid));
                 ps.setString(2, name);
-                ps.setBigDecimal(3, MoneyUtils.toDb(after));
+                ps.setBigDecimal(3, Money.toDb(after));
                 ps.executeUpdate();
             }
 
             c.commit();
 
-            cache.put(uuid, after);
+            PlayerNameDirectory.put(uuid, name);
+            putCache(uuid, after);
             sendBalanceUpdateToPlayer(uuid);
 
-            double delta = MoneyUtils.round2(after - before);
-            if (delta != 0.0) {
+            long delta = after - before;
+            if (delta != 0L) {
                 DatabaseManager.insertBalanceHistoryAsync(uuid, name, delta, before, after, reason, metaJson, actorUuid, actorName);
             }
             return true;
 
         } catch (Exception e) {
+            if (journalFallback(e)) return setJournaled(uuid, target, nameIfNew, reason, actorUuid, actorName, metaJson);
             e.printStackTrace();
             return false;
         }
@@ -151,57 +189,69 @@ public final class EconomyData {
     /** Добавление суммы с логированием в историю. */
     public static boolean addBalance(UUID uuid, double amount,
                                      String reason, UUID actorUuid, String actorName, String metaJson) {
+        return addCents(uuid, Money.ofDouble(amount), reason, actorUuid, actorName, metaJson);
+    }
+
+    /** {@link #addBalance(UUID, double, String, UUID, String, String)} in cents. */
+    public static boolean addCents(UUID uuid, long amount,
+                                   String reason, UUID actorUuid, String actorName, String metaJson) {
+        if (journalMode()) return addJournaled(uuid, amount, reason, actorUuid, actorName, metaJson);
+        if (BalanceLedger.isEnabled()) return addInLedger(uuid, amount, reason, actorUuid, actorName, metaJson);
         try (Connection c = DatabaseManager.getConnection()) {
             c.setAutoCommit(false);
 
-            double current = 0.0;
+            long current = 0L;
+            String playerName = null;
             boolean exists;
 
             try (PreparedStatement sel = c.prepareStatement(
-                    "SELECT balance FROM economy WHERE uuid = ? FOR UPDATE"
+                    "SELECT name, balance FROM economy WHERE uuid = ? FOR UPDATE"
             )) {
-                sel.setString(1, uuid.toString());
+                sel.setBytes(1, DatabaseManager.uuidBytes(uuid));
                 try (ResultSet rs = sel.executeQuery()) {
                     exists = rs.next();
-                    if (exists) current = MoneyUtils.fromDb(rs.getBigDecimal("balance"));
+                    if (exists) {
+                        playerName = rs.getString("name");
+                        current = Money.fromDb(rs.getBigDecimal("balance"));
+                    }
                 }
             }
 
-            double next = Math.max(0.0, MoneyUtils.round2(current + amount));
+            long next = Math.max(0L, Money.add(current, amount));
 
             if (exists) {
                 try (PreparedStatement upd = c.prepareStatement(
                         "UPDATE economy SET balance = ? WHERE uuid = ?"
                 )) {
-                    upd.setBigDecimal(1, MoneyUtils.toDb(next));
-                    upd.setString(2, uuid.toString());
+                    upd.setBigDecimal(1, Money.toDb(next));
+                    upd.setBytes(2, DatabaseManager.uuidBytes(uuid));
                     upd.executeUpdate();
                 }
             } else {
                 try (PreparedStatement ins = c.prepareStatement(
                         "INSERT INTO economy (uuid, name, balance) VALUES (?, ?, ?)"
                 )) {
-                    ins.setString(1, uuid.toString());
+                    ins.setBytes(1, DatabaseManager.uuidBytes(uuid));
                     ins.setString(2, "unknown");
-                    ins.setBigDecimal(3, MoneyUtils.toDb(next));
+                    ins.setBigDecimal(3, Money.toDb(next));
                     ins.executeUpdate();
                 }
             }
 
             c.commit();
-            cache.put(uuid, next);
+            putCache(uuid, next);
             sendBalanceUpdateToPlayer(uuid);
 
             // history
-            String playerName = DatabaseManager.getPlayerNameDirect(uuid);
             if (playerName == null) playerName = "unknown";
-            double delta = MoneyUtils.round2(next - current);
-            if (delta != 0.0) {
+            long delta = next - current;
+            if (delta != 0L) {
                 DatabaseManager.insertBalanceHistoryAsync(uuid, playerName, delta, current, next, reason, metaJson, actorUuid, actorName);
             }
             return true;
 
         } catch (Exception e) {
+            if (journalFallback(e)) return addJournaled(uuid, amount, reason, actorUuid, actorName, metaJson);
             e.printStackTrace();
             return false;
         }
@@ -215,89 +265,40 @@ public final class EconomyData {
     /** Перевод между игроками. */
     public static boolean pay(UUID from, UUID to, double amount) {
         if (amount <= 0) return false;
+        return payCents(from, to, Money.ofDouble(amount));
+    }
 
-        try (Connection c = DatabaseManager.getConnection()) {
-            c.setAutoCommit(false);
-
-            double balFrom = 0.0;
-            boolean existsFrom;
-
-            try (PreparedStatement sel = c.prepareStatement(
-                    "SELECT balance FROM economy WHERE uuid = ? FOR UPDATE"
-            )) {
-                sel.setString(1, from.toString());
-                try (ResultSet rs = sel.executeQuery()) {
-                    existsFrom = rs.next();
-                    if (existsFrom) balFrom = MoneyUtils.fromDb(rs.getBigDecimal("balance"));
-                }
-            }
-
-            if (balFrom < amount) {
-                c.rollback();
-                return false;
-            }
-
-            double balTo = 0.0;
-            boolean existsTo;
-
-            try (PreparedStatement sel2 = c.prepareStatement(
-                    "SELECT balance FROM economy WHERE uuid = ? FOR UPDATE"
-            )) {
-                sel2.setString(1, to.toString());
-                try (ResultSet rs2 = sel2.executeQuery()) {
-                    existsTo = rs2.next();
-                    if (existsTo) balTo = MoneyUtils.fromDb(rs2.getBigDecimal("balance"));
-                }
-            }
-
-            // списываем
-            try (PreparedStatement upd = c.prepareStatement(
-                    "UPDATE economy SET balance = balance - ? WHERE uuid = ?"
-            )) {
-                upd.setBigDecimal(1, MoneyUtils.toDb(MoneyUtils.round2(amount)));
-                upd.setString(2, from.toString());
-                upd.executeUpdate();
-            }
+    /** Перевод между игроками, сумма в копейках. */
+    public static boolean payCents(UUID from, UUID to, long amt) {
+        if (amt <= 0) return false;
+        if (journalMode()) return payJournaled(from, to, amt);
 
-            // начисляем
-            if (existsTo) {
-                try (PreparedStatement upd = c.prepareStatement(
-                        "UPDATE economy SET balance = balance + ? WHERE uuid = ?"
-                )) {
-                    upd.setBigDecimal(1, MoneyUtils.toDb(MoneyUtils.round2(amount)));
-                    upd.setString(2, to.toString());
-                    upd.executeUpdate();
-                }
-            } else {
-                try (PreparedStatement ins = c.prepareStatement(
-                        "INSERT INTO economy (uuid, name, balance) VALUES (?, ?, ?)"
-                )) {
-                    ins.setString(1, to.toString());
-                    ins.setString(2, "unknown");
-                    ins.setBigDecimal(3, MoneyUtils.toDb(MoneyUtils.round2(amount)));
-                    ins.executeUpdate();
-                }
-            }
+        try {
+            Map<UUID, TransferEngine.Account> before = transfer(from, amt,
+                    List.of(new TransferEngine.Credit(to, amt)));
+            if (before == null) return false;
 
-            c.commit();
+            TransferEngine.Account accFrom = before.get(from);
+            TransferEngine.Account accTo = before.get(to);
+            long balFrom = accFrom.balance();
+            long balTo = accTo.balance();
 
-            cache.put(from, MoneyUtils.round2(balFrom - amount));
-            cache.put(to, MoneyUtils.round2(balTo + amount));
+            putCache(from, balFrom - amt);
+            putCache(to, balTo + amt);
             sendBalanceUpdateToPlayer(from);
             sendBalanceUpdateToPlayer(to);
 
             // history
-            String fromName = DatabaseManager.getPlayerNameDirect(from);
-            if (fromName == null) fromName = "unknown";
-            String toName = DatabaseManager.getPlayerNameDirect(to);
-            if (toName == null) toName = "unknown";
-            DatabaseManager.insertBalanceHistoryAsync(from, fromName, -MoneyUtils.round2(amount), balFrom, MoneyUtils.round2(balFrom - amount),
+            String fromName = accFrom.nameOrUnknown();
+            String toName = accTo.nameOrUnknown();
+            DatabaseManager.insertBalanceHistoryAsync(from, fromName, -amt, balFrom, balFrom - amt,
                     "PAY_OUT", null, from, fromName);
-            DatabaseManager.insertBalanceHistoryAsync(to, toName, MoneyUtils.round2(amount), balTo, MoneyUtils.round2(balTo + amount),
+            DatabaseManager.insertBalanceHistoryAsync(to, toName, amt, balTo, balTo + amt,
                     "PAY_IN", null, from, fromName);
             return true;
 
         } catch (Exception e) {
+            if (journalFallback(e)) return payJournaled(from, to, amt);
             e.printStackTrace();
             return false;
         }
@@ -311,177 +312,286 @@ public final class EconomyData {
      */
     public static boolean paySplit(UUID from, UUID toA, double amountToA, UUID toB, double amountToB) {
         if (amountToA < 0 || amountToB < 0) return false;
-        double total = MoneyUtils.round2(amountToA + amountToB);
+        return paySplitCents(from, toA, Money.ofDouble(amountToA), toB, Money.ofDouble(amountToB));
+    }
+
+    /** {@link #paySplit} in cents: the debited total is exactly the sum of both credits. */
+    public static boolean paySplitCents(UUID from, UUID toA, long amountToA, UUID toB, long amountToB) {
+        if (amountToA < 0 || amountToB < 0) return false;
+        long total = Money.add(amountToA, amountToB);
         if (total <= 0) return false;
 
         // Merge recipients if same UUID
         if (toA.equals(toB)) {
-            return pay(from, toA, total);
+            return payCents(from, toA, total);
         }
+        if (journalMode()) return paySplitJournaled(from, toA, amountToA, toB, amountToB);
 
-        try (Connection c = DatabaseManager.getConnection()) {
-            c.setAutoCommit(false);
-
-            double balFrom = 0.0;
-            boolean existsFrom;
-
-            try (PreparedStatement sel = c.prepareStatement(
-                    "SELECT balance FROM economy WHERE uuid = ? FOR UPDATE"
-            )) {
-                sel.setString(1, from.toString());
-                try (ResultSet rs = sel.executeQuery()) {
-                    existsFrom = rs.next();
-                    if (existsFrom) balFrom = MoneyUtils.fromDb(rs.getBigDecimal("balance"));
-                }
-            }
-
-            if (!existsFrom || balFrom < total) {
-                c.rollback();
-                return false;
-            }
-
-            // Lock recipients (if exist)
-            boolean existsA;
-            double balA = 0.0;
-            try (PreparedStatement sel = c.prepareStatement(
-                    "SELECT balance FROM economy WHERE uuid = ? FOR UPDATE"
-            )) {
-                sel.setString(1, toA.toString());
-                try (ResultSet rs = sel.executeQuery()) {
-                    existsA = rs.next();
-                    if (existsA) balA = MoneyUtils.fromDb(rs.getBigDecimal("balance"));
-                }
-            }
-
-            boolean existsB;
-            double balB = 0.0;
-            try (PreparedStatement sel = c.prepareStatement(
-                    "SELECT balance FROM economy WHERE uuid = ? FOR UPDATE"
-            )) {
-                sel.setString(1, toB.toString());
-                try (ResultSet rs = sel.executeQuery()) {
-                    existsB = rs.next();
-                    if (existsB) balB = MoneyUtils.fromDb(rs.getBigDecimal("balance"));
-                }
-            }
-
-            // debit from
-            try (PreparedStatement upd = c.prepareStatement(
-                    "UPDATE economy SET balance = balance - ? WHERE uuid = ?"
-            )) {
-                upd.setBigDecimal(1, MoneyUtils.toDb(total));
-                upd.setString(2, from.toString());
-                upd.executeUpdate();
-            }
-
-            // credit A
-            if (amountToA > 0) {
-                if (existsA) {
-                    try (PreparedStatement upd = c.prepareStatement(
-                            "UPDATE economy SET balance = balance + ? WHERE uuid = ?"
-                    )) {
-                        upd.setBigDecimal(1, MoneyUtils.toDb(MoneyUtils.round2(amountToA)));
-                        upd.setString(2, toA.toString());
-                        upd.executeUpdate();
-                    }
-                } else {
-                    try (PreparedStatement ins = c.prepareStatement(
-                            "INSERT INTO economy (uuid, name, balance) VALUES (?, ?, ?)"
-                    )) {
-                        ins.setString(1, toA.toString());
-                        ins.setString(2, "unknown");
-                        ins.setBigDecimal(3, MoneyUtils.toDb(MoneyUtils.round2(amountToA)));
-                        ins.executeUpdate();
-                    }
-                }
-            }
-
-            // credit B
-            if (amountToB > 0) {
-                if (existsB) {
-                    try (PreparedStatement upd = c.prepareStatement(
-                            "UPDATE economy SET balance = balance + ? WHERE uuid = ?"
-                    )) {
-                        upd.setBigDecimal(1, MoneyUtils.toDb(MoneyUtils.round2(amountToB)));
-                        upd.setString(2, toB.toString());
-                        upd.executeUpdate();
-                    }
-                } else {
-                    try (PreparedStatement ins = c.prepareStatement(
-                            "INSERT INTO economy (uuid, name, balance) VALUES (?, ?, ?)"
-                    )) {
-                        ins.setString(1, toB.toString());
-                        ins.setString(2, "unknown");
-                        ins.setBigDecimal(3, MoneyUtils.toDb(MoneyUtils.round2(amountToB)));
-                        ins.executeUpdate();
-                    }
-                }
-            }
+        try {
+            Map<UUID, TransferEngine.Account> before = transfer(from, total, List.of(
+                    new TransferEngine.Credit(toA, amountToA),
+                    new TransferEngine.Credit(toB, amountToB)
+            ));
+            if (before == null) return false;
 
-            c.commit();
+            TransferEngine.Account accFrom = before.get(from);
+            long balFrom = accFrom.balance();
+            long balA = amountToA > 0 ? before.get(toA).balance() : getCachedCents(toA);
+            long balB = amountToB > 0 ? before.get(toB).balance() : getCachedCents(toB);
 
             // update cache (best-effort) + notify online players
-            cache.put(from, MoneyUtils.round2(balFrom - total));
-            cache.put(toA, MoneyUtils.round2((existsA ? balA : 0.0) + amountToA));
-            cache.put(toB, MoneyUtils.round2((existsB ? balB : 0.0) + amountToB));
+            putCache(from, balFrom - total);
+            if (amountToA > 0) putCache(toA, balA + amountToA);
+            if (amountToB > 0) putCache(toB, balB + amountToB);
 
             sendBalanceUpdateToPlayer(from);
             sendBalanceUpdateToPlayer(toA);
             sendBalanceUpdateToPlayer(toB);
 
             // history
-            String fromName = DatabaseManager.getPlayerNameDirect(from);
-            if (fromName == null) fromName = "unknown";
-            String toAName = DatabaseManager.getPlayerNameDirect(toA);
-            if (toAName == null) toAName = "unknown";
-            String toBName = DatabaseManager.getPlayerNameDirect(toB);
-            if (toBName == null) toBName = "unknown";
-
-            DatabaseManager.insertBalanceHistoryAsync(from, fromName, -total, balFrom, MoneyUtils.round2(balFrom - total),
+            String fromName = accFrom.nameOrUnknown();
+            DatabaseManager.insertBalanceHistoryAsync(from, fromName, -total, balFrom, balFrom - total,
                     "PAY_SPLIT_OUT", null, from, fromName);
             if (amountToA > 0) {
-                DatabaseManager.insertBalanceHistoryAsync(toA, toAName, MoneyUtils.round2(amountToA), balA, MoneyUtils.round2((existsA ? balA : 0.0) + amountToA),
+                DatabaseManager.insertBalanceHistoryAsync(toA, before.get(toA).nameOrUnknown(), amountToA, balA, balA + amountToA,
                         "PAY_SPLIT_IN", null, from, fromName);
             }
             if (amountToB > 0) {
-                DatabaseManager.insertBalanceHistoryAsync(toB, toBName, MoneyUtils.round2(amountToB), balB, MoneyUtils.round2((existsB ? balB : 0.0) + amountToB),
+                DatabaseManager.insertBalanceHistoryAsync(toB, before.get(toB).nameOrUnknown(), amountToB, balB, balB + amountToB,
                         "PAY_SPLIT_IN", null, from, fromName);
             }
 
             return true;
         } catch (Exception e) {
+            if (journalFallback(e)) return paySplitJournaled(from, toA, amountToA, toB, amountToB);
             e.printStackTrace();
             return false;
         }
     }
 
+    // ========= Authoritative ledger (ledger.authoritative) =========
+
+    private static Map<UUID, TransferEngine.Account> transfer(UUID from, long total, List<TransferEngine.Credit> credits)
+            throws java.sql.SQLException {
+        return BalanceLedger.isEnabled()
+                ? BalanceLedger.transfer(from, total, credits)
+                : TransferEngine.transfer(from, total, credits);
+    }
+
+    private static boolean setInLedger(UUID uuid, long target, String nameIfNew,
+                                       String reason, UUID actorUuid, String actorName, String metaJson) {
+        try {
+            TransferEngine.Account before = BalanceLedger.set(uuid, target, nameIfNew);
+            long after = Math.max(0L, target);
+            String name = (nameIfNew != null && !nameIfNew.isBlank()) ? nameIfNew : before.nameOrUnknown();
+
+            PlayerNameDirectory.put(uuid, name);
+            putCache(uuid, after);
+            sendBalanceUpdateToPlayer(uuid);
+
+            long delta = after - before.balance();
+            if (delta != 0L) {
+                DatabaseManager.insertBalanceHistoryAsync(uuid, name, delta, before.balance(), after, reason, metaJson, actorUuid, actorName);
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean addInLedger(UUID uuid, long amount,
+                                       String reason, UUID actorUuid, String actorName, String metaJson) {
+        try {
+            TransferEngine.Account before = BalanceLedger.add(uuid, amount);
+            long current = before.balance();
+            long next = Math.max(0L, Money.add(current, amount));
+
+            putCache(uuid, next);
+            sendBalanceUpdateToPlayer(uuid);
+
+            long delta = next - current;
+            if (delta != 0L) {
+                DatabaseManager.insertBalanceHistoryAsync(uuid, before.nameOrUnknown(), delta, current, next, reason, metaJson, actorUuid, actorName);
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // ========= Degraded mode (DB unreachable): cache + local journal =========
+
+    /**
+     * Journal instead of SQL. Not with the ledger: it already works without the database
+     * and a replayed journal would write behind its back.
+     */
+    private static boolean journalMode() {
+        return !BalanceLedger.isEnabled() && DegradedMode.isActive();
+    }
+
+    private static boolean journalFallback(Exception e) {
+        return !BalanceLedger.isEnabled() && DegradedMode.onFailure(e);
+    }
+
+    private static boolean setJournaled(UUID uuid, long target, String nameIfNew,
+                                        String reason, UUID actorUuid, String actorName, String metaJson) {
+        long after = Math.max(0L, target);
+        String name = (nameIfNew != null && !nameIfNew.isBlank()) ? nameIfNew : PlayerNameDirectory.nameOf(uuid);
+        synchronized (JOURNAL_LOCK) {
+            if (!journal(actorUuid, actorName, metaJson, new TransactionJournal.Leg(uuid, name, true, after, reason))) return false;
+            putCache(uuid, after);
+        }
+        sendBalanceUpdateToPlayer(uuid);
+        return true;
+    }
+
+    private static boolean addJournaled(UUID uuid, long amount,
+                                        String reason, UUID actorUuid, String actorName, String metaJson) {
+        synchronized (JOURNAL_LOCK) {
+            long current = cache.peek(uuid);
+            boolean known = current != BalanceCache.MISSING;
+            // Unknown balance: a credit can still be replayed as a delta, a debit cannot be checked.
+            if (!known && amount < 0) return false;
+            long delta = !known ? amount : Math.max(0L, Money.add(current, amount)) - current;
+            if (delta == 0L) return true;
+            if (!journal(actorUuid, actorName, metaJson,
+                    new TransactionJournal.Leg(uuid, PlayerNameDirectory.nameOf(uuid), false, delta, reason))) return false;
+            if (known) putCache(uuid, current + delta);
+        }
+        sendBalanceUpdateToPlayer(uuid);
+        return true;
+    }
+
+    private static boolean payJournaled(UUID from, UUID to, long amt) {
+        return transferJournaled(from, amt, "PAY_OUT", List.of(
+                new TransactionJournal.Leg(to, PlayerNameDirectory.nameOf(to), false, amt, "PAY_IN")));
+    }
+
+    private static boolean paySplitJournaled(UUID from, UUID toA, long amountToA, UUID toB, long amountToB) {
+        List<TransactionJournal.Leg> credits = new ArrayList<>(2);
+        if (amountToA > 0) credits.add(new TransactionJournal.Leg(toA, PlayerNameDirectory.nameOf(toA), false, amountToA, "PAY_SPLIT_IN"));
+        if (amountToB > 0) credits.add(new TransactionJournal.Leg(toB, PlayerNameDirectory.nameOf(toB), false, amountToB, "PAY_SPLIT_IN"));
+        return transferJournaled(from, amountToA + amountToB, "PAY_SPLIT_OUT", credits);
+    }
+
+    /** Debit checked against the cached balance, credits to uncached accounts only reach the DB on replay. */
+    private static boolean transferJournaled(UUID from, long total, String outReason, List<TransactionJournal.Leg> credits) {
+        String fromName = PlayerNameDirectory.nameOf(from);
+        synchronized (JOURNAL_LOCK) {
+            long balFrom = cache.peek(from);
+            if (balFrom == BalanceCache.MISSING || balFrom < total) return false;
+
+            List<TransactionJournal.Leg> legs = new ArrayList<>(credits.size() + 1);
+            legs.add(new TransactionJournal.Leg(from, fromName, false, -total, outReason));
+            legs.addAll(credits);
+            if (!journal(from, fromName, null, legs.toArray(new TransactionJournal.Leg[0]))) return false;
+
+            HashMap<UUID, Long> after = new HashMap<>();
+            after.put(from, balFrom - total);
+            for (TransactionJournal.Leg leg : credits) {
+                Long cur = after.containsKey(leg.account()) ? after.get(leg.account()) : peekCache(leg.account());
+                if (cur != null) after.put(leg.account(), cur + leg.cents());
+            }
+            after.forEach(EconomyData::putCache);
+        }
+        sendBalanceUpdateToPlayer(from);
+        for (TransactionJournal.Leg leg : credits) sendBalanceUpdateToPlayer(leg.account());
+        return true;
+    }
+
+    private static boolean journal(UUID actorUuid, String actorName, String metaJson, TransactionJournal.Leg... legs) {
+        return DegradedMode.append(new TransactionJournal.Entry(UUID.randomUUID(), System.currentTimeMillis(),
+                metaJson, actorUuid, actorName, List.of(legs)));
+    }
+
+    /** Safe from any thread: off the server thread (shop settlement on the DB executor) the send is posted to the next tick. */
     public static void sendBalanceUpdateToPlayer(UUID uuid) {
         try {
             MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
             if (server == null) return;
+            if (!server.isSameThread()) {
+                EconomyExecutor.runOnServer(() -> sendBalanceUpdateToPlayer(uuid));
+                return;
+            }
 
             ServerPlayer p = server.getPlayerList().getPlayer(uuid);
             if (p != null) {
-                double bal = cache.getOrDefault(uuid, 0.0);
-                NetworkUtils.sendBalanceToPlayer(p, bal);
+                NetworkUtils.sendBalanceToPlayer(p, cachedOrZero(uuid));
             }
         } catch (Exception ignored) {}
     }
 
     public static void updateCache(UUID uuid, double balance) {
-        cache.put(uuid, MoneyUtils.round2(balance));
+        putCache(uuid, Money.ofDouble(balance));
+    }
+
+    /** Cached balance in cents or null (to detect writes racing with an async read). */
+    public static Long peekCache(UUID uuid) {
+        long c = cache.peek(uuid);
+        return c == BalanceCache.MISSING ? null : c;
+    }
+
+    /**
+     * Applies a balance read off the server thread, unless another write reached the cache
+     * after {@code seen} was taken (that write is newer than the read).
+     */
+    public static void refreshCache(UUID uuid, Long seen, long bal) {
+        boolean applied = seen == null ? cache.putIfAbsent(uuid, bal) : cache.replace(uuid, seen, bal);
+        if (applied) Leaderboard.update(uuid, bal);
+    }
+
+    /** Every known balance goes through here, so the /eco top ranking follows all writes. */
+    private static void putCache(UUID uuid, long balance) {
+        cache.put(uuid, balance);
+        Leaderboard.update(uuid, balance);
+    }
+
+    private static long cachedOrZero(UUID uuid) {
+        long c = cache.peek(uuid);
+        return c == BalanceCache.MISSING ? 0L : c;
+    }
+
+    // ========= Жизненный цикл кэша =========
+
+    /** Applies [balance_cache] limits (server start). */
+    public static void configureCache(int maxEntries, long idleMillis) {
+        cache.configure(maxEntries, idleMillis);
+    }
+
+    /** Online players stay cached regardless of the limits. */
+    public static void onPlayerLogin(UUID uuid) {
+        cache.markOnline(uuid);
+    }
+
+    /**
+     * Logout drops the cached balance; it is re-read on the next access. Not while degraded:
+     * then the cache is the only copy the journal checks debits against.
+     */
+    public static void onPlayerLogout(UUID uuid) {
+        cache.markOffline(uuid, !DegradedMode.isActive());
+    }
+
+    /** Idle/size eviction, called from the server tick. */
+    public static void tickCache(int tickCount) {
+        if (tickCount % 200 == 0) cache.sweep();
+    }
+
+    public static String cacheStatsLine() {
+        return cache.statsLine();
     }
     // ========= Асинхронные версии =========
 
     public static CompletableFuture<Double> getBalanceAsync(UUID uuid) {
-        return CompletableFuture.supplyAsync(() -> getBalance(uuid));
+        return EconomyExecutor.supply(() -> getBalance(uuid));
     }
 
     public static CompletableFuture<Boolean> addBalanceAsync(UUID uuid, double amount) {
-        return CompletableFuture.supplyAsync(() -> addBalance(uuid, amount));
+        return EconomyExecutor.supply(() -> addBalance(uuid, amount));
     }
 
     public static CompletableFuture<Boolean> payAsync(UUID from, UUID to, double amount) {
-        return CompletableFuture.supplyAsync(() -> pay(from, to, amount));
+        return EconomyExecutor.supply(() -> pay(from, to, amount));
     }
 }
@@ -1,7 +1,16 @@
 package com.roften.avilixeconomy;
 
+import com.roften.avilixeconomy.database.BalanceLedger;
 import com.roften.avilixeconomy.database.DatabaseManager;
+import com.roften.avilixeconomy.database.DegradedMode;
+import com.roften.avilixeconomy.database.EconomyExecutor;
+import com.roften.avilixeconomy.database.PlayerNameDirectory;
+import com.roften.avilixeconomy.shop.ShopCheckout;
+import com.roften.avilixeconomy.shop.ShopClientSync;
+import com.roften.avilixeconomy.shop.market.MarketStats;
+import com.roften.avilixeconomy.shop.market.ShopRegistry;
 import com.roften.avilixeconomy.config.AvilixEconomyCommonConfig;
+import com.roften.avilixeconomy.util.Money;
 import com.roften.avilixeconomy.util.MoneyUtils;
 import com.roften.avilixeconomy.registry.ModItems;
 import net.neoforged.bus.api.SubscribeEvent;
@@ -9,6 +18,7 @@ import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.entity.player.PlayerEvent;
 import net.neoforged.neoforge.event.server.ServerAboutToStartEvent;
 import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
 import net.neoforged.fml.ModList;
 import net.minecraft.world.item.ItemStack;
 
@@ -28,10 +38,24 @@ public class EconomyEvents {
     public void onServerAboutToStart(ServerAboutToStartEvent event) {
         System.out.println("[Economy] Инициализация DatabaseManager...");
         DatabaseManager.init();
+        EconomyData.configureCache(AvilixEconomyCommonConfig.BALANCE_CACHE.maxEntries.get(),
+                AvilixEconomyCommonConfig.BALANCE_CACHE.idleSeconds.get() * 1000L);
+        var db = AvilixEconomyCommonConfig.DATABASE;
+        EconomyExecutor.start(
+                db.executorThreads.get() > 0 ? db.executorThreads.get() : db.poolMaxSize.get(),
+                db.executorQueueCapacity.get(),
+                db.executorVirtualThreads.get(),
+                db.executorRejectionPolicy.get());
+        // Schema steps that may run while the server is up (online index builds, backfills).
+        EconomyExecutor.run(com.roften.avilixeconomy.database.SchemaMigrator::runBackground);
 
         // Load shelf render overrides (admin tuning)
         com.roften.avilixeconomy.shop.render.RenderOverrideManager.reloadFromDb();
 
+        // World-wide shop offers (/shop find)
+        ShopRegistry.reloadFromDb();
+        MarketStats.reloadFromDb();
+
         // Ensure server commission account exists (after DB init)
         try {
             java.util.UUID serverUuid = java.util.UUID.fromString(AvilixEconomyCommonConfig.ECONOMY.serverAccountUuid.get());
@@ -45,7 +69,27 @@ public class EconomyEvents {
 
     @SubscribeEvent
     public void onServerStopping(ServerStoppingEvent event) {
+        // Settle in-flight shop checkouts (deliver/rollback items) before the pool goes away.
+        ShopCheckout.drain(AvilixEconomyCommonConfig.DATABASE.connectionTimeoutMs.get());
+        ShopRegistry.flushOnStop(AvilixEconomyCommonConfig.DATABASE.connectionTimeoutMs.get());
+        EconomyExecutor.shutdown(AvilixEconomyCommonConfig.DATABASE.connectionTimeoutMs.get());
+        // After the executor: sale log writes queued by the last checkouts still feed the stats.
+        MarketStats.flushOnStop(AvilixEconomyCommonConfig.DATABASE.connectionTimeoutMs.get());
         DatabaseManager.shutdown();
+        ShopClientSync.clear();
+    }
+
+    // Completions of async DB work (shop checkouts etc.) run on the server thread.
+    @SubscribeEvent
+    public void onServerTick(ServerTickEvent.Post event) {
+        EconomyExecutor.drainServerTasks();
+        com.roften.avilixeconomy.database.DegradedMode.tick(event.getServer().getTickCount());
+        EconomyData.tickCache(event.getServer().getTickCount());
+        // One block update per changed shop, after everything of this tick (incl. checkouts) ran.
+        ShopClientSync.flush();
+        ShopRegistry.tick(event.getServer().getTickCount());
+        com.roften.avilixeconomy.shop.market.MarketRequestLimiter.tick();
+        MarketStats.tick(event.getServer().getTickCount());
     }
 
     // =============================
@@ -56,41 +100,65 @@ public class EconomyEvents {
         var player = e.getEntity();
         UUID uuid = player.getUUID();
         String name = player.getName().getString();
-
-        try {
-
-            boolean exists = DatabaseManager.recordExists(uuid);
-
-            if (!exists) {
-                // создаём
-                DatabaseManager.createPlayerRecord(uuid, name, MoneyUtils.round2(AvilixEconomyCommonConfig.ECONOMY.startBalance.get()));
-                EconomyData.updateCache(uuid, MoneyUtils.round2(AvilixEconomyCommonConfig.ECONOMY.startBalance.get()));
-
-            } else {
-                // обновляем имя
-                DatabaseManager.updatePlayerName(uuid, name);
-
-                double bal = DatabaseManager.getBalanceDirect(uuid);
-                EconomyData.updateCache(uuid, bal);
+        PlayerNameDirectory.put(uuid, name);
+        EconomyData.onPlayerLogin(uuid);
+
+        if (player instanceof net.minecraft.server.level.ServerPlayer sp) {
+            // Give the player-facing shop guide once (optional, requires Patchouli to be useful)
+            tryGiveShopGuideOnce(sp);
+
+            // Also send render override snapshot (client cache)
+            try {
+                var entries = com.roften.avilixeconomy.shop.render.RenderOverrideManager.snapshotAll();
+                sp.connection.send(new com.roften.avilixeconomy.network.NetworkRegistration.ShopRenderOverridesSyncPayload(entries));
+            } catch (Throwable ignored) {
             }
+        }
 
-            // ОБЯЗАТЕЛЬНО отправить баланс на клиент
-            EconomyData.sendBalanceUpdateToPlayer(uuid);
-
-            if (player instanceof net.minecraft.server.level.ServerPlayer sp) {
-                // Give the player-facing shop guide once (optional, requires Patchouli to be useful)
-                tryGiveShopGuideOnce(sp);
-
-                // Also send render override snapshot (client cache)
-                try {
-                    var entries = com.roften.avilixeconomy.shop.render.RenderOverrideManager.snapshotAll();
-                    sp.connection.send(new com.roften.avilixeconomy.network.NetworkRegistration.ShopRenderOverridesSyncPayload(entries));
-                } catch (Throwable ignored) {
-                }
+        // Account lookup/creation off the server thread; cache + HUD update come back on it.
+        long startBalance = Money.ofDouble(AvilixEconomyCommonConfig.ECONOMY.startBalance.get());
+        Long seen = EconomyData.peekCache(uuid);
+        EconomyExecutor.supply(() -> {
+            try {
+                var account = DatabaseManager.loginAccount(uuid, name, startBalance);
+                if (!BalanceLedger.isEnabled()) return account;
+                // The ledger may already hold a newer balance (or credits received before the first login).
+                return new DatabaseManager.LoginAccount(BalanceLedger.online(uuid, name, account.balance()), account.created());
+            } catch (Exception ex) {
+                AvilixEconomy.LOGGER.warn("Account bootstrap failed for {} ({})", name, uuid, ex);
+                DegradedMode.onFailure(ex);
+                return ledgerFallback(uuid);
             }
+        }).handle((account, err) -> {
+            if (err != null) AvilixEconomy.LOGGER.warn("Account bootstrap for {} ({}) was not run", name, uuid, err);
+            EconomyExecutor.runOnServer(() -> {
+                if (account != null) EconomyData.refreshCache(uuid, seen, account.balance());
+                // ОБЯЗАТЕЛЬНО отправить баланс на клиент (без БД: последний известный баланс)
+                EconomyData.sendBalanceUpdateToPlayer(uuid);
+            });
+            return null;
+        });
+    }
+
+    // =============================
+    // Игрок вышел → сбрасываем кэш, аккаунт можно выгрузить из леджера
+    // =============================
+    @SubscribeEvent
+    public void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent e) {
+        UUID uuid = e.getEntity().getUUID();
+        EconomyData.onPlayerLogout(uuid);
+        com.roften.avilixeconomy.shop.market.MarketRequestLimiter.forget(uuid);
+        com.roften.avilixeconomy.shop.ShopSalesRequests.forget(uuid);
+        BalanceLedger.offline(uuid);
+    }
 
-        } catch (Exception ex) {
-            ex.printStackTrace();
+    /** Balance the ledger already holds when the login lookup failed, or null. */
+    private static DatabaseManager.LoginAccount ledgerFallback(UUID uuid) {
+        if (!BalanceLedger.isEnabled()) return null;
+        try {
+            return new DatabaseManager.LoginAccount(BalanceLedger.balance(uuid), false);
+        } catch (Exception e) {
+            return null;
         }
     }
 
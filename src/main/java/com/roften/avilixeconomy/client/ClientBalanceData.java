@@ -1,23 +1,29 @@
 package com.roften.avilixeconomy.client;
 
+import com.roften.avilixeconomy.util.Money;
+
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Простой клиентский кеш: HUD читает значение отсюда.
  * Обновляется обработчиком payload'а.
  *
- * Храним double в AtomicLong через raw long bits (без бокса).
+ * Баланс хранится в копейках (см. {@link Money}), без бокса.
  */
 public final class ClientBalanceData {
-    private static final AtomicLong BAL_BITS = new AtomicLong(Double.doubleToRawLongBits(0.0));
+    private static final AtomicLong CENTS = new AtomicLong();
 
     private ClientBalanceData() {}
 
     public static double getBalance() {
-        return Double.longBitsToDouble(BAL_BITS.get());
+        return Money.toDouble(CENTS.get());
+    }
+
+    public static long getCents() {
+        return CENTS.get();
     }
 
-    public static void setBalance(double value) {
-        BAL_BITS.set(Double.doubleToRawLongBits(value));
+    public static void setCents(long value) {
+        CENTS.set(value);
     }
 }
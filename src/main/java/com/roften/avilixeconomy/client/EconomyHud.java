@@ -1,6 +1,6 @@
 package com.roften.avilixeconomy.client;
 
-import com.roften.avilixeconomy.util.MoneyUtils;
+import com.roften.avilixeconomy.util.Money;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.Font;
 import net.minecraft.client.gui.GuiGraphics;
@@ -21,12 +21,12 @@ public class EconomyHud {
         // F1 (Hide GUI) должен скрывать и наш HUD.
         if (mc.options.hideGui) return;
 
-        double bal = ClientBalanceData.getBalance();
+        long bal = ClientBalanceData.getCents();
 
         GuiGraphics g = event.getGuiGraphics();
         Font font = mc.font;
 
-        String text = "Баланс: " + MoneyUtils.formatNoks(bal);
+        String text = "Баланс: " + Money.formatNoks(bal);
 
         int x = HudPositionConfig.getX();
         int y = HudPositionConfig.getY();
@@ -2,7 +2,7 @@ package com.roften.avilixeconomy.client.hud;
 
 import com.roften.avilixeconomy.client.ClientBalanceData;
 import com.roften.avilixeconomy.client.HudPositionConfig;
-import com.roften.avilixeconomy.util.MoneyUtils;
+import com.roften.avilixeconomy.util.Money;
 import com.mojang.blaze3d.platform.InputConstants;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.Font;
@@ -57,7 +57,7 @@ public class MoveBalanceHudScreen extends Screen {
         g.fill(0, 0, sw, sh, 0xAA000000);
         Font font = mc.font;
 
-        String text = "Баланс: " + MoneyUtils.formatNoks(ClientBalanceData.getBalance());
+        String text = "Баланс: " + Money.formatNoks(ClientBalanceData.getCents());
         int w = font.width(text);
         int h = font.lineHeight;
 
@@ -86,7 +86,7 @@ public class MoveBalanceHudScreen extends Screen {
 
         Minecraft mc = Minecraft.getInstance();
         Font font = mc.font;
-        String text = "Баланс: " + MoneyUtils.formatNoks(ClientBalanceData.getBalance());
+        String text = "Баланс: " + Money.formatNoks(ClientBalanceData.getCents());
         int w = font.width(text);
         int h = font.lineHeight;
 
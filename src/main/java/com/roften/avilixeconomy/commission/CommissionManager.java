@@ -1,7 +1,7 @@
 package com.roften.avilixeconomy.commission;
 
 import com.roften.avilixeconomy.config.AvilixEconomyCommonConfig;
-import com.roften.avilixeconomy.util.MoneyUtils;
+import com.roften.avilixeconomy.util.Money;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -82,13 +82,12 @@ public final class CommissionManager {
     }
 
     public static double computeFee(double total, int bps) {
-        if (total <= 0) return 0.0;
-        if (bps <= 0) return 0.0;
-        // total * bps / 10000 (2 decimals)
-        double fee = MoneyUtils.round2(total * (double) bps / 10000.0);
-        if (fee < 0) return 0.0;
-        if (fee > total) return total;
-        return fee;
+        return Money.toDouble(feeCents(Money.ofDouble(total), bps));
+    }
+
+    /** total * bps / 10000 in cents, HALF_UP, never more than the total. */
+    public static long feeCents(long total, int bps) {
+        return Money.bps(total, bps);
     }
 
     private static int clampBps(int bps) {
@@ -2,6 +2,9 @@ package com.roften.avilixeconomy.config;
 
 import com.electronwill.nightconfig.core.file.CommentedFileConfig;
 import com.electronwill.nightconfig.core.io.WritingMode;
+import com.roften.avilixeconomy.database.BatchWriter;
+import com.roften.avilixeconomy.database.EconomyExecutor;
+import com.roften.avilixeconomy.database.backend.StorageBackend;
 import net.neoforged.fml.loading.FMLPaths;
 import net.neoforged.neoforge.common.ModConfigSpec;
 
@@ -20,6 +23,11 @@ public final class AvilixEconomyCommonConfig {
     public static final Database DATABASE;
     public static final Economy ECONOMY;
     public static final Commission COMMISSION;
+    public static final WriteBehind HISTORY;
+    public static final WriteBehind SALES_LOG;
+    public static final Journal JOURNAL;
+    public static final Ledger LEDGER;
+    public static final BalanceCache BALANCE_CACHE;
 
     static {
         ModConfigSpec.Builder b = new ModConfigSpec.Builder();
@@ -36,6 +44,26 @@ public final class AvilixEconomyCommonConfig {
         COMMISSION = new Commission(b);
         b.pop();
 
+        b.push("history");
+        HISTORY = new WriteBehind(b, "Balance history", 8192, 200, 1000);
+        b.pop();
+
+        b.push("sales_log");
+        SALES_LOG = new WriteBehind(b, "Shop sales log", 4096, 100, 2000);
+        b.pop();
+
+        b.push("journal");
+        JOURNAL = new Journal(b);
+        b.pop();
+
+        b.push("ledger");
+        LEDGER = new Ledger(b);
+        b.pop();
+
+        b.push("balance_cache");
+        BALANCE_CACHE = new BalanceCache(b);
+        b.pop();
+
         SPEC = b.build();
     }
 
@@ -43,6 +71,8 @@ public final class AvilixEconomyCommonConfig {
 
     public static final class Database {
         public final ModConfigSpec.BooleanValue enabled;
+        public final ModConfigSpec.EnumValue<StorageBackend.Kind> backend;
+        public final ModConfigSpec.ConfigValue<String> h2File;
         public final ModConfigSpec.ConfigValue<String> jdbcUrl;
         public final ModConfigSpec.ConfigValue<String> username;
         public final ModConfigSpec.ConfigValue<String> password;
@@ -53,8 +83,17 @@ public final class AvilixEconomyCommonConfig {
         public final ModConfigSpec.IntValue idleTimeoutMs;
         public final ModConfigSpec.IntValue maxLifetimeMs;
 
+        public final ModConfigSpec.IntValue executorThreads;
+        public final ModConfigSpec.BooleanValue executorVirtualThreads;
+        public final ModConfigSpec.IntValue executorQueueCapacity;
+        public final ModConfigSpec.EnumValue<EconomyExecutor.RejectionPolicy> executorRejectionPolicy;
+
         private Database(ModConfigSpec.Builder b) {
             enabled = b.comment("Enable MySQL/MariaDB storage via HikariCP").define("enabled", true);
+            backend = b.comment("Storage engine: MYSQL (external MySQL/MariaDB, uses jdbc_url) or H2 (embedded file, uses h2_file)")
+                    .defineEnum("backend", StorageBackend.Kind.MYSQL);
+            h2File = b.comment("H2 database file, relative to the server directory (\".mv.db\" is appended)")
+                    .define("h2_file", "avilixeconomy/economy");
             jdbcUrl = b.comment("JDBC URL. Example: jdbc:mariadb://127.0.0.1:3306/avilixeconomy?useSSL=false")
                     .define("jdbc_url", "jdbc:mysql://localhost:3306/avilix?useSSL=false");
             username = b.define("username", "economy");
@@ -68,6 +107,16 @@ public final class AvilixEconomyCommonConfig {
                     .defineInRange("idle_timeout_ms", 600000, 0, 3600000);
             maxLifetimeMs = b.comment("HikariCP max lifetime (ms)")
                     .defineInRange("max_lifetime_ms", 1800000, 0, 7200000);
+
+            executorThreads = b.comment("DB executor workers; 0 = pool_max_size (more workers than connections only wait on the pool)")
+                    .defineInRange("executor_threads", 0, 0, 256);
+            executorVirtualThreads = b.comment("Run DB executor workers on virtual threads (Java 21). The worker count stays capped")
+                    .define("executor_virtual_threads", false);
+            executorQueueCapacity = b.comment("Max DB tasks waiting for a worker")
+                    .defineInRange("executor_queue_capacity", 4096, 16, 1_000_000);
+            executorRejectionPolicy = b.comment("When the queue is full: ABORT (task fails) or CALLER_RUNS (submitting thread runs the task;",
+                            "never the server thread, whose tasks are still rejected)")
+                    .defineEnum("executor_rejection_policy", EconomyExecutor.RejectionPolicy.ABORT);
         }
     }
 
@@ -108,6 +157,92 @@ public final class AvilixEconomyCommonConfig {
         }
     }
 
+    /** Settings of a batched write-behind queue (see BatchWriter). */
+    public static final class WriteBehind {
+        public final ModConfigSpec.IntValue queueCapacity;
+        public final ModConfigSpec.IntValue batchSize;
+        public final ModConfigSpec.IntValue flushIntervalMs;
+        public final ModConfigSpec.EnumValue<BatchWriter.OverflowPolicy> overflowPolicy;
+        public final ModConfigSpec.IntValue offerTimeoutMs;
+
+        private WriteBehind(ModConfigSpec.Builder b, String what, int defCapacity, int defBatchSize, int defFlushMs) {
+            queueCapacity = b.comment(what + " write-behind buffer size (rows)")
+                    .defineInRange("queue_capacity", defCapacity, 64, 1_000_000);
+            batchSize = b.comment("Max rows per INSERT batch")
+                    .defineInRange("batch_size", defBatchSize, 1, 5000);
+            flushIntervalMs = b.comment("Flush a partial batch after this delay (ms)")
+                    .defineInRange("flush_interval_ms", defFlushMs, 10, 60000);
+            overflowPolicy = b.comment("What to do when the buffer is full: BLOCK (wait up to offer_timeout_ms, then drop) or DROP")
+                    .defineEnum("overflow_policy", BatchWriter.OverflowPolicy.BLOCK);
+            offerTimeoutMs = b.comment("BLOCK policy: max wait for free space (ms)")
+                    .defineInRange("offer_timeout_ms", 50, 0, 10000);
+        }
+
+        private void save(CommentedFileConfig cfg, String section) {
+            cfg.set(section + ".queue_capacity", queueCapacity.get());
+            cfg.set(section + ".batch_size", batchSize.get());
+            cfg.set(section + ".flush_interval_ms", flushIntervalMs.get());
+            cfg.set(section + ".overflow_policy", overflowPolicy.get().name());
+            cfg.set(section + ".offer_timeout_ms", offerTimeoutMs.get());
+        }
+    }
+
+    /** Local transaction journal used while the database is unreachable (see DegradedMode). */
+    public static final class Journal {
+        public final ModConfigSpec.BooleanValue enabled;
+        public final ModConfigSpec.ConfigValue<String> file;
+        public final ModConfigSpec.IntValue fsyncIntervalMs;
+        public final ModConfigSpec.IntValue maxPending;
+        public final ModConfigSpec.IntValue maxDegradedSeconds;
+        public final ModConfigSpec.IntValue probeIntervalMs;
+
+        private Journal(ModConfigSpec.Builder b) {
+            enabled = b.comment("Keep balance changes working while the database is down (journaled locally, replayed later)")
+                    .define("enabled", true);
+            file = b.comment("Journal file, relative to the server directory")
+                    .define("file", "avilixeconomy/transactions.journal");
+            fsyncIntervalMs = b.comment("At most one fsync per this many ms (0 = fsync every record)")
+                    .defineInRange("fsync_interval_ms", 100, 0, 10000);
+            maxPending = b.comment("Max journaled changes not yet in the database; further changes are refused")
+                    .defineInRange("max_pending", 10000, 1, 10_000_000);
+            maxDegradedSeconds = b.comment("Max age of the oldest change not yet in the database (s); further changes are refused")
+                    .defineInRange("max_degraded_seconds", 1800, 1, 7 * 24 * 3600);
+            probeIntervalMs = b.comment("While degraded: how often to retry the database and replay the journal (ms)")
+                    .defineInRange("probe_interval_ms", 5000, 50, 600000);
+        }
+    }
+
+    public static final class Ledger {
+        public final ModConfigSpec.BooleanValue authoritative;
+        public final ModConfigSpec.IntValue flushIntervalMs;
+        public final ModConfigSpec.IntValue batchSize;
+        public final ModConfigSpec.IntValue idleEvictSeconds;
+
+        private Ledger(ModConfigSpec.Builder b) {
+            authoritative = b.comment("Keep balances in memory and write them to the database in batches.",
+                            "ONLY for a single server: other servers or tools writing the economy table would be overwritten.")
+                    .define("authoritative", false);
+            flushIntervalMs = b.comment("How often changed balances are written (ms); a crash loses at most this window")
+                    .defineInRange("flush_interval_ms", 1000, 10, 60000);
+            batchSize = b.comment("Max accounts written per transaction")
+                    .defineInRange("flush_batch_size", 500, 1, 100000);
+            idleEvictSeconds = b.comment("Unload saved accounts of offline players after this many idle seconds (0 = never)")
+                    .defineInRange("idle_evict_seconds", 600, 0, 7 * 24 * 3600);
+        }
+    }
+
+    public static final class BalanceCache {
+        public final ModConfigSpec.IntValue maxEntries;
+        public final ModConfigSpec.IntValue idleSeconds;
+
+        private BalanceCache(ModConfigSpec.Builder b) {
+            maxEntries = b.comment("Max cached balances; least recently used offline accounts are dropped first (online players are always kept)")
+                    .defineInRange("max_entries", 10000, 100, 10_000_000);
+            idleSeconds = b.comment("Drop cached balances of offline accounts not used for this many seconds (0 = only the size limit)")
+                    .defineInRange("idle_seconds", 1800, 0, 7 * 24 * 3600);
+        }
+    }
+
     /**
      * Persists the in-memory config values to config/avilixeconomy-common.toml.
      * Commands call this so changes survive restart.
@@ -126,6 +261,8 @@ public final class AvilixEconomyCommonConfig {
 
         // database
         cfg.set("database.enabled", DATABASE.enabled.get());
+        cfg.set("database.backend", DATABASE.backend.get().name());
+        cfg.set("database.h2_file", DATABASE.h2File.get());
         cfg.set("database.jdbc_url", DATABASE.jdbcUrl.get());
         cfg.set("database.username", DATABASE.username.get());
         cfg.set("database.password", DATABASE.password.get());
@@ -134,6 +271,10 @@ public final class AvilixEconomyCommonConfig {
         cfg.set("database.connection_timeout_ms", DATABASE.connectionTimeoutMs.get());
         cfg.set("database.idle_timeout_ms", DATABASE.idleTimeoutMs.get());
         cfg.set("database.max_lifetime_ms", DATABASE.maxLifetimeMs.get());
+        cfg.set("database.executor_threads", DATABASE.executorThreads.get());
+        cfg.set("database.executor_virtual_threads", DATABASE.executorVirtualThreads.get());
+        cfg.set("database.executor_queue_capacity", DATABASE.executorQueueCapacity.get());
+        cfg.set("database.executor_rejection_policy", DATABASE.executorRejectionPolicy.get().name());
 
         // economy
         cfg.set("economy.start_balance", ECONOMY.startBalance.get());
@@ -145,6 +286,28 @@ public final class AvilixEconomyCommonConfig {
         cfg.set("commission.default_sell_bps", COMMISSION.defaultSellBps.get());
         cfg.set("commission.default_buy_bps", COMMISSION.defaultBuyBps.get());
         cfg.set("commission.owner_overrides", COMMISSION.ownerOverrides.get());
+
+        // write-behind queues
+        HISTORY.save(cfg, "history");
+        SALES_LOG.save(cfg, "sales_log");
+
+        // journal
+        cfg.set("journal.enabled", JOURNAL.enabled.get());
+        cfg.set("journal.file", JOURNAL.file.get());
+        cfg.set("journal.fsync_interval_ms", JOURNAL.fsyncIntervalMs.get());
+        cfg.set("journal.max_pending", JOURNAL.maxPending.get());
+        cfg.set("journal.max_degraded_seconds", JOURNAL.maxDegradedSeconds.get());
+        cfg.set("journal.probe_interval_ms", JOURNAL.probeIntervalMs.get());
+
+        // ledger
+        cfg.set("ledger.authoritative", LEDGER.authoritative.get());
+        cfg.set("ledger.flush_interval_ms", LEDGER.flushIntervalMs.get());
+        cfg.set("ledger.flush_batch_size", LEDGER.batchSize.get());
+        cfg.set("ledger.idle_evict_seconds", LEDGER.idleEvictSeconds.get());
+
+        // balance cache
+        cfg.set("balance_cache.max_entries", BALANCE_CACHE.maxEntries.get());
+        cfg.set("balance_cache.idle_seconds", BALANCE_CACHE.idleSeconds.get());
         cfg.save();
         cfg.close();
     }
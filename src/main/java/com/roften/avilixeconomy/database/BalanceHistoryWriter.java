@@ -0,0 +1,106 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.config.AvilixEconomyCommonConfig;
+import com.roften.avilixeconomy.util.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Write-behind queue for economy_balance_history.
+ *
+ * History rows are buffered and written with multi-row INSERTs on one connection per batch,
+ * so a busy shop street no longer borrows a pooled connection per row.
+ * The row timestamp is taken when the row is queued, not when it is flushed.
+ */
+public final class BalanceHistoryWriter extends BatchWriter<BalanceHistoryWriter.Entry> {
+
+    /** Money columns are in cents (see {@link Money}). */
+    public record Entry(long createdAtMillis, UUID playerUuid, String playerName, long delta,
+                        long balanceBefore, long balanceAfter, String reason, String metaJson,
+                        UUID actorUuid, String actorName) {}
+
+    private static final int COLUMNS = 10;
+
+    private static volatile BalanceHistoryWriter instance;
+
+    private BalanceHistoryWriter(int capacity, int batchSize, long flushIntervalMs,
+                                 OverflowPolicy policy, long offerTimeoutMs) {
+        super("BalanceHistoryWriter", capacity, batchSize, flushIntervalMs, policy, offerTimeoutMs);
+    }
+
+    /** Starts the writer using the [history] config section. */
+    public static synchronized void start() {
+        var cfg = AvilixEconomyCommonConfig.HISTORY;
+        start(cfg.queueCapacity.get(), cfg.batchSize.get(), cfg.flushIntervalMs.get(),
+                cfg.overflowPolicy.get(), cfg.offerTimeoutMs.get());
+    }
+
+    /** Starts with explicit settings (no config access). */
+    public static synchronized void start(int capacity, int batchSize, long flushIntervalMs,
+                                          OverflowPolicy policy, long offerTimeoutMs) {
+        if (instance != null) return;
+        BalanceHistoryWriter w = new BalanceHistoryWriter(capacity, batchSize, flushIntervalMs, policy, offerTimeoutMs);
+        w.startWriter();
+        instance = w;
+    }
+
+    /** Drains queued rows and stops the writer. Must run before the pool is closed. */
+    public static synchronized void stop(long timeoutMs) {
+        BalanceHistoryWriter w = instance;
+        instance = null;
+        if (w != null) w.shutdown(timeoutMs);
+    }
+
+    /** @return the running writer, or null if it is not started. */
+    public static BalanceHistoryWriter get() {
+        return instance;
+    }
+
+    /** Queues a history row; writes through when the writer is not running. */
+    public static boolean enqueue(Entry entry) {
+        BalanceHistoryWriter w = instance;
+        if (w != null) return w.submit(entry);
+        DatabaseManager.insertBalanceHistory(
+                entry.playerUuid(), entry.playerName(), entry.delta(), entry.balanceBefore(), entry.balanceAfter(),
+                entry.reason(), entry.metaJson(), entry.actorUuid(), entry.actorName()
+        );
+        return true;
+    }
+
+    @Override
+    protected void writeBatch(List<Entry> batch) throws Exception {
+        if (!DatabaseManager.isReady()) throw new IllegalStateException("database is not initialized");
+
+        StringBuilder sql = new StringBuilder(160 + batch.size() * 24);
+        sql.append("INSERT INTO economy_balance_history ")
+                .append("(created_at, player_uuid, player_name, delta, balance_before, balance_after, reason, meta_json, actor_uuid, actor_name) ")
+                .append("VALUES ");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) sql.append(',');
+            sql.append("(?,?,?,?,?,?,?,?,?,?)");
+        }
+
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            int p = 1;
+            for (Entry e : batch) {
+                ps.setTimestamp(p, new Timestamp(e.createdAtMillis()));
+                ps.setBytes(p + 1, DatabaseManager.uuidBytes(e.playerUuid()));
+                ps.setString(p + 2, e.playerName() == null ? "unknown" : e.playerName());
+                ps.setBigDecimal(p + 3, Money.toDb(e.delta()));
+                ps.setBigDecimal(p + 4, Money.toDb(e.balanceBefore()));
+                ps.setBigDecimal(p + 5, Money.toDb(e.balanceAfter()));
+                ps.setString(p + 6, (e.reason() == null || e.reason().isBlank()) ? "UNKNOWN" : e.reason());
+                ps.setString(p + 7, e.metaJson());
+                ps.setBytes(p + 8, DatabaseManager.uuidBytes(e.actorUuid()));
+                ps.setString(p + 9, e.actorName());
+                p += COLUMNS;
+            }
+            ps.executeUpdate();
+        }
+    }
+}
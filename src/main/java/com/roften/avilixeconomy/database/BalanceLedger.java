@@ -0,0 +1,529 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+import com.roften.avilixeconomy.config.AvilixEconomyCommonConfig;
+import com.roften.avilixeconomy.util.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Optional authoritative in-memory balance ledger (single-server deployments, {@code ledger.authoritative}).
+ *
+ * An account is loaded once (one SELECT) and from then on its balance lives here: transfers, sets and adds
+ * are applied under per-account striped locks (taken in stripe order, so multi-account transfers cannot
+ * deadlock) without any SQL. Changed accounts are marked dirty and written by a flusher thread every
+ * {@code flush_interval_ms} in one transaction per batch; writes coalesce, so an account that changed a hundred
+ * times between flushes costs one UPDATE with its latest balance. History rows still go through
+ * {@link BalanceHistoryWriter}. {@link #stop()} drains everything that is dirty; if the database is down at
+ * that point the balances are handed to the {@link TransactionJournal} and replayed on the next start.
+ * Until that replay has reached the database no account is loaded ({@link DegradedMode#hasPending()}),
+ * otherwise the ledger would start from the pre-spill balances and its next flush would overwrite the replay.
+ *
+ * Anything else writing {@code economy.balance} must go through {@link #exclusive(Supplier)}, which flushes,
+ * runs the write and drops the loaded accounts so they are re-read.
+ */
+public final class BalanceLedger {
+
+    private BalanceLedger() {}
+
+    private static final int STRIPES = 64;
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) LOCKS[i] = new ReentrantLock();
+    }
+
+    /** Loaded account. Fields are guarded by the account's stripe lock. */
+    private static final class Slot {
+        long cents;
+        String name;
+        /**
+         * Row exists in the economy table (flush is a plain UPDATE, the name is left alone). Until then the
+         * balance holds only what this ledger credited, and the flush adds it to whatever row appeared meanwhile.
+         */
+        boolean inDb;
+        /** Account exists for transfers (row in the DB or created by a credit/set here). */
+        boolean exists;
+        boolean dirty;
+        long touchedAtMillis;
+
+        TransferEngine.Account snapshot(UUID uuid) {
+            return new TransferEngine.Account(uuid, exists, name, cents);
+        }
+    }
+
+    private static final ConcurrentHashMap<UUID, Slot> SLOTS = new ConcurrentHashMap<>();
+    private static final Set<UUID> DIRTY = ConcurrentHashMap.newKeySet();
+    private static final Set<UUID> ONLINE = ConcurrentHashMap.newKeySet();
+    // Held for a whole flush and by exclusive(): a flush never lands on top of an outside write.
+    private static final ReentrantLock FLUSH_LOCK = new ReentrantLock();
+    // Bumped by exclusive() (under all stripe locks): a load that started before it is stale.
+    private static volatile long generation;
+
+    private static final AtomicLong LOADS = new AtomicLong();
+    private static final AtomicLong MUTATIONS = new AtomicLong();
+    private static final AtomicLong FLUSHED_ROWS = new AtomicLong();
+    private static final AtomicLong FLUSHES = new AtomicLong();
+    private static final AtomicLong FLUSH_FAILURES = new AtomicLong();
+    private static final AtomicLong EVICTED = new AtomicLong();
+
+    private static volatile boolean enabled;
+    private static volatile boolean running;
+    private static Thread flusher;
+    private static long flushIntervalMs = 1000L;
+    private static int batchSize = 500;
+    private static long idleEvictMs = 600_000L;
+
+    /** Starts the ledger if [ledger] authoritative = true. */
+    public static void start() {
+        var cfg = AvilixEconomyCommonConfig.LEDGER;
+        if (!cfg.authoritative.get()) return;
+        start(cfg.flushIntervalMs.get(), cfg.batchSize.get(), cfg.idleEvictSeconds.get() * 1000L);
+    }
+
+    /** Starts with explicit settings (no config access). The pool must already be open. */
+    public static synchronized void start(long flushIntervalMillis, int flushBatchSize, long idleEvictMillis) {
+        if (enabled) return;
+        flushIntervalMs = Math.max(10L, flushIntervalMillis);
+        batchSize = Math.max(1, flushBatchSize);
+        idleEvictMs = Math.max(0L, idleEvictMillis);
+        SLOTS.clear();
+        DIRTY.clear();
+        enabled = true;
+        running = true;
+        flusher = new Thread(BalanceLedger::runLoop, "AvilixEconomy-Ledger");
+        flusher.setDaemon(true);
+        flusher.start();
+        AvilixEconomy.LOGGER.info("Balance ledger is authoritative: flush every {} ms, batches of {}", flushIntervalMs, batchSize);
+        if (DegradedMode.hasPending()) {
+            AvilixEconomy.LOGGER.warn("Balance ledger: accounts are unavailable until the transaction journal is replayed");
+        }
+    }
+
+    /** Stops the flusher and writes every dirty account. Must run before the pool is closed. */
+    public static synchronized void stop() {
+        if (!enabled) return;
+        running = false;
+        Thread t = flusher;
+        flusher = null;
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        FLUSH_LOCK.lock();
+        try {
+            while (!DIRTY.isEmpty()) {
+                if (!flushOnce()) {
+                    spillToJournal();
+                    break;
+                }
+            }
+        } finally {
+            FLUSH_LOCK.unlock();
+        }
+        enabled = false;
+        SLOTS.clear();
+        DIRTY.clear();
+        ONLINE.clear();
+        AvilixEconomy.LOGGER.info(statsLine());
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // ===== reads / mutations =====
+
+    /** Current balance in cents (loads the account on first use). */
+    public static long balance(UUID uuid) throws SQLException {
+        return locked(List.of(uuid), slots -> slots.get(uuid).cents);
+    }
+
+    /**
+     * Same contract as {@link TransferEngine#transfer}: debits {@code total} from {@code from} and applies
+     * all credits atomically, returning the pre-transfer state, or null if the payer is missing or short.
+     */
+    public static Map<UUID, TransferEngine.Account> transfer(UUID from, long total, List<TransferEngine.Credit> credits)
+            throws SQLException {
+        List<UUID> accounts = new ArrayList<>(credits.size() + 1);
+        accounts.add(from);
+        for (TransferEngine.Credit cr : credits) {
+            if (cr.amount() > 0) accounts.add(cr.to());
+        }
+        return locked(accounts, slots -> {
+            Slot src = slots.get(from);
+            if (!src.exists || src.cents < total) return null;
+            Map<UUID, TransferEngine.Account> before = new HashMap<>();
+            slots.forEach((u, s) -> before.put(u, s.snapshot(u)));
+
+            src.cents -= total;
+            changed(from, src);
+            for (TransferEngine.Credit cr : credits) {
+                if (cr.amount() <= 0) continue;
+                Slot dst = slots.get(cr.to());
+                dst.cents = Money.add(dst.cents, cr.amount());
+                dst.exists = true;
+                changed(cr.to(), dst);
+            }
+            return before;
+        });
+    }
+
+    /** Replaces the balance; {@code nameIfNew} (if given) becomes the account name. Returns the previous state. */
+    public static TransferEngine.Account set(UUID uuid, long cents, String nameIfNew) throws SQLException {
+        return locked(List.of(uuid), slots -> {
+            Slot s = slots.get(uuid);
+            TransferEngine.Account before = s.snapshot(uuid);
+            s.cents = Math.max(0L, cents);
+            if (nameIfNew != null && !nameIfNew.isBlank()) s.name = nameIfNew;
+            s.exists = true;
+            changed(uuid, s);
+            return before;
+        });
+    }
+
+    /** Adds {@code delta} (negative = remove), never going below zero. Returns the previous state. */
+    public static TransferEngine.Account add(UUID uuid, long delta) throws SQLException {
+        return locked(List.of(uuid), slots -> {
+            Slot s = slots.get(uuid);
+            TransferEngine.Account before = s.snapshot(uuid);
+            s.cents = Math.max(0L, Money.add(s.cents, delta));
+            s.exists = true;
+            changed(uuid, s);
+            return before;
+        });
+    }
+
+    /**
+     * Login: the player's row was just read or created by {@code DatabaseManager.loginAccount}.
+     * Returns the authoritative balance (the ledger one if the account is already loaded).
+     */
+    public static long online(UUID uuid, String name, long dbBalance) throws SQLException {
+        ONLINE.add(uuid);
+        return locked(List.of(uuid), slots -> {
+            Slot s = slots.get(uuid);
+            if (!s.inDb) {
+                // Loaded before the row existed: credits received so far go on top of the start balance.
+                s.cents = s.dirty ? Money.add(s.cents, dbBalance) : dbBalance;
+                s.inDb = true;
+                s.exists = true;
+            }
+            s.name = name;
+            return s.cents;
+        });
+    }
+
+    /** Logout: the account may be evicted once it is flushed and idle. */
+    public static void offline(UUID uuid) {
+        ONLINE.remove(uuid);
+    }
+
+    /**
+     * Runs a write that bypasses the ledger (bulk balance updates): all dirty accounts are flushed first,
+     * mutations wait until it is done, and loaded accounts are dropped afterwards so they are re-read.
+     */
+    public static <T> T exclusive(Supplier<T> write) {
+        if (!enabled) return write.get();
+        FLUSH_LOCK.lock();
+        for (ReentrantLock l : LOCKS) l.lock();
+        try {
+            while (!DIRTY.isEmpty()) {
+                if (!flushOnce()) throw new IllegalStateException("ledger flush failed, bulk update skipped");
+            }
+            T result = write.get();
+            generation++;
+            SLOTS.clear();
+            return result;
+        } finally {
+            for (int i = STRIPES - 1; i >= 0; i--) LOCKS[i].unlock();
+            FLUSH_LOCK.unlock();
+        }
+    }
+
+    private static void changed(UUID uuid, Slot s) {
+        s.touchedAtMillis = System.currentTimeMillis();
+        s.dirty = true;
+        DIRTY.add(uuid);
+        MUTATIONS.incrementAndGet();
+    }
+
+    /**
+     * Loads the accounts (outside the locks), locks their stripes in index order and runs {@code body}.
+     * Retries if one of the slots was evicted in between.
+     */
+    private static <T> T locked(List<UUID> accounts, Function<Map<UUID, Slot>, T> body) throws SQLException {
+        while (true) {
+            Map<UUID, Slot> slots = new HashMap<>();
+            for (UUID u : accounts) {
+                if (!slots.containsKey(u)) slots.put(u, slot(u));
+            }
+            int[] stripes = slots.keySet().stream().mapToInt(BalanceLedger::stripe).distinct().sorted().toArray();
+            for (int s : stripes) LOCKS[s].lock();
+            try {
+                boolean current = true;
+                for (var e : slots.entrySet()) {
+                    if (SLOTS.get(e.getKey()) != e.getValue()) {
+                        current = false;
+                        break;
+                    }
+                }
+                if (current) return body.apply(slots);
+            } finally {
+                for (int i = stripes.length - 1; i >= 0; i--) LOCKS[stripes[i]].unlock();
+            }
+        }
+    }
+
+    private static Slot slot(UUID uuid) throws SQLException {
+        while (true) {
+            Slot s = SLOTS.get(uuid);
+            if (s != null) return s;
+            long gen = generation;
+            Slot loaded = load(uuid);
+            ReentrantLock l = LOCKS[stripe(uuid)];
+            l.lock();
+            try {
+                if (gen != generation) continue;
+                Slot prev = SLOTS.putIfAbsent(uuid, loaded);
+                return prev != null ? prev : loaded;
+            } finally {
+                l.unlock();
+            }
+        }
+    }
+
+    private static Slot load(UUID uuid) throws SQLException {
+        // Journaled balances (e.g. spilled by the last stop()) first; the probe replays them once the DB is back.
+        if (DegradedMode.hasPending()) {
+            throw new SQLException("balance ledger: transaction journal not replayed yet");
+        }
+        Slot loaded = new Slot();
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT name, balance FROM economy WHERE uuid = ?")) {
+            ps.setBytes(1, DatabaseManager.uuidBytes(uuid));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    loaded.name = rs.getString("name");
+                    loaded.cents = Money.fromDb(rs.getBigDecimal("balance"));
+                    loaded.inDb = true;
+                    loaded.exists = true;
+                }
+            }
+        }
+        loaded.touchedAtMillis = System.currentTimeMillis();
+        LOADS.incrementAndGet();
+        return loaded;
+    }
+
+    private static int stripe(UUID uuid) {
+        int h = uuid.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7FFFFFFF) % STRIPES;
+    }
+
+    // ===== persistence =====
+
+    private static void runLoop() {
+        while (running) {
+            try {
+                Thread.sleep(flushIntervalMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            FLUSH_LOCK.lock();
+            try {
+                while (running && !DIRTY.isEmpty()) {
+                    if (!flushOnce()) break;
+                }
+                evictIdle();
+            } catch (Throwable t) {
+                AvilixEconomy.LOGGER.warn("Balance ledger flush loop failed", t);
+            } finally {
+                FLUSH_LOCK.unlock();
+            }
+        }
+    }
+
+    private record Row(UUID uuid, long cents, String name, boolean inDb) {}
+
+    /** Writes up to one batch of dirty accounts in one transaction. Caller holds FLUSH_LOCK. */
+    private static boolean flushOnce() {
+        List<Row> rows = new ArrayList<>(Math.min(batchSize, DIRTY.size()));
+        Iterator<UUID> it = DIRTY.iterator();
+        while (it.hasNext() && rows.size() < batchSize) {
+            UUID u = it.next();
+            it.remove();
+            ReentrantLock l = LOCKS[stripe(u)];
+            l.lock();
+            try {
+                Slot s = SLOTS.get(u);
+                if (s == null) continue;
+                s.dirty = false;
+                rows.add(new Row(u, s.cents, s.name != null ? s.name : "unknown", s.inDb));
+            } finally {
+                l.unlock();
+            }
+        }
+        if (rows.isEmpty()) return true;
+
+        // Balance of each new row after the flush (the credits plus a row created meanwhile, e.g. by a login).
+        Map<UUID, Long> created = new HashMap<>();
+        try (Connection c = DatabaseManager.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement upd = c.prepareStatement("UPDATE economy SET balance = ? WHERE uuid = ?");
+                 PreparedStatement credit = c.prepareStatement(DatabaseManager.backend().creditAccountsSql(1));
+                 PreparedStatement name = c.prepareStatement("UPDATE economy SET name = ? WHERE uuid = ? AND name = 'unknown'");
+                 PreparedStatement sel = c.prepareStatement("SELECT balance FROM economy WHERE uuid = ?")) {
+                boolean anyUpd = false;
+                for (Row r : rows) {
+                    if (r.inDb()) {
+                        upd.setBigDecimal(1, Money.toDb(r.cents()));
+                        upd.setBytes(2, DatabaseManager.uuidBytes(r.uuid()));
+                        upd.addBatch();
+                        anyUpd = true;
+                        continue;
+                    }
+                    // Additive: loginAccount may have inserted the start balance since this account was loaded.
+                    byte[] key = DatabaseManager.uuidBytes(r.uuid());
+                    credit.setBytes(1, key);
+                    credit.setBigDecimal(2, Money.toDb(r.cents()));
+                    credit.executeUpdate();
+                    if (!"unknown".equals(r.name())) {
+                        name.setString(1, r.name());
+                        name.setBytes(2, key);
+                        name.executeUpdate();
+                    }
+                    sel.setBytes(1, key);
+                    try (ResultSet rs = sel.executeQuery()) {
+                        if (rs.next()) created.put(r.uuid(), Money.fromDb(rs.getBigDecimal("balance")));
+                    }
+                }
+                if (anyUpd) upd.executeBatch();
+                c.commit();
+            } catch (SQLException e) {
+                try {
+                    c.rollback();
+                } catch (SQLException ignored) {
+                }
+                throw e;
+            }
+        } catch (Exception e) {
+            long n = FLUSH_FAILURES.incrementAndGet();
+            if (n == 1 || n % 100 == 0) {
+                AvilixEconomy.LOGGER.warn("Balance ledger flush of {} accounts failed, will retry ({} failures so far)", rows.size(), n, e);
+            }
+            for (Row r : rows) markDirty(r.uuid());
+            return false;
+        }
+
+        for (Row r : rows) {
+            if (r.inDb()) continue;
+            ReentrantLock l = LOCKS[stripe(r.uuid())];
+            l.lock();
+            try {
+                Slot s = SLOTS.get(r.uuid());
+                // online() may have merged the login row in the meantime; then the slot already counts both.
+                if (s != null && !s.inDb) {
+                    Long db = created.get(r.uuid());
+                    // Changes made after the snapshot stay on top (they are dirty and flushed as an UPDATE).
+                    if (db != null) s.cents = Math.max(0L, Money.add(db, s.cents - r.cents()));
+                    s.inDb = true;
+                }
+            } finally {
+                l.unlock();
+            }
+        }
+        FLUSHED_ROWS.addAndGet(rows.size());
+        FLUSHES.incrementAndGet();
+        return true;
+    }
+
+    private static void markDirty(UUID u) {
+        ReentrantLock l = LOCKS[stripe(u)];
+        l.lock();
+        try {
+            Slot s = SLOTS.get(u);
+            if (s != null) s.dirty = true;
+        } finally {
+            l.unlock();
+        }
+        DIRTY.add(u);
+    }
+
+    /** Drops flushed accounts of offline players that were not touched for idle_evict_seconds. */
+    private static void evictIdle() {
+        if (idleEvictMs <= 0) return;
+        long cutoff = System.currentTimeMillis() - idleEvictMs;
+        for (var e : SLOTS.entrySet()) {
+            UUID u = e.getKey();
+            if (ONLINE.contains(u)) continue;
+            ReentrantLock l = LOCKS[stripe(u)];
+            l.lock();
+            try {
+                Slot s = e.getValue();
+                if (!s.dirty && s.touchedAtMillis < cutoff && SLOTS.remove(u, s)) EVICTED.incrementAndGet();
+            } finally {
+                l.unlock();
+            }
+        }
+    }
+
+    /**
+     * Shutdown with the database down: the final balances go to the transaction journal as absolute sets,
+     * or as credits for accounts without a row yet (same rule as the flush).
+     */
+    private static void spillToJournal() {
+        List<TransactionJournal.Leg> legs = new ArrayList<>();
+        for (UUID u : DIRTY) {
+            Slot s = SLOTS.get(u);
+            if (s != null) legs.add(new TransactionJournal.Leg(u, s.name, s.inDb, s.cents, "LEDGER_FLUSH"));
+        }
+        // One record per account: the replay locks every account of a record together.
+        int kept = 0;
+        for (TransactionJournal.Leg leg : legs) {
+            if (DegradedMode.append(new TransactionJournal.Entry(UUID.randomUUID(), System.currentTimeMillis(),
+                    null, null, null, List.of(leg)))) kept++;
+        }
+        if (kept < legs.size()) {
+            AvilixEconomy.LOGGER.error("Balance ledger: {} account balances could not be saved", legs.size() - kept);
+            for (TransactionJournal.Leg leg : legs) {
+                AvilixEconomy.LOGGER.error("  {} = {}", leg.account(), Money.format(leg.cents()));
+            }
+        } else {
+            AvilixEconomy.LOGGER.warn("Balance ledger: database unavailable, {} balances kept in the transaction journal", kept);
+        }
+    }
+
+    public static String statsLine() {
+        if (!enabled) return "Balance ledger: off";
+        return "Balance ledger: accounts=" + SLOTS.size()
+                + " online=" + ONLINE.size()
+                + " dirty=" + DIRTY.size()
+                + " loads=" + LOADS.get()
+                + " mutations=" + MUTATIONS.get()
+                + " flushed=" + FLUSHED_ROWS.get()
+                + " flushes=" + FLUSHES.get()
+                + " failures=" + FLUSH_FAILURES.get()
+                + " evicted=" + EVICTED.get()
+                + (DegradedMode.hasPending() ? " (waiting for journal replay)" : "");
+    }
+}
@@ -0,0 +1,225 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded write-behind queue with a single writer thread.
+ *
+ * Rows are collected in a fixed-size ring buffer and written in batches: a batch is flushed
+ * as soon as it reaches {@code batchSize} rows or {@code flushIntervalMs} after its first row,
+ * whichever comes first. When the buffer is full the {@link OverflowPolicy} decides whether
+ * producers wait (up to {@code offerTimeoutMs}) or the row is dropped.
+ *
+ * A batch that fails to write is retried by the writer thread with a growing pause
+ * ({@link #MAX_ATTEMPTS} attempts, about 8 s in total) before it is counted as failed, so a short
+ * database blip only delays rows. New rows keep queueing meanwhile and the overflow policy applies.
+ *
+ * @param <T> row type
+ */
+public abstract class BatchWriter<T> {
+
+    public enum OverflowPolicy {
+        /** Producer waits for free space (up to the offer timeout), then drops. */
+        BLOCK,
+        /** Row is dropped immediately. */
+        DROP
+    }
+
+    static final int MAX_ATTEMPTS = 6;
+    private static final long RETRY_BASE_MS = 250L;
+    private static final long RETRY_MAX_MS = 5000L;
+
+    private final String name;
+    private final ArrayBlockingQueue<T> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final OverflowPolicy overflowPolicy;
+    private final long offerTimeoutMs;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread thread;
+
+    protected BatchWriter(String name, int capacity, int batchSize, long flushIntervalMs,
+                          OverflowPolicy overflowPolicy, long offerTimeoutMs) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1L, flushIntervalMs);
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.BLOCK : overflowPolicy;
+        this.offerTimeoutMs = Math.max(0L, offerTimeoutMs);
+    }
+
+    /** Writes one batch (already bounded by {@code batchSize}). Called from the writer thread only. */
+    protected abstract void writeBatch(List<T> batch) throws Exception;
+
+    public synchronized void startWriter() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::runLoop, "AvilixEconomy-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a row for writing.
+     *
+     * @return false if the row was dropped because the buffer is full
+     */
+    public boolean submit(T row) {
+        if (row == null) return false;
+        if (!running) {
+            // Writer not running (startup/shutdown): write through so nothing is lost silently.
+            writeNow(List.of(row));
+            return true;
+        }
+        boolean accepted = queue.offer(row);
+        if (!accepted && overflowPolicy == OverflowPolicy.BLOCK && offerTimeoutMs > 0) {
+            try {
+                accepted = queue.offer(row, offerTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!accepted) {
+            long d = dropped.incrementAndGet();
+            if (d == 1 || d % 1000 == 0) {
+                AvilixEconomy.LOGGER.warn("{} queue is full, dropped {} rows so far", name, d);
+            }
+            return false;
+        }
+        queued.incrementAndGet();
+        return true;
+    }
+
+    private void runLoop() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize || !running) break;
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0L) break;
+                    T next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                writeWithRetry(batch);
+            } catch (InterruptedException e) {
+                // shutdown() never interrupts; treat as a request to stop after draining.
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Writer thread: retries a failed batch before giving up on it. */
+    private void writeWithRetry(List<T> batch) {
+        for (int attempt = 1; ; attempt++) {
+            Exception error = tryWrite(batch);
+            if (error == null) return;
+            if (attempt >= MAX_ATTEMPTS) {
+                failed.addAndGet(batch.size());
+                AvilixEconomy.LOGGER.error("{} gave up on {} rows after {} attempts", name, batch.size(), attempt, error);
+                return;
+            }
+            retried.incrementAndGet();
+            if (attempt == 1) {
+                AvilixEconomy.LOGGER.warn("{} failed to write {} rows, retrying", name, batch.size(), error);
+            }
+            try {
+                Thread.sleep(Math.min(RETRY_MAX_MS, RETRY_BASE_MS << (attempt - 1)));
+            } catch (InterruptedException e) {
+                // Keep the flag: the run loop stops after this batch.
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Calling-thread writes (writer not running): one attempt, the caller must not stall. */
+    private void writeNow(List<T> batch) {
+        Exception error = tryWrite(batch);
+        if (error != null) {
+            failed.addAndGet(batch.size());
+            AvilixEconomy.LOGGER.warn("{} failed to write {} rows", name, batch.size(), error);
+        }
+    }
+
+    private Exception tryWrite(List<T> batch) {
+        if (batch.isEmpty()) return null;
+        try {
+            writeBatch(batch);
+            flushed.addAndGet(batch.size());
+            batches.incrementAndGet();
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    /** Stops accepting rows into the buffer and waits up to {@code timeoutMs} for the queue to drain. */
+    public void shutdown(long timeoutMs) {
+        Thread t;
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        try {
+            t.join(Math.max(1L, timeoutMs));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (t.isAlive()) {
+            AvilixEconomy.LOGGER.warn("{} did not drain in {} ms, {} rows left", name, timeoutMs, queue.size());
+        } else {
+            // Rows that raced with shutdown: write them from the calling thread.
+            List<T> rest = new ArrayList<>(batchSize);
+            while (queue.drainTo(rest, batchSize) > 0) {
+                writeNow(rest);
+                rest.clear();
+            }
+        }
+        AvilixEconomy.LOGGER.info(statsLine());
+    }
+
+    public String getName() { return name; }
+    public long getQueuedCount() { return queued.get(); }
+    public long getFlushedCount() { return flushed.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public long getFailedCount() { return failed.get(); }
+    public long getRetriedCount() { return retried.get(); }
+    public long getBatchCount() { return batches.get(); }
+    public int getPending() { return queue.size(); }
+
+    public String statsLine() {
+        return name + ": queued=" + queued.get()
+                + " flushed=" + flushed.get()
+                + " dropped=" + dropped.get()
+                + " failed=" + failed.get()
+                + " retried=" + retried.get()
+                + " batches=" + batches.get()
+                + " pending=" + queue.size();
+    }
+}
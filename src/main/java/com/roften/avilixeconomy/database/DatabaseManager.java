@@ -1,9 +1,13 @@
 package com.roften.avilixeconomy.database;
 
 import com.roften.avilixeconomy.config.AvilixEconomyCommonConfig;
+import com.roften.avilixeconomy.database.backend.H2Backend;
+import com.roften.avilixeconomy.database.backend.MySqlBackend;
+import com.roften.avilixeconomy.database.backend.StorageBackend;
 import com.roften.avilixeconomy.util.MoneyUtils;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import net.neoforged.fml.loading.FMLPaths;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -20,6 +24,7 @@ import java.util.regex.Pattern;
 public class DatabaseManager {
 
     private static HikariDataSource dataSource;
+    private static volatile StorageBackend backend;
 
     public static void init() {
         if (!AvilixEconomyCommonConfig.DATABASE.enabled.get()) {
@@ -28,306 +33,103 @@ public class DatabaseManager {
 
         try {
             HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(AvilixEconomyCommonConfig.DATABASE.jdbcUrl.get());
-            config.setUsername(AvilixEconomyCommonConfig.DATABASE.username.get());
-            config.setPassword(AvilixEconomyCommonConfig.DATABASE.password.get());
             config.setMaximumPoolSize(AvilixEconomyCommonConfig.DATABASE.poolMaxSize.get());
             config.setMinimumIdle(AvilixEconomyCommonConfig.DATABASE.poolMinIdle.get());
             config.setIdleTimeout(AvilixEconomyCommonConfig.DATABASE.idleTimeoutMs.get());
             config.setConnectionTimeout(AvilixEconomyCommonConfig.DATABASE.connectionTimeoutMs.get());
             config.setMaxLifetime(AvilixEconomyCommonConfig.DATABASE.maxLifetimeMs.get());
 
-            dataSource = new HikariDataSource(config);
-
-            createTables();
-            System.out.println("[Economy] HikariCP успешно инициализирован");
+            init(backendFromConfig(), config);
+            BalanceHistoryWriter.start();
+            ShopSalesJournal.start();
+            DegradedMode.start();
+            BalanceLedger.start();
+            System.out.println("[Economy] HikariCP успешно инициализирован (" + backend.id() + ")");
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    public static Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
-    }
-
-    private static void createTables() {
-        try (Connection c = getConnection()) {
-            // Балансы игроков
-            try (PreparedStatement st = c.prepareStatement("""
-                    CREATE TABLE IF NOT EXISTS economy (
-                        uuid VARCHAR(36) PRIMARY KEY,
-                        name VARCHAR(32) NOT NULL,
-                        balance DECIMAL(18,2) NOT NULL DEFAULT 500.00
-                    )
-                """)) {
-                st.executeUpdate();
-            }
-
-            // История изменения баланса (аудит)
-            try (PreparedStatement st = c.prepareStatement("""
-                    CREATE TABLE IF NOT EXISTS economy_balance_history (
-                        id BIGINT NOT NULL AUTO_INCREMENT,
-                        created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                        player_uuid VARCHAR(36) NOT NULL,
-                        player_name VARCHAR(32) NOT NULL,
-                        delta DECIMAL(18,2) NOT NULL,
-                        balance_before DECIMAL(18,2) NOT NULL,
-                        balance_after DECIMAL(18,2) NOT NULL,
-                        reason VARCHAR(32) NOT NULL DEFAULT 'UNKNOWN',
-                        meta_json MEDIUMTEXT NULL,
-                        actor_uuid VARCHAR(36) NULL,
-                        actor_name VARCHAR(32) NULL,
-                        PRIMARY KEY (id),
-                        INDEX idx_player_time (player_uuid, created_at),
-                        INDEX idx_reason_time (reason, created_at)
-                    )
-                """)) {
-                st.executeUpdate();
-            }
-
-            // История продаж магазина (ShopBlockEntity)
-            try (PreparedStatement st = c.prepareStatement("""
-                    CREATE TABLE IF NOT EXISTS shop_sales (
-                        id BIGINT NOT NULL AUTO_INCREMENT,
-                        created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                        world VARCHAR(64) NOT NULL,
-                        x INT NOT NULL,
-                        y INT NOT NULL,
-                        z INT NOT NULL,
-                        block_id VARCHAR(128) NOT NULL,
-                        owner_uuid VARCHAR(36) NOT NULL,
-                        owner_name VARCHAR(32) NOT NULL,
-                        buyer_uuid VARCHAR(36) NOT NULL,
-                        buyer_name VARCHAR(32) NOT NULL,
-                        trade_type VARCHAR(8) NOT NULL DEFAULT 'SELL',
-                        price_per_lot DECIMAL(18,2) NOT NULL,
-                        lots INT NOT NULL,
-                        total_price DECIMAL(18,2) NOT NULL,
-                        items_json MEDIUMTEXT NOT NULL,
-                        PRIMARY KEY (id),
-                        INDEX idx_owner_uuid_time (owner_uuid, created_at),
-                        INDEX idx_owner_name_time (owner_name, created_at),
-                        INDEX idx_shop_pos (world, x, y, z, created_at)
-                    )
-                """)) {
-                st.executeUpdate();
-            }
-
-            // Render overrides for items displayed on the shop shelf (admin-tunable)
-            try (PreparedStatement st = c.prepareStatement("""
-                    CREATE TABLE IF NOT EXISTS shop_render_overrides (
-                        id BIGINT NOT NULL AUTO_INCREMENT,
-                        scope VARCHAR(8) NOT NULL,
-                        override_key VARCHAR(128) NOT NULL,
-                        off_x FLOAT NOT NULL DEFAULT 0,
-                        off_y FLOAT NOT NULL DEFAULT 0,
-                        off_z FLOAT NOT NULL DEFAULT 0,
-                        rot_x FLOAT NOT NULL DEFAULT 0,
-                        rot_y FLOAT NOT NULL DEFAULT 0,
-                        rot_z FLOAT NOT NULL DEFAULT 0,
-                        scale_mul FLOAT NOT NULL DEFAULT 1,
-                        extra_lift FLOAT NOT NULL DEFAULT 0,
-                        updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                        PRIMARY KEY (id),
-                        UNIQUE KEY uk_scope_key (scope, override_key)
-                    )
-                """)) {
-                st.executeUpdate();
-            }
-
-            // Миграции для уже существующих таблиц
-            ensureShopSalesColumns(c);
-            ensureMoneyColumnTypes(c);
-
-            // Индексы (ускоряет VIEW и фильтрацию по trade_type)
-            ensureIndexes(c);
-
-            // Удобный "лог" без UUID: можно SELECT * FROM shop_sales_log;
-            try (PreparedStatement st = c.prepareStatement("""
-                    CREATE OR REPLACE VIEW shop_sales_log AS
-                    SELECT
-                        id,
-                        created_at,
-                        world,
-                        x, y, z,
-                        block_id AS block_name,
-                        owner_name AS owner,
-                        buyer_name AS buyer,
-                        price_per_lot,
-                        lots,
-                        total_price,
-                        items_json
-                    FROM shop_sales
-                """)) {
-                st.executeUpdate();
-            }
-
-            // Отдельные view для логов: продажи и скупки (структура как у shop_sales_log)
-            try (PreparedStatement st = c.prepareStatement("""
-                    CREATE OR REPLACE VIEW shop_sales_log_sell AS
-                    SELECT
-                        id,
-                        created_at,
-                        world,
-                        x, y, z,
-                        block_id AS block_name,
-                        owner_name AS owner,
-                        buyer_name AS buyer,
-                        price_per_lot,
-                        lots,
-                        total_price,
-                        items_json
-                    FROM shop_sales
-                    WHERE trade_type = 'SELL'
-                """)) {
-                st.executeUpdate();
-            }
-
-            try (PreparedStatement st = c.prepareStatement("""
-                    CREATE OR REPLACE VIEW shop_sales_log_buy AS
-                    SELECT
-                        id,
-                        created_at,
-                        world,
-                        x, y, z,
-                        block_id AS block_name,
-                        owner_name AS owner,
-                        buyer_name AS buyer,
-                        price_per_lot,
-                        lots,
-                        total_price,
-                        items_json
-                    FROM shop_sales
-                    WHERE trade_type = 'BUY'
-                """)) {
-                st.executeUpdate();
-            }
+    /**
+     * Opens the pool on an explicit backend without touching the mod config
+     * (benchmarks, tools). Write-behind queues are not started here.
+     */
+    public static void init(StorageBackend storage, HikariConfig pool) {
+        backend = storage;
+        storage.configurePool(pool);
+        dataSource = new HikariDataSource(pool);
 
+        try {
+            SchemaMigrator.migrate(storage);
         } catch (Exception e) {
             e.printStackTrace();
         }
+        PlayerNameDirectory.load();
+        Leaderboard.load();
     }
 
-    private static void ensureShopSalesColumns(Connection c) throws SQLException {
-        ensureColumn(c, "shop_sales", "block_id",
-                "ALTER TABLE shop_sales ADD COLUMN block_id VARCHAR(128) NOT NULL DEFAULT ''");
-        ensureColumn(c, "shop_sales", "owner_name",
-                "ALTER TABLE shop_sales ADD COLUMN owner_name VARCHAR(32) NOT NULL DEFAULT ''");
-        ensureColumn(c, "shop_sales", "buyer_name",
-                "ALTER TABLE shop_sales ADD COLUMN buyer_name VARCHAR(32) NOT NULL DEFAULT ''");
-        ensureColumn(c, "shop_sales", "trade_type",
-                "ALTER TABLE shop_sales ADD COLUMN trade_type VARCHAR(8) NOT NULL DEFAULT 'SELL'");
-
+    private static StorageBackend backendFromConfig() {
+        var db = AvilixEconomyCommonConfig.DATABASE;
+        return switch (db.backend.get()) {
+            case H2 -> H2Backend.file(FMLPaths.GAMEDIR.get().resolve(db.h2File.get()));
+            case MYSQL -> new MySqlBackend(db.jdbcUrl.get(), db.username.get(), db.password.get());
+        };
     }
 
-
-    /**
-     * Ensure DECIMAL(18,2) for money columns in existing installations.
-     * Safe to run on every startup.
-     */
-    private static void ensureMoneyColumnTypes(Connection c) throws SQLException {
-        // economy.balance
-        try (PreparedStatement st = c.prepareStatement("ALTER TABLE economy MODIFY COLUMN balance DECIMAL(18,2) NOT NULL DEFAULT 500.00")) {
-            st.executeUpdate();
-        } catch (Exception ignored) {}
-
-        // shop_sales money columns
-        try (PreparedStatement st = c.prepareStatement("ALTER TABLE shop_sales MODIFY COLUMN price_per_lot DECIMAL(18,2) NOT NULL")) {
-            st.executeUpdate();
-        } catch (Exception ignored) {}
-        try (PreparedStatement st = c.prepareStatement("ALTER TABLE shop_sales MODIFY COLUMN total_price DECIMAL(18,2) NOT NULL")) {
-            st.executeUpdate();
-        } catch (Exception ignored) {}
+    /** Active storage engine (dialect-specific SQL lives there). */
+    public static StorageBackend backend() {
+        return backend;
     }
 
-    private static void ensureIndexes(Connection c) throws SQLException {
-        // Для запросов вида: WHERE trade_type='SELL' ORDER BY created_at DESC
-        // Один индекс покрывает оба view (shop_sales_log_sell / shop_sales_log_buy).
-        ensureIndex(c, "shop_sales", "idx_trade_type_time",
-                "CREATE INDEX idx_trade_type_time ON shop_sales (trade_type, created_at)");
+    public static Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
     }
 
-    private static void ensureIndex(Connection c, String table, String indexName, String createSql) throws SQLException {
-        try (PreparedStatement ps = c.prepareStatement(
-                "SELECT 1 FROM information_schema.STATISTICS " +
-                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ? LIMIT 1"
-        )) {
-            ps.setString(1, table);
-            ps.setString(2, indexName);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return;
-            }
-        }
-        try (PreparedStatement st = c.prepareStatement(createSql)) {
-            st.executeUpdate();
+    /**
+     * UUID as stored in the BINARY(16) key columns: most significant byte first, so the
+     * byte order of keys matches the order of their text form (keyset cursors, lock order).
+     */
+    public static byte[] uuidBytes(UUID uuid) {
+        if (uuid == null) return null;
+        byte[] out = new byte[16];
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            out[i] = (byte) (msb >>> (56 - 8 * i));
+            out[8 + i] = (byte) (lsb >>> (56 - 8 * i));
         }
+        return out;
     }
 
-    private static void ensureColumn(Connection c, String table, String column, String alterSql) throws SQLException {
-        try (PreparedStatement ps = c.prepareStatement(
-                "SELECT 1 FROM information_schema.COLUMNS " +
-                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ? LIMIT 1"
-        )) {
-            ps.setString(1, table);
-            ps.setString(2, column);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return;
-            }
-        }
-        try (PreparedStatement st = c.prepareStatement(alterSql)) {
-            st.executeUpdate();
+    public static UUID uuidFromBytes(byte[] b) {
+        if (b == null || b.length != 16) return null;
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 8; i++) {
+            msb = (msb << 8) | (b[i] & 0xFF);
+            lsb = (lsb << 8) | (b[8 + i] & 0xFF);
         }
+        return new UUID(msb, lsb);
     }
 
-    /**
-     * Лог успешной покупки в магазине.
-     */
-    public static void logShopSale(
-            long createdAtEpochMillis,
-            String worldId,
-            int x,
-            int y,
-            int z,
-            String blockId,
-            UUID ownerUuid,
-            String ownerName,
-            UUID buyerUuid,
-            String buyerName,
-            String tradeType,
-            double pricePerLot,
-            int lots,
-            double totalPrice,
-            String itemsJson
-    ) {
-        String sql = "INSERT INTO shop_sales(created_at, world, x, y, z, block_id, owner_uuid, owner_name, buyer_uuid, buyer_name, trade_type, price_per_lot, lots, total_price, items_json) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-
-            ps.setTimestamp(1, new java.sql.Timestamp(Math.max(0L, createdAtEpochMillis)));
-            ps.setString(2, worldId);
-            ps.setInt(3, x);
-            ps.setInt(4, y);
-            ps.setInt(5, z);
-            ps.setString(6, blockId != null ? blockId : "");
-            ps.setString(7, ownerUuid != null ? ownerUuid.toString() : "");
-            ps.setString(8, ownerName != null ? ownerName : "");
-            ps.setString(9, buyerUuid != null ? buyerUuid.toString() : "");
-            ps.setString(10, buyerName != null ? buyerName : "");
-            ps.setString(11, tradeType != null ? tradeType : "SELL");
-            ps.setBigDecimal(12, MoneyUtils.toDb(pricePerLot));
-            ps.setInt(13, lots);
-            ps.setBigDecimal(14, MoneyUtils.toDb(totalPrice));
-            ps.setString(15, itemsJson != null ? itemsJson : "[]");
-            ps.executeUpdate();
+    /** Hikari connection usage, for /eco admin dbstats. */
+    public static String poolStatsLine() {
+        HikariDataSource ds = dataSource;
+        var mx = ds == null || ds.isClosed() ? null : ds.getHikariPoolMXBean();
+        if (mx == null) return "Hikari pool: not running";
+        return "Hikari pool (" + backend.id() + "): active=" + mx.getActiveConnections()
+                + " idle=" + mx.getIdleConnections()
+                + " total=" + mx.getTotalConnections()
+                + " waiting=" + mx.getThreadsAwaitingConnection();
+    }
 
-        } catch (Exception e) {
-            // не валим сервер из-за лога
-            e.printStackTrace();
-        }
+    /** True once the pool is up (and until shutdown). */
+    public static boolean isReady() {
+        HikariDataSource ds = dataSource;
+        return ds != null && !ds.isClosed();
     }
 
+    /** Queues a sale for the group-committed {@link ShopSalesJournal}. */
     public static void logShopSaleNow(
             String worldId,
             int x,
@@ -342,10 +144,10 @@ public class DatabaseManager {
             double pricePerLot,
             int lots,
             double totalPrice,
-            String itemsJson
+            List<ShopSalesJournal.SaleItem> items
     ) {
-        logShopSale(Instant.now().toEpochMilli(), worldId, x, y, z, blockId, ownerUuid, ownerName, buyerUuid, buyerName, tradeType,
-                pricePerLot, lots, totalPrice, itemsJson);
+        ShopSalesJournal.enqueue(new ShopSalesJournal.Sale(Instant.now().toEpochMilli(), worldId, x, y, z, blockId,
+                ownerUuid, ownerName, buyerUuid, buyerName, tradeType, pricePerLot, lots, totalPrice, List.copyOf(items)));
     }
 
     public static boolean recordExists(UUID uuid) throws SQLException {
@@ -354,39 +156,43 @@ public class DatabaseManager {
         try (Connection c = getConnection();
              PreparedStatement st = c.prepareStatement(sql)) {
 
-            st.setString(1, uuid.toString());
+            st.setBytes(1, uuidBytes(uuid));
             try (ResultSet rs = st.executeQuery()) {
                 return rs.next();
             }
         }
     }
 
-    public static double getBalanceDirect(UUID uuid) {
+    /**
+     * Stored balance, 0 if the account does not exist. Throws instead of guessing when the database
+     * cannot be read, so callers never mistake an outage for an empty account.
+     */
+    public static double getBalanceDirect(UUID uuid) throws SQLException {
         String sql = "SELECT balance FROM economy WHERE uuid = ?";
 
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, uuid.toString());
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                return MoneyUtils.fromDb(rs.getBigDecimal("balance"));
+            ps.setBytes(1, uuidBytes(uuid));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return MoneyUtils.fromDb(rs.getBigDecimal("balance"));
+                }
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
         }
         return 0.0;
     }
 
     public static String getPlayerNameDirect(UUID uuid) {
+        // Directory is authoritative once loaded: no SQL for name resolution.
+        if (PlayerNameDirectory.isLoaded()) return PlayerNameDirectory.nameOf(uuid);
+
         String sql = "SELECT name FROM economy WHERE uuid = ?";
 
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, uuid.toString());
+            ps.setBytes(1, uuidBytes(uuid));
             ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
@@ -405,6 +211,8 @@ public class DatabaseManager {
      */
     public static UUID getUuidByName(String name) {
         if (name == null || name.isBlank()) return null;
+        if (PlayerNameDirectory.isLoaded()) return PlayerNameDirectory.uuidOf(name);
+
         String sql = "SELECT uuid FROM economy WHERE LOWER(name) = LOWER(?) LIMIT 1";
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -412,7 +220,7 @@ public class DatabaseManager {
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
                     try {
-                        return UUID.fromString(rs.getString("uuid"));
+                        return uuidFromBytes(rs.getBytes("uuid"));
                     } catch (Exception ignored) {}
                 }
             }
@@ -438,16 +246,20 @@ public class DatabaseManager {
     /**
      * Returns a page of players ordered by balance DESC.
      * Uses limit+1 strategy to determine if there are more rows.
+     * Served from {@link Leaderboard} once it is loaded; SQL is only the fallback.
      */
     public static BalancesPage getBalancesTopPage(int limit, int offset, UUID excludeUuid) {
+        if (Leaderboard.isLoaded()) return Leaderboard.page(limit, offset, excludeUuid);
+
         int safeLimit = Math.max(1, Math.min(50, limit));
         int safeOffset = Math.max(0, offset);
 
         if (dataSource == null) return new BalancesPage(List.of(), false);
 
+        // Same order as idx_economy_balance (read backwards), so no filesort.
         String sql = "SELECT uuid, name, balance FROM economy " +
                 (excludeUuid != null ? "WHERE uuid <> ? " : "") +
-                "ORDER BY balance DESC LIMIT ? OFFSET ?";
+                "ORDER BY balance DESC, uuid DESC LIMIT ? OFFSET ?";
 
         List<BalanceRow> rows = new ArrayList<>();
         boolean hasMore = false;
@@ -457,7 +269,7 @@ public class DatabaseManager {
 
             int idx = 1;
             if (excludeUuid != null) {
-                ps.setString(idx++, excludeUuid.toString());
+                ps.setBytes(idx++, uuidBytes(excludeUuid));
             }
             ps.setInt(idx++, safeLimit + 1);
             ps.setInt(idx, safeOffset);
@@ -469,7 +281,7 @@ public class DatabaseManager {
                         break;
                     }
                     rows.add(new BalanceRow(
-                            rs.getString("uuid"),
+                            uuidFromBytes(rs.getBytes("uuid")).toString(),
                             rs.getString("name"),
                             MoneyUtils.fromDb(rs.getBigDecimal("balance"))
                     ));
@@ -482,6 +294,47 @@ public class DatabaseManager {
         return new BalancesPage(rows, hasMore);
     }
 
+    /**
+     * Keyset page: players ranked right after {@code after} (balance DESC, uuid DESC),
+     * or from the top if {@code after} is null. Cost is O(limit) on idx_economy_balance at any depth.
+     * Throws on SQL errors (callers need to tell an empty page from a failed one).
+     */
+    public static List<BalanceRow> getBalancesTopAfter(BalanceRow after, int limit, UUID excludeUuid) {
+        if (dataSource == null) return List.of();
+        int safeLimit = Math.max(1, limit);
+
+        StringBuilder sql = new StringBuilder("SELECT uuid, name, balance FROM economy WHERE 1=1");
+        if (after != null) sql.append(" AND (balance < ? OR (balance = ? AND uuid < ?))");
+        if (excludeUuid != null) sql.append(" AND uuid <> ?");
+        sql.append(" ORDER BY balance DESC, uuid DESC LIMIT ?");
+
+        List<BalanceRow> rows = new ArrayList<>();
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            int idx = 1;
+            if (after != null) {
+                ps.setBigDecimal(idx++, MoneyUtils.toDb(after.balance()));
+                ps.setBigDecimal(idx++, MoneyUtils.toDb(after.balance()));
+                ps.setBytes(idx++, uuidBytes(UUID.fromString(after.uuid())));
+            }
+            if (excludeUuid != null) ps.setBytes(idx++, uuidBytes(excludeUuid));
+            ps.setInt(idx, safeLimit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new BalanceRow(
+                            uuidFromBytes(rs.getBytes("uuid")).toString(),
+                            rs.getString("name"),
+                            MoneyUtils.fromDb(rs.getBigDecimal("balance"))
+                    ));
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return rows;
+    }
+
     /**
      * Adds amount to all existing economy records (offline included).
      * Returns number of affected rows.
@@ -494,18 +347,7 @@ public class DatabaseManager {
         String sql = "UPDATE economy SET balance = GREATEST(0, balance + ?)" +
                 (excludeUuid != null ? " WHERE uuid <> ?" : "");
 
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            int idx = 1;
-            ps.setBigDecimal(idx++, MoneyUtils.toDb(a));
-            if (excludeUuid != null) {
-                ps.setString(idx, excludeUuid.toString());
-            }
-            return ps.executeUpdate();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0;
-        }
+        return updateAllBalances(sql, a, excludeUuid);
     }
 
     /**
@@ -520,18 +362,7 @@ public class DatabaseManager {
         String sql = "UPDATE economy SET balance = GREATEST(0, balance - ?)" +
                 (excludeUuid != null ? " WHERE uuid <> ?" : "");
 
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            int idx = 1;
-            ps.setBigDecimal(idx++, MoneyUtils.toDb(a));
-            if (excludeUuid != null) {
-                ps.setString(idx, excludeUuid.toString());
-            }
-            return ps.executeUpdate();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0;
-        }
+        return updateAllBalances(sql, a, excludeUuid);
     }
 
     /**
@@ -545,14 +376,30 @@ public class DatabaseManager {
         String sql = "UPDATE economy SET balance = ?" +
                 (excludeUuid != null ? " WHERE uuid <> ?" : "");
 
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            int idx = 1;
-            ps.setBigDecimal(idx++, MoneyUtils.toDb(a));
-            if (excludeUuid != null) {
-                ps.setString(idx, excludeUuid.toString());
-            }
-            return ps.executeUpdate();
+        return updateAllBalances(sql, a, excludeUuid);
+    }
+
+    /**
+     * Runs one of the bulk balance updates above. With the balance ledger on, dirty balances are
+     * written first and the loaded accounts are dropped afterwards (see {@link BalanceLedger#exclusive}).
+     */
+    private static int updateAllBalances(String sql, double a, UUID excludeUuid) {
+        try {
+            return BalanceLedger.exclusive(() -> {
+                try (Connection c = getConnection();
+                     PreparedStatement ps = c.prepareStatement(sql)) {
+                    int idx = 1;
+                    ps.setBigDecimal(idx++, MoneyUtils.toDb(a));
+                    if (excludeUuid != null) {
+                        ps.setBytes(idx, uuidBytes(excludeUuid));
+                    }
+                    int changed = ps.executeUpdate();
+                    if (changed > 0) EconomyExecutor.run(Leaderboard::load);
+                    return changed;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
         } catch (Exception e) {
             e.printStackTrace();
             return 0;
@@ -565,11 +412,13 @@ public class DatabaseManager {
                      "INSERT INTO economy(uuid, name, balance) VALUES (?, ?, ?)"
              )) {
 
-            st.setString(1, uuid.toString());
+            st.setBytes(1, uuidBytes(uuid));
             st.setString(2, name);
             st.setBigDecimal(3, MoneyUtils.toDb(startBalance));
             st.executeUpdate();
         }
+        PlayerNameDirectory.put(uuid, name);
+        Leaderboard.update(uuid, com.roften.avilixeconomy.util.Money.ofDouble(startBalance));
     }
 
     public static void updatePlayerName(UUID uuid, String name) throws SQLException {
@@ -579,9 +428,10 @@ public class DatabaseManager {
              )) {
 
             st.setString(1, name);
-            st.setString(2, uuid.toString());
+            st.setBytes(2, uuidBytes(uuid));
             st.executeUpdate();
         }
+        PlayerNameDirectory.put(uuid, name);
     }
 
     
@@ -600,7 +450,74 @@ public class DatabaseManager {
         }
     }
 
+    /** {@code balance} is in cents. */
+    public record LoginAccount(long balance, boolean created) {}
+
+    /**
+     * Login bootstrap: returns the stored balance, creating the account or refreshing its name
+     * when needed. A returning player with an unchanged name costs one SELECT; call it off the
+     * server thread (see {@code EconomyEvents.onPlayerJoin}).
+     */
+    public static LoginAccount loginAccount(UUID uuid, String name, long startBalance) throws SQLException {
+        byte[] key = uuidBytes(uuid);
+        try (Connection c = getConnection()) {
+            LoginAccount existing = selectLoginAccount(c, uuid, key, name);
+            if (existing != null) return existing;
+
+            try (PreparedStatement ins = c.prepareStatement("INSERT INTO economy(uuid, name, balance) VALUES (?, ?, ?)")) {
+                ins.setBytes(1, key);
+                ins.setString(2, name);
+                ins.setBigDecimal(3, com.roften.avilixeconomy.util.Money.toDb(startBalance));
+                ins.executeUpdate();
+            } catch (SQLException e) {
+                // Created in between (a payment to this player upserts the row): use that row.
+                if (!isDuplicateKey(e)) throw e;
+                existing = selectLoginAccount(c, uuid, key, name);
+                if (existing == null) throw e;
+                return existing;
+            }
+        }
+        PlayerNameDirectory.put(uuid, name);
+        return new LoginAccount(startBalance, true);
+    }
+
+    /** Existing account (name refreshed if it changed), or null. */
+    private static LoginAccount selectLoginAccount(Connection c, UUID uuid, byte[] key, String name) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT name, balance FROM economy WHERE uuid = ?")) {
+            ps.setBytes(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                long balance = com.roften.avilixeconomy.util.Money.fromDb(rs.getBigDecimal("balance"));
+                if (!name.equals(rs.getString("name"))) {
+                    try (PreparedStatement upd = c.prepareStatement("UPDATE economy SET name = ? WHERE uuid = ?")) {
+                        upd.setString(1, name);
+                        upd.setBytes(2, key);
+                        upd.executeUpdate();
+                    }
+                }
+                PlayerNameDirectory.put(uuid, name);
+                return new LoginAccount(balance, false);
+            }
+        }
+    }
+
+    private static boolean isDuplicateKey(SQLException e) {
+        // SQLState class 23 = integrity constraint violation (MySQL 23000, H2 23505).
+        return e instanceof java.sql.SQLIntegrityConstraintViolationException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+    }
+
 public static void shutdown() {
+        shutdown(AvilixEconomyCommonConfig.DATABASE.connectionTimeoutMs.get());
+    }
+
+    public static void shutdown(long flushTimeoutMs) {
+        // Drain the balance ledger, replay the transaction journal, then flush write-behind queues while the pool is still open.
+        BalanceLedger.stop();
+        DegradedMode.stop();
+        BalanceHistoryWriter.stop(flushTimeoutMs);
+        ShopSalesJournal.stop(flushTimeoutMs);
+        Leaderboard.clear();
         if (dataSource != null) {
             dataSource.close();
             System.out.println("[DB] HikariCP stopped");
@@ -609,28 +526,35 @@ public static void shutdown() {
 
 
 // ======== SHOP SALES QUERY (for GUI history) ========
-public record ShopSaleRow(long createdAtMillis, String tradeType, String counterpartyName, int lots, double totalPrice, double pricePerLot, String itemsSummary) {}
+public record ShopSaleRow(long id, long createdAtMillis, String tradeType, String counterpartyName, int lots, double totalPrice, double pricePerLot, String itemsSummary) {}
 
 public record ShopSalesPage(List<ShopSaleRow> rows, boolean hasMore) {}
 
 /**
- * Fetch last shop sales for a specific shop block (world + pos), ordered newest first.
+ * Keyset cursor for newest-first logs: the (created_at, id) of the last row already shown.
+ * Rows strictly older than the cursor come next, so any page costs the same as the first one.
+ */
+public record LogCursor(long createdAtMillis, long id) {}
+
+/**
+ * Fetch shop sales for a specific shop block (world + pos), ordered newest first,
+ * starting right after {@code after} (null = newest). Uses idx_shop_pos_cursor.
  * Uses limit+1 strategy to determine hasMore for pagination.
  */
-public static ShopSalesPage getShopSalesPage(String worldId, int x, int y, int z, int limit, int offset) {
+public static ShopSalesPage getShopSalesPage(String worldId, int x, int y, int z, int limit, @org.jetbrains.annotations.Nullable LogCursor after) {
     int safeLimit = Math.max(1, Math.min(50, limit));
-    int safeOffset = Math.max(0, offset);
 
     if (dataSource == null) {
         return new ShopSalesPage(List.of(), false);
     }
 
     String sql = """
-            SELECT created_at, trade_type, buyer_name, lots, total_price, price_per_lot, items_json
+            SELECT id, created_at, trade_type, buyer_name, lots, total_price, price_per_lot, items_summary
             FROM shop_sales
             WHERE world = ? AND x = ? AND y = ? AND z = ?
-            ORDER BY id DESC
-            LIMIT ? OFFSET ?
+            """ + (after != null ? " AND (created_at < ? OR (created_at = ? AND id < ?))\n" : "") + """
+            ORDER BY created_at DESC, id DESC
+            LIMIT ?
             """;
 
     List<ShopSaleRow> rows = new ArrayList<>(safeLimit);
@@ -638,25 +562,32 @@ public static ShopSalesPage getShopSalesPage(String worldId, int x, int y, int z
     try (Connection conn = getConnection();
          PreparedStatement ps = conn.prepareStatement(sql)) {
 
-        ps.setString(1, worldId);
-        ps.setInt(2, x);
-        ps.setInt(3, y);
-        ps.setInt(4, z);
-        ps.setInt(5, safeLimit + 1);
-        ps.setInt(6, safeOffset);
+        int idx = 1;
+        ps.setString(idx++, worldId);
+        ps.setInt(idx++, x);
+        ps.setInt(idx++, y);
+        ps.setInt(idx++, z);
+        if (after != null) {
+            java.sql.Timestamp ts = new java.sql.Timestamp(after.createdAtMillis());
+            ps.setTimestamp(idx++, ts);
+            ps.setTimestamp(idx++, ts);
+            ps.setLong(idx++, after.id());
+        }
+        ps.setInt(idx, safeLimit + 1);
 
         try (ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
+                long id = rs.getLong("id");
                 long createdMs = rs.getTimestamp("created_at").toInstant().toEpochMilli();
                 String tradeType = rs.getString("trade_type");
                 String counterparty = rs.getString("buyer_name");
                 int lots = rs.getInt("lots");
                 double total = MoneyUtils.fromDb(rs.getBigDecimal("total_price"));
                 double ppl = MoneyUtils.fromDb(rs.getBigDecimal("price_per_lot"));
-                String itemsJson = rs.getString("items_json");
-                String summary = summarizeItems(itemsJson);
+                String summary = rs.getString("items_summary");
+                if (summary == null || summary.isEmpty()) summary = "-"; // not backfilled yet
 
-                rows.add(new ShopSaleRow(createdMs, tradeType, counterparty, lots, total, ppl, summary));
+                rows.add(new ShopSaleRow(id, createdMs, tradeType, counterparty, lots, total, ppl, summary));
 
                 if (rows.size() >= safeLimit + 1) break;
             }
@@ -675,27 +606,87 @@ public static ShopSalesPage getShopSalesPage(String worldId, int x, int y, int z
     return new ShopSalesPage(rows, hasMore);
 }
 
-	private static final Pattern ITEMS_SUMMARY_PATTERN =
-	        // Example items_json: [{"item":"minecraft:stone","perLot":64,"total":128}, ...]
-	        // Note: in Java strings, backslashes must be escaped, so \" in the string matches a literal quote.
-	        Pattern.compile("\\\"item\\\":\\\"([^\\\\\"]+)\\\".*?\\\"total\\\":(\\d+)", Pattern.DOTALL);
-
-private static String summarizeItems(String itemsJson) {
-    if (itemsJson == null || itemsJson.isBlank() || itemsJson.equals("[]")) return "-";
-    Matcher m = ITEMS_SUMMARY_PATTERN.matcher(itemsJson);
-    StringBuilder sb = new StringBuilder(64);
-    int count = 0;
-    while (m.find()) {
-        if (count > 0) sb.append(", ");
-        sb.append(m.group(1)).append("×").append(m.group(2));
-        count++;
-        if (count >= 3) { // keep it short for GUI
-            if (m.find()) sb.append(", ...");
-            break;
-        }
-    }
-    return count == 0 ? "-" : sb.toString();
-}
+    // Legacy items_json: [{"item":"minecraft:stone","perLot":64,"total":128}, ...]
+    private static final Pattern LEGACY_ITEM_PATTERN =
+            Pattern.compile("\"item\":\"([^\"]+)\"[^}]*?\"perLot\":(\\d+)[^}]*?\"total\":(\\d+)");
+
+    private static final int BACKFILL_CHUNK = 500;
+
+    /**
+     * One-time migration: fills shop_sales_items (and items_summary) for sales written before the
+     * child table existed, by parsing their items_json once. Works downwards from the oldest sale
+     * that already has lines, so it resumes after a restart and is a no-op once done.
+     * Runs as a background step of {@link SchemaMigrator}.
+     *
+     * @return number of migrated sales
+     */
+    static int backfillShopSaleItems(Connection c) throws SQLException {
+        int migrated = 0;
+        long cursor;
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT (SELECT MIN(sale_id) FROM shop_sales_items) AS min_line, (SELECT MAX(id) FROM shop_sales) AS max_sale");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            long minLine = rs.getLong("min_line");
+            cursor = rs.wasNull() ? rs.getLong("max_sale") + 1 : minLine;
+        }
+
+        while (cursor > 1) {
+            List<Long> ids = new ArrayList<>();
+            List<ShopSalesJournal.Sale> sales = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT id, items_json FROM shop_sales WHERE id < ? ORDER BY id DESC LIMIT " + BACKFILL_CHUNK)) {
+                ps.setLong(1, cursor);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong("id"));
+                        sales.add(new ShopSalesJournal.Sale(0L, null, 0, 0, 0, null, null, null, null, null,
+                                null, 0.0, 0, 0.0, parseLegacyItems(rs.getString("items_json"))));
+                    }
+                }
+            }
+            if (ids.isEmpty()) break;
+
+            c.setAutoCommit(false);
+            try (PreparedStatement upd = c.prepareStatement(
+                    "UPDATE shop_sales SET items_summary = ? WHERE id = ? AND items_summary = ''")) {
+                long[] idArr = ids.stream().mapToLong(Long::longValue).toArray();
+                ShopSalesJournal.insertItems(c, idArr, sales);
+                for (int i = 0; i < idArr.length; i++) {
+                    upd.setString(1, ShopSalesJournal.summarize(sales.get(i).items()));
+                    upd.setLong(2, idArr[i]);
+                    upd.addBatch();
+                }
+                upd.executeBatch();
+                c.commit();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+
+            migrated += ids.size();
+            cursor = ids.get(ids.size() - 1);
+        }
+        if (migrated > 0) {
+            com.roften.avilixeconomy.AvilixEconomy.LOGGER.info("shop_sales_items backfill: {} sales migrated", migrated);
+        }
+        return migrated;
+    }
+
+    private static List<ShopSalesJournal.SaleItem> parseLegacyItems(String itemsJson) {
+        if (itemsJson == null || itemsJson.isBlank() || itemsJson.equals("[]")) return List.of();
+        List<ShopSalesJournal.SaleItem> out = new ArrayList<>();
+        Matcher m = LEGACY_ITEM_PATTERN.matcher(itemsJson);
+        while (m.find()) {
+            try {
+                out.add(new ShopSalesJournal.SaleItem(m.group(1), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3))));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return out;
+    }
 
     // =============================
     // Shop shelf render overrides
@@ -744,16 +735,7 @@ private static String summarizeItems(String itemsJson) {
             com.roften.avilixeconomy.shop.render.RenderTransform t
     ) {
         if (dataSource == null) return;
-        String sql = """
-                INSERT INTO shop_render_overrides
-                    (scope, override_key, off_x, off_y, off_z, rot_x, rot_y, rot_z, scale_mul, extra_lift)
-                VALUES
-                    (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-                ON DUPLICATE KEY UPDATE
-                    off_x=VALUES(off_x), off_y=VALUES(off_y), off_z=VALUES(off_z),
-                    rot_x=VALUES(rot_x), rot_y=VALUES(rot_y), rot_z=VALUES(rot_z),
-                    scale_mul=VALUES(scale_mul), extra_lift=VALUES(extra_lift)
-                """;
+        String sql = backend.upsertRenderOverrideSql();
 
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -789,14 +771,195 @@ private static String summarizeItems(String itemsJson) {
         }
     }
 
+    // =============================
+    // Shop registry (offers of all shops, see ShopRegistry)
+    // =============================
+
+    public static List<com.roften.avilixeconomy.shop.market.ShopListing> loadShopListings() {
+        if (dataSource == null) return List.of();
+        String sql = """
+                SELECT world, x, y, z, slot, owner_uuid, owner_name, buy_mode,
+                       item_id, item_name, lot_count, price, stock
+                FROM shop_listings
+                """;
+
+        List<com.roften.avilixeconomy.shop.market.ShopListing> out = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                var pos = new com.roften.avilixeconomy.shop.market.ShopListing.Pos(
+                        rs.getString("world"), rs.getInt("x"), rs.getInt("y"), rs.getInt("z"));
+                out.add(new com.roften.avilixeconomy.shop.market.ShopListing(
+                        pos,
+                        rs.getInt("slot"),
+                        uuidFromBytes(rs.getBytes("owner_uuid")),
+                        rs.getString("owner_name"),
+                        rs.getBoolean("buy_mode"),
+                        rs.getString("item_id"),
+                        rs.getString("item_name"),
+                        rs.getInt("lot_count"),
+                        MoneyUtils.fromDb(rs.getBigDecimal("price")),
+                        rs.getInt("stock")
+                ));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return List.of();
+        }
+        return out;
+    }
+
+    /**
+     * Rewrites the rows of the given shops in one transaction (empty list = shop removed).
+     *
+     * @return false if nothing was written
+     */
+    public static boolean replaceShopListings(
+            java.util.Map<com.roften.avilixeconomy.shop.market.ShopListing.Pos, List<com.roften.avilixeconomy.shop.market.ShopListing>> shops
+    ) {
+        if (dataSource == null || shops.isEmpty()) return false;
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement del = conn.prepareStatement(
+                         "DELETE FROM shop_listings WHERE world = ? AND x = ? AND y = ? AND z = ?");
+                 PreparedStatement ins = conn.prepareStatement("""
+                         INSERT INTO shop_listings
+                             (world, x, y, z, slot, owner_uuid, owner_name, buy_mode,
+                              item_id, item_name, lot_count, price, stock)
+                         VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                         """)) {
+                for (var e : shops.entrySet()) {
+                    var pos = e.getKey();
+                    del.setString(1, pos.world());
+                    del.setInt(2, pos.x());
+                    del.setInt(3, pos.y());
+                    del.setInt(4, pos.z());
+                    del.addBatch();
+                    for (var l : e.getValue()) {
+                        ins.setString(1, pos.world());
+                        ins.setInt(2, pos.x());
+                        ins.setInt(3, pos.y());
+                        ins.setInt(4, pos.z());
+                        ins.setInt(5, l.slot());
+                        ins.setBytes(6, uuidBytes(l.ownerUuid()));
+                        ins.setString(7, l.ownerName());
+                        ins.setBoolean(8, l.buyMode());
+                        ins.setString(9, l.itemId());
+                        ins.setString(10, l.itemName());
+                        ins.setInt(11, l.lotCount());
+                        ins.setBigDecimal(12, MoneyUtils.toDb(l.price()));
+                        ins.setInt(13, l.stock());
+                        ins.addBatch();
+                    }
+                }
+                del.executeBatch();
+                ins.executeBatch();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // =============================
+    // Market stats rollups (hourly buckets, see MarketStats)
+    // =============================
+
+    public static List<com.roften.avilixeconomy.shop.market.MarketStats.Bucket> loadMarketStats(long fromHour) {
+        if (dataSource == null) return List.of();
+        String sql = """
+                SELECT item_id, side, bucket_hour, trades, volume, notional, min_price, max_price, last_price, last_at
+                FROM market_stats_hourly
+                WHERE bucket_hour >= ?
+                """;
+
+        List<com.roften.avilixeconomy.shop.market.MarketStats.Bucket> out = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, fromHour);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    com.roften.avilixeconomy.shop.market.MarketStats.Side side;
+                    try {
+                        side = com.roften.avilixeconomy.shop.market.MarketStats.Side.valueOf(rs.getString("side"));
+                    } catch (IllegalArgumentException ignored) {
+                        continue;
+                    }
+                    out.add(new com.roften.avilixeconomy.shop.market.MarketStats.Bucket(
+                            rs.getString("item_id"),
+                            side,
+                            rs.getLong("bucket_hour"),
+                            rs.getInt("trades"),
+                            rs.getLong("volume"),
+                            rs.getBigDecimal("notional").doubleValue(),
+                            rs.getBigDecimal("min_price").doubleValue(),
+                            rs.getBigDecimal("max_price").doubleValue(),
+                            rs.getBigDecimal("last_price").doubleValue(),
+                            rs.getLong("last_at")
+                    ));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return List.of();
+        }
+        return out;
+    }
+
+    /**
+     * Upserts the given buckets and drops buckets older than {@code retainFromHour}, in one transaction.
+     *
+     * @return false if nothing was written
+     */
+    public static boolean saveMarketStats(List<com.roften.avilixeconomy.shop.market.MarketStats.Bucket> buckets, long retainFromHour) {
+        if (dataSource == null) return false;
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement up = conn.prepareStatement(backend.upsertMarketStatsSql());
+                 PreparedStatement del = conn.prepareStatement("DELETE FROM market_stats_hourly WHERE bucket_hour < ?")) {
+                for (var b : buckets) {
+                    up.setString(1, b.itemId());
+                    up.setString(2, b.side().name());
+                    up.setLong(3, b.hour());
+                    up.setInt(4, b.trades());
+                    up.setLong(5, b.volume());
+                    up.setBigDecimal(6, BigDecimal.valueOf(b.notional()).setScale(2, java.math.RoundingMode.HALF_UP));
+                    up.setBigDecimal(7, BigDecimal.valueOf(b.min()).setScale(4, java.math.RoundingMode.HALF_UP));
+                    up.setBigDecimal(8, BigDecimal.valueOf(b.max()).setScale(4, java.math.RoundingMode.HALF_UP));
+                    up.setBigDecimal(9, BigDecimal.valueOf(b.lastPrice()).setScale(4, java.math.RoundingMode.HALF_UP));
+                    up.setLong(10, b.lastAtMillis());
+                    up.addBatch();
+                }
+                up.executeBatch();
+                del.setLong(1, retainFromHour);
+                del.executeUpdate();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     // ================= Balance history =================
+    // Writes take cents (see util.Money); the read side below stays in Нокс for the GUI.
 
     public static void insertBalanceHistory(
             java.util.UUID playerUuid,
             String playerName,
-            double delta,
-            double balanceBefore,
-            double balanceAfter,
+            long delta,
+            long balanceBefore,
+            long balanceAfter,
             String reason,
             String metaJson,
             java.util.UUID actorUuid,
@@ -810,14 +973,14 @@ private static String summarizeItems(String itemsJson) {
                 """;
         try (Connection c = getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, playerUuid.toString());
+            ps.setBytes(1, uuidBytes(playerUuid));
             ps.setString(2, playerName == null ? "unknown" : playerName);
-            ps.setBigDecimal(3, com.roften.avilixeconomy.util.MoneyUtils.toDb(com.roften.avilixeconomy.util.MoneyUtils.round2(delta)));
-            ps.setBigDecimal(4, com.roften.avilixeconomy.util.MoneyUtils.toDb(com.roften.avilixeconomy.util.MoneyUtils.round2(balanceBefore)));
-            ps.setBigDecimal(5, com.roften.avilixeconomy.util.MoneyUtils.toDb(com.roften.avilixeconomy.util.MoneyUtils.round2(balanceAfter)));
+            ps.setBigDecimal(3, com.roften.avilixeconomy.util.Money.toDb(delta));
+            ps.setBigDecimal(4, com.roften.avilixeconomy.util.Money.toDb(balanceBefore));
+            ps.setBigDecimal(5, com.roften.avilixeconomy.util.Money.toDb(balanceAfter));
             ps.setString(6, (reason == null || reason.isBlank()) ? "UNKNOWN" : reason);
             ps.setString(7, metaJson);
-            ps.setString(8, actorUuid == null ? null : actorUuid.toString());
+            ps.setBytes(8, uuidBytes(actorUuid));
             ps.setString(9, actorName);
             ps.executeUpdate();
         } catch (Exception e) {
@@ -826,40 +989,58 @@ private static String summarizeItems(String itemsJson) {
         }
     }
 
-    public static java.util.concurrent.CompletableFuture<Void> insertBalanceHistoryAsync(
+    /**
+     * Queues a history row for the batched {@link BalanceHistoryWriter}.
+     *
+     * @return false if the row was dropped by backpressure
+     */
+    public static boolean insertBalanceHistoryAsync(
             java.util.UUID playerUuid,
             String playerName,
-            double delta,
-            double balanceBefore,
-            double balanceAfter,
+            long delta,
+            long balanceBefore,
+            long balanceAfter,
             String reason,
             String metaJson,
             java.util.UUID actorUuid,
             String actorName
     ) {
-        return java.util.concurrent.CompletableFuture.runAsync(() -> insertBalanceHistory(
+        if (playerUuid == null) return false;
+        return BalanceHistoryWriter.enqueue(new BalanceHistoryWriter.Entry(
+                System.currentTimeMillis(),
                 playerUuid, playerName, delta, balanceBefore, balanceAfter, reason, metaJson, actorUuid, actorName
         ));
     }
 
-    public static java.util.List<BalanceHistoryRow> getBalanceHistory(java.util.UUID playerUuid, int limit, int offset) {
+    /**
+     * Newest-first balance history of a player, starting right after {@code after} (null = newest).
+     * Keyset over (created_at, id) on idx_player_cursor.
+     */
+    public static java.util.List<BalanceHistoryRow> getBalanceHistory(java.util.UUID playerUuid, int limit,
+                                                                      @org.jetbrains.annotations.Nullable LogCursor after) {
         if (dataSource == null || playerUuid == null) return java.util.Collections.emptyList();
         limit = Math.max(1, Math.min(100, limit));
-        offset = Math.max(0, offset);
 
         String sql = """
                 SELECT id, created_at, player_name, delta, balance_before, balance_after, reason, actor_name
                 FROM economy_balance_history
                 WHERE player_uuid = ?
-                ORDER BY id DESC
-                LIMIT ? OFFSET ?
+                """ + (after != null ? " AND (created_at < ? OR (created_at = ? AND id < ?))\n" : "") + """
+                ORDER BY created_at DESC, id DESC
+                LIMIT ?
                 """;
         java.util.ArrayList<BalanceHistoryRow> out = new java.util.ArrayList<>();
         try (Connection c = getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, playerUuid.toString());
-            ps.setInt(2, limit);
-            ps.setInt(3, offset);
+            int idx = 1;
+            ps.setBytes(idx++, uuidBytes(playerUuid));
+            if (after != null) {
+                java.sql.Timestamp ts = new java.sql.Timestamp(after.createdAtMillis());
+                ps.setTimestamp(idx++, ts);
+                ps.setTimestamp(idx++, ts);
+                ps.setLong(idx++, after.id());
+            }
+            ps.setInt(idx, limit);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
                     out.add(new BalanceHistoryRow(
@@ -879,4 +1060,34 @@ private static String summarizeItems(String itemsJson) {
         }
         return out;
     }
+
+    /**
+     * Cursor that ends the first {@code rows} history rows of a player (null if there are fewer).
+     * Reads only idx_player_cursor (covering), never the rows themselves, so jumping to a deep
+     * page number skips index entries instead of whole history rows.
+     */
+    @org.jetbrains.annotations.Nullable
+    public static LogCursor balanceHistoryCursorAt(java.util.UUID playerUuid, int rows) {
+        if (dataSource == null || playerUuid == null || rows <= 0) return null;
+        String sql = """
+                SELECT created_at, id
+                FROM economy_balance_history
+                WHERE player_uuid = ?
+                ORDER BY created_at DESC, id DESC
+                LIMIT 1 OFFSET ?
+                """;
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setBytes(1, uuidBytes(playerUuid));
+            ps.setInt(2, rows - 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new LogCursor(rs.getTimestamp("created_at").toInstant().toEpochMilli(), rs.getLong("id"));
+                }
+            }
+        } catch (Exception e) {
+            com.roften.avilixeconomy.AvilixEconomy.LOGGER.warn("Failed to seek balance history", e);
+        }
+        return null;
+    }
 }
\ No newline at end of file
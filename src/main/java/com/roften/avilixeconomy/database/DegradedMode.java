@@ -0,0 +1,422 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+import com.roften.avilixeconomy.EconomyData;
+import com.roften.avilixeconomy.config.AvilixEconomyCommonConfig;
+import com.roften.avilixeconomy.util.Money;
+import net.neoforged.fml.loading.FMLPaths;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps balance mutations working while the database is unreachable.
+ *
+ * The first connection failure switches the economy into degraded mode: {@code EconomyData}
+ * validates mutations against its cached balances, appends them to the {@link TransactionJournal}
+ * and updates the cache, without touching the pool (so trades stop waiting for the connection timeout).
+ * A probe on the DB executor retries the connection every {@code probe_interval_ms}; once it succeeds
+ * the journal is replayed in order, each record in its own transaction guarded by
+ * {@code economy_journal_applied}, so a replay interrupted by a crash or a new outage is simply repeated.
+ *
+ * How far the server may run ahead of the database is capped by {@code max_pending} records and
+ * {@code max_degraded_seconds} since the oldest unreplayed record; beyond that mutations fail as before.
+ *
+ * Only connection failures (and lock conflicts) postpone a replay. A record the database refuses for
+ * any other reason is moved to a {@code .rejected} journal next to the main one (same format) and
+ * reported as an error, so one bad record cannot keep the economy degraded forever.
+ */
+public final class DegradedMode {
+
+    private DegradedMode() {}
+
+    private static volatile TransactionJournal journal;
+    /** Records the database refused, opened on the first one. Guarded by DegradedMode.class. */
+    private static TransactionJournal rejects;
+    private static volatile boolean active;
+    private static volatile long activeSinceMillis;
+
+    private static int maxPending = 10_000;
+    private static long maxAheadMs = 30L * 60_000L;
+    private static int probeTicks = 100;
+
+    /** Journaled but not yet replayed, oldest first. Guarded by DegradedMode.class. */
+    private static final List<TransactionJournal.Entry> PENDING = new ArrayList<>();
+
+    private static final AtomicBoolean REPLAYING = new AtomicBoolean();
+    private static final AtomicLong OUTAGES = new AtomicLong();
+    private static final AtomicLong JOURNALED = new AtomicLong();
+    private static final AtomicLong REJECTED = new AtomicLong();
+    private static final AtomicLong REPLAYED = new AtomicLong();
+    private static final AtomicLong QUARANTINED = new AtomicLong();
+
+    /** Opens the journal from the [journal] config section and replays what a previous run left behind. */
+    public static void start() {
+        var cfg = AvilixEconomyCommonConfig.JOURNAL;
+        if (!cfg.enabled.get()) return;
+        start(FMLPaths.GAMEDIR.get().resolve(cfg.file.get()), cfg.fsyncIntervalMs.get(),
+                cfg.maxPending.get(), cfg.maxDegradedSeconds.get(), cfg.probeIntervalMs.get());
+    }
+
+    /** Starts with explicit settings (no config access). The pool must already be open. */
+    public static synchronized void start(Path file, long fsyncIntervalMs, int maxPendingRecords,
+                                          long maxDegradedSeconds, long probeIntervalMs) {
+        if (journal != null) return;
+        maxPending = Math.max(1, maxPendingRecords);
+        maxAheadMs = Math.max(1L, maxDegradedSeconds) * 1000L;
+        probeTicks = (int) Math.max(1L, probeIntervalMs / 50L);
+        try {
+            journal = TransactionJournal.open(file, fsyncIntervalMs);
+            PENDING.addAll(journal.readAll());
+        } catch (IOException e) {
+            journal = null;
+            AvilixEconomy.LOGGER.warn("Transaction journal {} is not available, degraded mode is off", file, e);
+            return;
+        }
+        if (!PENDING.isEmpty()) {
+            AvilixEconomy.LOGGER.warn("Transaction journal: {} records from a previous run, replaying", PENDING.size());
+            active = true;
+            activeSinceMillis = System.currentTimeMillis();
+            // Before any balance is cached; if it fails the probe keeps retrying.
+            replay();
+        }
+    }
+
+    /** Replays what it can (the pool is still open) and closes the journal. Leftovers wait for the next start. */
+    public static void stop() {
+        TransactionJournal j = journal;
+        if (j == null) return;
+        if (active) replay();
+        synchronized (DegradedMode.class) {
+            journal = null;
+            if (!PENDING.isEmpty()) {
+                AvilixEconomy.LOGGER.warn("Transaction journal: {} records not replayed yet, kept in {}", PENDING.size(), j.path());
+            }
+            PENDING.clear();
+            active = false;
+            if (rejects != null) {
+                rejects.close();
+                rejects = null;
+            }
+        }
+        j.close();
+        AvilixEconomy.LOGGER.info(statusLine());
+    }
+
+    /** True while mutations go to the journal instead of the database. */
+    public static boolean isActive() {
+        return active;
+    }
+
+    /** True while journaled records are not in the database yet (a record leaves PENDING only after its commit). */
+    public static boolean hasPending() {
+        synchronized (DegradedMode.class) {
+            return !PENDING.isEmpty();
+        }
+    }
+
+    /**
+     * Called by mutation paths when their DB work failed. A connection-level failure switches
+     * degraded mode on; the return value says whether the operation itself may be retried
+     * through the journal, which is only safe if the pool never handed out a connection
+     * (a failure mid-transaction may or may not have committed).
+     */
+    public static boolean onFailure(Throwable e) {
+        if (journal == null || !isConnectionFailure(e)) return false;
+        activate(e);
+        return isPoolTimeout(e);
+    }
+
+    private static synchronized void activate(Throwable cause) {
+        if (active) return;
+        active = true;
+        activeSinceMillis = System.currentTimeMillis();
+        OUTAGES.incrementAndGet();
+        AvilixEconomy.LOGGER.warn("Database unreachable, economy switched to degraded mode (journal {}): {}",
+                journal.path(), cause.toString());
+    }
+
+    /**
+     * Appends a mutation. The caller has already validated it against the cached balances and
+     * holds its own lock, so records are journaled in the order they were applied in memory.
+     *
+     * @return false if the journal is off, full, too far ahead of the database or not writable
+     */
+    public static synchronized boolean append(TransactionJournal.Entry e) {
+        TransactionJournal j = journal;
+        if (j == null) return false;
+        if (PENDING.size() >= maxPending
+                || (!PENDING.isEmpty() && e.createdAtMillis() - PENDING.get(0).createdAtMillis() > maxAheadMs)) {
+            if (REJECTED.getAndIncrement() % 100 == 0) {
+                AvilixEconomy.LOGGER.warn("Transaction journal limit reached ({} pending), balance changes are refused until the database is back",
+                        PENDING.size());
+            }
+            return false;
+        }
+        try {
+            j.append(e);
+        } catch (IOException ex) {
+            REJECTED.incrementAndGet();
+            AvilixEconomy.LOGGER.warn("Failed to append to transaction journal", ex);
+            return false;
+        }
+        PENDING.add(e);
+        JOURNALED.incrementAndGet();
+        if (!active) {
+            // Raced with the end of a replay: stay degraded until this record is replayed too.
+            active = true;
+            activeSinceMillis = System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    /** Server tick: batched fsync and, while degraded, a periodic connection probe + replay. */
+    public static void tick(int tickCount) {
+        TransactionJournal j = journal;
+        if (j == null) return;
+        try {
+            j.syncIfDue();
+        } catch (IOException e) {
+            AvilixEconomy.LOGGER.warn("Failed to sync transaction journal", e);
+        }
+        if (!active || tickCount % probeTicks != 0) return;
+        if (!REPLAYING.compareAndSet(false, true)) return;
+        // whenComplete also covers a rejected submission (executor full), where replay() never runs.
+        EconomyExecutor.run(DegradedMode::replay).whenComplete((v, err) -> REPLAYING.set(false));
+    }
+
+    /**
+     * Probes the database and replays all pending records in order. Blocking (DB executor or shutdown).
+     * Stops at the first connection failure or lock conflict; the remaining records are retried by the
+     * next probe. A record failing for any other reason is quarantined and the replay goes on.
+     */
+    static void replay() {
+        Set<UUID> touched = new HashSet<>();
+        try (Connection c = DatabaseManager.getConnection()) {
+            if (!c.isValid(2)) return;
+            while (true) {
+                List<TransactionJournal.Entry> batch;
+                synchronized (DegradedMode.class) {
+                    if (PENDING.isEmpty()) {
+                        if (journal != null) journal.truncate();
+                        if (active) {
+                            AvilixEconomy.LOGGER.info("Database reachable again, journal replayed after {} s",
+                                    (System.currentTimeMillis() - activeSinceMillis) / 1000L);
+                        }
+                        active = false;
+                        break;
+                    }
+                    batch = new ArrayList<>(PENDING);
+                }
+                int done = 0;
+                try {
+                    for (TransactionJournal.Entry e : batch) {
+                        try {
+                            apply(c, e);
+                            for (TransactionJournal.Leg leg : e.legs()) touched.add(leg.account());
+                            REPLAYED.incrementAndGet();
+                        } catch (SQLException ex) {
+                            if (isConnectionFailure(ex) || DatabaseManager.backend().isRetryable(ex)) throw ex;
+                            quarantine(e, ex);
+                        }
+                        done++;
+                    }
+                } finally {
+                    synchronized (DegradedMode.class) {
+                        PENDING.subList(0, done).clear();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            if (isConnectionFailure(e)) {
+                AvilixEconomy.LOGGER.debug("Journal replay postponed: {}", e.toString());
+            } else {
+                AvilixEconomy.LOGGER.warn("Journal replay postponed", e);
+            }
+            return;
+        }
+        refreshCached(touched);
+    }
+
+    /**
+     * Moves a record the database refused to the {@code .rejected} journal. If even that fails the
+     * record stays pending (it must not be lost), and the replay is postponed.
+     */
+    private static void quarantine(TransactionJournal.Entry e, SQLException cause) throws SQLException {
+        synchronized (DegradedMode.class) {
+            try {
+                if (rejects == null) {
+                    Path main = journal != null ? journal.path() : null;
+                    if (main == null) throw new IOException("journal is closed");
+                    rejects = TransactionJournal.open(main.resolveSibling(main.getFileName() + ".rejected"), 0L);
+                }
+                rejects.append(e);
+            } catch (IOException io) {
+                AvilixEconomy.LOGGER.error("Journal replay: record {} was refused and could not be quarantined, replay stopped", e.id(), io);
+                throw cause;
+            }
+            QUARANTINED.incrementAndGet();
+            AvilixEconomy.LOGGER.error("Journal replay: record {} refused by the database, moved to {}",
+                    e.id(), rejects.path(), cause);
+        }
+    }
+
+    /** Applies one record unless {@code economy_journal_applied} says it already was. */
+    private static void apply(Connection c, TransactionJournal.Entry e) throws SQLException {
+        byte[] id = DatabaseManager.uuidBytes(e.id());
+        boolean auto = c.getAutoCommit();
+        c.setAutoCommit(false);
+        List<BalanceHistoryWriter.Entry> history = new ArrayList<>(e.legs().size());
+        try {
+            try (PreparedStatement ps = c.prepareStatement("SELECT id FROM economy_journal_applied WHERE id = ?")) {
+                ps.setBytes(1, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        c.rollback();
+                        return;
+                    }
+                }
+            }
+
+            // Lock every account once, in uuid order (same order as TransferEngine).
+            TreeMap<String, UUID> accounts = new TreeMap<>();
+            for (TransactionJournal.Leg leg : e.legs()) accounts.put(leg.account().toString(), leg.account());
+            Map<UUID, Long> balance = new HashMap<>();
+            Map<UUID, String> names = new HashMap<>();
+            try (PreparedStatement sel = c.prepareStatement("SELECT name, balance FROM economy WHERE uuid = ? FOR UPDATE")) {
+                for (UUID u : accounts.values()) {
+                    sel.setBytes(1, DatabaseManager.uuidBytes(u));
+                    try (ResultSet rs = sel.executeQuery()) {
+                        if (rs.next()) {
+                            names.put(u, rs.getString("name"));
+                            balance.put(u, Money.fromDb(rs.getBigDecimal("balance")));
+                        }
+                    }
+                }
+            }
+            Set<UUID> existing = new HashSet<>(balance.keySet());
+
+            for (TransactionJournal.Leg leg : e.legs()) {
+                UUID u = leg.account();
+                long before = balance.getOrDefault(u, 0L);
+                long after = leg.set() ? Math.max(0L, leg.cents()) : Math.max(0L, before + leg.cents());
+                if (!leg.set() && before + leg.cents() < 0) {
+                    AvilixEconomy.LOGGER.warn("Journal replay {}: {} has {} in the database, debit of {} clamped to 0",
+                            e.id(), u, Money.format(before), Money.format(-leg.cents()));
+                }
+                balance.put(u, after);
+                if (leg.name() != null) names.putIfAbsent(u, leg.name());
+                if (after != before) {
+                    String name = names.get(u) != null ? names.get(u) : "unknown";
+                    history.add(new BalanceHistoryWriter.Entry(e.createdAtMillis(), u, name, after - before, before, after,
+                            leg.reason(), e.metaJson(), e.actorUuid(), e.actorName()));
+                }
+            }
+
+            try (PreparedStatement upd = c.prepareStatement("UPDATE economy SET balance = ? WHERE uuid = ?");
+                 PreparedStatement ins = c.prepareStatement(DatabaseManager.backend().upsertAccountSql())) {
+                for (UUID u : accounts.values()) {
+                    if (existing.contains(u)) {
+                        upd.setBigDecimal(1, Money.toDb(balance.get(u)));
+                        upd.setBytes(2, DatabaseManager.uuidBytes(u));
+                        upd.executeUpdate();
+                    } else {
+                        ins.setBytes(1, DatabaseManager.uuidBytes(u));
+                        ins.setString(2, names.get(u) != null ? names.get(u) : "unknown");
+                        ins.setBigDecimal(3, Money.toDb(balance.get(u)));
+                        ins.executeUpdate();
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO economy_journal_applied (id, applied_at) VALUES (?, ?)")) {
+                ps.setBytes(1, id);
+                ps.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                ps.executeUpdate();
+            }
+            c.commit();
+        } catch (SQLException ex) {
+            try {
+                c.rollback();
+            } catch (SQLException ignored) {
+            }
+            throw ex;
+        } finally {
+            c.setAutoCommit(auto);
+        }
+        // History keeps the time the change happened in game, not the replay time.
+        for (BalanceHistoryWriter.Entry h : history) BalanceHistoryWriter.enqueue(h);
+    }
+
+    /** Cached balances of replayed accounts are re-read (credits to uncached or clamped accounts). */
+    private static void refreshCached(Set<UUID> touched) {
+        if (touched.isEmpty()) return;
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT balance FROM economy WHERE uuid = ?")) {
+            for (UUID u : touched) {
+                Long seen = EconomyData.peekCache(u);
+                if (seen == null) continue;
+                ps.setBytes(1, DatabaseManager.uuidBytes(u));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) EconomyData.refreshCache(u, seen, Money.fromDb(rs.getBigDecimal("balance")));
+                }
+                EconomyExecutor.runOnServer(() -> EconomyData.sendBalanceUpdateToPlayer(u));
+            }
+        } catch (Exception e) {
+            AvilixEconomy.LOGGER.warn("Failed to refresh balances after journal replay", e);
+        }
+    }
+
+    private static boolean isConnectionFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException
+                    || t instanceof SQLNonTransientConnectionException
+                    || t instanceof SQLRecoverableException) return true;
+            if (t instanceof SQLException s && s.getSQLState() != null && s.getSQLState().startsWith("08")) return true;
+        }
+        return false;
+    }
+
+    /** Hikari could not hand out a connection within connection_timeout_ms: nothing reached the database. */
+    private static boolean isPoolTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException) return true;
+        }
+        return false;
+    }
+
+    public static String statusLine() {
+        int pending;
+        synchronized (DegradedMode.class) {
+            pending = PENDING.size();
+        }
+        String state = journal == null ? "off"
+                : active ? "DEGRADED for " + (System.currentTimeMillis() - activeSinceMillis) / 1000L + " s"
+                : "normal";
+        return "Journal: " + state + " pending=" + pending + "/" + maxPending
+                + " journaled=" + JOURNALED.get()
+                + " replayed=" + REPLAYED.get()
+                + " quarantined=" + QUARANTINED.get()
+                + " rejected=" + REJECTED.get()
+                + " outages=" + OUTAGES.get();
+    }
+}
@@ -0,0 +1,230 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated executor for blocking SQL work.
+ *
+ * The server tick thread must never wait on MySQL: anything that touches Hikari is
+ * submitted here, and results that need game state are posted back via
+ * {@link #runOnServer(Runnable)} and executed from the server tick.
+ *
+ * Workers are bounded (sized to the Hikari pool) and so is the queue; what happens to a task
+ * that does not fit is decided by {@link RejectionPolicy}. Queue wait and run time of every task
+ * are measured, see {@link #stats()}.
+ *
+ * Nothing runs before {@link #start} or after {@link #shutdown}: such submissions fail with
+ * RejectedExecutionException, the same way as a full queue.
+ */
+public final class EconomyExecutor {
+
+    private EconomyExecutor() {}
+
+    public enum RejectionPolicy {
+        /**
+         * The submitting thread runs the task itself (nothing is lost, but it blocks the caller).
+         * Never applies to the server thread: its submissions are rejected as with {@link #ABORT}.
+         */
+        CALLER_RUNS,
+        /** The returned future fails with RejectedExecutionException. */
+        ABORT
+    }
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    private static volatile ThreadPoolExecutor pool;
+    private static volatile boolean virtual;
+
+    /** Tasks that must run on the server thread (drained every tick). */
+    private static final ConcurrentLinkedQueue<Runnable> SERVER_TASKS = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicLong SUBMITTED = new AtomicLong();
+    private static final AtomicLong STARTED = new AtomicLong();
+    private static final AtomicLong COMPLETED = new AtomicLong();
+    private static final AtomicLong FAILED = new AtomicLong();
+    private static final AtomicLong REJECTED = new AtomicLong();
+    private static final AtomicLong WAIT_NANOS = new AtomicLong();
+    private static final AtomicLong RUN_NANOS = new AtomicLong();
+    private static final AtomicLong MAX_WAIT_NANOS = new AtomicLong();
+    private static final AtomicLong MAX_RUN_NANOS = new AtomicLong();
+
+    public record Stats(int threads, int active, int queued, int queueCapacity, boolean virtualThreads,
+                        long submitted, long completed, long failed, long rejected,
+                        double avgWaitMs, double maxWaitMs, double avgRunMs, double maxRunMs) {}
+
+    /** Starts (or restarts) the DB executor. Sized to the Hikari pool so workers never queue on connections. */
+    public static void start(int threads) {
+        start(threads, DEFAULT_QUEUE_CAPACITY, false, RejectionPolicy.ABORT);
+    }
+
+    public static synchronized void start(int threads, int queueCapacity, boolean virtualThreads, RejectionPolicy policy) {
+        ThreadPoolExecutor old = pool;
+        pool = create(threads, queueCapacity, virtualThreads, policy);
+        virtual = virtualThreads;
+        // A restart must not keep the old settings: the old pool only finishes what it already accepted.
+        if (old != null) old.shutdown();
+        AvilixEconomy.LOGGER.info("Economy DB executor: {} {} threads, queue {}, on overflow {}",
+                pool.getMaximumPoolSize(), virtualThreads ? "virtual" : "platform", queueCapacity, policy);
+    }
+
+    private static ThreadPoolExecutor create(int threads, int queueCapacity, boolean virtualThreads, RejectionPolicy policy) {
+        int n = Math.max(1, threads);
+        RejectedExecutionHandler abort = new ThreadPoolExecutor.AbortPolicy();
+        RejectedExecutionHandler callerRuns = new ThreadPoolExecutor.CallerRunsPolicy();
+        // Blocking JDBC work must never land on the server thread, whatever the policy says.
+        RejectedExecutionHandler onReject = policy == RejectionPolicy.ABORT
+                ? abort
+                : (r, executor) -> (isServerThread() ? abort : callerRuns).rejectedExecution(r, executor);
+        ThreadPoolExecutor p = new ThreadPoolExecutor(n, n, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), threadFactory(virtualThreads),
+                (r, executor) -> {
+                    REJECTED.incrementAndGet();
+                    onReject.rejectedExecution(r, executor);
+                });
+        p.allowCoreThreadTimeOut(true);
+        return p;
+    }
+
+    private static boolean isServerThread() {
+        net.minecraft.server.MinecraftServer server = net.neoforged.neoforge.server.ServerLifecycleHooks.getCurrentServer();
+        return server != null && server.isSameThread();
+    }
+
+    private static ThreadFactory threadFactory(boolean virtualThreads) {
+        // Virtual workers are still capped by the pool size: the limit is the Hikari pool, not threads.
+        if (virtualThreads) return Thread.ofVirtual().name("AvilixEconomy-DB-v", 1).factory();
+        AtomicInteger counter = new AtomicInteger(1);
+        return r -> {
+            Thread t = new Thread(r, "AvilixEconomy-DB-" + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static ThreadPoolExecutor pool() {
+        ThreadPoolExecutor p = pool;
+        if (p == null || p.isShutdown()) {
+            REJECTED.incrementAndGet();
+            throw new RejectedExecutionException("Economy DB executor is not running");
+        }
+        return p;
+    }
+
+    /** Runs blocking DB work off the server thread. */
+    public static <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            CompletableFuture<T> future = CompletableFuture.supplyAsync(measured(task), pool());
+            // Counted only once the pool took the task: rejected submissions show up under "rejected".
+            SUBMITTED.incrementAndGet();
+            return future;
+        } catch (RejectedExecutionException e) {
+            // ABORT policy (or shutdown): report through the future like any other DB failure.
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /** Runs blocking DB work off the server thread (fire-and-forget). */
+    public static CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private static <T> Supplier<T> measured(Supplier<T> task) {
+        long queuedAt = System.nanoTime();
+        return () -> {
+            long started = System.nanoTime();
+            STARTED.incrementAndGet();
+            record(WAIT_NANOS, MAX_WAIT_NANOS, started - queuedAt);
+            try {
+                T result = task.get();
+                COMPLETED.incrementAndGet();
+                return result;
+            } catch (RuntimeException | Error e) {
+                FAILED.incrementAndGet();
+                throw e;
+            } finally {
+                record(RUN_NANOS, MAX_RUN_NANOS, System.nanoTime() - started);
+            }
+        };
+    }
+
+    private static void record(AtomicLong total, AtomicLong max, long nanos) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /** Posts a task to be executed on the server thread during the next tick. */
+    public static void runOnServer(Runnable task) {
+        if (task != null) SERVER_TASKS.add(task);
+    }
+
+    /** Executes all queued server-thread tasks. Must be called from the server thread. */
+    public static void drainServerTasks() {
+        Runnable r;
+        while ((r = SERVER_TASKS.poll()) != null) {
+            try {
+                r.run();
+            } catch (Throwable t) {
+                AvilixEconomy.LOGGER.warn("Economy server task failed", t);
+            }
+        }
+    }
+
+    /** Queue depth, busy workers and task latency since start. */
+    public static Stats stats() {
+        ThreadPoolExecutor p = pool;
+        long done = COMPLETED.get() + FAILED.get();
+        return new Stats(
+                p == null ? 0 : p.getMaximumPoolSize(),
+                p == null ? 0 : p.getActiveCount(),
+                p == null ? 0 : p.getQueue().size(),
+                p == null ? 0 : p.getQueue().size() + p.getQueue().remainingCapacity(),
+                p != null && virtual,
+                SUBMITTED.get(), COMPLETED.get(), FAILED.get(), REJECTED.get(),
+                WAIT_NANOS.get() / 1e6 / Math.max(1L, STARTED.get()), MAX_WAIT_NANOS.get() / 1e6,
+                RUN_NANOS.get() / 1e6 / Math.max(1L, done), MAX_RUN_NANOS.get() / 1e6);
+    }
+
+    public static String statsLine() {
+        Stats s = stats();
+        return String.format(java.util.Locale.ROOT,
+                "DB executor: threads=%d%s active=%d queued=%d/%d submitted=%d completed=%d failed=%d rejected=%d"
+                        + " wait avg/max=%.1f/%.1f ms run avg/max=%.1f/%.1f ms",
+                s.threads(), s.virtualThreads() ? " (virtual)" : "", s.active(), s.queued(), s.queueCapacity(),
+                s.submitted(), s.completed(), s.failed(), s.rejected(),
+                s.avgWaitMs(), s.maxWaitMs(), s.avgRunMs(), s.maxRunMs());
+    }
+
+    /** Stops the executor, waiting up to {@code timeoutMs} for running DB work. */
+    public static synchronized void shutdown(long timeoutMs) {
+        ThreadPoolExecutor p = pool;
+        pool = null;
+        if (p == null) return;
+        p.shutdown();
+        try {
+            if (!p.awaitTermination(Math.max(0L, timeoutMs), TimeUnit.MILLISECONDS)) {
+                AvilixEconomy.LOGGER.warn("Economy DB executor did not finish in {} ms", timeoutMs);
+                p.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            p.shutdownNow();
+        }
+        drainServerTasks();
+        AvilixEconomy.LOGGER.info(statsLine());
+    }
+}
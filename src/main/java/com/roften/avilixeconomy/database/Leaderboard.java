@@ -0,0 +1,133 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+import com.roften.avilixeconomy.util.Money;
+
+import java.util.*;
+
+/**
+ * In-memory balance ranking of every account in the economy table (for /eco top).
+ *
+ * Loaded once at startup with a keyset scan and then kept current by every balance write
+ * that goes through {@code EconomyData} / {@link DatabaseManager}, so top pages never run SQL.
+ * Order is balance DESC, uuid DESC - the same as {@link DatabaseManager#getBalancesTopAfter}.
+ */
+public final class Leaderboard {
+
+    private Leaderboard() {}
+
+    /** Balance in cents. */
+    private record Entry(long balance, String uuid) {}
+
+    private static final Comparator<Entry> ORDER =
+            Comparator.comparingLong(Entry::balance).reversed().thenComparing(Entry::uuid, Comparator.reverseOrder());
+
+    private static final int LOAD_CHUNK = 1000;
+
+    private static final TreeSet<Entry> RANKED = new TreeSet<>(ORDER);
+    private static final Map<String, Entry> BY_UUID = new HashMap<>();
+    // Writes that happened while a reload was reading the table; applied on top of it.
+    private static Map<String, Long> pendingDuringLoad;
+
+    private static volatile boolean loaded;
+
+    /** (Re)loads the ranking from the economy table. Safe to call while balances change. */
+    public static void load() {
+        synchronized (Leaderboard.class) {
+            pendingDuringLoad = new HashMap<>();
+        }
+
+        Map<String, Long> fresh = new HashMap<>();
+        boolean ok = true;
+        try {
+            DatabaseManager.BalanceRow cursor = null;
+            while (true) {
+                List<DatabaseManager.BalanceRow> chunk = DatabaseManager.getBalancesTopAfter(cursor, LOAD_CHUNK, null);
+                for (var row : chunk) fresh.put(row.uuid(), Money.ofDouble(row.balance()));
+                if (chunk.size() < LOAD_CHUNK) break;
+                cursor = chunk.get(chunk.size() - 1);
+            }
+        } catch (Exception e) {
+            ok = false;
+            AvilixEconomy.LOGGER.warn("Failed to load balance leaderboard", e);
+        }
+
+        synchronized (Leaderboard.class) {
+            Map<String, Long> pending = pendingDuringLoad;
+            pendingDuringLoad = null;
+            if (!ok) {
+                loaded = false;
+                return;
+            }
+            fresh.putAll(pending);
+            RANKED.clear();
+            BY_UUID.clear();
+            for (var e : fresh.entrySet()) {
+                Entry entry = new Entry(e.getValue(), e.getKey());
+                RANKED.add(entry);
+                BY_UUID.put(e.getKey(), entry);
+            }
+            loaded = true;
+        }
+        AvilixEconomy.LOGGER.info("Balance leaderboard loaded: {} accounts", fresh.size());
+    }
+
+    /** True once the full table was loaded (pages are then authoritative). */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Records the current balance (cents) of an account. O(log n). */
+    public static synchronized void update(UUID uuid, long bal) {
+        if (uuid == null) return;
+        String key = uuid.toString();
+        if (pendingDuringLoad != null) pendingDuringLoad.put(key, bal);
+
+        Entry old = BY_UUID.get(key);
+        if (old != null) {
+            if (old.balance() == bal) return;
+            RANKED.remove(old);
+        }
+        Entry entry = new Entry(bal, key);
+        RANKED.add(entry);
+        BY_UUID.put(key, entry);
+    }
+
+    /**
+     * Page of the ranking. Walks the in-memory tree, no SQL.
+     * Names come from {@link PlayerNameDirectory}.
+     */
+    public static synchronized DatabaseManager.BalancesPage page(int limit, int offset, UUID excludeUuid) {
+        int safeLimit = Math.max(1, Math.min(50, limit));
+        int safeOffset = Math.max(0, offset);
+        String exclude = excludeUuid == null ? null : excludeUuid.toString();
+
+        List<DatabaseManager.BalanceRow> rows = new ArrayList<>(safeLimit);
+        int skipped = 0;
+        for (Entry e : RANKED) {
+            if (e.uuid().equals(exclude)) continue;
+            if (skipped < safeOffset) {
+                skipped++;
+                continue;
+            }
+            if (rows.size() >= safeLimit) return new DatabaseManager.BalancesPage(rows, true);
+            rows.add(new DatabaseManager.BalanceRow(e.uuid(), nameOf(e.uuid()), Money.toDouble(e.balance())));
+        }
+        return new DatabaseManager.BalancesPage(rows, false);
+    }
+
+    public static synchronized void clear() {
+        RANKED.clear();
+        BY_UUID.clear();
+        loaded = false;
+    }
+
+    private static String nameOf(String uuid) {
+        try {
+            String name = PlayerNameDirectory.nameOf(UUID.fromString(uuid));
+            return name != null ? name : "unknown";
+        } catch (IllegalArgumentException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory UUID &lt;-&gt; name directory for every account in the economy table.
+ *
+ * Loaded once at startup and kept current on login and on every name write,
+ * so labelling history rows or resolving offline players by name never hits SQL.
+ * Name lookup is case-insensitive.
+ */
+public final class PlayerNameDirectory {
+
+    private PlayerNameDirectory() {}
+
+    private static final Map<UUID, String> BY_UUID = new ConcurrentHashMap<>();
+    private static final Map<String, UUID> BY_NAME = new ConcurrentHashMap<>();
+
+    private static volatile boolean loaded;
+
+    /** Loads all known names from the economy table. */
+    public static void load() {
+        BY_UUID.clear();
+        BY_NAME.clear();
+        int n = 0;
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT uuid, name FROM economy")) {
+            ps.setFetchSize(1000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    try {
+                        put(DatabaseManager.uuidFromBytes(rs.getBytes("uuid")), rs.getString("name"));
+                        n++;
+                    } catch (IllegalArgumentException ignored) {
+                    }
+                }
+            }
+            loaded = true;
+            AvilixEconomy.LOGGER.info("Player name directory loaded: {} accounts", n);
+        } catch (Exception e) {
+            loaded = false;
+            AvilixEconomy.LOGGER.warn("Failed to load player name directory", e);
+        }
+    }
+
+    /** True once the full table was loaded (lookups are then authoritative). */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Records the current name of an account. Placeholder names ("unknown", blank) are ignored. */
+    public static synchronized void put(UUID uuid, String name) {
+        if (uuid == null || name == null || name.isBlank() || "unknown".equals(name)) return;
+        String old = BY_UUID.put(uuid, name);
+        if (old != null && !old.equalsIgnoreCase(name)) {
+            BY_NAME.remove(key(old), uuid);
+        }
+        BY_NAME.put(key(name), uuid);
+    }
+
+    /** @return last known name, or null. */
+    public static String nameOf(UUID uuid) {
+        return uuid == null ? null : BY_UUID.get(uuid);
+    }
+
+    /** Case-insensitive lookup by last known name. */
+    public static UUID uuidOf(String name) {
+        if (name == null || name.isBlank()) return null;
+        return BY_NAME.get(key(name));
+    }
+
+    public static int size() {
+        return BY_UUID.size();
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,167 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+import com.roften.avilixeconomy.database.backend.SchemaMigration;
+import com.roften.avilixeconomy.database.backend.StorageBackend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ordered schema migrations with a {@code schema_version} table.
+ *
+ * Startup reads the applied versions with one query; an up-to-date database costs nothing else.
+ * Pending startup migrations run in order right away, pending background ones are kept for
+ * {@link #runBackground()} so a slow index build or backfill does not hold the server start.
+ */
+public final class SchemaMigrator {
+
+    private SchemaMigrator() {}
+
+    private static final List<SchemaMigration> PENDING_BACKGROUND = new ArrayList<>();
+
+    /** Engine-independent migrations, run after the backend ones. */
+    private static List<SchemaMigration> common(StorageBackend backend) {
+        return List.of(
+                SchemaMigration.startup("common-001", "shop_sales_log views", SchemaMigrator::createLogViews),
+                SchemaMigration.background("common-002", "shop_sales_items backfill",
+                        DatabaseManager::backfillShopSaleItems),
+                SchemaMigration.startup("common-003", "economy_accounts / balance_history_log views",
+                        c -> createUuidViews(c, backend)),
+                SchemaMigration.startup("common-004", "economy_journal_applied", SchemaMigrator::createJournalApplied)
+        );
+    }
+
+    /** Applies pending startup migrations; background ones are queued. */
+    public static synchronized void migrate(StorageBackend backend) throws SQLException {
+        List<SchemaMigration> all = new ArrayList<>(backend.migrations());
+        all.addAll(common(backend));
+
+        PENDING_BACKGROUND.clear();
+        try (Connection c = DatabaseManager.getConnection()) {
+            Set<String> applied = appliedVersions(c);
+            int ran = 0;
+            for (SchemaMigration m : all) {
+                if (applied.contains(m.version())) continue;
+                if (m.background()) {
+                    PENDING_BACKGROUND.add(m);
+                    continue;
+                }
+                apply(c, m);
+                ran++;
+            }
+            if (ran > 0 || !PENDING_BACKGROUND.isEmpty()) {
+                AvilixEconomy.LOGGER.info("Schema: {} migrations applied, {} queued for background", ran, PENDING_BACKGROUND.size());
+            }
+        }
+    }
+
+    /**
+     * Runs queued background migrations in order (DB executor). Stops at the first failure;
+     * the failed step and the ones after it are retried on the next start.
+     */
+    public static void runBackground() {
+        List<SchemaMigration> todo;
+        synchronized (SchemaMigrator.class) {
+            todo = new ArrayList<>(PENDING_BACKGROUND);
+            PENDING_BACKGROUND.clear();
+        }
+        if (todo.isEmpty()) return;
+
+        try (Connection c = DatabaseManager.getConnection()) {
+            for (SchemaMigration m : todo) {
+                apply(c, m);
+            }
+        } catch (Exception e) {
+            AvilixEconomy.LOGGER.warn("Schema: background migration failed, will retry on next start", e);
+        }
+    }
+
+    private static void apply(Connection c, SchemaMigration m) throws SQLException {
+        long started = System.currentTimeMillis();
+        AvilixEconomy.LOGGER.info("Schema: applying {} ({})", m.version(), m.description());
+        m.step().apply(c);
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+            ps.setString(1, m.version());
+            ps.setString(2, m.description());
+            ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            ps.executeUpdate();
+        }
+        AvilixEconomy.LOGGER.info("Schema: {} done in {} ms", m.version(), System.currentTimeMillis() - started);
+    }
+
+    private static Set<String> appliedVersions(Connection c) throws SQLException {
+        Set<String> out = new HashSet<>();
+        try (PreparedStatement ps = c.prepareStatement("SELECT version FROM schema_version");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(rs.getString(1));
+            return out;
+        } catch (SQLException missing) {
+            // First start with the migration runner: create the table, everything is pending.
+            try (PreparedStatement ps = c.prepareStatement("""
+                    CREATE TABLE IF NOT EXISTS schema_version (
+                        version VARCHAR(64) NOT NULL PRIMARY KEY,
+                        description VARCHAR(255) NOT NULL,
+                        applied_at TIMESTAMP NOT NULL
+                    )
+                """)) {
+                ps.executeUpdate();
+            }
+            return out;
+        }
+    }
+
+    /** Convenience views without UUIDs: SELECT * FROM shop_sales_log (and _sell / _buy). */
+    private static void createLogViews(Connection c) throws SQLException {
+        String columns = """
+                    id,
+                    created_at,
+                    world,
+                    x, y, z,
+                    block_id AS block_name,
+                    owner_name AS owner,
+                    buyer_name AS buyer,
+                    price_per_lot,
+                    lots,
+                    total_price,
+                    items_json
+                """;
+        exec(c, "CREATE OR REPLACE VIEW shop_sales_log AS SELECT " + columns + " FROM shop_sales");
+        exec(c, "CREATE OR REPLACE VIEW shop_sales_log_sell AS SELECT " + columns + " FROM shop_sales WHERE trade_type = 'SELL'");
+        exec(c, "CREATE OR REPLACE VIEW shop_sales_log_buy AS SELECT " + columns + " FROM shop_sales WHERE trade_type = 'BUY'");
+    }
+
+    /** uuid columns are BINARY(16); these views show them as text for manual SQL. */
+    private static void createUuidViews(Connection c, StorageBackend backend) throws SQLException {
+        exec(c, "CREATE OR REPLACE VIEW economy_accounts AS SELECT " +
+                backend.uuidTextSql("uuid") + " AS uuid, name, balance FROM economy");
+        exec(c, "CREATE OR REPLACE VIEW balance_history_log AS SELECT id, created_at, " +
+                backend.uuidTextSql("player_uuid") + " AS player_uuid, player_name, delta, balance_before, balance_after, " +
+                "reason, meta_json, " + backend.uuidTextSql("actor_uuid") + " AS actor_uuid, actor_name " +
+                "FROM economy_balance_history");
+    }
+
+    /** Ids of replayed transaction journal records (see DegradedMode), so a replay can be repeated safely. */
+    private static void createJournalApplied(Connection c) throws SQLException {
+        exec(c, """
+                    CREATE TABLE IF NOT EXISTS economy_journal_applied (
+                        id BINARY(16) NOT NULL PRIMARY KEY,
+                        applied_at TIMESTAMP NOT NULL
+                    )
+                """);
+    }
+
+    private static void exec(Connection c, String sql) throws SQLException {
+        try (PreparedStatement st = c.prepareStatement(sql)) {
+            st.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.config.AvilixEconomyCommonConfig;
+import com.roften.avilixeconomy.util.MoneyUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Group-committed journal for shop_sales.
+ *
+ * Sales are collected in memory and committed in one transaction per batch (multi-row INSERT),
+ * so index maintenance and the commit are paid once per batch instead of once per sale.
+ * The item lines of every sale go to shop_sales_items in the same transaction.
+ */
+public final class ShopSalesJournal extends BatchWriter<ShopSalesJournal.Sale> {
+
+    public record Sale(long createdAtMillis, String worldId, int x, int y, int z, String blockId,
+                       UUID ownerUuid, String ownerName, UUID buyerUuid, String buyerName,
+                       String tradeType, double pricePerLot, int lots, double totalPrice, List<SaleItem> items) {}
+
+    /** One item line of a sale: {@code total} = {@code perLot} * lots. */
+    public record SaleItem(String itemId, int perLot, int total) {}
+
+    private static final int COLUMNS = 16;
+    // Stored for a missing owner/buyer (the columns are NOT NULL).
+    private static final UUID NIL_UUID = new UUID(0L, 0L);
+
+    private static volatile ShopSalesJournal instance;
+
+    private ShopSalesJournal(int capacity, int batchSize, long flushIntervalMs,
+                             OverflowPolicy policy, long offerTimeoutMs) {
+        super("ShopSalesJournal", capacity, batchSize, flushIntervalMs, policy, offerTimeoutMs);
+    }
+
+    /** Starts the journal using the [sales_log] config section. */
+    public static synchronized void start() {
+        var cfg = AvilixEconomyCommonConfig.SALES_LOG;
+        start(cfg.queueCapacity.get(), cfg.batchSize.get(), cfg.flushIntervalMs.get(),
+                cfg.overflowPolicy.get(), cfg.offerTimeoutMs.get());
+    }
+
+    /** Starts with explicit settings (no config access). */
+    public static synchronized void start(int capacity, int batchSize, long flushIntervalMs,
+                                          OverflowPolicy policy, long offerTimeoutMs) {
+        if (instance != null) return;
+        ShopSalesJournal j = new ShopSalesJournal(capacity, batchSize, flushIntervalMs, policy, offerTimeoutMs);
+        j.startWriter();
+        instance = j;
+    }
+
+    /** Commits queued sales and stops the journal. Must run before the pool is closed. */
+    public static synchronized void stop(long timeoutMs) {
+        ShopSalesJournal j = instance;
+        instance = null;
+        if (j != null) j.shutdown(timeoutMs);
+    }
+
+    /** @return the running journal, or null if it is not started. */
+    public static ShopSalesJournal get() {
+        return instance;
+    }
+
+    /** Queues a sale; writes through when the journal is not running. */
+    public static boolean enqueue(Sale sale) {
+        ShopSalesJournal j = instance;
+        if (j != null) return j.submit(sale);
+        try {
+            insert(List.of(sale));
+        } catch (Exception e) {
+            // не валим сервер из-за лога
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    @Override
+    protected void writeBatch(List<Sale> batch) throws Exception {
+        if (!DatabaseManager.isReady()) throw new IllegalStateException("database is not initialized");
+        insert(batch);
+    }
+
+    /** Inserts sales and their item lines in one transaction. */
+    static void insert(List<Sale> batch) throws Exception {
+        StringBuilder sql = new StringBuilder(200 + batch.size() * 40);
+        sql.append("INSERT INTO shop_sales(created_at, world, x, y, z, block_id, owner_uuid, owner_name, buyer_uuid, buyer_name, trade_type, price_per_lot, lots, total_price, items_json, items_summary) ")
+                .append("VALUES ");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) sql.append(',');
+            sql.append("(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+        }
+
+        try (Connection c = DatabaseManager.getConnection()) {
+            boolean oldAutoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+                int p = 1;
+                for (Sale s : batch) {
+                    ps.setTimestamp(p, new Timestamp(Math.max(0L, s.createdAtMillis())));
+                    ps.setString(p + 1, s.worldId());
+                    ps.setInt(p + 2, s.x());
+                    ps.setInt(p + 3, s.y());
+                    ps.setInt(p + 4, s.z());
+                    ps.setString(p + 5, s.blockId() != null ? s.blockId() : "");
+                    ps.setBytes(p + 6, DatabaseManager.uuidBytes(s.ownerUuid() != null ? s.ownerUuid() : NIL_UUID));
+                    ps.setString(p + 7, s.ownerName() != null ? s.ownerName() : "");
+                    ps.setBytes(p + 8, DatabaseManager.uuidBytes(s.buyerUuid() != null ? s.buyerUuid() : NIL_UUID));
+                    ps.setString(p + 9, s.buyerName() != null ? s.buyerName() : "");
+                    ps.setString(p + 10, s.tradeType() != null ? s.tradeType() : "SELL");
+                    ps.setBigDecimal(p + 11, MoneyUtils.toDb(s.pricePerLot()));
+                    ps.setInt(p + 12, s.lots());
+                    ps.setBigDecimal(p + 13, MoneyUtils.toDb(s.totalPrice()));
+                    ps.setString(p + 14, itemsJson(s.items()));
+                    ps.setString(p + 15, summarize(s.items()));
+                    p += COLUMNS;
+                }
+                ps.executeUpdate();
+
+                long[] ids = new long[batch.size()];
+                int n = 0;
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    while (keys.next() && n < ids.length) ids[n++] = keys.getLong(1);
+                }
+                if (n != ids.length) {
+                    throw new IllegalStateException("expected " + ids.length + " sale ids, got " + n);
+                }
+                insertItems(c, ids, batch);
+                c.commit();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(oldAutoCommit);
+            }
+        }
+    }
+
+    /** Writes the item lines of {@code sales} (ids[i] is the shop_sales.id of sales[i]) on {@code c}. */
+    static void insertItems(Connection c, long[] ids, List<Sale> sales) throws Exception {
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO shop_sales_items (sale_id, line, item_id, per_lot, total) VALUES (?, ?, ?, ?, ?)")) {
+            int rows = 0;
+            for (int i = 0; i < sales.size(); i++) {
+                List<SaleItem> items = sales.get(i).items();
+                if (items == null) continue;
+                for (int line = 0; line < items.size(); line++) {
+                    SaleItem it = items.get(line);
+                    ps.setLong(1, ids[i]);
+                    ps.setInt(2, line);
+                    ps.setString(3, it.itemId());
+                    ps.setInt(4, it.perLot());
+                    ps.setInt(5, it.total());
+                    ps.addBatch();
+                    rows++;
+                }
+            }
+            if (rows > 0) ps.executeBatch();
+        }
+    }
+
+    /** Legacy items_json column (still filled for the shop_sales_log views). */
+    static String itemsJson(List<SaleItem> items) {
+        if (items == null || items.isEmpty()) return "[]";
+        StringBuilder sb = new StringBuilder(32 + items.size() * 64);
+        sb.append('[');
+        for (int i = 0; i < items.size(); i++) {
+            SaleItem it = items.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"item\":\"").append(it.itemId()).append("\",\"perLot\":").append(it.perLot())
+                    .append(",\"total\":").append(it.total()).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    /** Short "item×count, ..." text for the sales GUI (shop_sales.items_summary). */
+    static String summarize(List<SaleItem> items) {
+        if (items == null || items.isEmpty()) return "-";
+        StringBuilder sb = new StringBuilder(64);
+        for (int i = 0; i < items.size(); i++) {
+            if (i == 3) { // keep it short for GUI
+                sb.append(", ...");
+                break;
+            }
+            if (i > 0) sb.append(", ");
+            sb.append(items.get(i).itemId()).append('×').append(items.get(i).total());
+        }
+        return sb.length() > 255 ? sb.substring(0, 255) : sb.toString();
+    }
+}
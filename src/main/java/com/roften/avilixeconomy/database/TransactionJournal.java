@@ -0,0 +1,222 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of balance mutations accepted while the database was unreachable
+ * (see {@link DegradedMode}).
+ *
+ * Every record is framed as {@code [int length][int crc32][payload]}. A record cut short by a crash
+ * fails the length or CRC check and ends the readable part of the file; everything before it is intact.
+ * Appends reach the OS right away; {@code fsync} is batched to at most one per {@code fsyncIntervalMs}
+ * (0 = after every record), so a power loss can cost at most that window of degraded-mode writes.
+ */
+public final class TransactionJournal implements AutoCloseable {
+
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    /**
+     * One account change. {@code set} replaces the balance, otherwise {@code cents} is added
+     * (negative = debit). {@code name} is only used if the account row does not exist yet;
+     * {@code reason} goes to the balance history row.
+     */
+    public record Leg(UUID account, String name, boolean set, long cents, String reason) {}
+
+    /** One mutation: all legs are applied in one DB transaction on replay. */
+    public record Entry(UUID id, long createdAtMillis, String metaJson,
+                        UUID actorUuid, String actorName, List<Leg> legs) {}
+
+    private final Path path;
+    private final long fsyncIntervalMs;
+    private final FileChannel channel;
+    private long lastForceMillis;
+    private boolean dirty;
+
+    private TransactionJournal(Path path, long fsyncIntervalMs, FileChannel channel) {
+        this.path = path;
+        this.fsyncIntervalMs = Math.max(0L, fsyncIntervalMs);
+        this.channel = channel;
+    }
+
+    /** Opens (or creates) the journal for appending. */
+    public static TransactionJournal open(Path path, long fsyncIntervalMs) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        ch.position(validLength(ch));
+        // Drop a torn tail so new records follow the last complete one.
+        ch.truncate(ch.position());
+        return new TransactionJournal(path, fsyncIntervalMs, ch);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /** Appends one record; it is readable by {@link #readAll()} as soon as this returns. */
+    public synchronized void append(Entry e) throws IOException {
+        byte[] payload = encode(e);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buf = ByteBuffer.allocate(8 + payload.length);
+        buf.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        dirty = true;
+        syncIfDue();
+    }
+
+    /** Forces appended records to disk if the batching interval has passed (called from the server tick too). */
+    public synchronized void syncIfDue() throws IOException {
+        if (!dirty) return;
+        long now = System.currentTimeMillis();
+        if (fsyncIntervalMs > 0 && now - lastForceMillis < fsyncIntervalMs) return;
+        channel.force(false);
+        lastForceMillis = now;
+        dirty = false;
+    }
+
+    /** All complete records, oldest first. */
+    public synchronized List<Entry> readAll() throws IOException {
+        List<Entry> out = new ArrayList<>();
+        scan(channel, out);
+        return out;
+    }
+
+    /** Empties the journal once every record is known to be in the database. */
+    public synchronized void truncate() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        dirty = false;
+    }
+
+    public synchronized long sizeBytes() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (dirty) channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            AvilixEconomy.LOGGER.warn("Failed to close transaction journal {}", path, e);
+        }
+    }
+
+    /** Length of the intact prefix (records with a valid length and CRC). */
+    private static long validLength(FileChannel ch) throws IOException {
+        long pos = scan(ch, null);
+        if (pos < ch.size()) {
+            AvilixEconomy.LOGGER.warn("Transaction journal: ignoring {} bytes of incomplete tail", ch.size() - pos);
+        }
+        return pos;
+    }
+
+    /** Walks the complete records from the start (decoding them into {@code out} if given); returns where they end. */
+    private static long scan(FileChannel ch, List<Entry> out) throws IOException {
+        long end = ch.size();
+        long pos = 0;
+        ByteBuffer head = ByteBuffer.allocate(8);
+        while (pos + 8 <= end) {
+            head.clear();
+            ch.read(head, pos);
+            head.flip();
+            int len = head.getInt();
+            int crc = head.getInt();
+            if (len <= 0 || len > MAX_RECORD_BYTES || pos + 8 + len > end) break;
+            ByteBuffer body = ByteBuffer.allocate(len);
+            ch.read(body, pos + 8);
+            CRC32 check = new CRC32();
+            check.update(body.array());
+            if ((int) check.getValue() != crc) break;
+            if (out != null) out.add(decode(ByteBuffer.wrap(body.array())));
+            pos += 8 + len;
+        }
+        return pos;
+    }
+
+    // ===== record format =====
+
+    private static byte[] encode(Entry e) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeUuid(out, e.id());
+        out.writeLong(e.createdAtMillis());
+        writeString(out, e.metaJson());
+        writeUuid(out, e.actorUuid());
+        writeString(out, e.actorName());
+        out.writeShort(e.legs().size());
+        for (Leg leg : e.legs()) {
+            writeUuid(out, leg.account());
+            writeString(out, leg.name());
+            out.writeBoolean(leg.set());
+            out.writeLong(leg.cents());
+            writeString(out, leg.reason());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(ByteBuffer in) {
+        UUID id = readUuid(in);
+        long createdAt = in.getLong();
+        String meta = readString(in);
+        UUID actor = readUuid(in);
+        String actorName = readString(in);
+        int n = in.getShort() & 0xFFFF;
+        List<Leg> legs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            UUID account = readUuid(in);
+            String name = readString(in);
+            boolean set = in.get() != 0;
+            long cents = in.getLong();
+            legs.add(new Leg(account, name, set, cents, readString(in)));
+        }
+        return new Entry(id, createdAt, meta, actor, actorName, List.copyOf(legs));
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID u) throws IOException {
+        out.writeBoolean(u != null);
+        if (u == null) return;
+        out.writeLong(u.getMostSignificantBits());
+        out.writeLong(u.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(ByteBuffer in) {
+        if (in.get() == 0) return null;
+        return new UUID(in.getLong(), in.getLong());
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,148 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+import com.roften.avilixeconomy.util.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Money transfer with a fixed, short statement plan:
+ * <ol>
+ *     <li>one {@code SELECT ... FOR UPDATE} over all participants, ordered by uuid
+ *     (deterministic lock order, so two opposite transfers cannot deadlock on each other);</li>
+ *     <li>a conditional debit {@code UPDATE ... WHERE balance >= ?};</li>
+ *     <li>one multi-row upsert for all credits;</li>
+ *     <li>commit.</li>
+ * </ol>
+ * Deadlocks and lock-wait timeouts (as classified by the active backend) are retried transparently.
+ */
+public final class TransferEngine {
+
+    private TransferEngine() {}
+
+    private static final int MAX_ATTEMPTS = 4;
+
+    /** Amounts are in cents (see {@link Money}). */
+    public record Credit(UUID to, long amount) {}
+
+    /** Locked state of a participant before the transfer. */
+    public record Account(UUID uuid, boolean exists, String name, long balance) {
+        public String nameOrUnknown() {
+            if (name != null && !name.isBlank() && !"unknown".equals(name)) return name;
+            String known = PlayerNameDirectory.nameOf(uuid);
+            return known != null ? known : "unknown";
+        }
+    }
+
+    /**
+     * Debits {@code total} cents from {@code from} and applies all credits in one transaction.
+     *
+     * @return pre-transfer state of every participant, or null if the payer is missing or has insufficient funds
+     * @throws SQLException on non-retryable errors or when retries are exhausted
+     */
+    public static Map<UUID, Account> transfer(UUID from, long total, List<Credit> credits) throws SQLException {
+        SQLException last = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try (Connection c = DatabaseManager.getConnection()) {
+                c.setAutoCommit(false);
+                try {
+                    Map<UUID, Account> before = transferOnce(c, from, total, credits);
+                    if (before == null) {
+                        c.rollback();
+                        return null;
+                    }
+                    c.commit();
+                    return before;
+                } catch (SQLException e) {
+                    try {
+                        c.rollback();
+                    } catch (SQLException ignored) {
+                    }
+                    if (!isRetryable(e) || attempt == MAX_ATTEMPTS) throw e;
+                    last = e;
+                    AvilixEconomy.LOGGER.debug("Transfer {} -> {} retry {} after: {}", from, credits, attempt, e.getMessage());
+                }
+            }
+            backoff(attempt);
+        }
+        throw last;
+    }
+
+    private static Map<UUID, Account> transferOnce(Connection c, UUID from, long total, List<Credit> credits) throws SQLException {
+        TreeSet<String> keys = new TreeSet<>();
+        keys.add(from.toString());
+        for (Credit cr : credits) {
+            if (cr.amount() > 0) keys.add(cr.to().toString());
+        }
+
+        // 1) lock all participants in uuid order
+        Map<UUID, Account> before = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT uuid, name, balance FROM economy WHERE uuid IN (");
+        for (int i = 0; i < keys.size(); i++) sql.append(i == 0 ? "?" : ",?");
+        sql.append(") ORDER BY uuid FOR UPDATE");
+        try (PreparedStatement sel = c.prepareStatement(sql.toString())) {
+            int p = 1;
+            for (String k : keys) sel.setBytes(p++, DatabaseManager.uuidBytes(UUID.fromString(k)));
+            try (ResultSet rs = sel.executeQuery()) {
+                while (rs.next()) {
+                    UUID u = DatabaseManager.uuidFromBytes(rs.getBytes("uuid"));
+                    before.put(u, new Account(u, true, rs.getString("name"), Money.fromDb(rs.getBigDecimal("balance"))));
+                }
+            }
+        }
+        for (String k : keys) {
+            UUID u = UUID.fromString(k);
+            before.putIfAbsent(u, new Account(u, false, null, 0L));
+        }
+
+        // 2) conditional debit
+        var amount = Money.toDb(total);
+        try (PreparedStatement upd = c.prepareStatement(
+                "UPDATE economy SET balance = balance - ? WHERE uuid = ? AND balance >= ?"
+        )) {
+            upd.setBigDecimal(1, amount);
+            upd.setBytes(2, DatabaseManager.uuidBytes(from));
+            upd.setBigDecimal(3, amount);
+            if (upd.executeUpdate() == 0) return null;
+        }
+
+        // 3) all credits in one upsert
+        int n = 0;
+        for (Credit cr : credits) {
+            if (cr.amount() > 0) n++;
+        }
+        if (n > 0) {
+            try (PreparedStatement ps = c.prepareStatement(DatabaseManager.backend().creditAccountsSql(n))) {
+                int p = 1;
+                for (Credit cr : credits) {
+                    if (cr.amount() <= 0) continue;
+                    ps.setBytes(p++, DatabaseManager.uuidBytes(cr.to()));
+                    ps.setBigDecimal(p++, Money.toDb(cr.amount()));
+                }
+                ps.executeUpdate();
+            }
+        }
+        return before;
+    }
+
+    static boolean isRetryable(SQLException e) {
+        return DatabaseManager.backend().isRetryable(e);
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(5L * attempt + ThreadLocalRandom.current().nextInt(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
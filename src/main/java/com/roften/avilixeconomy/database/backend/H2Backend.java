@@ -0,0 +1,356 @@
+package com.roften.avilixeconomy.database.backend;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Embedded H2 backend: a single database file next to the server, no external service needed.
+ *
+ * Runs in native H2 mode (no MySQL compatibility flags), so every dialect difference
+ * is spelled out here: separate CREATE INDEX, IDENTITY keys, CLOB text, MERGE upserts.
+ */
+public final class H2Backend implements StorageBackend {
+
+    // org.h2.api.ErrorCode: DEADLOCK_1, LOCK_TIMEOUT_1, CONCURRENT_UPDATE_1
+    private static final int DEADLOCK = 40001;
+    private static final int LOCK_TIMEOUT = 50200;
+    private static final int CONCURRENT_UPDATE = 90131;
+
+    private final String jdbcUrl;
+
+    public H2Backend(String jdbcUrl) {
+        this.jdbcUrl = jdbcUrl;
+    }
+
+    /** File database; H2 appends ".mv.db" to the path. */
+    public static H2Backend file(Path path) {
+        return new H2Backend("jdbc:h2:file:" + path.toAbsolutePath() + ";LOCK_TIMEOUT=10000;DB_CLOSE_ON_EXIT=FALSE");
+    }
+
+    /** Private in-memory database that lives until the JVM exits. */
+    public static H2Backend inMemory(String name) {
+        return new H2Backend("jdbc:h2:mem:" + name + ";LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1");
+    }
+
+    @Override
+    public String id() {
+        return "h2";
+    }
+
+    @Override
+    public void configurePool(HikariConfig config) {
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername("sa");
+        config.setPassword("");
+    }
+
+    @Override
+    public List<SchemaMigration> migrations() {
+        // The embedded file is small and has no concurrent writers at startup: no background steps.
+        return List.of(
+                SchemaMigration.startup("h2-001", "base tables and indexes", this::createBaseTables),
+                SchemaMigration.startup("h2-002", "shop_sales.items_summary", c ->
+                        exec(c, "ALTER TABLE shop_sales ADD COLUMN IF NOT EXISTS items_summary VARCHAR(255) NOT NULL DEFAULT ''")),
+                SchemaMigration.startup("h2-003", "BINARY(16) uuid columns", this::convertUuidColumns),
+                SchemaMigration.startup("h2-004", "millisecond created_at", this::millisecondTimestamps)
+        );
+    }
+
+    private void createBaseTables(Connection c) throws SQLException {
+        exec(c, """
+                CREATE TABLE IF NOT EXISTS economy (
+                    uuid VARCHAR(36) PRIMARY KEY,
+                    name VARCHAR(32) NOT NULL,
+                    balance DECIMAL(18,2) NOT NULL DEFAULT 500.00
+                )
+            """);
+
+        exec(c, """
+                CREATE TABLE IF NOT EXISTS economy_balance_history (
+                    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    player_uuid VARCHAR(36) NOT NULL,
+                    player_name VARCHAR(32) NOT NULL,
+                    delta DECIMAL(18,2) NOT NULL,
+                    balance_before DECIMAL(18,2) NOT NULL,
+                    balance_after DECIMAL(18,2) NOT NULL,
+                    reason VARCHAR(32) NOT NULL DEFAULT 'UNKNOWN',
+                    meta_json CLOB NULL,
+                    actor_uuid VARCHAR(36) NULL,
+                    actor_name VARCHAR(32) NULL
+                )
+            """);
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_economy_balance ON economy (balance, uuid)");
+
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_player_time ON economy_balance_history (player_uuid, created_at)");
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_reason_time ON economy_balance_history (reason, created_at)");
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_player_cursor ON economy_balance_history (player_uuid, created_at, id)");
+
+        exec(c, """
+                CREATE TABLE IF NOT EXISTS shop_sales (
+                    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    world VARCHAR(64) NOT NULL,
+                    x INT NOT NULL,
+                    y INT NOT NULL,
+                    z INT NOT NULL,
+                    block_id VARCHAR(128) NOT NULL,
+                    owner_uuid VARCHAR(36) NOT NULL,
+                    owner_name VARCHAR(32) NOT NULL,
+                    buyer_uuid VARCHAR(36) NOT NULL,
+                    buyer_name VARCHAR(32) NOT NULL,
+                    trade_type VARCHAR(8) NOT NULL DEFAULT 'SELL',
+                    price_per_lot DECIMAL(18,2) NOT NULL,
+                    lots INT NOT NULL,
+                    total_price DECIMAL(18,2) NOT NULL,
+                    items_json CLOB NOT NULL,
+                    items_summary VARCHAR(255) NOT NULL DEFAULT ''
+                )
+            """);
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_owner_uuid_time ON shop_sales (owner_uuid, created_at)");
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_owner_name_time ON shop_sales (owner_name, created_at)");
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_shop_pos ON shop_sales (world, x, y, z, created_at)");
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_shop_pos_cursor ON shop_sales (world, x, y, z, created_at, id)");
+
+        exec(c, """
+                CREATE TABLE IF NOT EXISTS shop_sales_items (
+                    sale_id BIGINT NOT NULL,
+                    line INT NOT NULL,
+                    item_id VARCHAR(128) NOT NULL,
+                    per_lot INT NOT NULL,
+                    total INT NOT NULL,
+                    PRIMARY KEY (sale_id, line)
+                )
+            """);
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_sale_item ON shop_sales_items (item_id, sale_id)");
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_trade_type_time ON shop_sales (trade_type, created_at)");
+
+        exec(c, """
+                CREATE TABLE IF NOT EXISTS shop_render_overrides (
+                    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    scope VARCHAR(8) NOT NULL,
+                    override_key VARCHAR(128) NOT NULL,
+                    off_x REAL NOT NULL DEFAULT 0,
+                    off_y REAL NOT NULL DEFAULT 0,
+                    off_z REAL NOT NULL DEFAULT 0,
+                    rot_x REAL NOT NULL DEFAULT 0,
+                    rot_y REAL NOT NULL DEFAULT 0,
+                    rot_z REAL NOT NULL DEFAULT 0,
+                    scale_mul REAL NOT NULL DEFAULT 1,
+                    extra_lift REAL NOT NULL DEFAULT 0,
+                    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                    CONSTRAINT uk_scope_key UNIQUE (scope, override_key)
+                )
+            """);
+
+        exec(c, """
+                CREATE TABLE IF NOT EXISTS shop_listings (
+                    world VARCHAR(64) NOT NULL,
+                    x INT NOT NULL,
+                    y INT NOT NULL,
+                    z INT NOT NULL,
+                    slot INT NOT NULL,
+                    owner_uuid VARCHAR(36) NOT NULL,
+                    owner_name VARCHAR(32) NOT NULL,
+                    buy_mode BOOLEAN NOT NULL,
+                    item_id VARCHAR(128) NOT NULL,
+                    item_name VARCHAR(128) NOT NULL,
+                    lot_count INT NOT NULL,
+                    price DECIMAL(18,2) NOT NULL,
+                    stock INT NOT NULL,
+                    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    PRIMARY KEY (world, x, y, z, slot)
+                )
+            """);
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_listing_item ON shop_listings (item_id)");
+
+        exec(c, """
+                CREATE TABLE IF NOT EXISTS market_stats_hourly (
+                    item_id VARCHAR(128) NOT NULL,
+                    side VARCHAR(4) NOT NULL,
+                    bucket_hour BIGINT NOT NULL,
+                    trades INT NOT NULL,
+                    volume BIGINT NOT NULL,
+                    notional DECIMAL(20,2) NOT NULL,
+                    min_price DECIMAL(18,4) NOT NULL,
+                    max_price DECIMAL(18,4) NOT NULL,
+                    last_price DECIMAL(18,4) NOT NULL,
+                    last_at BIGINT NOT NULL,
+                    PRIMARY KEY (item_id, side, bucket_hour)
+                )
+            """);
+        exec(c, "CREATE INDEX IF NOT EXISTS idx_stats_hour ON market_stats_hourly (bucket_hour)");
+    }
+
+    /**
+     * VARCHAR(36) uuids -> BINARY(16) through a shadow column; same steps as the MySQL migration,
+     * including the malformed value pre-check (the cast would otherwise fail halfway).
+     */
+    private void convertUuidColumns(Connection c) throws SQLException {
+        MalformedUuids.createTable(c);
+        convertUuidColumns(c, "economy", List.of("uuid"), List.of(), List.of("idx_economy_balance"), List.of(
+                "ALTER TABLE economy ADD PRIMARY KEY (uuid)",
+                "CREATE INDEX IF NOT EXISTS idx_economy_balance ON economy (balance, uuid)"));
+        convertUuidColumns(c, "economy_balance_history", List.of("player_uuid", "actor_uuid"), List.of("actor_uuid"),
+                List.of("idx_player_time", "idx_player_cursor"), List.of(
+                        "CREATE INDEX IF NOT EXISTS idx_player_time ON economy_balance_history (player_uuid, created_at)",
+                        "CREATE INDEX IF NOT EXISTS idx_player_cursor ON economy_balance_history (player_uuid, created_at, id)"));
+        convertUuidColumns(c, "shop_sales", List.of("owner_uuid", "buyer_uuid"), List.of(),
+                List.of("idx_owner_uuid_time"), List.of(
+                        "CREATE INDEX IF NOT EXISTS idx_owner_uuid_time ON shop_sales (owner_uuid, created_at)"));
+        convertUuidColumns(c, "shop_listings", List.of("owner_uuid"), List.of(), List.of(), List.of());
+    }
+
+    private void convertUuidColumns(Connection c, String table, List<String> columns, List<String> nullable,
+                                    List<String> indexes, List<String> rebuild) throws SQLException {
+        if (isBinaryColumn(c, table, columns.get(0))) return;
+
+        if (columnExists(c, table, columns.get(0))) {
+            for (String col : columns) {
+                String malformed = col + " <> '' AND NOT REGEXP_LIKE(" + col + ", '" + MalformedUuids.PATTERN + "')";
+                if (MalformedUuids.record(c, table, col, malformed, rowKey(table),
+                        "economy".equals(table) ? "CONCAT('name=', name, ', balance=', balance)" : null) > 0 && "economy".equals(table)) {
+                    exec(c, "DELETE FROM economy WHERE " + malformed);
+                }
+            }
+            for (String col : columns) {
+                exec(c, "ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS " + col + "_bin BINARY(16)");
+                // '' (no owner/buyer) and malformed values become the nil uuid
+                exec(c, "UPDATE " + table + " SET " + col + "_bin = CASE WHEN " + col + " IS NULL THEN NULL " +
+                        "WHEN " + col + " = '' OR NOT REGEXP_LIKE(" + col + ", '" + MalformedUuids.PATTERN + "') " +
+                        "THEN X'00000000000000000000000000000000' " +
+                        "ELSE CAST(CAST(" + col + " AS UUID) AS BINARY(16)) END");
+            }
+            for (String idx : indexes) exec(c, "DROP INDEX IF EXISTS " + idx);
+            if ("economy".equals(table)) exec(c, "ALTER TABLE economy DROP PRIMARY KEY");
+            for (String col : columns) exec(c, "ALTER TABLE " + table + " DROP COLUMN " + col);
+        }
+        for (String col : columns) {
+            exec(c, "ALTER TABLE " + table + " ALTER COLUMN " + col + "_bin RENAME TO " + col);
+            if (!nullable.contains(col)) exec(c, "ALTER TABLE " + table + " ALTER COLUMN " + col + " SET NOT NULL");
+        }
+        for (String sql : rebuild) exec(c, sql);
+    }
+
+    /**
+     * Keyset cursors ({@code DatabaseManager.LogCursor}) carry epoch milliseconds, but H2 defaults to
+     * microseconds: rows sharing the last row's timestamp fell between two pages. MySQL TIMESTAMP
+     * columns have whole seconds and are not affected.
+     */
+    private void millisecondTimestamps(Connection c) throws SQLException {
+        exec(c, "ALTER TABLE economy_balance_history ALTER COLUMN created_at SET DATA TYPE TIMESTAMP(3)");
+        exec(c, "ALTER TABLE shop_sales ALTER COLUMN created_at SET DATA TYPE TIMESTAMP(3)");
+    }
+
+    /** Text key of a row for economy_uuid_rejects. */
+    private static String rowKey(String table) {
+        return switch (table) {
+            case "economy" -> "uuid";
+            case "shop_listings" -> "CONCAT(world, ' ', x, ' ', y, ' ', z, ' #', slot)";
+            default -> "CAST(id AS VARCHAR)";
+        };
+    }
+
+    private boolean isBinaryColumn(Connection c, String table, String column) throws SQLException {
+        DatabaseMetaData md = c.getMetaData();
+        try (ResultSet rs = md.getColumns(null, null, upper(table), upper(column))) {
+            return rs.next() && rs.getInt("DATA_TYPE") == Types.BINARY;
+        }
+    }
+
+    private static void exec(Connection c, String sql) throws SQLException {
+        try (PreparedStatement st = c.prepareStatement(sql)) {
+            st.executeUpdate();
+        }
+    }
+
+    @Override
+    public String uuidTextSql(String column) {
+        return "CAST(CAST(" + column + " AS UUID) AS VARCHAR(36))";
+    }
+
+    @Override
+    public boolean columnExists(Connection c, String table, String column) throws SQLException {
+        DatabaseMetaData md = c.getMetaData();
+        try (ResultSet rs = md.getColumns(null, null, upper(table), upper(column))) {
+            return rs.next();
+        }
+    }
+
+    @Override
+    public boolean indexExists(Connection c, String table, String index) throws SQLException {
+        DatabaseMetaData md = c.getMetaData();
+        try (ResultSet rs = md.getIndexInfo(null, null, upper(table), false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return true;
+            }
+        }
+        return false;
+    }
+
+    private static String upper(String ident) {
+        // unquoted identifiers are stored upper-case in native mode
+        return ident.toUpperCase(Locale.ROOT);
+    }
+
+    @Override
+    public String upsertAccountSql() {
+        return "MERGE INTO economy (uuid, name, balance) KEY (uuid) VALUES (?, ?, ?)";
+    }
+
+    @Override
+    public String creditAccountsSql(int rows) {
+        StringBuilder sql = new StringBuilder("MERGE INTO economy t USING (VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append("(CAST(? AS BINARY(16)), CAST(? AS DECIMAL(18,2)))");
+        }
+        sql.append(") AS s(uuid, amount) ON t.uuid = s.uuid ")
+                .append("WHEN MATCHED THEN UPDATE SET balance = t.balance + s.amount ")
+                .append("WHEN NOT MATCHED THEN INSERT (uuid, name, balance) VALUES (s.uuid, 'unknown', s.amount)");
+        return sql.toString();
+    }
+
+    @Override
+    public String upsertRenderOverrideSql() {
+        return """
+                MERGE INTO shop_render_overrides
+                    (scope, override_key, off_x, off_y, off_z, rot_x, rot_y, rot_z, scale_mul, extra_lift)
+                KEY (scope, override_key)
+                VALUES
+                    (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """;
+    }
+
+    @Override
+    public String upsertMarketStatsSql() {
+        return """
+                MERGE INTO market_stats_hourly
+                    (item_id, side, bucket_hour, trades, volume, notional, min_price, max_price, last_price, last_at)
+                KEY (item_id, side, bucket_hour)
+                VALUES
+                    (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """;
+    }
+
+    @Override
+    public boolean isRetryable(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException s) {
+                int code = s.getErrorCode();
+                if (code == DEADLOCK || code == LOCK_TIMEOUT || code == CONCURRENT_UPDATE) return true;
+                if ("40001".equals(s.getSQLState())) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,85 @@
+package com.roften.avilixeconomy.database.backend;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pre-check of the VARCHAR(36) -> BINARY(16) uuid migrations (mysql-005, h2-003), run before any DDL.
+ *
+ * A value that is neither '' nor a uuid would become NULL on MySQL (and break the NOT NULL swap
+ * after the table was already rewritten) or fail the cast on H2. Such rows are copied to
+ * {@code economy_uuid_rejects} with their key and reported; the conversion then treats them as
+ * "no player" (or drops the account row, see the callers), so a bad row never stops the migration.
+ */
+final class MalformedUuids {
+
+    private MalformedUuids() {}
+
+    static final String TABLE = "economy_uuid_rejects";
+
+    /** Hyphenated or plain 32-digit hex, the two forms UNHEX(REPLACE(..)) and CAST(.. AS UUID) accept. */
+    static final String PATTERN = "^[0-9A-Fa-f]{8}-?[0-9A-Fa-f]{4}-?[0-9A-Fa-f]{4}-?[0-9A-Fa-f]{4}-?[0-9A-Fa-f]{12}$";
+
+    private static final int SAMPLE = 5;
+
+    static void createTable(Connection c) throws SQLException {
+        try (PreparedStatement st = c.prepareStatement("""
+                CREATE TABLE IF NOT EXISTS economy_uuid_rejects (
+                    table_name VARCHAR(64) NOT NULL,
+                    column_name VARCHAR(64) NOT NULL,
+                    row_key VARCHAR(255) NOT NULL,
+                    raw_value VARCHAR(255) NOT NULL,
+                    detail VARCHAR(255) NULL,
+                    PRIMARY KEY (table_name, column_name, row_key)
+                )
+            """)) {
+            st.executeUpdate();
+        }
+    }
+
+    /**
+     * Records the rows of {@code table} whose {@code column} matches {@code malformed} and logs them.
+     * Safe to repeat after an interrupted run: rows already recorded are not inserted again.
+     *
+     * @param malformed dialect predicate selecting bad values ('' and NULL must not match)
+     * @param rowKey    SQL expression identifying the row as text
+     * @param detail    SQL expression kept next to the value (e.g. the balance of a dropped account), or null
+     * @return number of malformed rows
+     */
+    static int record(Connection c, String table, String column, String malformed,
+                      String rowKey, String detail) throws SQLException {
+        int count;
+        List<String> sample = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT " + column + " FROM " + table + " WHERE " + malformed);
+             ResultSet rs = ps.executeQuery()) {
+            count = 0;
+            while (rs.next()) {
+                if (count++ < SAMPLE) sample.add(rs.getString(1));
+            }
+        }
+        if (count == 0) return 0;
+
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO " + TABLE + " (table_name, column_name, row_key, raw_value, detail) " +
+                        "SELECT ?, ?, " + rowKey + ", " + column + ", " + (detail == null ? "NULL" : detail) +
+                        " FROM " + table + " t WHERE " + malformed +
+                        " AND NOT EXISTS (SELECT 1 FROM " + TABLE + " r WHERE r.table_name = ? AND r.column_name = ?" +
+                        " AND r.row_key = " + rowKey + ")")) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            ps.setString(3, table);
+            ps.setString(4, column);
+            ps.executeUpdate();
+        }
+        AvilixEconomy.LOGGER.warn("Schema: {} rows of {}.{} hold malformed uuids (e.g. {}); saved to {}",
+                count, table, column, sample, TABLE);
+        return count;
+    }
+}
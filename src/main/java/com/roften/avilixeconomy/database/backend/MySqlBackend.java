@@ -0,0 +1,495 @@
+package com.roften.avilixeconomy.database.backend;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+import com.zaxxer.hikari.HikariConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * MySQL / MariaDB backend (the original storage of the mod).
+ */
+public final class MySqlBackend implements StorageBackend {
+
+    // MySQL/MariaDB: ER_LOCK_DEADLOCK, ER_LOCK_WAIT_TIMEOUT
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+
+    public MySqlBackend(String jdbcUrl, String username, String password) {
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    public String id() {
+        return "mysql";
+    }
+
+    @Override
+    public void configurePool(HikariConfig config) {
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(username);
+        config.setPassword(password);
+    }
+
+    @Override
+    public List<SchemaMigration> migrations() {
+        return List.of(
+                SchemaMigration.startup("mysql-001", "base tables", this::createBaseTables),
+                SchemaMigration.startup("mysql-002", "shop_sales columns of older versions", this::ensureShopSalesColumns),
+                SchemaMigration.startup("mysql-003", "DECIMAL(18,2) money columns", this::ensureMoneyColumnTypes),
+                SchemaMigration.background("mysql-004", "log and top indexes", this::ensureIndexes),
+                SchemaMigration.startup("mysql-005", "BINARY(16) uuid columns", this::convertUuidColumns)
+        );
+    }
+
+    private void createBaseTables(Connection c) throws SQLException {
+        // Балансы игроков
+        try (PreparedStatement st = c.prepareStatement("""
+                CREATE TABLE IF NOT EXISTS economy (
+                    uuid VARCHAR(36) PRIMARY KEY,
+                    name VARCHAR(32) NOT NULL,
+                    balance DECIMAL(18,2) NOT NULL DEFAULT 500.00
+                )
+            """)) {
+            st.executeUpdate();
+        }
+
+        // История изменения баланса (аудит)
+        try (PreparedStatement st = c.prepareStatement("""
+                CREATE TABLE IF NOT EXISTS economy_balance_history (
+                    id BIGINT NOT NULL AUTO_INCREMENT,
+                    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    player_uuid VARCHAR(36) NOT NULL,
+                    player_name VARCHAR(32) NOT NULL,
+                    delta DECIMAL(18,2) NOT NULL,
+                    balance_before DECIMAL(18,2) NOT NULL,
+                    balance_after DECIMAL(18,2) NOT NULL,
+                    reason VARCHAR(32) NOT NULL DEFAULT 'UNKNOWN',
+                    meta_json MEDIUMTEXT NULL,
+                    actor_uuid VARCHAR(36) NULL,
+                    actor_name VARCHAR(32) NULL,
+                    PRIMARY KEY (id),
+                    INDEX idx_player_time (player_uuid, created_at),
+                    INDEX idx_reason_time (reason, created_at)
+                )
+            """)) {
+            st.executeUpdate();
+        }
+
+        // История продаж магазина (ShopBlockEntity)
+        try (PreparedStatement st = c.prepareStatement("""
+                CREATE TABLE IF NOT EXISTS shop_sales (
+                    id BIGINT NOT NULL AUTO_INCREMENT,
+                    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    world VARCHAR(64) NOT NULL,
+                    x INT NOT NULL,
+                    y INT NOT NULL,
+                    z INT NOT NULL,
+                    block_id VARCHAR(128) NOT NULL,
+                    owner_uuid VARCHAR(36) NOT NULL,
+                    owner_name VARCHAR(32) NOT NULL,
+                    buyer_uuid VARCHAR(36) NOT NULL,
+                    buyer_name VARCHAR(32) NOT NULL,
+                    trade_type VARCHAR(8) NOT NULL DEFAULT 'SELL',
+                    price_per_lot DECIMAL(18,2) NOT NULL,
+                    lots INT NOT NULL,
+                    total_price DECIMAL(18,2) NOT NULL,
+                    items_json MEDIUMTEXT NOT NULL,
+                    items_summary VARCHAR(255) NOT NULL DEFAULT '',
+                    PRIMARY KEY (id),
+                    INDEX idx_owner_uuid_time (owner_uuid, created_at),
+                    INDEX idx_owner_name_time (owner_name, created_at),
+                    INDEX idx_shop_pos (world, x, y, z, created_at)
+                )
+            """)) {
+            st.executeUpdate();
+        }
+
+        // Item lines of every sale (one row per item stack of the lot)
+        try (PreparedStatement st = c.prepareStatement("""
+                CREATE TABLE IF NOT EXISTS shop_sales_items (
+                    sale_id BIGINT NOT NULL,
+                    line INT NOT NULL,
+                    item_id VARCHAR(128) NOT NULL,
+                    per_lot INT NOT NULL,
+                    total INT NOT NULL,
+                    PRIMARY KEY (sale_id, line),
+                    INDEX idx_sale_item (item_id, sale_id)
+                )
+            """)) {
+            st.executeUpdate();
+        }
+
+        // Render overrides for items displayed on the shop shelf (admin-tunable)
+        try (PreparedStatement st = c.prepareStatement("""
+                CREATE TABLE IF NOT EXISTS shop_render_overrides (
+                    id BIGINT NOT NULL AUTO_INCREMENT,
+                    scope VARCHAR(8) NOT NULL,
+                    override_key VARCHAR(128) NOT NULL,
+                    off_x FLOAT NOT NULL DEFAULT 0,
+                    off_y FLOAT NOT NULL DEFAULT 0,
+                    off_z FLOAT NOT NULL DEFAULT 0,
+                    rot_x FLOAT NOT NULL DEFAULT 0,
+                    rot_y FLOAT NOT NULL DEFAULT 0,
+                    rot_z FLOAT NOT NULL DEFAULT 0,
+                    scale_mul FLOAT NOT NULL DEFAULT 1,
+                    extra_lift FLOAT NOT NULL DEFAULT 0,
+                    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                    PRIMARY KEY (id),
+                    UNIQUE KEY uk_scope_key (scope, override_key)
+                )
+            """)) {
+            st.executeUpdate();
+        }
+
+        // Offers of all shops (world-wide registry for /shop find)
+        try (PreparedStatement st = c.prepareStatement("""
+                CREATE TABLE IF NOT EXISTS shop_listings (
+                    world VARCHAR(64) NOT NULL,
+                    x INT NOT NULL,
+                    y INT NOT NULL,
+                    z INT NOT NULL,
+                    slot INT NOT NULL,
+                    owner_uuid VARCHAR(36) NOT NULL,
+                    owner_name VARCHAR(32) NOT NULL,
+                    buy_mode BOOLEAN NOT NULL,
+                    item_id VARCHAR(128) NOT NULL,
+                    item_name VARCHAR(128) NOT NULL,
+                    lot_count INT NOT NULL,
+                    price DECIMAL(18,2) NOT NULL,
+                    stock INT NOT NULL,
+                    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                    PRIMARY KEY (world, x, y, z, slot),
+                    INDEX idx_listing_item (item_id)
+                )
+            """)) {
+            st.executeUpdate();
+        }
+
+        // Hourly per-item price rollups (MarketStats checkpoints)
+        try (PreparedStatement st = c.prepareStatement("""
+                CREATE TABLE IF NOT EXISTS market_stats_hourly (
+                    item_id VARCHAR(128) NOT NULL,
+                    side VARCHAR(4) NOT NULL,
+                    bucket_hour BIGINT NOT NULL,
+                    trades INT NOT NULL,
+                    volume BIGINT NOT NULL,
+                    notional DECIMAL(20,2) NOT NULL,
+                    min_price DECIMAL(18,4) NOT NULL,
+                    max_price DECIMAL(18,4) NOT NULL,
+                    last_price DECIMAL(18,4) NOT NULL,
+                    last_at BIGINT NOT NULL,
+                    PRIMARY KEY (item_id, side, bucket_hour),
+                    INDEX idx_stats_hour (bucket_hour)
+                )
+            """)) {
+            st.executeUpdate();
+        }
+    }
+
+    private void ensureShopSalesColumns(Connection c) throws SQLException {
+        ensureColumn(c, "shop_sales", "block_id",
+                "ALTER TABLE shop_sales ADD COLUMN block_id VARCHAR(128) NOT NULL DEFAULT ''");
+        ensureColumn(c, "shop_sales", "owner_name",
+                "ALTER TABLE shop_sales ADD COLUMN owner_name VARCHAR(32) NOT NULL DEFAULT ''");
+        ensureColumn(c, "shop_sales", "buyer_name",
+                "ALTER TABLE shop_sales ADD COLUMN buyer_name VARCHAR(32) NOT NULL DEFAULT ''");
+        ensureColumn(c, "shop_sales", "trade_type",
+                "ALTER TABLE shop_sales ADD COLUMN trade_type VARCHAR(8) NOT NULL DEFAULT 'SELL'");
+        // Precomputed GUI summary; older rows keep '' until DatabaseManager.backfillShopSaleItems.
+        ensureColumn(c, "shop_sales", "items_summary",
+                "ALTER TABLE shop_sales ADD COLUMN items_summary VARCHAR(255) NOT NULL DEFAULT ''");
+    }
+
+    /**
+     * Ensure DECIMAL(18,2) for money columns in existing installations.
+     * Only columns with a different type are rebuilt (MODIFY COLUMN copies the table).
+     * Runs at startup: the copy locks the table against writes, and balances must not be
+     * written to an old DOUBLE column once the server is up.
+     */
+    private void ensureMoneyColumnTypes(Connection c) throws SQLException {
+        ensureDecimal(c, "economy", "balance",
+                "ALTER TABLE economy MODIFY COLUMN balance DECIMAL(18,2) NOT NULL DEFAULT 500.00");
+        ensureDecimal(c, "shop_sales", "price_per_lot",
+                "ALTER TABLE shop_sales MODIFY COLUMN price_per_lot DECIMAL(18,2) NOT NULL");
+        ensureDecimal(c, "shop_sales", "total_price",
+                "ALTER TABLE shop_sales MODIFY COLUMN total_price DECIMAL(18,2) NOT NULL");
+    }
+
+    private void ensureDecimal(Connection c, String table, String column, String alterSql) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT DATA_TYPE, NUMERIC_PRECISION, NUMERIC_SCALE FROM information_schema.COLUMNS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ? LIMIT 1"
+        )) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return;
+                if ("decimal".equalsIgnoreCase(rs.getString(1)) && rs.getInt(2) == 18 && rs.getInt(3) == 2) return;
+            }
+        }
+        try (PreparedStatement st = c.prepareStatement(alterSql)) {
+            st.executeUpdate();
+        }
+    }
+
+    /**
+     * Secondary indexes of older installations. Built in place without blocking writes
+     * (ALGORITHM=INPLACE, LOCK=NONE), so this runs as a background migration.
+     */
+    private void ensureIndexes(Connection c) throws SQLException {
+        // Для запросов вида: WHERE trade_type='SELL' ORDER BY created_at DESC
+        // Один индекс покрывает оба view (shop_sales_log_sell / shop_sales_log_buy).
+        ensureIndex(c, "shop_sales", "idx_trade_type_time", "(trade_type, created_at)");
+        // Keyset paging of logs: WHERE <owner> AND (created_at, id) < cursor ORDER BY created_at DESC, id DESC.
+        ensureIndex(c, "shop_sales", "idx_shop_pos_cursor", "(world, x, y, z, created_at, id)");
+        ensureIndex(c, "economy_balance_history", "idx_player_cursor", "(player_uuid, created_at, id)");
+        // /eco top: ORDER BY balance DESC, uuid DESC (keyset cursors) without a filesort.
+        ensureIndex(c, "economy", "idx_economy_balance", "(balance, uuid)");
+    }
+
+    private void ensureIndex(Connection c, String table, String indexName, String columns) throws SQLException {
+        if (indexExists(c, table, indexName)) return;
+        try (PreparedStatement st = c.prepareStatement(
+                "ALTER TABLE " + table + " ADD INDEX " + indexName + " " + columns + ", ALGORITHM=INPLACE, LOCK=NONE")) {
+            st.executeUpdate();
+        }
+    }
+
+    /** Rows per UPDATE while copying uuids into the shadow columns (one short transaction each). */
+    private static final int UUID_COPY_CHUNK = 5000;
+
+    /**
+     * VARCHAR(36) uuids -> BINARY(16): shadow column, chunked copy, then swap.
+     * Malformed values are recorded in economy_uuid_rejects before any DDL (see {@link MalformedUuids}):
+     * an account row with a bad uuid is removed, any other bad value is stored as "no player".
+     * Indexes containing a converted column are dropped before the swap and rebuilt after it.
+     * Every table is skipped once its first column is binary, and the copy skips rows already
+     * copied, so an interrupted run resumes where it stopped.
+     */
+    private void convertUuidColumns(Connection c) throws SQLException {
+        MalformedUuids.createTable(c);
+        convertUuidColumns(c, "economy", "uuid", "uuid", "CONCAT('name=', name, ', balance=', balance)",
+                List.of("uuid"), List.of(),
+                List.of("PRIMARY", "idx_economy_balance"),
+                "ADD PRIMARY KEY (uuid), ADD INDEX idx_economy_balance (balance, uuid)");
+        convertUuidColumns(c, "economy_balance_history", "id", "CAST(id AS CHAR)", null,
+                List.of("player_uuid", "actor_uuid"), List.of("actor_uuid"),
+                List.of("idx_player_time", "idx_player_cursor"),
+                "ADD INDEX idx_player_time (player_uuid, created_at), ADD INDEX idx_player_cursor (player_uuid, created_at, id)");
+        convertUuidColumns(c, "shop_sales", "id", "CAST(id AS CHAR)", null,
+                List.of("owner_uuid", "buyer_uuid"), List.of(),
+                List.of("idx_owner_uuid_time"),
+                "ADD INDEX idx_owner_uuid_time (owner_uuid, created_at)");
+        // Small table (one row per shop slot): copied in one statement.
+        convertUuidColumns(c, "shop_listings", null, "CONCAT(world, ' ', x, ' ', y, ' ', z, ' #', slot)", null,
+                List.of("owner_uuid"), List.of(), List.of(), null);
+    }
+
+    private void convertUuidColumns(Connection c, String table, String chunkKey, String rowKey, String rejectDetail,
+                                    List<String> columns, List<String> nullable,
+                                    List<String> indexes, String addIndexes) throws SQLException {
+        if (isBinaryColumn(c, table, columns.get(0))) return;
+
+        StringBuilder add = new StringBuilder();
+        StringBuilder copy = new StringBuilder();
+        StringBuilder drop = new StringBuilder();
+        StringBuilder rename = new StringBuilder();
+        for (String col : columns) {
+            if (!columnExists(c, table, col + "_bin")) {
+                add.append(add.isEmpty() ? "" : ", ").append("ADD COLUMN ").append(col).append("_bin BINARY(16) NULL");
+            }
+            // '' (no owner/buyer) and malformed values become 16 zero bytes (BINARY pads with 0x00);
+            // NULL stays NULL in nullable columns.
+            copy.append(copy.isEmpty() ? "" : ", ").append(col).append("_bin = CASE WHEN ").append(col)
+                    .append(" REGEXP '").append(MalformedUuids.PATTERN).append("' THEN UNHEX(REPLACE(").append(col)
+                    .append(", '-', '')) ELSE ").append(nullable.contains(col) ? "NULL" : "''").append(" END");
+            drop.append(drop.isEmpty() ? "" : ", ").append("DROP COLUMN ").append(col);
+            rename.append(rename.isEmpty() ? "" : ", ").append("CHANGE COLUMN ").append(col).append("_bin ").append(col)
+                    .append(" BINARY(16) ").append(nullable.contains(col) ? "NULL" : "NOT NULL");
+        }
+        for (String idx : indexes) {
+            if (!indexExists(c, table, idx)) continue;
+            drop.insert(0, "PRIMARY".equals(idx) ? "DROP PRIMARY KEY, " : "DROP INDEX " + idx + ", ");
+        }
+        if (addIndexes != null) rename.append(", ").append(addIndexes);
+
+        // Interrupted after the drop: only the rename is left.
+        if (columnExists(c, table, columns.get(0))) {
+            for (String col : columns) {
+                String malformed = col + " <> '' AND " + col + " NOT REGEXP '" + MalformedUuids.PATTERN + "'";
+                if (MalformedUuids.record(c, table, col, malformed, rowKey, rejectDetail) > 0 && "economy".equals(table)) {
+                    // The account key itself is unusable; name and balance are kept in the rejects table.
+                    exec(c, "DELETE FROM economy WHERE " + malformed);
+                }
+            }
+            if (!add.isEmpty()) exec(c, "ALTER TABLE " + table + " " + add);
+            copyInChunks(c, table, chunkKey, columns.get(0) + "_bin", copy.toString());
+            exec(c, "ALTER TABLE " + table + " " + drop);
+        }
+        exec(c, "ALTER TABLE " + table + " " + rename);
+    }
+
+    /**
+     * Fills the shadow columns in primary key ranges of {@link #UUID_COPY_CHUNK} rows, so no single
+     * statement locks or logs the whole table. Rows whose first shadow column is set are already done.
+     */
+    private static void copyInChunks(Connection c, String table, String key, String doneColumn, String copy) throws SQLException {
+        String pending = doneColumn + " IS NULL";
+        if (key == null) {
+            exec(c, "UPDATE " + table + " SET " + copy + " WHERE " + pending);
+            return;
+        }
+        Object lo;
+        try (PreparedStatement ps = c.prepareStatement("SELECT MIN(" + key + ") FROM " + table + " WHERE " + pending);
+             ResultSet rs = ps.executeQuery()) {
+            lo = rs.next() ? rs.getObject(1) : null;
+        }
+        if (lo == null) return;
+
+        long copied = 0;
+        String from = key + " >= ?";
+        while (true) {
+            Object hi;
+            try (PreparedStatement ps = c.prepareStatement("SELECT " + key + " FROM " + table + " WHERE " + from +
+                    " ORDER BY " + key + " LIMIT 1 OFFSET " + (UUID_COPY_CHUNK - 1))) {
+                ps.setObject(1, lo);
+                try (ResultSet rs = ps.executeQuery()) {
+                    hi = rs.next() ? rs.getObject(1) : null;
+                }
+            }
+            try (PreparedStatement ps = c.prepareStatement("UPDATE " + table + " SET " + copy + " WHERE " + from +
+                    (hi == null ? "" : " AND " + key + " <= ?") + " AND " + pending)) {
+                ps.setObject(1, lo);
+                if (hi != null) ps.setObject(2, hi);
+                copied += ps.executeUpdate();
+            }
+            if (hi == null) break;
+            lo = hi;
+            from = key + " > ?";
+        }
+        AvilixEconomy.LOGGER.info("Schema: copied uuids of {} rows in {}", copied, table);
+    }
+
+    private boolean isBinaryColumn(Connection c, String table, String column) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT DATA_TYPE FROM information_schema.COLUMNS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ? LIMIT 1"
+        )) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && "binary".equalsIgnoreCase(rs.getString(1));
+            }
+        }
+    }
+
+    private static void exec(Connection c, String sql) throws SQLException {
+        try (PreparedStatement st = c.prepareStatement(sql)) {
+            st.executeUpdate();
+        }
+    }
+
+    private void ensureColumn(Connection c, String table, String column, String alterSql) throws SQLException {
+        if (columnExists(c, table, column)) return;
+        try (PreparedStatement st = c.prepareStatement(alterSql)) {
+            st.executeUpdate();
+        }
+    }
+
+    @Override
+    public String uuidTextSql(String column) {
+        // BIN_TO_UUID is MySQL 8 only; this works on MariaDB as well.
+        return "LOWER(INSERT(INSERT(INSERT(INSERT(HEX(" + column + "), 9, 0, '-'), 14, 0, '-'), 19, 0, '-'), 24, 0, '-'))";
+    }
+
+    @Override
+    public boolean columnExists(Connection c, String table, String column) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT 1 FROM information_schema.COLUMNS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ? LIMIT 1"
+        )) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    @Override
+    public boolean indexExists(Connection c, String table, String index) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT 1 FROM information_schema.STATISTICS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ? LIMIT 1"
+        )) {
+            ps.setString(1, table);
+            ps.setString(2, index);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    @Override
+    public String upsertAccountSql() {
+        return "INSERT INTO economy (uuid, name, balance) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE balance = VALUES(balance), name = VALUES(name)";
+    }
+
+    @Override
+    public String creditAccountsSql(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO economy (uuid, name, balance) VALUES ");
+        for (int i = 0; i < rows; i++) sql.append(i == 0 ? "(?, 'unknown', ?)" : ", (?, 'unknown', ?)");
+        sql.append(" ON DUPLICATE KEY UPDATE balance = balance + VALUES(balance)");
+        return sql.toString();
+    }
+
+    @Override
+    public String upsertRenderOverrideSql() {
+        return """
+                INSERT INTO shop_render_overrides
+                    (scope, override_key, off_x, off_y, off_z, rot_x, rot_y, rot_z, scale_mul, extra_lift)
+                VALUES
+                    (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON DUPLICATE KEY UPDATE
+                    off_x=VALUES(off_x), off_y=VALUES(off_y), off_z=VALUES(off_z),
+                    rot_x=VALUES(rot_x), rot_y=VALUES(rot_y), rot_z=VALUES(rot_z),
+                    scale_mul=VALUES(scale_mul), extra_lift=VALUES(extra_lift)
+                """;
+    }
+
+    @Override
+    public String upsertMarketStatsSql() {
+        return """
+                INSERT INTO market_stats_hourly
+                    (item_id, side, bucket_hour, trades, volume, notional, min_price, max_price, last_price, last_at)
+                VALUES
+                    (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON DUPLICATE KEY UPDATE
+                    trades=VALUES(trades), volume=VALUES(volume), notional=VALUES(notional),
+                    min_price=VALUES(min_price), max_price=VALUES(max_price),
+                    last_price=VALUES(last_price), last_at=VALUES(last_at)
+                """;
+    }
+
+    @Override
+    public boolean isRetryable(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException s) {
+                if (s.getErrorCode() == ER_LOCK_DEADLOCK || s.getErrorCode() == ER_LOCK_WAIT_TIMEOUT) return true;
+                if ("40001".equals(s.getSQLState())) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,32 @@
+package com.roften.avilixeconomy.database.backend;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One schema change, applied exactly once and recorded in {@code schema_version}.
+ *
+ * Steps should still tolerate a partially migrated database (IF NOT EXISTS, existence checks),
+ * because installations from before the version table already have some of the changes.
+ *
+ * @param version    unique id; migrations run in list order, the id only has to be stable
+ * @param background true if the server may start before the step ran (online index builds,
+ *                   data backfills); nothing in the code may depend on its result
+ */
+public record SchemaMigration(String version, String description, boolean background, Step step) {
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection c) throws SQLException;
+    }
+
+    /** Runs during startup, before the pool is handed out. */
+    public static SchemaMigration startup(String version, String description, Step step) {
+        return new SchemaMigration(version, description, false, step);
+    }
+
+    /** Runs on the DB executor once the server is up. */
+    public static SchemaMigration background(String version, String description, Step step) {
+        return new SchemaMigration(version, description, true, step);
+    }
+}
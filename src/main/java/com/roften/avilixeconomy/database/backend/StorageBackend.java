@@ -0,0 +1,66 @@
+package com.roften.avilixeconomy.database.backend;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Storage engine SPI.
+ *
+ * {@code DatabaseManager} keeps all portable SQL (plain SELECT/INSERT/UPDATE, LIMIT/OFFSET, FOR UPDATE).
+ * Everything that differs between engines lives here: connection setup, DDL and migrations,
+ * schema introspection, upsert statements and lock-conflict classification.
+ */
+public interface StorageBackend {
+
+    /** Config value of {@code database.backend}. */
+    enum Kind { MYSQL, H2 }
+
+    /** Short id for logs/config ("mysql", "h2"). */
+    String id();
+
+    /** Applies JDBC URL, driver and credentials to the pool config. */
+    void configurePool(HikariConfig config);
+
+    /**
+     * Ordered DDL steps of this engine (tables, columns added later, indexes).
+     * Applied once each by {@code SchemaMigrator}; new steps are only ever appended.
+     */
+    List<SchemaMigration> migrations();
+
+    /** SQL expression rendering a BINARY(16) uuid column as the usual 36-char text (for views). */
+    String uuidTextSql(String column);
+
+    boolean columnExists(Connection c, String table, String column) throws SQLException;
+
+    boolean indexExists(Connection c, String table, String index) throws SQLException;
+
+    /**
+     * Insert-or-replace of an account.
+     * Parameters: uuid (16 bytes, see {@code DatabaseManager.uuidBytes}), name, balance.
+     */
+    String upsertAccountSql();
+
+    /**
+     * Insert-or-add for {@code rows} accounts in one statement; new accounts get the name 'unknown'.
+     * Parameters: (uuid bytes, amount) repeated {@code rows} times.
+     */
+    String creditAccountsSql(int rows);
+
+    /**
+     * Insert-or-update of a shelf render override keyed by (scope, override_key).
+     * Parameters: scope, override_key, off_x, off_y, off_z, rot_x, rot_y, rot_z, scale_mul, extra_lift.
+     */
+    String upsertRenderOverrideSql();
+
+    /**
+     * Insert-or-replace of an hourly market stats bucket keyed by (item_id, side, bucket_hour).
+     * Parameters: item_id, side, bucket_hour, trades, volume, notional, min_price, max_price, last_price, last_at.
+     */
+    String upsertMarketStatsSql();
+
+    /** True for deadlocks / lock wait timeouts, i.e. errors where re-running the transaction may succeed. */
+    boolean isRetryable(SQLException e);
+}
@@ -17,6 +17,11 @@ import com.roften.avilixeconomy.shop.menu.ShopConfigMenu;
 import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import com.roften.avilixeconomy.database.DatabaseManager;
+import com.roften.avilixeconomy.database.EconomyExecutor;
+import com.roften.avilixeconomy.shop.market.MarketListingCache;
+import com.roften.avilixeconomy.shop.market.MarketStats;
+import com.roften.avilixeconomy.shop.market.ShopListing;
+import com.roften.avilixeconomy.shop.screen.MarketClientState;
 import com.roften.avilixeconomy.shop.screen.ShopClientState;
 import com.roften.avilixeconomy.shop.screen.ShopToastState;
 import com.roften.avilixeconomy.shop.client.ShopRenderOverridesClient;
@@ -70,6 +75,18 @@ public class NetworkRegistration {
     public static final ResourceLocation SHOP_SALES_PACKET_ID =
             ResourceLocation.fromNamespaceAndPath("avilixeconomy", "shop_sales");
 
+    public static final ResourceLocation MARKET_REQUEST_PACKET_ID =
+            ResourceLocation.fromNamespaceAndPath("avilixeconomy", "market_request");
+
+    public static final ResourceLocation MARKET_PAGE_PACKET_ID =
+            ResourceLocation.fromNamespaceAndPath("avilixeconomy", "market_page");
+
+    public static final ResourceLocation MARKET_STATS_REQUEST_PACKET_ID =
+            ResourceLocation.fromNamespaceAndPath("avilixeconomy", "market_stats_request");
+
+    public static final ResourceLocation MARKET_STATS_PACKET_ID =
+            ResourceLocation.fromNamespaceAndPath("avilixeconomy", "market_stats");
+
     public static final ResourceLocation SHOP_RENDER_OVERRIDES_SYNC_PACKET_ID =
             ResourceLocation.fromNamespaceAndPath("avilixeconomy", "shop_render_overrides_sync");
     public static final ResourceLocation SHOP_RENDER_OVERRIDE_UPSERT_PACKET_ID =
@@ -141,13 +158,14 @@ public record ShopToastPayload(String messageJson, boolean success) implements C
     }
 }
 
-public record BalancePayload(double balance) implements CustomPacketPayload {
+/** Balance in cents (varlong: a few bytes for typical balances instead of 8). */
+public record BalancePayload(long cents) implements CustomPacketPayload {
         public static final Type<BalancePayload> TYPE = new Type<>(BALANCE_PACKET_ID);
 
         public static final StreamCodec<RegistryFriendlyByteBuf, BalancePayload> CODEC =
                 StreamCodec.of(
-                        (buf, payload) -> buf.writeDouble(payload.balance),
-                        buf -> new BalancePayload(buf.readDouble())
+                        (buf, payload) -> buf.writeVarLong(payload.cents),
+                        buf -> new BalancePayload(buf.readVarLong())
                 );
 
         @Override
@@ -335,7 +353,7 @@ public static record ShopSlotTradePayload(BlockPos pos, int templateSlot, int un
                 BalancePayload.TYPE,
                 BalancePayload.CODEC,
                 (payload, context) -> context.enqueueWork(
-                        () -> ClientBalanceData.setBalance(payload.balance())
+                        () -> ClientBalanceData.setCents(payload.cents())
                 )
         );
 
@@ -384,6 +402,7 @@ registrar.playToClient(
             List<ShopClientState.SalesEntry> rows = new ArrayList<>(payload.rows().size());
             for (var e : payload.rows()) {
                 rows.add(new ShopClientState.SalesEntry(
+                        e.id(),
                         e.createdAtMillis(),
                         e.tradeType(),
                         e.counterpartyName(),
@@ -397,6 +416,34 @@ registrar.playToClient(
         })
 );
 
+        registrar.playToClient(
+                MarketPagePayload.TYPE,
+                MarketPagePayload.CODEC,
+                (payload, context) -> context.enqueueWork(() -> {
+                    List<MarketClientState.Entry> rows = new ArrayList<>(payload.rows().size());
+                    for (var e : payload.rows()) {
+                        rows.add(new MarketClientState.Entry(
+                                e.itemId(), e.itemName(), e.ownerName(), e.world(), e.pos(),
+                                e.buyMode(), e.lotCount(), e.price(), e.stock()
+                        ));
+                    }
+                    MarketClientState.putPage(payload.offset(), payload.total(), rows);
+                    if (payload.open()) com.roften.avilixeconomy.shop.screen.MarketScreen.open();
+                })
+        );
+
+        registrar.playToClient(
+                MarketStatsPayload.TYPE,
+                MarketStatsPayload.CODEC,
+                (payload, context) -> context.enqueueWork(() -> {
+                    var sell = payload.sell();
+                    var buy = payload.buy();
+                    MarketClientState.putStats(payload.itemId(),
+                            new MarketClientState.Stats(sell.trades(), sell.vwap(), sell.min(), sell.max(), sell.last()),
+                            new MarketClientState.Stats(buy.trades(), buy.vwap(), buy.min(), buy.max(), buy.last()));
+                })
+        );
+
         // Render overrides: sync + updates
         registrar.playToClient(
                 ShopRenderOverridesSyncPayload.TYPE,
@@ -469,33 +516,25 @@ registrar.playToServer(
 
             int limit = Math.max(1, Math.min(20, payload.limit()));
             int offset = Math.max(0, payload.offset());
+            DatabaseManager.LogCursor after = payload.afterId() > 0
+                    ? new DatabaseManager.LogCursor(payload.afterCreatedAtMillis(), payload.afterId())
+                    : null;
 
             String worldId = sp.level().dimension().location().toString();
-            var page = DatabaseManager.getShopSalesPage(worldId,
-                    payload.pos().getX(),
-                    payload.pos().getY(),
-                    payload.pos().getZ(),
-                    limit,
-                    offset
-            );
-
-            List<ShopSalesEntryPayload> rows = new ArrayList<>(page.rows().size());
-            for (var r : page.rows()) {
-                rows.add(new ShopSalesEntryPayload(
-                        r.createdAtMillis(),
-                        r.tradeType(),
-                        r.counterpartyName(),
-                        r.lots(),
-                        r.totalPrice(),
-                        r.pricePerLot(),
-                        r.itemsSummary()
-                ));
-            }
-
-            try {
-                sp.connection.send(new ShopSalesPayload(payload.pos(), limit, offset, page.hasMore(), rows));
-            } catch (Exception ignored) {
-            }
+            BlockPos pos = payload.pos();
+            // One query per player in flight; the client always gets an answer, even if the executor refused it.
+            com.roften.avilixeconomy.shop.ShopSalesRequests.submit(sp.getUUID(), () ->
+                    EconomyExecutor.supply(() -> DatabaseManager.getShopSalesPage(worldId, pos.getX(), pos.getY(), pos.getZ(), limit, after))
+                            .handle((page, err) -> {
+                                EconomyExecutor.runOnServer(() -> {
+                                    if (err != null) {
+                                        com.roften.avilixeconomy.AvilixEconomy.LOGGER.warn("Failed to load shop sales page", err);
+                                        sendShopToast(sp, Component.translatable("msg.avilixeconomy.shop.sales_unavailable"), false);
+                                    }
+                                    sendSalesPage(sp, pos, limit, offset, err != null ? new DatabaseManager.ShopSalesPage(List.of(), false) : page);
+                                });
+                                return null;
+                            }));
         })
 );
 
@@ -634,19 +673,50 @@ registrar.playToServer(
                         return;
                     }
 
-                    double pricePer = shop.getActivePricePerLot();
-                    double total = com.roften.avilixeconomy.util.MoneyUtils.round2(pricePer * (double) lots);
-                    double bal = EconomyData.getBalance(sp.getUUID());
-                    if (bal + 1e-9 < total) {
-                        sendShopToast(sp, Component.translatable("msg.avilixeconomy.shop.not_enough_money", com.roften.avilixeconomy.util.MoneyUtils.formatNoks(total)), false);
+                    long total = com.roften.avilixeconomy.util.Money.times(
+                            com.roften.avilixeconomy.util.Money.ofDouble(shop.getActivePricePerLot()), lots);
+                    // Cached balance only: the real check happens in the async settlement.
+                    if (EconomyData.isCached(sp.getUUID()) && EconomyData.getCachedCents(sp.getUUID()) < total) {
+                        sendShopToast(sp, Component.translatable("msg.avilixeconomy.shop.not_enough_money", com.roften.avilixeconomy.util.Money.formatNoks(total)), false);
                         return;
                     }
 
+                    // Previous checkout still settling: one "pending" toast, not a failure.
+                    if (com.roften.avilixeconomy.shop.ShopCheckout.isPending(sp.getUUID())) {
+                        sendShopToast(sp, Component.translatable("msg.avilixeconomy.shop.checkout_pending"), false);
+                        return;
+                    }
+
+                    // Success / failure toasts are sent by the checkout once the settlement completes.
                     boolean ok = shop.tryBuy(sp, lots);
                     if (!ok) {
                         sendShopToast(sp, Component.translatable("msg.avilixeconomy.shop.purchase_failed"), false);
-                    } else {
-                        sendShopToast(sp, Component.translatable("msg.avilixeconomy.shop.purchased", lots, com.roften.avilixeconomy.util.MoneyUtils.formatNoks(total)), true);
+                    }
+                })
+        );
+
+        registrar.playToServer(
+                MarketRequestPayload.TYPE,
+                MarketRequestPayload.CODEC,
+                (payload, context) -> context.enqueueWork(() -> {
+                    if (!(context.player() instanceof ServerPlayer sp)) return;
+                    // Per-player limit: a client cannot make the server filter all offers on every packet.
+                    com.roften.avilixeconomy.shop.market.MarketRequestLimiter.submit(sp.getUUID(), () ->
+                            sendMarketPage(sp, payload.mode(), payload.sort(), payload.query(), payload.offset(), payload.limit(), false));
+                })
+        );
+
+        registrar.playToServer(
+                MarketStatsRequestPayload.TYPE,
+                MarketStatsRequestPayload.CODEC,
+                (payload, context) -> context.enqueueWork(() -> {
+                    if (!(context.player() instanceof ServerPlayer sp)) return;
+                    String item = payload.itemId();
+                    try {
+                        sp.connection.send(new MarketStatsPayload(item,
+                                MarketStatsEntryPayload.of(MarketStats.snapshot(item, MarketStats.Side.SELL, MarketStats.Window.DAY)),
+                                MarketStatsEntryPayload.of(MarketStats.snapshot(item, MarketStats.Side.BUY, MarketStats.Window.DAY))));
+                    } catch (Exception ignored) {
                     }
                 })
         );
@@ -682,8 +752,8 @@ registrar.playToServer(
     }
 
     // === Utils ===
-    public static void sendBalanceTo(ServerPlayer player, double balance) {
-        player.connection.send(new BalancePayload(balance));
+    public static void sendBalanceTo(ServerPlayer player, long cents) {
+        player.connection.send(new BalancePayload(cents));
     }
 
     public static void sendTradeState(
@@ -726,7 +796,11 @@ registrar.playToServer(
 
 
 // ===== SHOP SALES HISTORY (C->S request, S->C response) =====
-public record ShopRequestSalesPayload(BlockPos pos, int limit, int offset) implements CustomPacketPayload {
+/**
+ * Page request. Rows come after the cursor (afterCreatedAtMillis, afterId) of the last row already shown;
+ * afterId &lt;= 0 means the newest page. {@code offset} is only echoed back (page position for the UI).
+ */
+public record ShopRequestSalesPayload(BlockPos pos, int limit, int offset, long afterCreatedAtMillis, long afterId) implements CustomPacketPayload {
     public static final Type<ShopRequestSalesPayload> TYPE = new Type<>(SHOP_REQUEST_SALES_PACKET_ID);
 
     public static final StreamCodec<RegistryFriendlyByteBuf, ShopRequestSalesPayload> CODEC =
@@ -735,8 +809,10 @@ public record ShopRequestSalesPayload(BlockPos pos, int limit, int offset) imple
                         buf.writeBlockPos(p.pos());
                         buf.writeInt(p.limit());
                         buf.writeInt(p.offset());
+                        buf.writeLong(p.afterCreatedAtMillis());
+                        buf.writeLong(p.afterId());
                     },
-                    buf -> new ShopRequestSalesPayload(buf.readBlockPos(), buf.readInt(), buf.readInt())
+                    buf -> new ShopRequestSalesPayload(buf.readBlockPos(), buf.readInt(), buf.readInt(), buf.readLong(), buf.readLong())
             );
 
     @Override
@@ -745,10 +821,11 @@ public record ShopRequestSalesPayload(BlockPos pos, int limit, int offset) imple
     }
 }
 
-public record ShopSalesEntryPayload(long createdAtMillis, String tradeType, String counterpartyName, int lots, double totalPrice, double pricePerLot, String itemsSummary) {
+public record ShopSalesEntryPayload(long id, long createdAtMillis, String tradeType, String counterpartyName, int lots, double totalPrice, double pricePerLot, String itemsSummary) {
     public static final StreamCodec<RegistryFriendlyByteBuf, ShopSalesEntryPayload> CODEC =
         StreamCodec.of(
                 (buf, e) -> {
+                    buf.writeLong(e.id());
                     buf.writeLong(e.createdAtMillis());
                         buf.writeUtf(e.tradeType(), 8);
                         buf.writeUtf(e.counterpartyName(), 32);
@@ -758,6 +835,7 @@ public record ShopSalesEntryPayload(long createdAtMillis, String tradeType, Stri
                         buf.writeUtf(e.itemsSummary(), 512);
                     },
                     buf -> new ShopSalesEntryPayload(
+                            buf.readLong(),
                             buf.readLong(),
                             buf.readUtf(8),
                             buf.readUtf(32),
@@ -804,6 +882,199 @@ public record ShopSalesPayload(BlockPos pos, int limit, int offset, boolean hasM
     }
 }
 
+    // =============================
+    // MARKET BROWSER (C->S page request, S->C page)
+    // =============================
+
+    /** mode/sort are ordinals of {@link MarketListingCache.ModeFilter} / {@link MarketListingCache.Sort}. */
+    public record MarketRequestPayload(int mode, int sort, String query, int offset, int limit) implements CustomPacketPayload {
+        public static final Type<MarketRequestPayload> TYPE = new Type<>(MARKET_REQUEST_PACKET_ID);
+
+        public static final StreamCodec<RegistryFriendlyByteBuf, MarketRequestPayload> CODEC =
+                StreamCodec.of(
+                        (buf, p) -> {
+                            buf.writeVarInt(p.mode());
+                            buf.writeVarInt(p.sort());
+                            buf.writeUtf(p.query(), 64);
+                            buf.writeVarInt(p.offset());
+                            buf.writeVarInt(p.limit());
+                        },
+                        buf -> new MarketRequestPayload(buf.readVarInt(), buf.readVarInt(), buf.readUtf(64), buf.readVarInt(), buf.readVarInt())
+                );
+
+        @Override
+        public Type<? extends CustomPacketPayload> type() {
+            return TYPE;
+        }
+    }
+
+    public record MarketEntryPayload(String itemId, String itemName, String ownerName, String world, BlockPos pos,
+                                     boolean buyMode, int lotCount, double price, int stock) {
+        public static final StreamCodec<RegistryFriendlyByteBuf, MarketEntryPayload> CODEC =
+                StreamCodec.of(
+                        (buf, e) -> {
+                            buf.writeUtf(e.itemId(), 128);
+                            buf.writeUtf(e.itemName(), 128);
+                            buf.writeUtf(e.ownerName(), 32);
+                            buf.writeUtf(e.world(), 64);
+                            buf.writeBlockPos(e.pos());
+                            buf.writeBoolean(e.buyMode());
+                            buf.writeVarInt(e.lotCount());
+                            buf.writeDouble(e.price());
+                            buf.writeVarInt(e.stock());
+                        },
+                        buf -> new MarketEntryPayload(
+                                buf.readUtf(128),
+                                buf.readUtf(128),
+                                buf.readUtf(32),
+                                buf.readUtf(64),
+                                buf.readBlockPos(),
+                                buf.readBoolean(),
+                                buf.readVarInt(),
+                                buf.readDouble(),
+                                buf.readVarInt()
+                        )
+                );
+
+        static MarketEntryPayload of(ShopListing l) {
+            var p = l.pos();
+            return new MarketEntryPayload(l.itemId(), l.itemName(), l.ownerName(), p.world(),
+                    new BlockPos(p.x(), p.y(), p.z()), l.buyMode(), l.lotCount(), l.price(), l.stock());
+        }
+    }
+
+    /** {@code open} asks the client to open the browser (sent by /shop market). */
+    public record MarketPagePayload(boolean open, int offset, int total, List<MarketEntryPayload> rows) implements CustomPacketPayload {
+        public static final Type<MarketPagePayload> TYPE = new Type<>(MARKET_PAGE_PACKET_ID);
+
+        public static final StreamCodec<RegistryFriendlyByteBuf, MarketPagePayload> CODEC =
+                StreamCodec.of(
+                        (buf, p) -> {
+                            buf.writeBoolean(p.open());
+                            buf.writeVarInt(p.offset());
+                            buf.writeVarInt(p.total());
+                            buf.writeVarInt(p.rows().size());
+                            for (var e : p.rows()) {
+                                MarketEntryPayload.CODEC.encode(buf, e);
+                            }
+                        },
+                        buf -> {
+                            boolean open = buf.readBoolean();
+                            int offset = buf.readVarInt();
+                            int total = buf.readVarInt();
+                            int size = Math.min(buf.readVarInt(), MarketListingCache.MAX_PAGE_SIZE);
+                            List<MarketEntryPayload> rows = new ArrayList<>(Math.max(0, size));
+                            for (int i = 0; i < size; i++) {
+                                rows.add(MarketEntryPayload.CODEC.decode(buf));
+                            }
+                            return new MarketPagePayload(open, offset, total, rows);
+                        }
+                );
+
+        @Override
+        public Type<? extends CustomPacketPayload> type() {
+            return TYPE;
+        }
+    }
+
+    private static void sendSalesPage(ServerPlayer sp, BlockPos pos, int limit, int offset, DatabaseManager.ShopSalesPage page) {
+        List<ShopSalesEntryPayload> rows = new ArrayList<>(page.rows().size());
+        for (var r : page.rows()) {
+            rows.add(new ShopSalesEntryPayload(
+                    r.id(),
+                    r.createdAtMillis(),
+                    r.tradeType(),
+                    r.counterpartyName(),
+                    r.lots(),
+                    r.totalPrice(),
+                    r.pricePerLot(),
+                    r.itemsSummary()
+            ));
+        }
+
+        try {
+            sp.connection.send(new ShopSalesPayload(pos, limit, offset, page.hasMore(), rows));
+        } catch (Exception ignored) {
+        }
+    }
+
+    /** Answers a market browser request from memory only (no SQL, no chunk access). */
+    public static void sendMarketPage(ServerPlayer player, int mode, int sort, String query, int offset, int limit, boolean open) {
+        if (player == null) return;
+        var modes = MarketListingCache.ModeFilter.values();
+        var sorts = MarketListingCache.Sort.values();
+        var page = MarketListingCache.page(
+                modes[Math.floorMod(mode, modes.length)],
+                sorts[Math.floorMod(sort, sorts.length)],
+                query,
+                Math.max(0, offset),
+                limit
+        );
+
+        List<MarketEntryPayload> rows = new ArrayList<>(page.rows().size());
+        for (ShopListing l : page.rows()) rows.add(MarketEntryPayload.of(l));
+        try {
+            player.connection.send(new MarketPagePayload(open, page.offset(), page.total(), rows));
+        } catch (Exception ignored) {
+        }
+    }
+
+    // =============================
+    // MARKET PRICE STATS (shop screens: C->S item id, S->C 24h stats of both sides)
+    // =============================
+
+    public record MarketStatsRequestPayload(String itemId) implements CustomPacketPayload {
+        public static final Type<MarketStatsRequestPayload> TYPE = new Type<>(MARKET_STATS_REQUEST_PACKET_ID);
+
+        public static final StreamCodec<RegistryFriendlyByteBuf, MarketStatsRequestPayload> CODEC =
+                StreamCodec.of(
+                        (buf, p) -> buf.writeUtf(p.itemId(), 128),
+                        buf -> new MarketStatsRequestPayload(buf.readUtf(128))
+                );
+
+        @Override
+        public Type<? extends CustomPacketPayload> type() {
+            return TYPE;
+        }
+    }
+
+    public record MarketStatsEntryPayload(int trades, double vwap, double min, double max, double last) {
+        public static final StreamCodec<RegistryFriendlyByteBuf, MarketStatsEntryPayload> CODEC =
+                StreamCodec.of(
+                        (buf, e) -> {
+                            buf.writeVarInt(e.trades());
+                            buf.writeDouble(e.vwap());
+                            buf.writeDouble(e.min());
+                            buf.writeDouble(e.max());
+                            buf.writeDouble(e.last());
+                        },
+                        buf -> new MarketStatsEntryPayload(buf.readVarInt(), buf.readDouble(), buf.readDouble(), buf.readDouble(), buf.readDouble())
+                );
+
+        static MarketStatsEntryPayload of(MarketStats.Snapshot s) {
+            return new MarketStatsEntryPayload(s.trades(), s.vwap(), s.min(), s.max(), s.lastPrice());
+        }
+    }
+
+    public record MarketStatsPayload(String itemId, MarketStatsEntryPayload sell, MarketStatsEntryPayload buy) implements CustomPacketPayload {
+        public static final Type<MarketStatsPayload> TYPE = new Type<>(MARKET_STATS_PACKET_ID);
+
+        public static final StreamCodec<RegistryFriendlyByteBuf, MarketStatsPayload> CODEC =
+                StreamCodec.of(
+                        (buf, p) -> {
+                            buf.writeUtf(p.itemId(), 128);
+                            MarketStatsEntryPayload.CODEC.encode(buf, p.sell());
+                            MarketStatsEntryPayload.CODEC.encode(buf, p.buy());
+                        },
+                        buf -> new MarketStatsPayload(buf.readUtf(128), MarketStatsEntryPayload.CODEC.decode(buf), MarketStatsEntryPayload.CODEC.decode(buf))
+                );
+
+        @Override
+        public Type<? extends CustomPacketPayload> type() {
+            return TYPE;
+        }
+    }
+
     // =============================
     // SHOP SHELF RENDER OVERRIDES (admin tuning)
     // =============================
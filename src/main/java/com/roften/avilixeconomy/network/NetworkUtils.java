@@ -25,16 +25,16 @@ public final class NetworkUtils {
                         NetworkRegistration.BalancePayload.CODEC,     // наш StreamCodec
                         (payload, context) -> {
                             // --- ОБРАБОТКА НА КЛИЕНТЕ ---
-                            ClientBalanceData.setBalance(payload.balance());
+                            ClientBalanceData.setCents(payload.cents());
                         }
                 );
 
         AvilixEconomy.LOGGER.info("[Network] Payload handlers registered!");
     }
 
-    public static void sendBalanceToPlayer(ServerPlayer player, double balance) {
+    public static void sendBalanceToPlayer(ServerPlayer player, long cents) {
         try {
-            NetworkRegistration.BalancePayload payload = new NetworkRegistration.BalancePayload(balance);
+            NetworkRegistration.BalancePayload payload = new NetworkRegistration.BalancePayload(cents);
             player.connection.send(payload);
         } catch (Exception e) {
             AvilixEconomy.LOGGER.error("[Network] Failed to send balance payload", e);
@@ -0,0 +1,134 @@
+package com.roften.avilixeconomy.shop;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+import com.roften.avilixeconomy.database.EconomyExecutor;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking shop checkout.
+ *
+ * The caller reserves items on the server thread, the money settlement runs on the DB executor,
+ * and the completion (deliver or roll back the reserved items) is posted back to the server thread.
+ * A player can have only one checkout in flight, so repeated clicks cannot stack reservations.
+ */
+public final class ShopCheckout {
+
+    private ShopCheckout() {}
+
+    private static final Set<UUID> IN_FLIGHT = ConcurrentHashMap.newKeySet();
+    private static final Set<Checkout> PENDING = ConcurrentHashMap.newKeySet();
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int CANCELLED = 2;
+
+    /** One checkout: the completion runs exactly once, whoever gets there first (settlement or drain). */
+    private static final class Checkout {
+        final UUID player;
+        final Consumer<Boolean> completion;
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        final AtomicBoolean finished = new AtomicBoolean();
+        volatile CompletableFuture<Void> done;
+
+        Checkout(UUID player, Consumer<Boolean> completion) {
+            this.player = player;
+            this.completion = completion;
+        }
+    }
+
+    /** True while the player's previous checkout is still being settled. */
+    public static boolean isPending(UUID player) {
+        return player != null && IN_FLIGHT.contains(player);
+    }
+
+    /**
+     * Starts a checkout. Must be called from the server thread after the items were reserved.
+     * The completion always runs on the server thread: with false if the settlement failed,
+     * could not be submitted (executor full or stopping) or was still pending at shutdown.
+     *
+     * @param player     player that initiated the trade (one checkout per player)
+     * @param settlement blocking money transfer; runs on the DB executor
+     * @param completion receives the settlement result on the server thread
+     * @return false if the player already has a checkout in flight (nothing was submitted)
+     */
+    public static boolean submit(UUID player, BooleanSupplier settlement, Consumer<Boolean> completion) {
+        if (!IN_FLIGHT.add(player)) return false;
+
+        Checkout co = new Checkout(player, completion);
+        PENDING.add(co);
+        co.done = EconomyExecutor.supply(() -> {
+            // Rolled back by drain() before it got a worker: the money must not move any more.
+            if (!co.state.compareAndSet(QUEUED, RUNNING)) return false;
+            try {
+                return settlement.getAsBoolean();
+            } catch (Throwable t) {
+                AvilixEconomy.LOGGER.warn("Shop checkout settlement failed", t);
+                return false;
+            }
+        }).handle((ok, err) -> {
+            if (err != null) AvilixEconomy.LOGGER.warn("Shop checkout could not be settled", err);
+            boolean success = err == null && Boolean.TRUE.equals(ok);
+            EconomyExecutor.runOnServer(() -> finish(co, success));
+            return null;
+        });
+        return true;
+    }
+
+    /** Server thread only. */
+    private static void finish(Checkout co, boolean ok) {
+        if (!co.finished.compareAndSet(false, true)) {
+            if (ok) {
+                AvilixEconomy.LOGGER.error("Shop checkout of {} was settled after its items were returned at shutdown", co.player);
+            }
+            return;
+        }
+        PENDING.remove(co);
+        IN_FLIGHT.remove(co.player);
+        co.completion.accept(ok);
+    }
+
+    /**
+     * Waits for in-flight settlements and runs their completions.
+     * Called on server stop (server thread) before the DB executor and pool are closed. Checkouts
+     * still queued after {@code timeoutMs} are cancelled (they never move money) and their reserved
+     * items go back to stock. A settlement that already runs may still commit, so its items are only
+     * handed out once it finished; that wait is bounded by the JDBC connection and lock timeouts.
+     */
+    public static void drain(long timeoutMs) {
+        if (!PENDING.isEmpty()) {
+            try {
+                CompletableFuture.allOf(PENDING.stream().map(co -> co.done).filter(Objects::nonNull)
+                                .toArray(CompletableFuture<?>[]::new))
+                        .get(Math.max(0L, timeoutMs), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                AvilixEconomy.LOGGER.warn("Shop checkouts did not finish before shutdown: {}", PENDING.size());
+            }
+        }
+        EconomyExecutor.drainServerTasks();
+
+        boolean running = false;
+        for (Checkout co : List.copyOf(PENDING)) {
+            if (co.state.compareAndSet(QUEUED, CANCELLED)) {
+                finish(co, false);
+                continue;
+            }
+            AvilixEconomy.LOGGER.warn("Shop checkout of {} is still settling at shutdown, waiting for it", co.player);
+            CompletableFuture<Void> done = co.done;
+            if (done != null) done.join();
+            running = true;
+        }
+        // Completions of the settlements waited for above.
+        if (running) EconomyExecutor.drainServerTasks();
+    }
+}
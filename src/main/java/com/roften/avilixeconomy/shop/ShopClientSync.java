@@ -0,0 +1,40 @@
+package com.roften.avilixeconomy.shop;
+
+import com.roften.avilixeconomy.shop.blockentity.ShopBlockEntity;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * End-of-tick client sync for shops.
+ *
+ * Handlers only mark a shop as changed; the block update is sent once per shop per tick
+ * from {@link #flush()}, no matter how many slots a hopper/Create chain touched.
+ * Server thread only.
+ */
+public final class ShopClientSync {
+
+    private ShopClientSync() {}
+
+    private static final Set<ShopBlockEntity> PENDING = new LinkedHashSet<>();
+
+    public static void schedule(ShopBlockEntity shop) {
+        PENDING.add(shop);
+    }
+
+    /** Sends the coalesced updates. Called at the end of every server tick. */
+    public static void flush() {
+        if (PENDING.isEmpty()) return;
+        List<ShopBlockEntity> batch = new ArrayList<>(PENDING);
+        PENDING.clear();
+        for (ShopBlockEntity shop : batch) {
+            shop.flushClientSync();
+        }
+    }
+
+    public static void clear() {
+        PENDING.clear();
+    }
+}
@@ -0,0 +1,51 @@
+package com.roften.avilixeconomy.shop;
+
+import com.roften.avilixeconomy.database.EconomyExecutor;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Shop sales log requests: at most one query per player on the DB executor.
+ *
+ * A request arriving while the player's previous one is still running is parked; only the latest
+ * parked one runs when the previous finished, so paging quickly still ends on the page last asked for
+ * and a flooding client cannot fill the executor queue that shop checkouts depend on. Server thread only.
+ */
+public final class ShopSalesRequests {
+
+    private ShopSalesRequests() {}
+
+    private static final Set<UUID> IN_FLIGHT = new HashSet<>();
+    private static final Map<UUID, Supplier<CompletableFuture<?>>> PARKED = new HashMap<>();
+
+    /**
+     * @param request starts the query and returns a future that completes once its reply was posted
+     *                (it must complete on failure as well)
+     */
+    public static void submit(UUID player, Supplier<CompletableFuture<?>> request) {
+        if (IN_FLIGHT.contains(player)) {
+            PARKED.put(player, request);
+            return;
+        }
+        start(player, request);
+    }
+
+    private static void start(UUID player, Supplier<CompletableFuture<?>> request) {
+        IN_FLIGHT.add(player);
+        request.get().whenComplete((v, err) -> EconomyExecutor.runOnServer(() -> {
+            IN_FLIGHT.remove(player);
+            Supplier<CompletableFuture<?>> next = PARKED.remove(player);
+            if (next != null) start(player, next);
+        }));
+    }
+
+    public static void forget(UUID player) {
+        PARKED.remove(player);
+    }
+}
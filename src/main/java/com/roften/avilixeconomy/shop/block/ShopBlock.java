@@ -177,6 +177,7 @@ MenuProvider provider = new SimpleMenuProvider(
                             Containers.dropItemStack(level, pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5, s.copy());
                         }
                     }
+                    com.roften.avilixeconomy.shop.market.ShopRegistry.remove(level, pos);
                 }
             }
         }
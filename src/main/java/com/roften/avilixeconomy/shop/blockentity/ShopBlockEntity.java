@@ -1,14 +1,21 @@
 package com.roften.avilixeconomy.shop.blockentity;
 
+import com.roften.avilixeconomy.AvilixEconomy;
 import com.roften.avilixeconomy.EconomyData;
 import com.roften.avilixeconomy.commission.CommissionManager;
 import com.roften.avilixeconomy.config.AvilixEconomyCommonConfig;
 import com.roften.avilixeconomy.database.DatabaseManager;
+import com.roften.avilixeconomy.database.PlayerNameDirectory;
+import com.roften.avilixeconomy.database.ShopSalesJournal;
 import com.roften.avilixeconomy.pricing.MinPriceManager;
-import com.roften.avilixeconomy.network.NetworkUtils;
+import com.roften.avilixeconomy.util.Money;
 import com.roften.avilixeconomy.util.MoneyUtils;
 import com.roften.avilixeconomy.network.NetworkRegistration;
 import com.roften.avilixeconomy.registry.ModBlockEntities;
+import com.roften.avilixeconomy.shop.ShopCheckout;
+import com.roften.avilixeconomy.shop.ShopClientSync;
+import com.roften.avilixeconomy.shop.market.MarketStats;
+import com.roften.avilixeconomy.shop.market.ShopRegistry;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.core.HolderLookup;
@@ -24,7 +31,6 @@ import net.neoforged.neoforge.items.IItemHandler;
 import net.neoforged.neoforge.items.ItemStackHandler;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.concurrent.CompletableFuture;
 import java.util.UUID;
 
 public class ShopBlockEntity extends BlockEntity {
@@ -47,6 +53,15 @@ public class ShopBlockEntity extends BlockEntity {
     private static final String TAG_PRICE_BUY_SLOTS = "PriceBuySlots";
     private static final String TAG_MODE = "ModeBuy";
 
+    // Client sync (compact format, see writeClientTag)
+    private static final String TAG_SYNC = "Sync";
+    private static final String TAG_STOCK_COUNTS = "StockCounts";
+    private static final int SYNC_META = 1;        // owner, mode, lot prices, legacy slot prices
+    private static final int SYNC_SLOT_PRICES = 2; // per-template-slot prices
+    private static final int SYNC_TEMPLATE = 4;
+    private static final int SYNC_COUNTS = 8;      // stock count per template slot
+    private static final int SYNC_ALL = SYNC_META | SYNC_SLOT_PRICES | SYNC_TEMPLATE | SYNC_COUNTS;
+
     @Nullable
     private UUID owner;
 
@@ -72,24 +87,45 @@ public class ShopBlockEntity extends BlockEntity {
     private boolean buyMode;
 
     // ===== cached computed values (server-side) =====
-    private long cachedAvailGameTime = -1L;
+    // Marked dirty by setChanged() (stock, template, price, mode and owner edits all go through it)
+    // and by a change of the owner's cached balance; recomputed lazily on the next read.
+    private boolean availDirty = true;
+    private long cachedAvailOwnerBalance = Long.MIN_VALUE;
     private int cachedAvailSellLots = 0;
     private int cachedAvailBuyLots = 0;
 
+    // ===== coalesced client sync (server-side, see ShopClientSync) =====
+    private int syncDirty;
+    private int pendingDelta;
+    @Nullable
+    private int[] lastSyncedStockCounts;
+
+    // client-side: stock is not synced, only the count per template slot
+    private final int[] clientStockCounts = new int[TEMPLATE_SLOTS];
+
 
     private final ItemStackHandler template = new ItemStackHandler(TEMPLATE_SLOTS) {
         @Override
         protected void onContentsChanged(int slot) {
             setChanged();
-            syncToClient();
+            syncToClient(SYNC_TEMPLATE | SYNC_SLOT_PRICES);
         }
     };
 
+    // item -> amount index over stock (kept in sync from the handler callbacks)
+    private final StockIndex stockIndex = new StockIndex(STOCK_SLOTS);
+
     private final ItemStackHandler stock = new ItemStackHandler(STOCK_SLOTS) {
         @Override
         protected void onContentsChanged(int slot) {
+            stockIndex.update(slot, getStackInSlot(slot));
             setChanged();
-            syncToClient();
+            syncStockToClient();
+        }
+
+        @Override
+        protected void onLoad() {
+            stockIndex.rebuild(this);
         }
     };
 
@@ -336,6 +372,16 @@ public void setPriceForMode(int mode, double price) {
         return automationHandler;
     }
 
+    /**
+     * Menu slots mutate stacks in place (merge/split) without going through the handler;
+     * they call this so the stock index sees the change.
+     */
+    public void onStockSlotChanged(int slot) {
+        stockIndex.update(slot, stock.getStackInSlot(slot));
+        setChanged();
+        syncStockToClient();
+    }
+
     /**
      * @return how many full "lots" are available, based on template requirements and stock.
      */
@@ -349,7 +395,7 @@ public void setPriceForMode(int mode, double price) {
             hasAny = true;
             int need = req.getCount();
             if (need <= 0) continue;
-            int have = countInStock(req);
+            int have = getStockCountForTemplateSlot(i);
             int lots = have / need;
             if (lots < minLots) minLots = lots;
         }
@@ -360,8 +406,8 @@ public void setPriceForMode(int mode, double price) {
 
 
     /**
-     * Cached variant to avoid heavy per-tick scans while a menu is open.
-     * Recomputes at most once per 10 game ticks.
+     * Cached variant for menus that poll every tick.
+     * Recomputed only after something it depends on has changed.
      */
     public int getAvailableLotsCached() {
         if (level == null || level.isClientSide) return getAvailableLots();
@@ -381,9 +427,16 @@ public void setPriceForMode(int mode, double price) {
     }
 
     private void refreshAvailableLotsCacheIfNeeded() {
-        long t = level.getGameTime();
-        if (cachedAvailGameTime >= 0 && (t - cachedAvailGameTime) < 10) return;
-        cachedAvailGameTime = t;
+        // BUY-mode availability depends on the owner's money; the cached balance is an O(1) read.
+        if (buyMode && owner != null) {
+            long bal = EconomyData.getCachedCents(owner);
+            if (bal != cachedAvailOwnerBalance) {
+                cachedAvailOwnerBalance = bal;
+                availDirty = true;
+            }
+        }
+        if (!availDirty) return;
+        availDirty = false;
 
         // sell-mode cache
         cachedAvailSellLots = getAvailableLots();
@@ -398,13 +451,12 @@ public void setPriceForMode(int mode, double price) {
             cachedAvailBuyLots = 0;
             return;
         }
-        double price = getEffectiveLotPriceForMode(1);
-        if (price <= 0.0) {
+        long price = Money.ofDouble(getEffectiveLotPriceForMode(1));
+        if (price <= 0L) {
             cachedAvailBuyLots = 0;
             return;
         }
-        double ownerBal = com.roften.avilixeconomy.EconomyData.getCachedBalance(owner);
-        long byMoney = (long) Math.floor(ownerBal / price);
+        long byMoney = Math.max(0L, cachedAvailOwnerBalance) / price;
         int bySpace = getAvailableLotsBySpace(lot);
         long min = Math.min(byMoney, (long) bySpace);
         cachedAvailBuyLots = (int) Math.min(Integer.MAX_VALUE, Math.max(0L, min));
@@ -418,15 +470,19 @@ public void setPriceForMode(int mode, double price) {
      * This is used both server-side (logic) and client-side (rendering overlay).
      */
     public int countInStock(net.minecraft.world.item.ItemStack sample) {
-        int total = 0;
-        for (int i = 0; i < stock.getSlots(); i++) {
-            var s = stock.getStackInSlot(i);
-            if (s.isEmpty()) continue;
-            if (net.minecraft.world.item.ItemStack.isSameItemSameComponents(s, sample)) {
-                total += s.getCount();
-            }
-        }
-        return total;
+        if (sample == null || sample.isEmpty()) return 0;
+        return stockIndex.count(sample);
+    }
+
+    /**
+     * Stock amount of the item in the given template slot.
+     * Works on both sides: clients do not receive the stock, only these counts.
+     */
+    public int getStockCountForTemplateSlot(int templateSlot) {
+        if (templateSlot < 0 || templateSlot >= TEMPLATE_SLOTS) return 0;
+        if (level != null && level.isClientSide) return clientStockCounts[templateSlot];
+        var req = template.getStackInSlot(templateSlot);
+        return req.isEmpty() ? 0 : countInStock(req);
     }
 
     
@@ -443,7 +499,10 @@ public void setPriceForMode(int mode, double price) {
 /**
      * Tries to buy N lots from this shop.
      *
-     * @return true if the purchase succeeded.
+     * The lot items are reserved (taken out of stock) immediately, the money settlement runs on the DB
+     * executor and the items are delivered (or returned to stock) once it completes on the server thread.
+     *
+     * @return true if the checkout was started.
      */
     public boolean tryBuy(ServerPlayer buyer, int lots) {
         if (buyMode) {
@@ -453,13 +512,14 @@ public void setPriceForMode(int mode, double price) {
 
         if (lots <= 0) return false;
         if (templateEmpty()) return false;
+        if (rejectIfCheckoutPending(buyer)) return false;
 
         int available = getAvailableLots();
         if (available <= 0) return false;
         if (lots > available) return false;
 
         double usedPricePerLot = getEffectiveLotPriceForMode(0);
-        double totalPrice = MoneyUtils.round2(usedPricePerLot * (double) lots);
+        long totalPrice = Money.times(Money.ofDouble(usedPricePerLot), lots);
 
         if (owner == null) return false;
 
@@ -469,8 +529,8 @@ public void setPriceForMode(int mode, double price) {
             return false;
         }
 
-        double balance = EconomyData.getBalance(buyer.getUUID());
-        if (balance + 1e-9 < totalPrice) return false;
+        // Cached balance only (no SQL on the server thread); the settlement re-checks under a row lock.
+        if (EconomyData.isCached(buyer.getUUID()) && EconomyData.getCachedCents(buyer.getUUID()) < totalPrice) return false;
 
         // First, reserve/remove items from stock.
         net.minecraft.world.item.ItemStack[] toGive = new net.minecraft.world.item.ItemStack[template.getSlots()];
@@ -494,64 +554,41 @@ public void setPriceForMode(int mode, double price) {
             }
         }
 
-        // Transfer money.
-        UUID serverUuid;
-        try {
-            serverUuid = UUID.fromString(AvilixEconomyCommonConfig.ECONOMY.serverAccountUuid.get());
-        } catch (Exception e) {
-            serverUuid = new UUID(0L, 0L);
-        }
-        int commBps = getSellCommissionBps();
-        double fee = CommissionManager.computeFee(totalPrice, commBps);
-        double ownerNet = Math.max(0.0, MoneyUtils.round2(totalPrice - fee));
-        if (!EconomyData.paySplit(buyer.getUUID(), owner, ownerNet, serverUuid, fee)) {
-            // rollback items
-            for (var st : toGive) {
-                if (st != null && !st.isEmpty()) insertToStock(st);
-            }
+        // Transfer money (off-thread).
+        final UUID buyerUuid = buyer.getUUID();
+        final UUID ownerUuid = owner;
+        final UUID serverUuid = serverAccountUuid();
+        final long fee = CommissionManager.feeCents(totalPrice, getSellCommissionBps());
+        final long ownerNet = totalPrice - fee;
+        final SaleLogEntry log = saleLogEntry(ownerUuid, buyerUuid, buyer.getGameProfile().getName(),
+                "SELL", usedPricePerLot, lots, Money.toDouble(totalPrice), toGive);
+
+        boolean submitted = ShopCheckout.submit(buyerUuid,
+                () -> settle(buyerUuid, ownerUuid, ownerNet, serverUuid, fee, log),
+                ok -> {
+                    if (!ok) {
+                        returnToStock(toGive);
+                        NetworkRegistration.sendShopToast(buyer, net.minecraft.network.chat.Component.translatable("msg.avilixeconomy.shop.purchase_failed"), false);
+                        return;
+                    }
+                    // Give items to buyer (spill if inventory full).
+                    for (var st : toGive) deliverToPlayer(buyer, st);
+                    setChanged();
+                    NetworkRegistration.sendShopToast(buyer,
+                            net.minecraft.network.chat.Component.translatable("msg.avilixeconomy.shop.purchased", lots, Money.formatNoks(totalPrice)),
+                            true);
+                });
+        if (!submitted) {
+            returnToStock(toGive);
             return false;
         }
-
-        // Give items to buyer (spill if inventory full).
-        for (var st : toGive) {
-            if (st == null || st.isEmpty()) continue;
-            net.neoforged.neoforge.items.ItemHandlerHelper.giveItemToPlayer(buyer, st);
-        }
-
-        // DB: лог успешной покупки (асинхронно, чтобы не лагать тред сервера)
-        if (level != null && owner != null) {
-            final UUID ownerUuid = owner;
-            final UUID buyerUuid = buyer.getUUID();
-            final String ownerNameFinal = resolveOwnerName(level, ownerUuid);
-            final String buyerNameFinal = buyer.getGameProfile().getName();
-            final String worldId = level.dimension().location().toString();
-            final int sx = worldPosition.getX();
-            final int sy = worldPosition.getY();
-            final int sz = worldPosition.getZ();
-            final String blockIdFinal = net.minecraft.core.registries.BuiltInRegistries.BLOCK.getKey(getBlockState().getBlock()).toString();
-            final String itemsJson = buildItemsJson(toGive, lots);
-
-            // Capture values for async lambda (must be final / effectively final)
-            final double pricePerLotFinal = usedPricePerLot;
-            final int lotsFinal = lots;
-            final double totalPriceFinal = totalPrice;
-
-                        CompletableFuture.runAsync(() -> DatabaseManager.logShopSaleNow(
-                    worldId, sx, sy, sz, blockIdFinal,
-                    ownerUuid, ownerNameFinal,
-                    buyerUuid, buyerNameFinal,
-                    "SELL",
-                    pricePerLotFinal, lotsFinal, totalPriceFinal, itemsJson
-            ));
-        }
-
-        setChanged();
         return true;
     }
 
 /**
  * Slot-mode (SELL-mode): player buys only one template slot, repeated 'units' times.
  * Each unit gives templateStack.getCount() items of that slot.
+ * Settlement is asynchronous, see {@link #tryBuy(ServerPlayer, int)}.
  */
 public boolean tryBuySlot(ServerPlayer buyer, int templateSlot, int units) {
     if (buyMode) {
@@ -569,6 +606,7 @@ public boolean tryBuySlot(ServerPlayer buyer, int templateSlot, int units) {
         NetworkRegistration.sendShopToast(buyer, net.minecraft.network.chat.Component.literal("Нельзя покупать у самого себя."), false);
         return false;
     }
+    if (rejectIfCheckoutPending(buyer)) return false;
 
     double pricePerUnit = getSlotPriceForMode(0, templateSlot);
     if (pricePerUnit <= 0.0) {
@@ -587,14 +625,13 @@ public boolean tryBuySlot(ServerPlayer buyer, int templateSlot, int units) {
     if (want > maxUnitsByStock) want = maxUnitsByStock;
     if (want <= 0) return false;
 
-    double totalPrice = MoneyUtils.round2(pricePerUnit * (double) want);
-    double balance = EconomyData.getBalance(buyer.getUUID());
-    if (balance + 1e-9 < totalPrice) {
+    long totalPrice = Money.times(Money.ofDouble(pricePerUnit), want);
+    if (EconomyData.isCached(buyer.getUUID()) && EconomyData.getCachedCents(buyer.getUUID()) < totalPrice) {
         NetworkRegistration.sendShopToast(buyer, net.minecraft.network.chat.Component.translatable("msg.avilixeconomy.shop.no_money"), false);
         return false;
     }
 
-    // Extract items
+    // Reserve items
     int amount = needPerUnit * want;
     var toGive = extractMatching(req, amount);
     if (toGive.isEmpty() || toGive.getCount() != amount) {
@@ -602,54 +639,36 @@ public boolean tryBuySlot(ServerPlayer buyer, int templateSlot, int units) {
         return false;
     }
 
-    // Pay (with commission)
-    UUID serverUuid;
-    try {
-        serverUuid = UUID.fromString(AvilixEconomyCommonConfig.ECONOMY.serverAccountUuid.get());
-    } catch (Exception e) {
-        serverUuid = new UUID(0L, 0L);
-    }
-    int commBps = getSellCommissionBps();
-    double fee = CommissionManager.computeFee(totalPrice, commBps);
-    double ownerNet = Math.max(0.0, MoneyUtils.round2(totalPrice - fee));
-    if (!EconomyData.paySplit(buyer.getUUID(), owner, ownerNet, serverUuid, fee)) {
-        insertToStock(toGive);
+    // Pay (with commission, off-thread)
+    final UUID buyerUuid = buyer.getUUID();
+    final UUID ownerUuid = owner;
+    final UUID serverUuid = serverAccountUuid();
+    final long fee = CommissionManager.feeCents(totalPrice, getSellCommissionBps());
+    final long ownerNet = totalPrice - fee;
+    final SaleLogEntry log = saleLogEntry(ownerUuid, buyerUuid, buyer.getGameProfile().getName(),
+            "SELL_SLOT", pricePerUnit, want, Money.toDouble(totalPrice), new net.minecraft.world.item.ItemStack[]{toGive});
+
+    boolean submitted = ShopCheckout.submit(buyerUuid,
+            () -> settle(buyerUuid, ownerUuid, ownerNet, serverUuid, fee, log),
+            ok -> {
+                if (!ok) {
+                    returnToStock(toGive);
+                    NetworkRegistration.sendShopToast(buyer, net.minecraft.network.chat.Component.translatable("msg.avilixeconomy.shop.purchase_failed"), false);
+                    return;
+                }
+                deliverToPlayer(buyer, toGive);
+                setChanged();
+            });
+    if (!submitted) {
+        returnToStock(toGive);
         return false;
     }
-
-    net.neoforged.neoforge.items.ItemHandlerHelper.giveItemToPlayer(buyer, toGive);
-
-    // DB log (optional): we can reuse buildItemsJson for one-stack
-    if (level != null && owner != null) {
-        final UUID ownerUuid = owner;
-        final UUID buyerUuid = buyer.getUUID();
-        final String ownerNameFinal = resolveOwnerName(level, ownerUuid);
-        final String buyerNameFinal = buyer.getGameProfile().getName();
-        final String worldId = level.dimension().location().toString();
-        final int sx = worldPosition.getX();
-        final int sy = worldPosition.getY();
-        final int sz = worldPosition.getZ();
-        final String blockIdFinal = net.minecraft.core.registries.BuiltInRegistries.BLOCK.getKey(getBlockState().getBlock()).toString();
-        final String itemsJson = buildItemsJson(new net.minecraft.world.item.ItemStack[]{toGive}, want);
-        final double pricePerUnitFinal = pricePerUnit;
-        final int unitsFinal = want;
-        final double totalPriceFinal = totalPrice;
-
-        CompletableFuture.runAsync(() -> DatabaseManager.logShopSaleNow(
-                worldId, sx, sy, sz, blockIdFinal,
-                ownerUuid, ownerNameFinal,
-                buyerUuid, buyerNameFinal,
-                "SELL_SLOT",
-                pricePerUnitFinal, unitsFinal, totalPriceFinal, itemsJson
-        ));
-    }
-
-    setChanged();
     return true;
 }
 
 /**
  * Slot-mode (BUY-mode): player sells only one template slot, repeated 'units' times.
+ * The items are taken from the seller right away and go into stock once the owner has paid.
  */
 public boolean trySellSlotToShop(ServerPlayer seller, int templateSlot, int units) {
     if (units <= 0) return false;
@@ -670,6 +689,7 @@ public boolean trySellSlotToShop(ServerPlayer seller, int templateSlot, int unit
         NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.translatable("msg.avilixeconomy.shop.self_trade"), false);
         return false;
     }
+    if (rejectIfCheckoutPending(seller)) return false;
 
     double pricePerUnit = getSlotPriceForMode(1, templateSlot);
     if (pricePerUnit <= 0.0) {
@@ -701,63 +721,55 @@ public boolean trySellSlotToShop(ServerPlayer seller, int templateSlot, int unit
     if (want > maxUnits) want = maxUnits;
     if (want <= 0) return false;
 
-    double totalPrice = MoneyUtils.round2(pricePerUnit * (double) want);
-
-    double ownerBal = EconomyData.isCached(owner) ? EconomyData.getCachedBalance(owner) : EconomyData.getBalance(owner);
-    int maxUnitsByMoney = (pricePerUnit <= 0.0) ? 0 : (int) Math.floor(ownerBal / pricePerUnit);
-    if (want > maxUnitsByMoney) want = maxUnitsByMoney;
+    // clamp by owner money (cached only; the settlement re-checks under a row lock)
+    long unitCents = Money.ofDouble(pricePerUnit);
+    if (EconomyData.isCached(owner) && unitCents > 0L) {
+        long maxUnitsByMoney = EconomyData.getCachedCents(owner) / unitCents;
+        if (want > maxUnitsByMoney) want = (int) Math.max(0L, maxUnitsByMoney);
+    }
     if (want <= 0) {
         NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("У владельца недостаточно средств."), false);
         return false;
     }
-    totalPrice = MoneyUtils.round2(pricePerUnit * (double) want);
+    long totalPrice = Money.times(unitCents, want);
 
-    // Remove items from seller
+    // Reserve items from seller
     int amount = needPerUnit * want;
     if (!removeExactFromPlayer(seller, req, amount)) {
         NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("Не удалось забрать предметы из инвентаря."), false);
         return false;
     }
-
-    // Insert into stock
     var toInsert = req.copy();
     toInsert.setCount(amount);
-    insertToStock(toInsert);
-
-    // Pay seller (with commission)
-    UUID serverUuid;
-    try {
-        serverUuid = UUID.fromString(AvilixEconomyCommonConfig.ECONOMY.serverAccountUuid.get());
-    } catch (Exception e) {
-        serverUuid = new UUID(0L, 0L);
-    }
-    int commBps = getBuyCommissionBps();
-    double fee = CommissionManager.computeFee(totalPrice, commBps);
-    double sellerNet = Math.max(0.0, MoneyUtils.round2(totalPrice - fee));
-    boolean paid = EconomyData.paySplit(owner, seller.getUUID(), sellerNet, serverUuid, fee);
-    if (!paid) {
-        // rollback: remove inserted and return
-        extractMatching(req, amount); // best-effort remove (may remove different slots but same item)
-        net.neoforged.neoforge.items.ItemHandlerHelper.giveItemToPlayer(seller, toInsert);
-        NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("Оплата не прошла. Продажа отменена."), false);
+
+    // Pay seller (with commission, off-thread)
+    final UUID sellerUuid = seller.getUUID();
+    final UUID ownerUuid = owner;
+    final UUID serverUuid = serverAccountUuid();
+    final long fee = CommissionManager.feeCents(totalPrice, getBuyCommissionBps());
+    final long sellerNet = totalPrice - fee;
+
+    boolean submitted = ShopCheckout.submit(sellerUuid,
+            () -> settle(ownerUuid, sellerUuid, sellerNet, serverUuid, fee, null),
+            ok -> {
+                if (!ok) {
+                    deliverToPlayer(seller, toInsert);
+                    NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("Оплата не прошла. Продажа отменена."), false);
+                    return;
+                }
+                returnToStock(new net.minecraft.world.item.ItemStack[]{toInsert});
+                EconomyData.sendBalanceUpdateToPlayer(seller);
+                setChanged();
+            });
+    if (!submitted) {
+        deliverToPlayer(seller, toInsert);
         return false;
     }
-
-    NetworkUtils.sendBalanceToPlayer(seller, EconomyData.getBalance(seller.getUUID()));
-
-    setChanged();
     return true;
 }
 
 private int countMatching(net.minecraft.world.item.ItemStack sample) {
-    int sum = 0;
-    for (int i = 0; i < stock.getSlots(); i++) {
-        var s = stock.getStackInSlot(i);
-        if (s.isEmpty()) continue;
-        if (!net.minecraft.world.item.ItemStack.isSameItemSameComponents(s, sample)) continue;
-        sum += s.getCount();
-    }
-    return sum;
+    return countInStock(sample);
 }
 
 private int countInPlayer(ServerPlayer player, net.minecraft.world.item.ItemStack sample) {
@@ -792,22 +804,16 @@ private boolean removeExactFromPlayer(ServerPlayer player, net.minecraft.world.i
 
 private int getAvailableUnitsBySpace(net.minecraft.world.item.ItemStack sample) {
     // Compute how many more items of this type we can insert, then divide by sample.count
-    int freeItems = 0;
-    for (int i = 0; i < stock.getSlots(); i++) {
-        var s = stock.getStackInSlot(i);
-        if (s.isEmpty()) {
-            freeItems += sample.getMaxStackSize();
-        } else if (net.minecraft.world.item.ItemStack.isSameItemSameComponents(s, sample)) {
-            freeItems += (s.getMaxStackSize() - s.getCount());
-        }
-    }
+    long freeItems = stockIndex.freeSpace(sample);
     int perUnit = Math.max(1, sample.getCount());
-    return freeItems / perUnit;
+    return (int) Math.min(Integer.MAX_VALUE, freeItems / perUnit);
 }
 
 /**
  * BUY-mode: player sells items to the shop. Owner pays the seller, items go into stock.
- * Returns true if transaction succeeded.
+ * The items are taken from the seller right away and go into stock once the owner has paid;
+ * on failure they are handed back.
+ * Returns true if the checkout was started.
  */
 public boolean trySellToShop(ServerPlayer seller, int lots) {
     if (lots <= 0) return false;
@@ -824,6 +830,7 @@ public boolean trySellToShop(ServerPlayer seller, int lots) {
         NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.translatable("msg.avilixeconomy.shop.self_trade"), false);
 	        return false;
 	    }
+    if (rejectIfCheckoutPending(seller)) return false;
     double pricePerLot = priceBuyPerLot;
     if (pricePerLot <= 0.0) {
         NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("Цена скупки не установлена."), false);
@@ -846,92 +853,68 @@ public boolean trySellToShop(ServerPlayer seller, int lots) {
         NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("Недостаточно места на складе. Доступно лотов: " + maxLotsBySpace), false);
         return false;
     }
-    // Check owner has money
-    double totalPrice = MoneyUtils.round2(pricePerLot * (double) lots);
-    double ownerBal = EconomyData.getCachedBalance(owner);
-    if (!EconomyData.isCached(owner)) {
-        ownerBal = EconomyData.getBalance(owner);
-    }
-    long maxLotsByMoney = (pricePerLot <= 0.0) ? 0L : (long) Math.floor(ownerBal / pricePerLot);
-    if (lots > maxLotsByMoney) {
-        NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("У владельца недостаточно средств. Доступно лотов: " + maxLotsByMoney), false);
-        return false;
+    // Check owner has money (cached only; the settlement re-checks under a row lock)
+    long lotCents = Money.ofDouble(pricePerLot);
+    long totalPrice = Money.times(lotCents, lots);
+    if (EconomyData.isCached(owner) && lotCents > 0L) {
+        long maxLotsByMoney = EconomyData.getCachedCents(owner) / lotCents;
+        if (lots > maxLotsByMoney) {
+            NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("У владельца недостаточно средств. Доступно лотов: " + maxLotsByMoney), false);
+            return false;
+        }
     }
 
-    // Remove items from seller inventory
+    // Reserve items from seller inventory
     if (!removeItemsFromPlayer(seller, lot, lots)) {
         NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("Не удалось забрать предметы из инвентаря."), false);
         return false;
     }
-
-    // Insert into stock (should succeed due to pre-check)
-    if (!insertLotIntoStock(lot, lots)) {
-        // rollback: return items
-        giveItemsToPlayer(seller, lot, lots);
-        NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("Склад переполнен. Продажа отменена."), false);
-        return false;
+    net.minecraft.world.item.ItemStack[] reserved = new net.minecraft.world.item.ItemStack[lot.size()];
+    for (int i = 0; i < lot.size(); i++) {
+        reserved[i] = lot.get(i).copyWithCount(lot.get(i).getCount() * lots);
     }
 
-    // Pay seller from owner
-    UUID serverUuid;
-        try {
-            serverUuid = UUID.fromString(AvilixEconomyCommonConfig.ECONOMY.serverAccountUuid.get());
-        } catch (Exception e) {
-            serverUuid = new UUID(0L, 0L);
-        }
-        int commBps = getBuyCommissionBps();
-        double fee = CommissionManager.computeFee(totalPrice, commBps);
-        double sellerNet = Math.max(0.0, MoneyUtils.round2(totalPrice - fee));
-        boolean paid = EconomyData.paySplit(owner, seller.getUUID(), sellerNet, serverUuid, fee);
-    if (!paid) {
-        // rollback: remove inserted and return, but safest: attempt to refund items to seller
-        // Try to extract back and give seller (best-effort)
-        extractLotFromStock(lot, lots);
-        giveItemsToPlayer(seller, lot, lots);
-        NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("Оплата не прошла. Продажа отменена."), false);
-        return false;
-    }
+    // Pay seller from owner (off-thread)
+    final UUID sellerUuid = seller.getUUID();
+    final UUID ownerUuid = owner;
+    final UUID serverUuid = serverAccountUuid();
+    final long fee = CommissionManager.feeCents(totalPrice, getBuyCommissionBps());
+    final long sellerNet = totalPrice - fee;
+    // Log to DB as BUY (counterparty = seller)
+    final SaleLogEntry log = saleLogEntry(ownerUuid, sellerUuid, seller.getGameProfile().getName(),
+            "BUY", pricePerLot, lots, Money.toDouble(totalPrice), reserved);
+
+    boolean submitted = ShopCheckout.submit(sellerUuid,
+            () -> settle(ownerUuid, sellerUuid, sellerNet, serverUuid, fee, log),
+            ok -> {
+                if (!ok) {
+                    for (var st : reserved) deliverToPlayer(seller, st);
+                    NetworkRegistration.sendShopToast(seller, net.minecraft.network.chat.Component.literal("Оплата не прошла. Продажа отменена."), false);
+                    return;
+                }
+                returnToStock(reserved);
 
-    // Force-send seller balance update using the live ServerPlayer connection.
-    // (Some servers report that the generic UUID-based sync can be missed during menu-driven actions.)
-    try {
-        EconomyData.sendBalanceUpdateToPlayer(seller);
-    } catch (Throwable ignored) {
-    }
+                // Force-send seller balance update using the live ServerPlayer connection.
+                // (Some servers report that the generic UUID-based sync can be missed during menu-driven actions.)
+                try {
+                    EconomyData.sendBalanceUpdateToPlayer(seller);
+                } catch (Throwable ignored) {
+                }
 
-    // Log to DB as BUY (counterparty = seller)
-    if (level != null) {
-        final java.util.UUID ownerUuid = owner;
-        final java.util.UUID sellerUuid = seller.getUUID();
-        final String ownerNameFinal = resolveOwnerName(level, ownerUuid);
-        final String sellerNameFinal = seller.getGameProfile().getName();
-        final String worldId = level.dimension().location().toString();
-        final int sx = worldPosition.getX();
-        final int sy = worldPosition.getY();
-        final int sz = worldPosition.getZ();
-        final String blockIdFinal = net.minecraft.core.registries.BuiltInRegistries.BLOCK.getKey(getBlockState().getBlock()).toString();
-        final String itemsJson = buildItemsJson(lot.toArray(new net.minecraft.world.item.ItemStack[0]), lots);
-        final double pricePerLotFinal = pricePerLot;
-        final int lotsFinal = lots;
-        final double totalPriceFinal = totalPrice;
-        java.util.concurrent.CompletableFuture.runAsync(() -> DatabaseManager.logShopSaleNow(
-                worldId, sx, sy, sz, blockIdFinal,
-                ownerUuid, ownerNameFinal,
-                sellerUuid, sellerNameFinal,
-                "BUY",
-                pricePerLotFinal, lotsFinal, totalPriceFinal, itemsJson
-        ));
+                setChanged();
+                NetworkRegistration.sendShopToast(seller,
+                        net.minecraft.network.chat.Component.translatable(
+                                "msg.avilixeconomy.shop.sold",
+                                lots,
+                                Money.formatNoks(totalPrice)
+                        ),
+                        true
+                );
+            });
+    if (!submitted) {
+        for (var st : reserved) deliverToPlayer(seller, st);
+        return false;
     }
-
-    setChanged();
-    NetworkRegistration.sendShopToast(seller,
-            net.minecraft.network.chat.Component.translatable(
-                    "msg.avilixeconomy.shop.sold",
-                    lots,
-                    MoneyUtils.formatNoks(totalPrice)
-            ),
-            true
-    );
     return true;
 }
 
@@ -939,13 +922,12 @@ public int getAvailableBuyLots() {
     if (!buyMode) return 0;
     java.util.List<net.minecraft.world.item.ItemStack> lot = getTemplateStacks();
     if (lot.isEmpty()) return 0;
-    double price = priceBuyPerLot;
-    if (price <= 0.0 || owner == null) return 0;
-    double ownerBal = EconomyData.getCachedBalance(owner);
+    long price = Money.ofDouble(priceBuyPerLot);
+    if (price <= 0L || owner == null) return 0;
     if (!EconomyData.isCached(owner)) {
-        ownerBal = EconomyData.getBalance(owner);
+        EconomyData.getBalance(owner);
     }
-    long byMoney = (price <= 0.0) ? 0L : (long) Math.floor(ownerBal / price);
+    long byMoney = Math.max(0L, EconomyData.getCachedCents(owner)) / price;
     int bySpace = getAvailableLotsBySpace(lot);
     long min = Math.min(byMoney, (long) bySpace);
     return (int) Math.min(Integer.MAX_VALUE, min);
@@ -996,40 +978,28 @@ private boolean removeItemsFromPlayer(ServerPlayer player, java.util.List<net.mi
     return true;
 }
 
-private void giveItemsToPlayer(ServerPlayer player, java.util.List<net.minecraft.world.item.ItemStack> lot, int lots) {
-    for (net.minecraft.world.item.ItemStack it : lot) {
-        var give = it.copy();
-        give.setCount(it.getCount() * lots);
-        if (!player.getInventory().add(give)) {
-            Containers.dropItemStack(level, worldPosition.getX() + 0.5, worldPosition.getY() + 0.5, worldPosition.getZ() + 0.5, give);
-        }
+/** Hands a stack to the player; spills at the shop if the inventory is full or the player already left. */
+private void deliverToPlayer(ServerPlayer player, net.minecraft.world.item.ItemStack stack) {
+    if (stack == null || stack.isEmpty()) return;
+    if (player == null || player.hasDisconnected()) {
+        dropAtShop(stack);
+        return;
     }
+    net.neoforged.neoforge.items.ItemHandlerHelper.giveItemToPlayer(player, stack);
 }
 
-private boolean insertLotIntoStock(java.util.List<net.minecraft.world.item.ItemStack> lot, int lots) {
-    for (net.minecraft.world.item.ItemStack it : lot) {
-        var toInsert = it.copy();
-        toInsert.setCount(it.getCount() * lots);
-        for (int slot = 0; slot < stock.getSlots() && !toInsert.isEmpty(); slot++) {
-            toInsert = stock.insertItem(slot, toInsert, false);
-        }
-        if (!toInsert.isEmpty()) return false;
+/** Puts reserved stacks back into stock; drops them if the shop was broken meanwhile. */
+private void returnToStock(net.minecraft.world.item.ItemStack[] stacks) {
+    for (var st : stacks) {
+        if (st == null || st.isEmpty()) continue;
+        if (isRemoved()) dropAtShop(st);
+        else insertToStock(st);
     }
-    return true;
 }
 
-private void extractLotFromStock(java.util.List<net.minecraft.world.item.ItemStack> lot, int lots) {
-    for (net.minecraft.world.item.ItemStack it : lot) {
-        int remaining = it.getCount() * lots;
-        for (int slot = 0; slot < stock.getSlots() && remaining > 0; slot++) {
-            var s = stock.getStackInSlot(slot);
-            if (s.isEmpty()) continue;
-            if (!net.minecraft.world.item.ItemStack.isSameItemSameComponents(s, it)) continue;
-            int take = Math.min(remaining, s.getCount());
-            stock.extractItem(slot, take, false);
-            remaining -= take;
-        }
-    }
+private void dropAtShop(net.minecraft.world.item.ItemStack stack) {
+    if (level == null || level.isClientSide) return;
+    Containers.dropItemStack(level, worldPosition.getX() + 0.5, worldPosition.getY() + 0.5, worldPosition.getZ() + 0.5, stack);
 }
 
 private int getAvailableLotsBySpace(java.util.List<net.minecraft.world.item.ItemStack> lot) {
@@ -1039,15 +1009,7 @@ private int getAvailableLotsBySpace(java.util.List<net.minecraft.world.item.Item
         if (req.isEmpty()) continue;
         int perLot = req.getCount();
         if (perLot <= 0) continue;
-        long cap = 0;
-        for (int slot = 0; slot < stock.getSlots(); slot++) {
-            var s = stock.getStackInSlot(slot);
-            if (s.isEmpty()) {
-                cap += req.getMaxStackSize();
-            } else if (net.minecraft.world.item.ItemStack.isSameItemSameComponents(s, req)) {
-                cap += (long) req.getMaxStackSize() - s.getCount();
-            }
-        }
+        long cap = stockIndex.freeSpace(req);
         int lotsByThis = (int) Math.min(Integer.MAX_VALUE, cap / perLot);
         result = Math.min(result, lotsByThis);
     }
@@ -1055,7 +1017,72 @@ private int getAvailableLotsBySpace(java.util.List<net.minecraft.world.item.Item
 }
 
 
-    private String resolveOwnerName(net.minecraft.world.level.Level level, UUID ownerUuid) {
+    // ===== checkout settlement (runs on the DB executor) =====
+
+    private static UUID serverAccountUuid() {
+        try {
+            return UUID.fromString(AvilixEconomyCommonConfig.ECONOMY.serverAccountUuid.get());
+        } catch (Exception e) {
+            return new UUID(0L, 0L);
+        }
+    }
+
+    /** Money transfer + sales log. Blocking: must only be called from the DB executor. */
+    private static boolean settle(UUID from, UUID toA, long amountToA, UUID toB, long amountToB, @Nullable SaleLogEntry log) {
+        if (!EconomyData.paySplitCents(from, toA, amountToA, toB, amountToB)) return false;
+        if (log != null) {
+            try {
+                log.write();
+            } catch (Exception e) {
+                AvilixEconomy.LOGGER.warn("Failed to log shop sale", e);
+            }
+        }
+        return true;
+    }
+
+    /** One checkout per player: tells the player (once) that the previous trade is still being settled. */
+    private static boolean rejectIfCheckoutPending(ServerPlayer player) {
+        if (!ShopCheckout.isPending(player.getUUID())) return false;
+        NetworkRegistration.sendShopToast(player, net.minecraft.network.chat.Component.translatable("msg.avilixeconomy.shop.checkout_pending"), false);
+        return true;
+    }
+
+    /** Captures everything the sales log needs on the server thread. */
+    @Nullable
+    private SaleLogEntry saleLogEntry(UUID ownerUuid, UUID counterpartyUuid, String counterpartyName,
+                                      String tradeType, double pricePerLot, int lots, double totalPrice,
+                                      net.minecraft.world.item.ItemStack[] stacks) {
+        if (level == null) return null;
+        return new SaleLogEntry(
+                level.dimension().location().toString(),
+                worldPosition.getX(), worldPosition.getY(), worldPosition.getZ(),
+                net.minecraft.core.registries.BuiltInRegistries.BLOCK.getKey(getBlockState().getBlock()).toString(),
+                ownerUuid, knownOwnerName(level, ownerUuid),
+                counterpartyUuid, counterpartyName,
+                tradeType, pricePerLot, lots, totalPrice, saleItems(stacks, lots)
+        );
+    }
+
+    private record SaleLogEntry(String worldId, int x, int y, int z, String blockId,
+                                UUID ownerUuid, @Nullable String ownerName,
+                                UUID counterpartyUuid, String counterpartyName,
+                                String tradeType, double pricePerLot, int lots, double totalPrice,
+                                java.util.List<ShopSalesJournal.SaleItem> items) {
+        void write() {
+            DatabaseManager.logShopSaleNow(
+                    worldId, x, y, z, blockId,
+                    ownerUuid, resolveOwnerName(ownerName, ownerUuid),
+                    counterpartyUuid, counterpartyName,
+                    tradeType,
+                    pricePerLot, lots, totalPrice, items
+            );
+            MarketStats.record(System.currentTimeMillis(), tradeType, itemCounts(items), totalPrice);
+        }
+    }
+
+    /** Owner name without touching SQL; null if unknown. */
+    @Nullable
+    private String knownOwnerName(net.minecraft.world.level.Level level, UUID ownerUuid) {
         // 1) cached on block (best, works for offline)
         if (ownerName != null && !ownerName.isBlank()) return ownerName;
 
@@ -1065,46 +1092,37 @@ private int getAvailableLotsBySpace(java.util.List<net.minecraft.world.item.Item
             if (p != null) return p.getGameProfile().getName();
         }
 
-        // 3) fallback to economy DB name (may be empty)
-        try {
-            String fromDb = DatabaseManager.getPlayerNameDirect(ownerUuid);
-            if (fromDb != null && !fromDb.isBlank()) return fromDb;
-        } catch (Exception ignored) {
-        }
+        // 3) economy name directory (in-memory mirror of the economy table)
+        return PlayerNameDirectory.nameOf(ownerUuid);
+    }
+
+    private static String resolveOwnerName(@Nullable String known, UUID ownerUuid) {
+        if (known != null && !known.isBlank()) return known;
 
         // 4) ultimate fallback
         return ownerUuid.toString();
     }
 
-    private static String buildItemsJson(net.minecraft.world.item.ItemStack[] stacks, int lots) {
-        if (stacks == null || stacks.length == 0) return "[]";
-        int safeLots = Math.max(1, lots);
+    /** item id -> total count of the trade */
+    private static java.util.Map<String, Integer> itemCounts(java.util.List<ShopSalesJournal.SaleItem> items) {
+        java.util.Map<String, Integer> out = new java.util.HashMap<>();
+        for (var it : items) out.merge(it.itemId(), it.total(), Integer::sum);
+        return out;
+    }
 
-        StringBuilder sb = new StringBuilder(128);
-        sb.append('[');
-        boolean first = true;
+    /** One line per traded stack (shop_sales_items). */
+    private static java.util.List<ShopSalesJournal.SaleItem> saleItems(net.minecraft.world.item.ItemStack[] stacks, int lots) {
+        if (stacks == null || stacks.length == 0) return java.util.List.of();
+        int safeLots = Math.max(1, lots);
 
+        java.util.List<ShopSalesJournal.SaleItem> out = new java.util.ArrayList<>(stacks.length);
         for (var st : stacks) {
             if (st == null || st.isEmpty()) continue;
-
-            var id = net.minecraft.core.registries.BuiltInRegistries.ITEM.getKey(st.getItem());
+            String id = net.minecraft.core.registries.BuiltInRegistries.ITEM.getKey(st.getItem()).toString();
             int total = st.getCount();
-            int perLot = total / safeLots;
-
-            if (!first) sb.append(',');
-            first = false;
-
-            sb.append('{')
-                    .append("\"item\":\"").append(id).append("\"")
-                    .append(',')
-                    .append("\"perLot\":").append(perLot)
-                    .append(',')
-                    .append("\"total\":").append(total)
-                    .append('}');
+            out.add(new ShopSalesJournal.SaleItem(id, total / safeLots, total));
         }
-
-        sb.append(']');
-        return sb.toString();
+        return out;
     }
 
     private boolean templateEmpty() {
@@ -1135,7 +1153,8 @@ private int getAvailableLotsBySpace(java.util.List<net.minecraft.world.item.Item
         net.minecraft.world.item.ItemStack out = sample.copy();
         out.setCount(0);
 
-        for (int i = 0; i < stock.getSlots(); i++) {
+        // only the slots that hold this item (extractItem updates the index as we go)
+        for (int i : stockIndex.slotsOf(sample)) {
             var s = stock.getStackInSlot(i);
             if (s.isEmpty()) continue;
             if (!net.minecraft.world.item.ItemStack.isSameItemSameComponents(s, sample)) continue;
@@ -1157,28 +1176,141 @@ private int getAvailableLotsBySpace(java.util.List<net.minecraft.world.item.Item
 
     // ===== Client sync for in-world overlays (items/counts) =====
 
+    @Override
+    public void setChanged() {
+        availDirty = true;
+        super.setChanged();
+    }
+
+    /** Prices/mode/owner changed: resend at the end of this tick. */
     private void syncToClient() {
+        syncToClient(SYNC_META | SYNC_SLOT_PRICES);
+    }
+
+    private void syncToClient(int groups) {
+        if (level == null) return;
+        if (level.isClientSide) return;
+        syncDirty |= groups;
+        ShopClientSync.schedule(this);
+    }
+
+    /** Stock changed: resend at the end of this tick, but only if the counts clients show changed. */
+    private void syncStockToClient() {
         if (level == null) return;
         if (level.isClientSide) return;
-        // Triggers a block entity data packet (see getUpdatePacket/getUpdateTag below)
+        ShopClientSync.schedule(this);
+    }
+
+    @Override
+    public void onLoad() {
+        super.onLoad();
+        // Registers shops placed before the registry existed (no-op if unchanged).
+        if (level != null && !level.isClientSide) ShopRegistry.update(this);
+    }
+
+    /** Sends at most one block update for everything that changed this tick. Called by {@link ShopClientSync}. */
+    public void flushClientSync() {
+        int groups = syncDirty;
+        syncDirty = 0;
+        if (level == null || level.isClientSide || isRemoved()) return;
+
+        // Clients render the template and per-template stock counts only.
+        int[] counts = templateStockCounts();
+        if (!java.util.Arrays.equals(counts, lastSyncedStockCounts)) {
+            lastSyncedStockCounts = counts;
+            groups |= SYNC_COUNTS;
+        }
+        if (groups == 0) return;
+        pendingDelta |= groups;
+
+        // Same triggers matter for the world-wide offer index
+        ShopRegistry.update(this);
+
+        // Triggers a block entity data packet (see getUpdatePacket below)
         level.sendBlockUpdated(worldPosition, getBlockState(), getBlockState(), 3);
     }
 
+    private int[] templateStockCounts() {
+        int[] out = new int[TEMPLATE_SLOTS];
+        for (int i = 0; i < TEMPLATE_SLOTS; i++) {
+            var req = template.getStackInSlot(i);
+            out[i] = req.isEmpty() ? 0 : countInStock(req);
+        }
+        return out;
+    }
+
+    /** Delta update: only the groups that changed since the last packet. */
     @Override
     public ClientboundBlockEntityDataPacket getUpdatePacket() {
-        return ClientboundBlockEntityDataPacket.create(this);
+        int groups = pendingDelta;
+        pendingDelta = 0;
+        final int g = groups == 0 ? SYNC_ALL : groups;
+        return ClientboundBlockEntityDataPacket.create(this, (be, registries) -> writeClientTag(new CompoundTag(), registries, g));
     }
 
+    /** Chunk load: full client state (still without stock, owner name or anything only the server needs). */
     @Override
     public CompoundTag getUpdateTag(HolderLookup.Provider registries) {
-        CompoundTag tag = new CompoundTag();
-        this.saveAdditional(tag, registries);
-        return tag;
+        return writeClientTag(new CompoundTag(), registries, SYNC_ALL);
     }
 
     @Override
     public void handleUpdateTag(CompoundTag tag, HolderLookup.Provider registries) {
-        this.loadAdditional(tag, registries);
+        if (tag.contains(TAG_SYNC)) readClientTag(tag, registries);
+        else this.loadAdditional(tag, registries);
+    }
+
+    @Override
+    public void onDataPacket(net.minecraft.network.Connection net, ClientboundBlockEntityDataPacket pkt, HolderLookup.Provider registries) {
+        CompoundTag tag = pkt.getTag();
+        if (!tag.isEmpty()) handleUpdateTag(tag, registries);
+    }
+
+    private CompoundTag writeClientTag(CompoundTag tag, HolderLookup.Provider registries, int groups) {
+        tag.putByte(TAG_SYNC, (byte) groups);
+        if ((groups & SYNC_META) != 0) {
+            if (owner != null) tag.putUUID(TAG_OWNER, owner);
+            tag.putBoolean(TAG_MODE, buyMode);
+            tag.putDouble(TAG_PRICE, MoneyUtils.round2(priceSellPerLot));
+            tag.putDouble(TAG_PRICE_BUY, MoneyUtils.round2(priceBuyPerLot));
+            tag.putDouble(TAG_PRICE_SLOT, MoneyUtils.round2(legacyPriceSellPerSlot));
+            tag.putDouble(TAG_PRICE_BUY_SLOT, MoneyUtils.round2(legacyPriceBuyPerSlot));
+        }
+        if ((groups & SYNC_SLOT_PRICES) != 0) {
+            tag.put(TAG_PRICE_SLOTS, writeDoubleList(priceSellPerTemplateSlot));
+            tag.put(TAG_PRICE_BUY_SLOTS, writeDoubleList(priceBuyPerTemplateSlot));
+        }
+        if ((groups & SYNC_TEMPLATE) != 0) {
+            tag.put(TAG_TEMPLATE, template.serializeNBT(registries));
+        }
+        if ((groups & SYNC_COUNTS) != 0) {
+            tag.putIntArray(TAG_STOCK_COUNTS, templateStockCounts());
+        }
+        return tag;
+    }
+
+    private void readClientTag(CompoundTag tag, HolderLookup.Provider registries) {
+        int groups = tag.getByte(TAG_SYNC) & 0xFF;
+        if ((groups & SYNC_META) != 0) {
+            owner = tag.hasUUID(TAG_OWNER) ? tag.getUUID(TAG_OWNER) : null;
+            buyMode = tag.getBoolean(TAG_MODE);
+            priceSellPerLot = readMoneyTag(tag, TAG_PRICE, 0.0);
+            priceBuyPerLot = readMoneyTag(tag, TAG_PRICE_BUY, 0.0);
+            legacyPriceSellPerSlot = readMoneyTag(tag, TAG_PRICE_SLOT, 0.0);
+            legacyPriceBuyPerSlot = readMoneyTag(tag, TAG_PRICE_BUY_SLOT, 0.0);
+        }
+        if ((groups & SYNC_SLOT_PRICES) != 0) {
+            readDoubleListInto(tag, TAG_PRICE_SLOTS, priceSellPerTemplateSlot);
+            readDoubleListInto(tag, TAG_PRICE_BUY_SLOTS, priceBuyPerTemplateSlot);
+        }
+        if ((groups & SYNC_TEMPLATE) != 0) {
+            template.deserializeNBT(registries, tag.getCompound(TAG_TEMPLATE));
+        }
+        if ((groups & SYNC_COUNTS) != 0) {
+            int[] counts = tag.getIntArray(TAG_STOCK_COUNTS);
+            java.util.Arrays.fill(clientStockCounts, 0);
+            System.arraycopy(counts, 0, clientStockCounts, 0, Math.min(counts.length, TEMPLATE_SLOTS));
+        }
     }
 
     @Override
@@ -1226,6 +1358,7 @@ private int getAvailableLotsBySpace(java.util.List<net.minecraft.world.item.Item
                 priceBuyPerTemplateSlot[i] = template.getStackInSlot(i).isEmpty() ? 0.0 : legacyPriceBuyPerSlot;
             }
         }
+        availDirty = true;
     }
 
     private static net.minecraft.nbt.ListTag writeDoubleList(double[] arr) {
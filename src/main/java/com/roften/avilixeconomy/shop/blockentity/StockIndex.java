@@ -0,0 +1,130 @@
+package com.roften.avilixeconomy.shop.blockentity;
+
+import net.minecraft.world.item.ItemStack;
+import net.neoforged.neoforge.items.IItemHandler;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Item (item + components) -> amount index over the shop stock.
+ *
+ * Kept in sync slot by slot from the stock handler callbacks, so availability, space and
+ * extraction lookups cost O(template) instead of O(template x stock).
+ */
+final class StockIndex {
+
+    private static final class Entry {
+        int count;
+        final BitSet slots = new BitSet();
+    }
+
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private final Key[] slotKey;
+    private final int[] slotCount;
+    private int emptySlots;
+
+    StockIndex(int size) {
+        this.slotKey = new Key[size];
+        this.slotCount = new int[size];
+        this.emptySlots = size;
+    }
+
+    /** Re-reads every slot (after NBT load). */
+    void rebuild(IItemHandler handler) {
+        entries.clear();
+        java.util.Arrays.fill(slotKey, null);
+        java.util.Arrays.fill(slotCount, 0);
+        emptySlots = slotKey.length;
+        for (int i = 0; i < Math.min(slotKey.length, handler.getSlots()); i++) {
+            update(i, handler.getStackInSlot(i));
+        }
+    }
+
+    /** Replaces the contribution of one slot with its current content. */
+    void update(int slot, ItemStack stack) {
+        if (slot < 0 || slot >= slotKey.length) return;
+
+        Key old = slotKey[slot];
+        if (old != null) {
+            Entry e = entries.get(old);
+            if (e != null) {
+                e.count -= slotCount[slot];
+                e.slots.clear(slot);
+                if (e.slots.isEmpty()) entries.remove(old);
+            }
+            emptySlots++;
+        }
+
+        if (stack == null || stack.isEmpty()) {
+            slotKey[slot] = null;
+            slotCount[slot] = 0;
+            return;
+        }
+
+        Key key = (old != null && old.matches(stack)) ? old : Key.of(stack);
+        Entry e = entries.computeIfAbsent(key, k -> new Entry());
+        e.count += stack.getCount();
+        e.slots.set(slot);
+        emptySlots--;
+        slotKey[slot] = key;
+        slotCount[slot] = stack.getCount();
+    }
+
+    /** Total amount of items matching {@code sample}. */
+    int count(ItemStack sample) {
+        Entry e = entries.get(Key.probe(sample));
+        return e == null ? 0 : e.count;
+    }
+
+    /** How many more items like {@code sample} fit: free room in matching stacks plus empty slots. */
+    long freeSpace(ItemStack sample) {
+        long max = sample.getMaxStackSize();
+        long cap = (long) emptySlots * max;
+        Entry e = entries.get(Key.probe(sample));
+        if (e != null) cap += e.slots.cardinality() * max - e.count;
+        return Math.max(0L, cap);
+    }
+
+    /** Slots currently holding items matching {@code sample}, ascending. */
+    int[] slotsOf(ItemStack sample) {
+        Entry e = entries.get(Key.probe(sample));
+        return e == null ? new int[0] : e.slots.stream().toArray();
+    }
+
+    /** Item + components identity of a stack (count ignored). */
+    private static final class Key {
+        private final ItemStack stack;
+        private final int hash;
+
+        private Key(ItemStack stack) {
+            this.stack = stack;
+            this.hash = ItemStack.hashItemAndComponents(stack);
+        }
+
+        /** Stored key: keeps its own copy. */
+        static Key of(ItemStack stack) {
+            return new Key(stack.copyWithCount(1));
+        }
+
+        /** Lookup-only key: wraps the caller's stack without copying. */
+        static Key probe(ItemStack stack) {
+            return new Key(stack);
+        }
+
+        boolean matches(ItemStack other) {
+            return ItemStack.isSameItemSameComponents(stack, other);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && hash == k.hash && matches(k.stack);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.roften.avilixeconomy.shop.market;
+
+import java.util.*;
+
+/**
+ * Pages of the market browser, served from {@link ShopRegistry} memory only.
+ *
+ * Each sort order is built at most once per listing change (lazily, on the first request that needs it);
+ * stock changes, i.e. trades, do not count ({@link ShopRegistry#listingVersion()}). Filtered views
+ * (mode + search text) are cached per change as well. Current stock and the tradeable check are applied
+ * while a page is cut, which is a map lookup per offer of the view. Server thread only.
+ */
+public final class MarketListingCache {
+
+    private MarketListingCache() {}
+
+    public enum Sort { PRICE_ASC, PRICE_DESC, ITEM, OWNER }
+
+    public enum ModeFilter { ALL, SELL, BUY }
+
+    public record Page(int offset, int total, List<ShopListing> rows) {}
+
+    public static final int MAX_PAGE_SIZE = 50;
+    private static final int MAX_QUERY_LENGTH = 64;
+    private static final int MAX_VIEWS = 128;
+
+    private static final Comparator<ShopListing> BY_POS =
+            Comparator.comparing((ShopListing l) -> l.pos().world())
+                    .thenComparingInt(l -> l.pos().x())
+                    .thenComparingInt(l -> l.pos().y())
+                    .thenComparingInt(l -> l.pos().z())
+                    .thenComparingInt(ShopListing::slot);
+
+    private static final Map<Sort, Comparator<ShopListing>> ORDER = Map.of(
+            Sort.PRICE_ASC, Comparator.comparingDouble(ShopListing::unitPrice).thenComparing(BY_POS),
+            Sort.PRICE_DESC, Comparator.comparingDouble(ShopListing::unitPrice).reversed().thenComparing(BY_POS),
+            Sort.ITEM, Comparator.comparing((ShopListing l) -> l.itemName().toLowerCase(Locale.ROOT))
+                    .thenComparingDouble(ShopListing::unitPrice).thenComparing(BY_POS),
+            Sort.OWNER, Comparator.comparing((ShopListing l) -> l.ownerName().toLowerCase(Locale.ROOT))
+                    .thenComparing(l -> l.itemName().toLowerCase(Locale.ROOT)).thenComparing(BY_POS)
+    );
+
+    private record ViewKey(ModeFilter mode, Sort sort, String query) {}
+
+    private static long builtVersion = Long.MIN_VALUE;
+    private static final EnumMap<Sort, List<ShopListing>> SORTED = new EnumMap<>(Sort.class);
+    private static final Map<ViewKey, List<ShopListing>> VIEWS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ViewKey, List<ShopListing>> eldest) {
+            return size() > MAX_VIEWS;
+        }
+    };
+
+    public static Page page(ModeFilter mode, Sort sort, String query, int offset, int limit) {
+        refreshIfStale();
+        List<ShopListing> view = VIEWS.computeIfAbsent(new ViewKey(mode, sort, normalize(query)), MarketListingCache::filter);
+
+        int size = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+        int start = Math.max(0, offset);
+        int total = 0;
+        List<ShopListing> rows = new ArrayList<>(size);
+        for (ShopListing l : view) {
+            ShopListing now = ShopRegistry.current(l.pos(), l.slot());
+            if (now == null || !ShopRegistry.tradeable(now)) continue;
+            if (total >= start && rows.size() < size) rows.add(now);
+            total++;
+        }
+        return new Page(Math.min(start, total), total, List.copyOf(rows));
+    }
+
+    private static void refreshIfStale() {
+        long v = ShopRegistry.listingVersion();
+        if (v == builtVersion) return;
+        builtVersion = v;
+        VIEWS.clear();
+        SORTED.clear();
+    }
+
+    private static List<ShopListing> sorted(Sort sort) {
+        return SORTED.computeIfAbsent(sort, s -> {
+            List<ShopListing> copy = ShopRegistry.pricedListings();
+            copy.sort(ORDER.get(s));
+            return List.copyOf(copy);
+        });
+    }
+
+    private static List<ShopListing> filter(ViewKey key) {
+        List<ShopListing> sorted = sorted(key.sort());
+        if (key.mode() == ModeFilter.ALL && key.query().isEmpty()) return sorted;
+
+        List<ShopListing> out = new ArrayList<>();
+        for (ShopListing l : sorted) {
+            if (key.mode() == ModeFilter.SELL && l.buyMode()) continue;
+            if (key.mode() == ModeFilter.BUY && !l.buyMode()) continue;
+            if (!key.query().isEmpty() && !matches(l, key.query())) continue;
+            out.add(l);
+        }
+        return List.copyOf(out);
+    }
+
+    private static boolean matches(ShopListing l, String q) {
+        return l.itemId().contains(q)
+                || l.itemName().toLowerCase(Locale.ROOT).contains(q)
+                || l.ownerName().toLowerCase(Locale.ROOT).contains(q);
+    }
+
+    private static String normalize(String query) {
+        if (query == null) return "";
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        return q.length() > MAX_QUERY_LENGTH ? q.substring(0, MAX_QUERY_LENGTH) : q;
+    }
+}
@@ -0,0 +1,68 @@
+package com.roften.avilixeconomy.shop.market;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-player token bucket for market browser requests (each uncached search costs a scan of all offers).
+ *
+ * A player may burst {@link #BURST} requests, then one per {@link #REFILL_MS}. Requests over the limit are
+ * not dropped: only the latest one is kept and served from the tick once a token is back, so typing
+ * a search quickly still ends with the page for the final text. Server thread only.
+ */
+public final class MarketRequestLimiter {
+
+    private MarketRequestLimiter() {}
+
+    private static final int BURST = 5;
+    private static final long REFILL_MS = 250L;
+
+    private static final class Bucket {
+        double tokens = BURST;
+        long refilledAtMillis = System.currentTimeMillis();
+        Runnable deferred;
+
+        boolean take(long now) {
+            tokens = Math.min(BURST, tokens + (now - refilledAtMillis) / (double) REFILL_MS);
+            refilledAtMillis = now;
+            if (tokens < 1.0) return false;
+            tokens -= 1.0;
+            return true;
+        }
+    }
+
+    private static final Map<UUID, Bucket> BUCKETS = new HashMap<>();
+
+    /** Runs the request now, or defers it (replacing an older deferred one) until the player has a token. */
+    public static void submit(UUID player, Runnable request) {
+        Bucket b = BUCKETS.computeIfAbsent(player, k -> new Bucket());
+        if (b.deferred == null && b.take(System.currentTimeMillis())) {
+            request.run();
+        } else {
+            b.deferred = request;
+        }
+    }
+
+    /** Called every server tick: serves deferred requests and forgets idle players. */
+    public static void tick() {
+        if (BUCKETS.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        for (Iterator<Bucket> it = BUCKETS.values().iterator(); it.hasNext(); ) {
+            Bucket b = it.next();
+            if (b.deferred != null) {
+                if (!b.take(now)) continue;
+                Runnable r = b.deferred;
+                b.deferred = null;
+                r.run();
+            } else if (now - b.refilledAtMillis > BURST * REFILL_MS) {
+                it.remove();
+            }
+        }
+    }
+
+    public static void forget(UUID player) {
+        BUCKETS.remove(player);
+    }
+}
@@ -0,0 +1,230 @@
+package com.roften.avilixeconomy.shop.market;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+import com.roften.avilixeconomy.database.DatabaseManager;
+import com.roften.avilixeconomy.database.EconomyExecutor;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming per-item price statistics fed by completed shop trades.
+ *
+ * Every item/side keeps hourly buckets (trades, items, money, min/max unit price) for the longest
+ * window plus the last price; window stats merge the buckets, so a query is O(hours in window)
+ * and never touches {@code shop_sales}. Changed buckets are checkpointed to {@code market_stats_hourly}
+ * and reloaded on startup.
+ *
+ * A trade counts only if its lot holds a single kind of item: the price of a mixed lot
+ * cannot be split between its items honestly.
+ */
+public final class MarketStats {
+
+    private MarketStats() {}
+
+    public enum Side { SELL, BUY }
+
+    public enum Window {
+        HOUR(1), DAY(24), WEEK(24 * 7);
+
+        public final int hours;
+
+        Window(int hours) {
+            this.hours = hours;
+        }
+    }
+
+    /** Aggregate over a window; prices are per single item. {@code vwap} = money / items. */
+    public record Snapshot(int trades, long volume, double notional, double vwap, double min, double max,
+                           double lastPrice, long lastAtMillis) {
+        public static final Snapshot EMPTY = new Snapshot(0, 0L, 0.0, 0.0, 0.0, 0.0, 0.0, 0L);
+    }
+
+    /** One hour of one item/side, as stored in the rollup table. */
+    public record Bucket(String itemId, Side side, long hour, int trades, long volume, double notional,
+                         double min, double max, double lastPrice, long lastAtMillis) {}
+
+    private record Key(String itemId, Side side) {}
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int CHECKPOINT_INTERVAL_TICKS = 20 * 60 * 5;
+
+    private static final Map<Key, Series> SERIES = new ConcurrentHashMap<>();
+    private static CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+
+    // ===== feed =====
+
+    /**
+     * Records a completed trade. Thread-safe (called from the DB executor after settlement).
+     *
+     * @param tradeType shop_sales.trade_type: SELL / SELL_SLOT (player bought), BUY / BUY_SLOT (shop bought)
+     * @param items     item id -> item count of the whole trade
+     */
+    public static void record(long atMillis, String tradeType, Map<String, Integer> items, double totalPrice) {
+        if (items == null || items.size() != 1 || totalPrice <= 0.0) return;
+        var e = items.entrySet().iterator().next();
+        int count = e.getValue() == null ? 0 : e.getValue();
+        if (count <= 0) return;
+
+        Side side = tradeType != null && tradeType.startsWith("BUY") ? Side.BUY : Side.SELL;
+        SERIES.computeIfAbsent(new Key(e.getKey(), side), k -> new Series())
+                .add(atMillis / HOUR_MS, atMillis, count, totalPrice);
+    }
+
+    // ===== queries =====
+
+    public static Snapshot snapshot(String itemId, Side side, Window window) {
+        Series s = SERIES.get(new Key(itemId, side));
+        if (s == null) return Snapshot.EMPTY;
+        return s.snapshot(System.currentTimeMillis() / HOUR_MS, window.hours);
+    }
+
+    /** Item ids with at least one recorded trade. */
+    public static SortedSet<String> itemIds() {
+        SortedSet<String> out = new TreeSet<>();
+        for (Key k : SERIES.keySet()) out.add(k.itemId());
+        return out;
+    }
+
+    // ===== persistence =====
+
+    public static void reloadFromDb() {
+        SERIES.clear();
+        long fromHour = System.currentTimeMillis() / HOUR_MS - Window.WEEK.hours;
+        try {
+            for (Bucket b : DatabaseManager.loadMarketStats(fromHour)) {
+                SERIES.computeIfAbsent(new Key(b.itemId(), b.side()), k -> new Series()).restore(b);
+            }
+        } catch (Throwable t) {
+            AvilixEconomy.LOGGER.error("Failed to load market stats, price history starts empty", t);
+        }
+    }
+
+    /** Called every server tick; checkpoints changed buckets every few minutes. */
+    public static void tick(int tickCount) {
+        if (tickCount % CHECKPOINT_INTERVAL_TICKS != 0) return;
+        if (!inFlight.isDone()) return;
+        List<Bucket> dirty = drainDirty();
+        if (dirty.isEmpty()) return;
+        long retainFromHour = System.currentTimeMillis() / HOUR_MS - Window.WEEK.hours;
+        inFlight = EconomyExecutor.run(() -> {
+            if (!DatabaseManager.saveMarketStats(dirty, retainFromHour)) {
+                for (Bucket b : dirty) markDirty(b);
+            }
+        }).whenComplete((v, err) -> {
+            // rejected by a full executor: same as a failed write
+            if (err != null) for (Bucket b : dirty) markDirty(b);
+        });
+    }
+
+    /** Synchronous final checkpoint. Server stop only, before the pool is closed. */
+    public static void flushOnStop(long timeoutMs) {
+        try {
+            inFlight.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception ignored) {
+        }
+        List<Bucket> dirty = drainDirty();
+        if (!dirty.isEmpty()) {
+            DatabaseManager.saveMarketStats(dirty, System.currentTimeMillis() / HOUR_MS - Window.WEEK.hours);
+        }
+        SERIES.clear();
+    }
+
+    private static List<Bucket> drainDirty() {
+        List<Bucket> out = new ArrayList<>();
+        for (var e : SERIES.entrySet()) e.getValue().drainDirty(e.getKey(), out);
+        return out;
+    }
+
+    private static void markDirty(Bucket b) {
+        Series s = SERIES.get(new Key(b.itemId(), b.side()));
+        if (s != null) s.markDirty(b.hour());
+    }
+
+    // ===== per item/side state =====
+
+    private static final class Hour {
+        int trades;
+        long volume;
+        double notional;
+        double min = Double.MAX_VALUE;
+        double max;
+    }
+
+    private static final class Series {
+        // hour -> bucket, only the last WEEK hours are kept
+        private final TreeMap<Long, Hour> hours = new TreeMap<>();
+        private final Set<Long> dirty = new HashSet<>();
+        private double lastPrice;
+        private long lastAt;
+
+        synchronized void add(long hour, long atMillis, int count, double total) {
+            double unit = total / count;
+            Hour h = hours.computeIfAbsent(hour, k -> new Hour());
+            h.trades++;
+            h.volume += count;
+            h.notional += total;
+            h.min = Math.min(h.min, unit);
+            h.max = Math.max(h.max, unit);
+            if (atMillis >= lastAt) {
+                lastAt = atMillis;
+                lastPrice = unit;
+            }
+            dirty.add(hour);
+            evict(hour);
+        }
+
+        synchronized void restore(Bucket b) {
+            Hour h = new Hour();
+            h.trades = b.trades();
+            h.volume = b.volume();
+            h.notional = b.notional();
+            h.min = b.min();
+            h.max = b.max();
+            hours.put(b.hour(), h);
+            if (b.lastAtMillis() >= lastAt) {
+                lastAt = b.lastAtMillis();
+                lastPrice = b.lastPrice();
+            }
+        }
+
+        synchronized Snapshot snapshot(long nowHour, int window) {
+            int trades = 0;
+            long volume = 0;
+            double notional = 0.0;
+            double min = Double.MAX_VALUE;
+            double max = 0.0;
+            for (Hour h : hours.tailMap(nowHour - window + 1, true).values()) {
+                trades += h.trades;
+                volume += h.volume;
+                notional += h.notional;
+                min = Math.min(min, h.min);
+                max = Math.max(max, h.max);
+            }
+            if (trades == 0) return new Snapshot(0, 0L, 0.0, 0.0, 0.0, 0.0, lastPrice, lastAt);
+            return new Snapshot(trades, volume, notional, notional / volume, min, max, lastPrice, lastAt);
+        }
+
+        synchronized void drainDirty(Key key, List<Bucket> out) {
+            for (Long hour : dirty) {
+                Hour h = hours.get(hour);
+                if (h == null) continue;
+                out.add(new Bucket(key.itemId(), key.side(), hour, h.trades, h.volume, h.notional, h.min, h.max, lastPrice, lastAt));
+            }
+            dirty.clear();
+        }
+
+        synchronized void markDirty(long hour) {
+            if (hours.containsKey(hour)) dirty.add(hour);
+        }
+
+        private void evict(long nowHour) {
+            long from = nowHour - Window.WEEK.hours;
+            while (!hours.isEmpty() && hours.firstKey() < from) {
+                dirty.remove(hours.pollFirstEntry().getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.roften.avilixeconomy.shop.market;
+
+import java.util.UUID;
+
+/**
+ * One offer of a shop: a single template slot with its price in the shop's current mode.
+ *
+ * @param lotCount items per trade unit (template stack size)
+ * @param price    price of one trade unit ({@code lotCount} items)
+ * @param stock    matching items in the shop stock
+ * @param buyMode  true if the shop buys this item from players
+ */
+public record ShopListing(Pos pos, int slot,
+                          UUID ownerUuid, String ownerName,
+                          boolean buyMode,
+                          String itemId, String itemName,
+                          int lotCount, double price, int stock) {
+
+    /** World position of a shop block. */
+    public record Pos(String world, int x, int y, int z) {
+        @Override
+        public String toString() {
+            return x + " " + y + " " + z + " (" + world + ")";
+        }
+    }
+
+    /** Price of a single item, used for ordering offers of different lot sizes. */
+    public double unitPrice() {
+        return lotCount <= 0 ? price : price / lotCount;
+    }
+
+    /** How many trade units the stock covers (sell mode). */
+    public int availableUnits() {
+        return lotCount <= 0 ? 0 : stock / lotCount;
+    }
+}
@@ -0,0 +1,289 @@
+package com.roften.avilixeconomy.shop.market;
+
+import com.roften.avilixeconomy.AvilixEconomy;
+import com.roften.avilixeconomy.database.DatabaseManager;
+import com.roften.avilixeconomy.database.EconomyExecutor;
+import com.roften.avilixeconomy.database.PlayerNameDirectory;
+import com.roften.avilixeconomy.shop.blockentity.ShopBlockEntity;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.level.Level;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * World-wide registry of shops and their offers.
+ *
+ * Shops report themselves whenever their template, prices, mode, owner or stock counts change
+ * (see {@link ShopBlockEntity#flushClientSync()}), so lookups never need the chunk to be loaded.
+ * Next to the per-shop view it keeps an inverted index item id -> offers, sorted once per change:
+ * sellers cheapest first, buyers best price first.
+ *
+ * Mutations happen on the server thread; the database copy (table {@code shop_listings})
+ * is rewritten per changed shop in batches on the DB executor.
+ */
+public final class ShopRegistry {
+
+    private ShopRegistry() {}
+
+    private static final int PERSIST_INTERVAL_TICKS = 100;
+    private static final int MAX_NAME_LENGTH = 128;
+
+    private static final Comparator<ShopListing> TIE_BREAK =
+            Comparator.comparingInt(ShopListing::stock).reversed()
+                    .thenComparing(l -> l.pos().world())
+                    .thenComparingInt(l -> l.pos().x())
+                    .thenComparingInt(l -> l.pos().y())
+                    .thenComparingInt(l -> l.pos().z())
+                    .thenComparingInt(ShopListing::slot);
+
+    private static final Comparator<ShopListing> CHEAPEST_FIRST =
+            Comparator.comparingDouble(ShopListing::unitPrice).thenComparing(TIE_BREAK);
+
+    private static final Comparator<ShopListing> BEST_BUYER_FIRST =
+            Comparator.comparingDouble(ShopListing::unitPrice).reversed().thenComparing(TIE_BREAK);
+
+    // shop -> all of its offers (incl. out of stock)
+    private static final Map<ShopListing.Pos, List<ShopListing>> SHOPS = new ConcurrentHashMap<>();
+    // item id -> tradeable offers; values are immutable, replaced on change
+    private static final Map<String, List<ShopListing>> SELLERS = new ConcurrentHashMap<>();
+    private static final Map<String, List<ShopListing>> BUYERS = new ConcurrentHashMap<>();
+
+    // shops whose rows must be rewritten (empty list = delete); server thread only
+    private static final Map<ShopListing.Pos, List<ShopListing>> DIRTY = new LinkedHashMap<>();
+    private static CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+    // bumped on every index change; lets derived views (MarketListingCache) rebuild lazily
+    private static volatile long version;
+    // bumped only when an offer appears, disappears or changes anything but its stock (trades do not)
+    private static volatile long listingVersion;
+
+    public static void reloadFromDb() {
+        clear();
+        try {
+            Map<ShopListing.Pos, List<ShopListing>> byShop = new HashMap<>();
+            for (ShopListing l : DatabaseManager.loadShopListings()) {
+                byShop.computeIfAbsent(l.pos(), k -> new ArrayList<>()).add(l);
+            }
+            for (var e : byShop.entrySet()) {
+                reindex(e.getKey(), List.of(), List.copyOf(e.getValue()));
+            }
+        } catch (Throwable t) {
+            AvilixEconomy.LOGGER.error("Failed to load shop listings, /shop find stays empty until the next reload", t);
+        }
+    }
+
+    /** Re-reads the offers of a shop. Cheap if nothing relevant changed. */
+    public static void update(ShopBlockEntity shop) {
+        Level level = shop.getLevel();
+        if (level == null || level.isClientSide) return;
+        ShopListing.Pos pos = posOf(level, shop.getBlockPos());
+        List<ShopListing> now = listingsOf(shop, pos);
+        List<ShopListing> old = SHOPS.getOrDefault(pos, List.of());
+        if (now.equals(old)) return;
+        reindex(pos, old, now);
+        DIRTY.put(pos, now);
+    }
+
+    /** The shop block is gone (broken or replaced). */
+    public static void remove(Level level, BlockPos blockPos) {
+        if (level == null || level.isClientSide) return;
+        ShopListing.Pos pos = posOf(level, blockPos);
+        List<ShopListing> old = SHOPS.get(pos);
+        if (old == null) return;
+        reindex(pos, old, List.of());
+        DIRTY.put(pos, List.of());
+    }
+
+    /** Called every server tick; writes changed shops to the database every few seconds. */
+    public static void tick(int tickCount) {
+        if (tickCount % PERSIST_INTERVAL_TICKS != 0) return;
+        if (DIRTY.isEmpty() || !inFlight.isDone()) return;
+
+        Map<ShopListing.Pos, List<ShopListing>> batch = new LinkedHashMap<>(DIRTY);
+        DIRTY.clear();
+        inFlight = EconomyExecutor.run(() -> {
+            if (!DatabaseManager.replaceShopListings(batch)) {
+                // keep newer changes, retry the rest with the next batch
+                EconomyExecutor.runOnServer(() -> batch.forEach(DIRTY::putIfAbsent));
+            }
+        }).whenComplete((v, err) -> {
+            // rejected by a full executor: same as a failed write
+            if (err != null) EconomyExecutor.runOnServer(() -> batch.forEach(DIRTY::putIfAbsent));
+        });
+    }
+
+    /** Synchronously writes pending changes. Server stop only, before the pool is closed. */
+    public static void flushOnStop(long timeoutMs) {
+        try {
+            inFlight.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception ignored) {
+        }
+        if (!DIRTY.isEmpty()) {
+            DatabaseManager.replaceShopListings(new LinkedHashMap<>(DIRTY));
+        }
+        clear();
+    }
+
+    public static void clear() {
+        SHOPS.clear();
+        SELLERS.clear();
+        BUYERS.clear();
+        DIRTY.clear();
+        version++;
+        listingVersion++;
+    }
+
+    // ===== queries =====
+
+    /** Shops selling the item that have at least one unit in stock, cheapest per item first. */
+    public static List<ShopListing> sellers(String itemId) {
+        return SELLERS.getOrDefault(itemId, List.of());
+    }
+
+    /** Shops buying the item, highest price per item first. */
+    public static List<ShopListing> buyers(String itemId) {
+        return BUYERS.getOrDefault(itemId, List.of());
+    }
+
+    /** Item ids that currently have at least one seller or buyer. */
+    public static SortedSet<String> itemIds() {
+        SortedSet<String> out = new TreeSet<>(SELLERS.keySet());
+        out.addAll(BUYERS.keySet());
+        return out;
+    }
+
+    /** All tradeable offers (every seller and buyer of every item), unordered. */
+    public static List<ShopListing> offers() {
+        List<ShopListing> out = new ArrayList<>();
+        for (List<ShopListing> l : SELLERS.values()) out.addAll(l);
+        for (List<ShopListing> l : BUYERS.values()) out.addAll(l);
+        return out;
+    }
+
+    /** Every offer with a price, tradeable or not (stock may be 0), unordered. */
+    public static List<ShopListing> pricedListings() {
+        List<ShopListing> out = new ArrayList<>();
+        for (List<ShopListing> shop : SHOPS.values()) {
+            for (ShopListing l : shop) {
+                if (l.price() > 0.0) out.add(l);
+            }
+        }
+        return out;
+    }
+
+    /** Current state (incl. stock) of a shop's template slot, or null if it is gone. */
+    public static ShopListing current(ShopListing.Pos pos, int slot) {
+        for (ShopListing l : SHOPS.getOrDefault(pos, List.of())) {
+            if (l.slot() == slot) return l;
+        }
+        return null;
+    }
+
+    public static long version() {
+        return version;
+    }
+
+    /** Like {@link #version()}, but stock-only changes do not count. */
+    public static long listingVersion() {
+        return listingVersion;
+    }
+
+    /** All known shops with their offers, ordered by world and position. */
+    public static List<List<ShopListing>> allShops() {
+        List<List<ShopListing>> out = new ArrayList<>(SHOPS.values());
+        out.sort(Comparator.comparing((List<ShopListing> l) -> l.get(0).pos().world())
+                .thenComparingInt(l -> l.get(0).pos().x())
+                .thenComparingInt(l -> l.get(0).pos().y())
+                .thenComparingInt(l -> l.get(0).pos().z()));
+        return out;
+    }
+
+    // ===== internals =====
+
+    private static ShopListing.Pos posOf(Level level, BlockPos p) {
+        return new ShopListing.Pos(level.dimension().location().toString(), p.getX(), p.getY(), p.getZ());
+    }
+
+    private static List<ShopListing> listingsOf(ShopBlockEntity shop, ShopListing.Pos pos) {
+        UUID owner = shop.getOwner();
+        if (owner == null) return List.of();
+        String ownerName = shop.getOwnerName();
+        if (ownerName == null) ownerName = PlayerNameDirectory.nameOf(owner);
+        if (ownerName == null) ownerName = "unknown";
+
+        int mode = shop.getActiveModeInt();
+        List<ShopListing> out = new ArrayList<>();
+        var template = shop.getTemplate();
+        for (int i = 0; i < template.getSlots(); i++) {
+            var req = template.getStackInSlot(i);
+            if (req.isEmpty()) continue;
+            out.add(new ShopListing(pos, i, owner, ownerName, mode == 1,
+                    BuiltInRegistries.ITEM.getKey(req.getItem()).toString(),
+                    displayName(req),
+                    req.getCount(),
+                    shop.getSlotPriceForMode(mode, i),
+                    shop.getStockCountForTemplateSlot(i)));
+        }
+        return List.copyOf(out);
+    }
+
+    private static String displayName(net.minecraft.world.item.ItemStack stack) {
+        String name = stack.getHoverName().getString();
+        return name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name;
+    }
+
+    public static boolean tradeable(ShopListing l) {
+        if (l.price() <= 0.0) return false;
+        return l.buyMode() || l.availableUnits() > 0;
+    }
+
+    private static void reindex(ShopListing.Pos pos, List<ShopListing> old, List<ShopListing> now) {
+        if (now.isEmpty()) SHOPS.remove(pos);
+        else SHOPS.put(pos, now);
+        version++;
+        if (!sameExceptStock(old, now)) listingVersion++;
+
+        Set<String> items = new HashSet<>();
+        for (ShopListing l : old) items.add(l.itemId());
+        for (ShopListing l : now) items.add(l.itemId());
+        for (String item : items) {
+            reindexItem(SELLERS, item, pos, now, false, CHEAPEST_FIRST);
+            reindexItem(BUYERS, item, pos, now, true, BEST_BUYER_FIRST);
+        }
+    }
+
+    private static boolean sameExceptStock(List<ShopListing> a, List<ShopListing> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            ShopListing x = a.get(i);
+            ShopListing y = b.get(i);
+            if (x.slot() != y.slot() || x.buyMode() != y.buyMode() || x.lotCount() != y.lotCount()
+                    || Double.compare(x.price(), y.price()) != 0
+                    || !x.pos().equals(y.pos()) || !x.itemId().equals(y.itemId()) || !x.itemName().equals(y.itemName())
+                    || !java.util.Objects.equals(x.ownerUuid(), y.ownerUuid()) || !x.ownerName().equals(y.ownerName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void reindexItem(Map<String, List<ShopListing>> index, String item, ShopListing.Pos pos,
+                                    List<ShopListing> now, boolean buyMode, Comparator<ShopListing> order) {
+        List<ShopListing> list = new ArrayList<>();
+        for (ShopListing l : index.getOrDefault(item, List.of())) {
+            if (!l.pos().equals(pos)) list.add(l);
+        }
+        for (ShopListing l : now) {
+            if (l.buyMode() == buyMode && l.itemId().equals(item) && tradeable(l)) list.add(l);
+        }
+        if (list.isEmpty()) {
+            index.remove(item);
+            return;
+        }
+        list.sort(order);
+        index.put(item, List.copyOf(list));
+    }
+}
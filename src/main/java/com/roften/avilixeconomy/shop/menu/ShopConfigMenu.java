@@ -164,7 +164,7 @@ public class ShopConfigMenu extends AbstractContainerMenu {
             for (int r = 0; r < 6; r++) {
                 for (int c = 0; c < 9; c++) {
                     int slot = r * 9 + c;
-                    this.addSlot(new SlotItemHandler(shop.getStock(), slot, sX + c * 18, sY + r * 18));
+                    this.addSlot(new StockSlot(shop, slot, sX + c * 18, sY + r * 18));
                 }
             }
         } else {
@@ -372,6 +372,22 @@ public double getActivePriceSynced(){ return getMode()==1 ? getBuyPriceSynced()
         return copy;
     }
 
+    /** Stock slot that reports in-place stack edits (merge/split) to the shop's stock index. */
+    private static class StockSlot extends SlotItemHandler {
+        private final ShopBlockEntity shop;
+
+        private StockSlot(ShopBlockEntity shop, int index, int x, int y) {
+            super(shop.getStock(), index, x, y);
+            this.shop = shop;
+        }
+
+        @Override
+        public void setChanged() {
+            super.setChanged();
+            shop.onStockSlotChanged(getSlotIndex());
+        }
+    }
+
     /** Non-interactive slot used to display template (ghost) items. */
     private static class GhostTemplateSlot extends SlotItemHandler {
         private GhostTemplateSlot(ShopBlockEntity shop, int index, int x, int y) {
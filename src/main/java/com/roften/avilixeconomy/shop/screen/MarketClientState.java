@@ -0,0 +1,51 @@
+package com.roften.avilixeconomy.shop.screen;
+
+import net.minecraft.core.BlockPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last market browser page and item price stats received from the server.
+ * Does NOT reference any client-only classes to stay safe on dedicated servers.
+ */
+public final class MarketClientState {
+
+    private MarketClientState() {}
+
+    public record Entry(String itemId, String itemName, String ownerName, String world, BlockPos pos,
+                        boolean buyMode, int lotCount, double price, int stock) {
+        public double unitPrice() {
+            return lotCount <= 0 ? price : price / lotCount;
+        }
+    }
+
+    public record Page(int offset, int total, List<Entry> rows, long version) {}
+
+    /** 24h market stats of one side; prices are per single item. */
+    public record Stats(int trades, double vwap, double min, double max, double last) {}
+
+    public record ItemStats(Stats sell, Stats buy) {}
+
+    private static volatile Page page;
+    private static final AtomicLong VERSION = new AtomicLong(1);
+    private static final ConcurrentHashMap<String, ItemStats> STATS = new ConcurrentHashMap<>();
+
+    public static void putPage(int offset, int total, List<Entry> rows) {
+        page = new Page(offset, total, List.copyOf(rows), VERSION.getAndIncrement());
+    }
+
+    public static @Nullable Page getPage() {
+        return page;
+    }
+
+    public static void putStats(String itemId, Stats sell, Stats buy) {
+        STATS.put(itemId, new ItemStats(sell, buy));
+    }
+
+    public static @Nullable ItemStats getStats(String itemId) {
+        return STATS.get(itemId);
+    }
+}
@@ -0,0 +1,261 @@
+package com.roften.avilixeconomy.shop.screen;
+
+import com.roften.avilixeconomy.client.ui.ShopUi;
+import com.roften.avilixeconomy.network.NetworkRegistration;
+import com.roften.avilixeconomy.util.MoneyUtils;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.client.gui.components.Button;
+import net.minecraft.client.gui.components.EditBox;
+import net.minecraft.client.gui.screens.Screen;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
+import net.neoforged.neoforge.network.PacketDistributor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Market browser: every shop offer on the server, paged/filtered/sorted by the server.
+ * Opened by /shop market. Holds only the current page.
+ */
+public class MarketScreen extends Screen {
+
+    private static final int WIN_W = 340;
+    private static final int WIN_H = 232;
+    private static final int TITLE_H = 16;
+    private static final int ROW_H = 20;
+    private static final int ROWS = 8;
+    private static final int BTN_H = 16;
+    // typing pause before the search is sent (ticks)
+    private static final int SEARCH_DELAY = 6;
+
+    private static final String[] MODE_KEYS = {"all", "sell", "buy"};
+    private static final String[] SORT_KEYS = {"price_asc", "price_desc", "item", "owner"};
+
+    private int winX;
+    private int winY;
+
+    private EditBox searchBox;
+    private Button modeButton;
+    private Button sortButton;
+    private Button prevButton;
+    private Button nextButton;
+
+    private int mode = 0;
+    private int sort = 0;
+    private int offset = 0;
+    private boolean loading = false;
+    private int searchChangedAt = -1;
+    private int ticks = 0;
+
+    private List<MarketClientState.Entry> rows = List.of();
+    private int total = 0;
+    private long lastVersion = -1L;
+
+    private final Map<String, ItemStack> icons = new HashMap<>();
+
+    public MarketScreen() {
+        super(Component.translatable("screen.avilixeconomy.market.title"));
+    }
+
+    /** Called from the page payload handler when the server asks to open the browser. */
+    public static void open() {
+        Minecraft mc = Minecraft.getInstance();
+        if (mc.screen instanceof MarketScreen) return;
+        mc.setScreen(new MarketScreen());
+    }
+
+    @Override
+    public boolean isPauseScreen() {
+        return false;
+    }
+
+    @Override
+    protected void init() {
+        super.init();
+        this.winX = (this.width - WIN_W) / 2;
+        this.winY = (this.height - WIN_H) / 2;
+
+        int topY = this.winY + TITLE_H + 6;
+        this.searchBox = new EditBox(this.font, this.winX + 8, topY, 150, BTN_H,
+                Component.translatable("screen.avilixeconomy.market.search"));
+        this.searchBox.setMaxLength(64);
+        this.searchBox.setHint(Component.translatable("screen.avilixeconomy.market.search"));
+        this.searchBox.setResponder(v -> this.searchChangedAt = this.ticks);
+        this.addRenderableWidget(this.searchBox);
+
+        this.modeButton = Button.builder(modeLabel(), b -> {
+            this.mode = (this.mode + 1) % MODE_KEYS.length;
+            b.setMessage(modeLabel());
+            request(0);
+        }).bounds(this.winX + 164, topY, 70, BTN_H).build();
+        this.addRenderableWidget(this.modeButton);
+
+        this.sortButton = Button.builder(sortLabel(), b -> {
+            this.sort = (this.sort + 1) % SORT_KEYS.length;
+            b.setMessage(sortLabel());
+            request(0);
+        }).bounds(this.winX + 238, topY, 94, BTN_H).build();
+        this.addRenderableWidget(this.sortButton);
+
+        int footerY = this.winY + WIN_H - BTN_H - 6;
+        this.prevButton = Button.builder(Component.literal("<"), b -> {
+            if (this.loading) return;
+            request(Math.max(0, this.offset - ROWS));
+        }).bounds(this.winX + 8, footerY, 20, BTN_H).build();
+        this.addRenderableWidget(this.prevButton);
+
+        this.nextButton = Button.builder(Component.literal(">"), b -> {
+            if (this.loading) return;
+            request(this.offset + ROWS);
+        }).bounds(this.winX + WIN_W - 28, footerY, 20, BTN_H).build();
+        this.addRenderableWidget(this.nextButton);
+
+        // The page that came with the open request (if any) is shown right away.
+        var page = MarketClientState.getPage();
+        if (page != null && this.lastVersion == -1L) {
+            applyPage(page);
+        } else {
+            request(this.offset);
+        }
+    }
+
+    @Override
+    public void tick() {
+        super.tick();
+        this.ticks++;
+        if (this.searchChangedAt >= 0 && this.ticks - this.searchChangedAt >= SEARCH_DELAY) {
+            this.searchChangedAt = -1;
+            request(0);
+        }
+
+        var page = MarketClientState.getPage();
+        if (page != null && page.version() != this.lastVersion) {
+            applyPage(page);
+        }
+
+        this.prevButton.active = !this.loading && this.offset > 0;
+        this.nextButton.active = !this.loading && this.offset + ROWS < this.total;
+    }
+
+    private void applyPage(MarketClientState.Page page) {
+        this.lastVersion = page.version();
+        this.rows = page.rows();
+        this.total = page.total();
+        this.offset = page.offset();
+        this.loading = false;
+    }
+
+    private void request(int newOffset) {
+        this.loading = true;
+        PacketDistributor.sendToServer(new NetworkRegistration.MarketRequestPayload(
+                this.mode, this.sort, this.searchBox == null ? "" : this.searchBox.getValue(), newOffset, ROWS));
+    }
+
+    private Component modeLabel() {
+        return Component.translatable("screen.avilixeconomy.market.mode." + MODE_KEYS[this.mode]);
+    }
+
+    private Component sortLabel() {
+        return Component.translatable("screen.avilixeconomy.market.sort." + SORT_KEYS[this.sort]);
+    }
+
+    @Override
+    public void renderBackground(GuiGraphics gfx, int mouseX, int mouseY, float partialTick) {
+        // Own dimming instead of the vanilla blur pass (keeps text sharp, see MoveBalanceHudScreen).
+        gfx.fill(0, 0, this.width, this.height, 0xAA000000);
+        ShopUi.drawDropShadow(gfx, this.winX, this.winY, WIN_W, WIN_H);
+        ShopUi.drawWindowFrame(gfx, this.winX, this.winY, WIN_W, WIN_H);
+        ShopUi.drawTitleBar(gfx, this.winX, this.winY, WIN_W, TITLE_H);
+        ShopUi.drawPanel(gfx, listX(), listY(), listW(), ROWS * ROW_H + 4);
+    }
+
+    private int listX() {
+        return this.winX + 8;
+    }
+
+    private int listY() {
+        return this.winY + TITLE_H + 6 + BTN_H + 6;
+    }
+
+    private int listW() {
+        return WIN_W - 16;
+    }
+
+    @Override
+    public void render(GuiGraphics gfx, int mouseX, int mouseY, float partialTick) {
+        // background + widgets
+        super.render(gfx, mouseX, mouseY, partialTick);
+        gfx.drawString(this.font, this.title, this.winX + 8, this.winY + 4, 0xFFFFFF, false);
+
+        int listX = listX();
+        int listY = listY();
+        int listW = listW();
+
+        MarketClientState.Entry hovered = null;
+        if (this.rows.isEmpty()) {
+            Component msg = Component.translatable(this.loading
+                    ? "screen.avilixeconomy.market.loading"
+                    : "screen.avilixeconomy.market.empty");
+            gfx.drawString(this.font, msg, listX + 6, listY + 8, 0xCFCFCF, false);
+        } else {
+            for (int i = 0; i < this.rows.size() && i < ROWS; i++) {
+                var e = this.rows.get(i);
+                int ry = listY + 2 + i * ROW_H;
+                boolean hover = mouseX >= listX && mouseX < listX + listW && mouseY >= ry && mouseY < ry + ROW_H;
+                if (hover) {
+                    gfx.fill(listX + 1, ry, listX + listW - 1, ry + ROW_H, 0x22FFFFFF);
+                    hovered = e;
+                }
+                drawRow(gfx, e, listX + 2, ry, listW - 4);
+            }
+        }
+
+        int footerY = this.winY + WIN_H - BTN_H - 6;
+        String counter = this.total == 0 ? "0" : (this.offset + 1) + "–" + Math.min(this.offset + ROWS, this.total) + " / " + this.total;
+        gfx.drawCenteredString(this.font, counter, this.winX + WIN_W / 2, footerY + 4, 0x9A9A9A);
+
+        if (hovered != null) {
+            gfx.renderComponentTooltip(this.font, List.of(
+                    Component.literal(hovered.itemName()),
+                    Component.translatable(hovered.buyMode()
+                            ? "screen.avilixeconomy.market.tip_buy"
+                            : "screen.avilixeconomy.market.tip_sell", hovered.ownerName()),
+                    Component.translatable("screen.avilixeconomy.market.tip_unit", MoneyUtils.formatNoks(hovered.unitPrice())),
+                    Component.literal(hovered.pos().getX() + " " + hovered.pos().getY() + " " + hovered.pos().getZ() + " (" + hovered.world() + ")")
+            ), mouseX, mouseY);
+        }
+    }
+
+    private void drawRow(GuiGraphics gfx, MarketClientState.Entry e, int x, int y, int w) {
+        gfx.renderItem(icon(e.itemId()), x + 1, y + 2);
+
+        String name = e.itemName() + " ×" + e.lotCount();
+        gfx.drawString(this.font, this.font.plainSubstrByWidth(name, 120), x + 22, y + 2, 0xFFFFFF, false);
+        gfx.drawString(this.font, this.font.plainSubstrByWidth(e.ownerName(), 120), x + 22, y + 11, 0x9A9A9A, false);
+
+        String price = MoneyUtils.formatNoks(e.price());
+        int priceColor = e.buyMode() ? 0xFFD080 : 0x80FF80;
+        gfx.drawString(this.font, price, x + w - 4 - this.font.width(price), y + 2, priceColor, false);
+
+        String right = e.buyMode()
+                ? Component.translatable("screen.avilixeconomy.market.buying").getString()
+                : Component.translatable("screen.avilixeconomy.market.stock", e.stock()).getString();
+        gfx.drawString(this.font, right, x + w - 4 - this.font.width(right), y + 11, 0x9A9A9A, false);
+
+        String where = e.pos().getX() + " " + e.pos().getY() + " " + e.pos().getZ();
+        gfx.drawString(this.font, where, x + 150, y + 6, 0x707070, false);
+    }
+
+    private ItemStack icon(String itemId) {
+        return this.icons.computeIfAbsent(itemId, id -> {
+            ResourceLocation rl = ResourceLocation.tryParse(id);
+            if (rl == null) return ItemStack.EMPTY;
+            return new ItemStack(BuiltInRegistries.ITEM.get(rl));
+        });
+    }
+}
@@ -406,16 +406,7 @@ this.addRenderableWidget(this.tradeModeButton);
         int mode = this.menu.getMode(); // 0=SELL (shop sells), 1=BUY (shop buys)
         if (mode == 0) {
             // Shop sells to player: limited by stock count.
-            int have = 0;
-            var sample = req.copy();
-            sample.setCount(1);
-            for (int i = 0; i < shop.getStock().getSlots(); i++) {
-                var s = shop.getStock().getStackInSlot(i);
-                if (s.isEmpty()) continue;
-                if (ItemStack.isSameItemSameComponents(s, sample)) {
-                    have += s.getCount();
-                }
-            }
+            int have = shop.getStockCountForTemplateSlot(this.selectedTradeSlot);
             return Math.max(0, have / need);
         }
 
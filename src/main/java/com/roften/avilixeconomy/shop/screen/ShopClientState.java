@@ -16,7 +16,7 @@ public final class ShopClientState {
 
     private ShopClientState() {}
 
-    public record SalesEntry(long createdAtMillis, String tradeType, String counterpartyName, int lots, double totalPrice, double pricePerLot, String itemsSummary) {}
+    public record SalesEntry(long id, long createdAtMillis, String tradeType, String counterpartyName, int lots, double totalPrice, double pricePerLot, String itemsSummary) {}
 
     public record SalesPage(int offset, int limit, boolean hasMore, List<SalesEntry> rows, long version) {}
 
@@ -94,9 +94,15 @@ public class ShopConfigScreen extends AbstractContainerScreen<ShopConfigMenu> {
     private boolean salesHasMore = false;
     private List<ShopClientState.SalesEntry> salesRows = List.of();
     private long lastSalesVersion = -1L;
+    // Keyset cursors: last row of every page before the current one (empty = newest page)
+    private final List<ShopClientState.SalesEntry> salesCursors = new java.util.ArrayList<>();
 
     private final Map<String, String> salesItemNameCache = new ConcurrentHashMap<>();
 
+    // Market price stats of the selected template item (24h, per single item)
+    @org.jetbrains.annotations.Nullable
+    private String marketStatsItem = null;
+
     // Layout (dynamic)
     private int rightW = 220;
 
@@ -277,15 +283,13 @@ this.renderTuneButton = Button.builder(Component.translatable("screen.avilixecon
 
         this.salesPrev = Button.builder(Component.literal("<"), b -> {
             if (this.salesLoading) return;
-            this.salesOffset = Math.max(0, this.salesOffset - this.salesLimit);
-            requestSales();
+            salesPrevPage();
         }).bounds(0, 0, NAV_BTN, NAV_BTN).build();
         this.addRenderableWidget(this.salesPrev);
 
         this.salesNext = Button.builder(Component.literal(">"), b -> {
             if (this.salesLoading) return;
-            this.salesOffset = this.salesOffset + this.salesLimit;
-            requestSales();
+            salesNextPage();
         }).bounds(0, 0, NAV_BTN, NAV_BTN).build();
         this.addRenderableWidget(this.salesNext);
 
@@ -406,8 +410,9 @@ this.renderTuneButton = Button.builder(Component.translatable("screen.avilixecon
         int desiredLimit = Math.max(6, (listH - 12) / 34);
         if (desiredLimit != this.salesLimit) {
             this.salesLimit = desiredLimit;
-            // Keep offset aligned to the new page size
-            this.salesOffset = (this.salesOffset / this.salesLimit) * this.salesLimit;
+            // Page boundaries move with the page size: start again from the newest page
+            this.salesCursors.clear();
+            this.salesOffset = 0;
             requestSales();
         }
 
@@ -517,6 +522,12 @@ this.renderTuneButton = Button.builder(Component.translatable("screen.avilixecon
             this.salesLoading = false;
         }
 
+        String statsItem = marketStatsItemId();
+        if (statsItem != null && !statsItem.equals(this.marketStatsItem)) {
+            this.marketStatsItem = statsItem;
+            PacketDistributor.sendToServer(new NetworkRegistration.MarketStatsRequestPayload(statsItem));
+        }
+
         updateRightTabWidgets();
 
         if (this.modeButton != null) {
@@ -673,13 +684,11 @@ updateUiTransform();
         // Scroll the sales list by pages
         if (this.rightTab == RightTab.SALES && deltaY != 0.0D && isInSalesList((int) ux, (int) uy) && !this.salesLoading) {
             if (deltaY > 0.0D && this.salesOffset > 0) {
-                this.salesOffset = Math.max(0, this.salesOffset - this.salesLimit);
-                requestSales();
+                salesPrevPage();
                 return true;
             }
             if (deltaY < 0.0D && this.salesHasMore) {
-                this.salesOffset = this.salesOffset + this.salesLimit;
-                requestSales();
+                salesNextPage();
                 return true;
             }
         }
@@ -796,6 +805,7 @@ updateUiTransform();
             gfx.drawString(this.font,
                     Component.translatable("screen.avilixeconomy.shop.commission_config_value", sellPct, buyPct),
                     labelX, commY, 0xCFCFCF, false);
+            drawMarketStats(gfx, labelX, commY + 12);
         } else {
             drawSalesList(gfx, x + rx, y + rY);
         }
@@ -879,6 +889,30 @@ updateUiTransform();
         }
     }
 
+    /** Selected template slot item (per-slot pricing), otherwise the first item of the lot. */
+    @org.jetbrains.annotations.Nullable
+    private String marketStatsItemId() {
+        var template = this.menu.getTemplateInventory();
+        ItemStack st = this.editSlotPrice ? template.getStackInSlot(this.selectedTemplateSlot) : ItemStack.EMPTY;
+        for (int i = 0; st.isEmpty() && i < template.getSlots(); i++) {
+            st = template.getStackInSlot(i);
+        }
+        return st.isEmpty() ? null : BuiltInRegistries.ITEM.getKey(st.getItem()).toString();
+    }
+
+    private void drawMarketStats(GuiGraphics gfx, int x, int y) {
+        if (this.marketStatsItem == null) return;
+        var stats = MarketClientState.getStats(this.marketStatsItem);
+        if (stats == null) return;
+        // Same side as the shop's current mode: SELL prices when selling, BUY prices when buying.
+        var s = this.menu.getMode() == 1 ? stats.buy() : stats.sell();
+        Component line = s.trades() == 0
+                ? Component.translatable("screen.avilixeconomy.shop.market_stats_none")
+                : Component.translatable("screen.avilixeconomy.shop.market_stats",
+                        MoneyUtils.formatNoks(s.vwap()), MoneyUtils.formatNoks(s.min()), MoneyUtils.formatNoks(s.max()), s.trades());
+        gfx.drawString(this.font, line, x, y, 0x9A9A9A, false);
+    }
+
     private String humanizeItemsSummary(String summary) {
         if (summary == null || summary.isBlank() || summary.equals("-")) return summary;
         // Cache by original summary line to keep render cheap.
@@ -924,9 +958,25 @@ updateUiTransform();
         return res;
     }
 
+    private void salesNextPage() {
+        if (this.salesRows == null || this.salesRows.isEmpty()) return;
+        this.salesCursors.add(this.salesRows.get(this.salesRows.size() - 1));
+        this.salesOffset = this.salesOffset + this.salesLimit;
+        requestSales();
+    }
+
+    private void salesPrevPage() {
+        if (this.salesCursors.isEmpty()) return;
+        this.salesCursors.remove(this.salesCursors.size() - 1);
+        this.salesOffset = Math.max(0, this.salesOffset - this.salesLimit);
+        requestSales();
+    }
+
     private void requestSales() {
         this.salesLoading = true;
-        PacketDistributor.sendToServer(new NetworkRegistration.ShopRequestSalesPayload(this.menu.getPos(), this.salesLimit, this.salesOffset));
+        var after = this.salesCursors.isEmpty() ? null : this.salesCursors.get(this.salesCursors.size() - 1);
+        PacketDistributor.sendToServer(new NetworkRegistration.ShopRequestSalesPayload(this.menu.getPos(), this.salesLimit, this.salesOffset,
+                after != null ? after.createdAtMillis() : 0L, after != null ? after.id() : 0L));
     }
 
     private static long parseLongDigits(String s) {
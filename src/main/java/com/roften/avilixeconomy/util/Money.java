@@ -0,0 +1,135 @@
+package com.roften.avilixeconomy.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money: an amount is a plain {@code long} of cents (1 Нокс = 100).
+ *
+ * Java has no user-defined value types, so the primitive itself is the type and this class only
+ * holds static arithmetic and formatting. Nothing here allocates except returned Strings,
+ * sums and products are exact (overflow throws instead of silently losing cents),
+ * and BigDecimal is only used at the JDBC boundary ({@link #toDb} / {@link #fromDb}).
+ */
+public final class Money {
+    private Money() {}
+
+    public static final long CENTS = 100L;
+
+    /**
+     * Rounds a double amount to cents, HALF_UP on the decimal value the user typed
+     * (1.005 -> 101 cents, like {@code BigDecimal.valueOf(v).setScale(2, HALF_UP)}).
+     */
+    public static long ofDouble(double v) {
+        if (Double.isNaN(v)) return 0L;
+        double scaled = Math.abs(v) * CENTS;
+        if (scaled >= 9.0e18) return v < 0 ? -Long.MAX_VALUE : Long.MAX_VALUE;
+        // A few ulps restore the ".5" that binary floating point loses (1.005 is 1.00499999...).
+        long c = (long) Math.floor(scaled + 0.5 + 4 * Math.ulp(scaled));
+        return v < 0 ? -c : c;
+    }
+
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS;
+    }
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long sub(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /** Price of {@code qty} units. */
+    public static long times(long cents, long qty) {
+        return Math.multiplyExact(cents, qty);
+    }
+
+    /** {@code bps} basis points of an amount (100 = 1%), HALF_UP, never more than the amount itself. */
+    public static long bps(long cents, int bps) {
+        if (cents <= 0 || bps <= 0) return 0L;
+        if (bps >= 10_000) return cents;
+        return (Math.multiplyExact(cents, (long) bps) + 5_000L) / 10_000L;
+    }
+
+    /** Up to 2 decimals without trailing zeros: 10000 -> "100", 10050 -> "100.5", 10025 -> "100.25". */
+    public static String format(long cents) {
+        if (cents == 0L) return "0";
+        long abs = Math.abs(cents);
+        long whole = abs / CENTS;
+        int frac = (int) (abs % CENTS);
+        StringBuilder sb = new StringBuilder(24);
+        if (cents < 0) sb.append('-');
+        sb.append(whole);
+        if (frac != 0) {
+            sb.append('.').append((char) ('0' + frac / 10));
+            if (frac % 10 != 0) sb.append((char) ('0' + frac % 10));
+        }
+        return sb.toString();
+    }
+
+    /** Amount with currency word, e.g. "100 Ноксов". */
+    public static String formatNoks(long cents) {
+        return format(cents) + " " + currencyWord(cents);
+    }
+
+    /** 1 -> Нокс, 2-4 -> Нокса, 5+ -> Ноксов. Fractional amounts -> Нокс. */
+    public static String currencyWord(long cents) {
+        long abs = Math.abs(cents);
+        if (abs % CENTS != 0) return MoneyUtils.CURRENCY_SINGULAR;
+        long n = abs / CENTS;
+        long mod10 = n % 10;
+        long mod100 = n % 100;
+        if (mod10 == 1 && mod100 != 11) return MoneyUtils.CURRENCY_SINGULAR;
+        if (mod10 >= 2 && mod10 <= 4 && (mod100 < 12 || mod100 > 14)) return MoneyUtils.CURRENCY_GEN_SINGULAR;
+        return MoneyUtils.CURRENCY_GEN_PLURAL;
+    }
+
+    /**
+     * Parses user input like "1.25" or "1,25" (other characters are ignored) into cents, HALF_UP.
+     * Returns 0 for empty or unusable input.
+     */
+    public static long parse(String s) {
+        if (s == null) return 0L;
+        long whole = 0L;
+        int frac = 0;
+        int fracDigits = 0;
+        boolean dot = false;
+        boolean any = false;
+        boolean roundUp = false;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                any = true;
+                int d = ch - '0';
+                if (!dot) {
+                    if (whole > (Long.MAX_VALUE / CENTS - 9) / 10) return 0L;
+                    whole = whole * 10 + d;
+                } else if (fracDigits < 2) {
+                    frac = frac * 10 + d;
+                    fracDigits++;
+                } else if (fracDigits == 2) {
+                    roundUp = d >= 5;
+                    fracDigits++;
+                }
+            } else if ((ch == '.' || ch == ',') && !dot) {
+                dot = true;
+            }
+        }
+        if (!any) return 0L;
+        if (fracDigits == 1) frac *= 10;
+        return whole * CENTS + frac + (roundUp ? 1 : 0);
+    }
+
+    /** JDBC boundary: DECIMAL(18,2) parameter. */
+    public static BigDecimal toDb(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /** JDBC boundary: DECIMAL column to cents. */
+    public static long fromDb(BigDecimal bd) {
+        if (bd == null) return 0L;
+        return bd.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+}
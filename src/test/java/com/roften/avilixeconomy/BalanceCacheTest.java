@@ -0,0 +1,116 @@
+package com.roften.avilixeconomy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceCacheTest {
+
+    @Test
+    void missingAccountsAreReportedAndCounted() {
+        BalanceCache cache = new BalanceCache(10, 0);
+        UUID uuid = UUID.randomUUID();
+
+        assertEquals(BalanceCache.MISSING, cache.get(uuid));
+        cache.put(uuid, 1234);
+        assertEquals(1234L, cache.get(uuid));
+        assertTrue(cache.statsLine().contains("hits=1 misses=1"), cache.statsLine());
+    }
+
+    @Test
+    void sizeEvictionDropsTheLeastRecentlyUsedFirst() throws InterruptedException {
+        BalanceCache cache = new BalanceCache(10, 0);
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            UUID uuid = UUID.randomUUID();
+            uuids.add(uuid);
+            cache.put(uuid, i);
+            Thread.sleep(2);
+        }
+        // Touch the oldest entry: it becomes the most recent one.
+        cache.get(uuids.get(0));
+        Thread.sleep(2);
+
+        cache.put(UUID.randomUUID(), 99);
+
+        // Trimmed to 90% of the limit: the two least recently used entries are gone.
+        assertEquals(0L, cache.peek(uuids.get(0)));
+        assertEquals(BalanceCache.MISSING, cache.peek(uuids.get(1)));
+        assertEquals(BalanceCache.MISSING, cache.peek(uuids.get(2)));
+        for (int i = 3; i < 10; i++) assertEquals(i, cache.peek(uuids.get(i)));
+        assertTrue(cache.statsLine().contains("size=9/10"), cache.statsLine());
+        assertTrue(cache.statsLine().contains("evictedSize=2"), cache.statsLine());
+    }
+
+    @Test
+    void onlinePlayersAreNeverEvictedForSize() throws InterruptedException {
+        BalanceCache cache = new BalanceCache(4, 0);
+        UUID online = UUID.randomUUID();
+        cache.markOnline(online);
+        cache.put(online, 500);
+        Thread.sleep(2);
+        for (int i = 0; i < 20; i++) {
+            cache.put(UUID.randomUUID(), i);
+            Thread.sleep(1);
+        }
+
+        assertEquals(500L, cache.peek(online));
+    }
+
+    @Test
+    void sweepDropsIdleOfflineEntriesOnly() throws InterruptedException {
+        BalanceCache cache = new BalanceCache(100, 20);
+        UUID online = UUID.randomUUID();
+        UUID offline = UUID.randomUUID();
+        cache.markOnline(online);
+        cache.put(online, 1);
+        cache.put(offline, 2);
+
+        cache.sweep();
+        assertEquals(2L, cache.peek(offline));
+
+        Thread.sleep(50);
+        cache.sweep();
+        assertEquals(1L, cache.peek(online));
+        assertEquals(BalanceCache.MISSING, cache.peek(offline));
+        assertTrue(cache.statsLine().contains("evictedIdle=1"), cache.statsLine());
+    }
+
+    @Test
+    void logoutUnpinsAndOptionallyDrops() {
+        BalanceCache cache = new BalanceCache(10, 0);
+        UUID kept = UUID.randomUUID();
+        UUID dropped = UUID.randomUUID();
+        cache.markOnline(kept);
+        cache.markOnline(dropped);
+        cache.put(kept, 1);
+        cache.put(dropped, 2);
+
+        cache.markOffline(kept, false);
+        cache.markOffline(dropped, true);
+
+        assertEquals(1L, cache.peek(kept));
+        assertEquals(BalanceCache.MISSING, cache.peek(dropped));
+        assertTrue(cache.statsLine().contains("online=0"), cache.statsLine());
+        assertTrue(cache.statsLine().contains("invalidated=1"), cache.statsLine());
+    }
+
+    @Test
+    void conditionalWritesOnlyApplyWhenExpected() {
+        BalanceCache cache = new BalanceCache(10, 0);
+        UUID uuid = UUID.randomUUID();
+
+        assertFalse(cache.replace(uuid, 0, 5));
+        assertTrue(cache.putIfAbsent(uuid, 100));
+        assertFalse(cache.putIfAbsent(uuid, 200));
+        assertFalse(cache.replace(uuid, 150, 300));
+        assertTrue(cache.replace(uuid, 100, 300));
+        assertEquals(300L, cache.peek(uuid));
+    }
+}
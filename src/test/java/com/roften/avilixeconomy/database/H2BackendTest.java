@@ -0,0 +1,15 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.database.backend.H2Backend;
+import com.roften.avilixeconomy.database.backend.StorageBackend;
+
+import java.util.UUID;
+
+/** Storage contract on an in-process H2 database (fresh per run). */
+class H2BackendTest extends StorageBackendContract {
+
+    @Override
+    protected StorageBackend createBackend() {
+        return H2Backend.inMemory("contract-" + UUID.randomUUID());
+    }
+}
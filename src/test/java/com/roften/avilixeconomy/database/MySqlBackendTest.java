@@ -0,0 +1,20 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.database.backend.MySqlBackend;
+import com.roften.avilixeconomy.database.backend.StorageBackend;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/** Storage contract on a throwaway MySQL 8 container; skipped when Docker is not available. */
+@Testcontainers(disabledWithoutDocker = true)
+class MySqlBackendTest extends StorageBackendContract {
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    @Override
+    protected StorageBackend createBackend() {
+        return new MySqlBackend(MYSQL.getJdbcUrl(), MYSQL.getUsername(), MYSQL.getPassword());
+    }
+}
@@ -0,0 +1,373 @@
+package com.roften.avilixeconomy.database;
+
+import com.roften.avilixeconomy.database.backend.SchemaMigration;
+import com.roften.avilixeconomy.database.backend.StorageBackend;
+import com.roften.avilixeconomy.util.Money;
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Behaviour every {@link StorageBackend} must share: the migrated schema, the dialect upserts and
+ * the keyset pages built on top of them. Subclasses only supply the engine.
+ *
+ * Runs against the real {@link DatabaseManager} (one pool per test class, tables emptied before each test).
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+abstract class StorageBackendContract {
+
+    private static final List<String> COMMON_MIGRATIONS = List.of("common-001", "common-002", "common-003", "common-004");
+
+    private StorageBackend backend;
+
+    protected abstract StorageBackend createBackend();
+
+    @BeforeAll
+    void openPool() {
+        backend = createBackend();
+        HikariConfig pool = new HikariConfig();
+        pool.setMaximumPoolSize(4);
+        pool.setConnectionTimeout(30000);
+        DatabaseManager.init(backend, pool);
+        EconomyExecutor.start(4);
+        SchemaMigrator.runBackground();
+    }
+
+    @AfterAll
+    void closePool() {
+        EconomyExecutor.shutdown(5000);
+        DatabaseManager.shutdown(5000);
+    }
+
+    @BeforeEach
+    void emptyTables() throws SQLException {
+        for (String table : List.of("economy", "economy_balance_history", "shop_sales",
+                "market_stats_hourly", "shop_render_overrides")) {
+            exec("DELETE FROM " + table);
+        }
+        Leaderboard.clear();
+    }
+
+    // ======== migrations ========
+
+    @Test
+    void everyMigrationIsRecorded() throws SQLException {
+        Set<String> applied = new HashSet<>(strings("SELECT version FROM schema_version"));
+        for (SchemaMigration m : backend.migrations()) {
+            assertTrue(applied.contains(m.version()), m.version());
+        }
+        assertTrue(applied.containsAll(COMMON_MIGRATIONS));
+    }
+
+    @Test
+    void migratingAgainChangesNothing() throws SQLException {
+        List<String> before = strings("SELECT version FROM schema_version ORDER BY version");
+        SchemaMigrator.migrate(backend);
+        SchemaMigrator.runBackground();
+        assertEquals(before, strings("SELECT version FROM schema_version ORDER BY version"));
+    }
+
+    @Test
+    void migratedSchemaHasCursorIndexesAndBinaryUuids() throws SQLException {
+        try (Connection c = DatabaseManager.getConnection()) {
+            assertTrue(backend.indexExists(c, "economy", "idx_economy_balance"));
+            assertTrue(backend.indexExists(c, "economy_balance_history", "idx_player_cursor"));
+            assertTrue(backend.indexExists(c, "shop_sales", "idx_shop_pos_cursor"));
+            assertFalse(backend.columnExists(c, "economy", "uuid_bin"));
+        }
+
+        UUID uuid = UUID.randomUUID();
+        DatabaseManager.createPlayerRecord(uuid, "Alex", 12.5);
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT uuid FROM economy");
+             ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next());
+            assertArrayEquals(DatabaseManager.uuidBytes(uuid), rs.getBytes(1));
+        }
+        assertEquals(12.5, DatabaseManager.getBalanceDirect(uuid));
+    }
+
+    // ======== upserts ========
+
+    @Test
+    void upsertAccountInsertsThenReplaces() throws SQLException {
+        UUID uuid = UUID.randomUUID();
+        upsertAccount(uuid, "Alex", 100);
+        upsertAccount(uuid, "Steve", 250);
+
+        assertEquals(1L, count("SELECT COUNT(*) FROM economy"));
+        assertEquals(2.5, DatabaseManager.getBalanceDirect(uuid));
+        assertEquals("Steve", storedName(uuid));
+    }
+
+    @Test
+    void creditAccountsAddsToExistingAndCreatesMissing() throws SQLException {
+        UUID existing = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        DatabaseManager.createPlayerRecord(existing, "Alex", 10.0);
+
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(backend.creditAccountsSql(2))) {
+            ps.setBytes(1, DatabaseManager.uuidBytes(existing));
+            ps.setBigDecimal(2, Money.toDb(550));
+            ps.setBytes(3, DatabaseManager.uuidBytes(missing));
+            ps.setBigDecimal(4, Money.toDb(125));
+            ps.executeUpdate();
+        }
+
+        assertEquals(15.5, DatabaseManager.getBalanceDirect(existing));
+        assertEquals(1.25, DatabaseManager.getBalanceDirect(missing));
+        assertEquals("unknown", storedName(missing));
+    }
+
+    @Test
+    void upsertMarketStatsReplacesTheBucket() throws SQLException {
+        upsertMarketStats(3, 64);
+        upsertMarketStats(5, 96);
+
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT trades, volume FROM market_stats_hourly");
+             ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(5, rs.getInt(1));
+            assertEquals(96L, rs.getLong(2));
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    void upsertRenderOverrideReplacesTheRow() throws SQLException {
+        upsertRenderOverride(1.0f);
+        upsertRenderOverride(2.5f);
+
+        assertEquals(1L, count("SELECT COUNT(*) FROM shop_render_overrides"));
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT scale_mul FROM shop_render_overrides");
+             ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(2.5f, rs.getFloat(1));
+        }
+    }
+
+    @Test
+    void loginAccountCreatesOnceThenReadsTheRow() throws SQLException {
+        UUID uuid = UUID.randomUUID();
+        DatabaseManager.LoginAccount first = DatabaseManager.loginAccount(uuid, "Alex", 50000);
+        DatabaseManager.LoginAccount second = DatabaseManager.loginAccount(uuid, "Alex2", 0);
+
+        assertTrue(first.created());
+        assertFalse(second.created());
+        assertEquals(50000L, second.balance());
+        assertEquals("Alex2", storedName(uuid));
+    }
+
+    // ======== keyset pages ========
+
+    @Test
+    void topBalancePagesVisitEveryAccountOnceInOrder() throws SQLException {
+        // Five accounts per balance, so most page boundaries fall inside a tie.
+        for (int i = 0; i < 25; i++) {
+            DatabaseManager.createPlayerRecord(UUID.randomUUID(), "p" + i, (i % 5) * 100.0);
+        }
+
+        List<DatabaseManager.BalanceRow> all = DatabaseManager.getBalancesTopAfter(null, 1000, null);
+        assertEquals(25, all.size());
+
+        List<DatabaseManager.BalanceRow> walked = new ArrayList<>();
+        DatabaseManager.BalanceRow cursor = null;
+        while (true) {
+            List<DatabaseManager.BalanceRow> page = DatabaseManager.getBalancesTopAfter(cursor, 7, null);
+            walked.addAll(page);
+            if (page.size() < 7) break;
+            cursor = page.get(page.size() - 1);
+        }
+        assertEquals(all, walked);
+
+        for (int i = 1; i < walked.size(); i++) {
+            DatabaseManager.BalanceRow prev = walked.get(i - 1);
+            DatabaseManager.BalanceRow row = walked.get(i);
+            assertTrue(prev.balance() > row.balance()
+                    || (prev.balance() == row.balance() && prev.uuid().compareTo(row.uuid()) > 0), row.toString());
+        }
+    }
+
+    @Test
+    void topBalancePagesSkipTheExcludedAccount() throws SQLException {
+        UUID server = UUID.randomUUID();
+        DatabaseManager.createPlayerRecord(server, "SERVER", 1_000_000.0);
+        for (int i = 0; i < 5; i++) {
+            DatabaseManager.createPlayerRecord(UUID.randomUUID(), "p" + i, i);
+        }
+
+        List<DatabaseManager.BalanceRow> rows = DatabaseManager.getBalancesTopAfter(null, 100, server);
+        assertEquals(5, rows.size());
+        assertTrue(rows.stream().noneMatch(r -> r.uuid().equals(server.toString())));
+    }
+
+    @Test
+    void balanceHistoryPagesVisitEveryRowOnce() {
+        UUID player = UUID.randomUUID();
+        // Inserted back to back: many rows share a created_at, the id breaks the tie.
+        for (int i = 0; i < 30; i++) {
+            DatabaseManager.insertBalanceHistory(player, "Alex", 100, 100L * i, 100L * (i + 1), "TEST", null, null, null);
+        }
+        DatabaseManager.insertBalanceHistory(UUID.randomUUID(), "Other", 100, 0, 100, "TEST", null, null, null);
+
+        List<Long> ids = new ArrayList<>();
+        DatabaseManager.LogCursor cursor = null;
+        DatabaseManager.LogCursor afterFirstPage = null;
+        while (true) {
+            List<DatabaseManager.BalanceHistoryRow> page = DatabaseManager.getBalanceHistory(player, 8, cursor);
+            for (var row : page) ids.add(row.id());
+            if (page.size() < 8) break;
+            var last = page.get(page.size() - 1);
+            cursor = new DatabaseManager.LogCursor(last.createdAt().getTime(), last.id());
+            if (afterFirstPage == null) afterFirstPage = cursor;
+        }
+
+        assertEquals(30, ids.size());
+        assertEquals(30, new HashSet<>(ids).size());
+        for (int i = 1; i < ids.size(); i++) assertTrue(ids.get(i - 1) > ids.get(i));
+        assertEquals(afterFirstPage, DatabaseManager.balanceHistoryCursorAt(player, 8));
+    }
+
+    @Test
+    void shopSalePagesVisitEveryRowOnce() throws SQLException {
+        long base = System.currentTimeMillis() / 1000 * 1000;
+        for (int i = 0; i < 12; i++) {
+            // Groups of three sales share one timestamp.
+            insertSale("minecraft:overworld", 1, 64, -3, base - (i / 3) * 1000L);
+        }
+        insertSale("minecraft:overworld", 2, 64, -3, base);
+
+        List<Long> ids = new ArrayList<>();
+        DatabaseManager.LogCursor cursor = null;
+        while (true) {
+            DatabaseManager.ShopSalesPage page = DatabaseManager.getShopSalesPage("minecraft:overworld", 1, 64, -3, 5, cursor);
+            for (var row : page.rows()) ids.add(row.id());
+            if (!page.hasMore()) break;
+            var last = page.rows().get(page.rows().size() - 1);
+            cursor = new DatabaseManager.LogCursor(last.createdAtMillis(), last.id());
+        }
+
+        assertEquals(12, ids.size());
+        assertEquals(12, new HashSet<>(ids).size());
+    }
+
+    // ======== helpers ========
+
+    private void upsertAccount(UUID uuid, String name, long cents) throws SQLException {
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(backend.upsertAccountSql())) {
+            ps.setBytes(1, DatabaseManager.uuidBytes(uuid));
+            ps.setString(2, name);
+            ps.setBigDecimal(3, Money.toDb(cents));
+            ps.executeUpdate();
+        }
+    }
+
+    private void upsertMarketStats(int trades, long volume) throws SQLException {
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(backend.upsertMarketStatsSql())) {
+            ps.setString(1, "minecraft:diamond");
+            ps.setString(2, "SELL");
+            ps.setLong(3, 480_000L);
+            ps.setInt(4, trades);
+            ps.setLong(5, volume);
+            ps.setBigDecimal(6, Money.toDb(volume * 100));
+            ps.setBigDecimal(7, Money.toDb(100));
+            ps.setBigDecimal(8, Money.toDb(100));
+            ps.setBigDecimal(9, Money.toDb(100));
+            ps.setLong(10, 1_728_000_000_000L);
+            ps.executeUpdate();
+        }
+    }
+
+    private void upsertRenderOverride(float scale) throws SQLException {
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(backend.upsertRenderOverrideSql())) {
+            ps.setString(1, "ITEM");
+            ps.setString(2, "minecraft:shield");
+            for (int i = 3; i <= 8; i++) ps.setFloat(i, 0f);
+            ps.setFloat(9, scale);
+            ps.setFloat(10, 0f);
+            ps.executeUpdate();
+        }
+    }
+
+    private void insertSale(String world, int x, int y, int z, long createdAtMillis) throws SQLException {
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("""
+                     INSERT INTO shop_sales(created_at, world, x, y, z, block_id, owner_uuid, owner_name,
+                         buyer_uuid, buyer_name, trade_type, price_per_lot, lots, total_price, items_json, items_summary)
+                     VALUES (?, ?, ?, ?, ?, 'avilixeconomy:shop', ?, 'Owner', ?, 'Buyer', 'SELL', ?, 1, ?, '[]', '')
+                     """)) {
+            ps.setTimestamp(1, new Timestamp(createdAtMillis));
+            ps.setString(2, world);
+            ps.setInt(3, x);
+            ps.setInt(4, y);
+            ps.setInt(5, z);
+            ps.setBytes(6, DatabaseManager.uuidBytes(UUID.randomUUID()));
+            ps.setBytes(7, DatabaseManager.uuidBytes(UUID.randomUUID()));
+            ps.setBigDecimal(8, Money.toDb(1000));
+            ps.setBigDecimal(9, Money.toDb(1000));
+            ps.executeUpdate();
+        }
+    }
+
+    /** Name column as stored (DatabaseManager reads names through PlayerNameDirectory). */
+    private static String storedName(UUID uuid) throws SQLException {
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT name FROM economy WHERE uuid = ?")) {
+            ps.setBytes(1, DatabaseManager.uuidBytes(uuid));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static void exec(String sql) throws SQLException {
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.executeUpdate();
+        }
+    }
+
+    private static long count(String sql) throws SQLException {
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        }
+    }
+
+    private static List<String> strings(String sql) throws SQLException {
+        List<String> out = new ArrayList<>();
+        try (Connection c = DatabaseManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(rs.getString(1));
+        }
+        return out;
+    }
+}
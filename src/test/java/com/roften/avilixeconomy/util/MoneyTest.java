@@ -0,0 +1,76 @@
+package com.roften.avilixeconomy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MoneyTest {
+
+    @Test
+    void ofDoubleRoundsTheTypedDecimalHalfUp() {
+        assertEquals(101L, Money.ofDouble(1.005));
+        assertEquals(268L, Money.ofDouble(2.675));
+        assertEquals(100L, Money.ofDouble(1.004));
+        assertEquals(30L, Money.ofDouble(0.1 + 0.2));
+        assertEquals(-101L, Money.ofDouble(-1.005));
+        assertEquals(0L, Money.ofDouble(0.004));
+    }
+
+    @Test
+    void ofDoubleClampsInsteadOfOverflowing() {
+        assertEquals(0L, Money.ofDouble(Double.NaN));
+        assertEquals(Long.MAX_VALUE, Money.ofDouble(1e30));
+        assertEquals(-Long.MAX_VALUE, Money.ofDouble(-1e30));
+        assertEquals(Long.MAX_VALUE, Money.ofDouble(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void parseAcceptsDotOrComma() {
+        assertEquals(125L, Money.parse("1.25"));
+        assertEquals(125L, Money.parse("1,25"));
+        assertEquals(150L, Money.parse("1.5"));
+        assertEquals(1200L, Money.parse(" 12 "));
+        assertEquals(5L, Money.parse(".05"));
+    }
+
+    @Test
+    void parseRoundsTheThirdDecimalHalfUp() {
+        assertEquals(101L, Money.parse("1.005"));
+        assertEquals(100L, Money.parse("1.0049"));
+        assertEquals(200L, Money.parse("1.999"));
+    }
+
+    @Test
+    void parseIgnoresOtherCharacters() {
+        assertEquals(100000L, Money.parse("1 000 Ноксов"));
+        assertEquals(500L, Money.parse("-5"));
+        assertEquals(123L, Money.parse("1.2.3"));
+    }
+
+    @Test
+    void parseReturnsZeroForUnusableInput() {
+        assertEquals(0L, Money.parse(null));
+        assertEquals(0L, Money.parse(""));
+        assertEquals(0L, Money.parse("abc"));
+        assertEquals(0L, Money.parse("99999999999999999999"));
+    }
+
+    @Test
+    void formatDropsTrailingZeros() {
+        assertEquals("0", Money.format(0));
+        assertEquals("100", Money.format(10000));
+        assertEquals("100.5", Money.format(10050));
+        assertEquals("100.25", Money.format(10025));
+        assertEquals("-0.05", Money.format(-5));
+    }
+
+    @Test
+    void databaseRoundTripKeepsCents() {
+        assertEquals(new BigDecimal("12.34"), Money.toDb(1234));
+        assertEquals(1234L, Money.fromDb(Money.toDb(1234)));
+        assertEquals(1235L, Money.fromDb(new BigDecimal("12.345")));
+        assertEquals(0L, Money.fromDb(null));
+    }
+}